@@ -203,6 +203,16 @@ public class CityNet {
 		return nextCellId.incrementAndGet();
 	}
 	
+	/**
+	 * Reserves a block of consecutive cell ids.
+	 *
+	 * @param count the number of ids
+	 * @return the first id of the block
+	 */
+	public int reserveCellIds(int count) { 
+		return nextCellId.getAndAdd(count)+1;
+	}
+	
 	/**
 	 * Gets the next cell region id.
 	 *
@@ -293,7 +303,7 @@ public class CityNet {
 		nextEdgeRegionId.set(1);
 		nextRegionId.set(1);
 		if(city == null) return;
-		for(Cell cell : city.getCells()) {
+		for(Cell cell : city.getCellsView()) {
 			nextCellId.set(Math.max(nextCellId.get(), cell.getId()+1));
 		}
 		for(CellRegion cellRegion : city.getCellRegions()) {
@@ -316,10 +326,10 @@ public class CityNet {
 			for(Layer layer : system.getLayers()) {
 				nextLayerId.set(Math.max(nextLayerId.get(), layer.getId()+1));
 			}
-			for(Node node : system.getNodes()) {
+			for(Node node : system.getNodesView()) {
 				nextNodeId.set(Math.max(nextNodeId.get(), node.getId()+1));
 			}
-			for(Edge edge : system.getEdges()) {
+			for(Edge edge : system.getEdgesView()) {
 				nextEdgeId.set(Math.max(nextEdgeId.get(), edge.getId()+1));
 			}
 			for(NodeRegion nodeRegion : system.getNodeRegions()) {
@@ -328,7 +338,7 @@ public class CityNet {
 			for(EdgeRegion edgeRegion : system.getEdgeRegions()) {
 				nextEdgeRegionId.set(Math.max(nextEdgeRegionId.get(), edgeRegion.getId()+1));
 			}
-			for(Region region : system.getRegions()) {
+			for(Region region : system.getRegionsView()) {
 				nextRegionId.set(Math.max(nextRegionId.get(), region.getId()+1));
 			}
 		}
@@ -372,6 +382,7 @@ public class CityNet {
 				f.setSize(new Dimension(800,600));
 				f.setLocationRelativeTo(null);
 				f.setVisible(true);
+				f.recoverCityCommand();
             }
 		});
 	}
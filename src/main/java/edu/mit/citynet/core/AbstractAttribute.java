@@ -15,6 +15,7 @@ package edu.mit.citynet.core;
 public abstract class AbstractAttribute {
 	private String name, description, units, bounds;
 	private double value;
+	private volatile int version;
 
 	/**
 	 * Gets the name.
@@ -32,6 +33,8 @@ public abstract class AbstractAttribute {
 	 */
 	public void setName(String name) {
 		this.name = name;
+		if(name != null) AttributeSchema.getSlot(name);
+		version++;
 	}
 
 	/**
@@ -104,5 +107,16 @@ public abstract class AbstractAttribute {
 	 */
 	public void setValue(double value) {
 		this.value = value;
+		version++;
+	}
+
+	/**
+	 * Gets the version, which changes whenever the name or value is set so
+	 * that types can tell when to gather their attribute values again.
+	 *
+	 * @return the version
+	 */
+	int getVersion() {
+		return version;
 	}
 }
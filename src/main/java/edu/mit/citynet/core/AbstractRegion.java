@@ -23,6 +23,7 @@ import edu.mit.citynet.CityNet;
 public abstract class AbstractRegion {
 	private CoordinateList coordinateList;
 	private String description;
+	private transient volatile PreparedPolygon preparedPolygon;
 	
 	/**
 	 * Instantiates a new abstract region.
@@ -54,6 +55,7 @@ public abstract class AbstractRegion {
 	public void setCoordinateList(CoordinateList coordinateList) {
 		this.coordinateList.clear();
 		this.coordinateList.addAll(coordinateList);
+		preparedPolygon = null;
 	}
 
 	/**
@@ -81,24 +83,40 @@ public abstract class AbstractRegion {
 	 */
 	public double getArea() {
 		if(coordinateList.size()>2) {
-			return getPolygon().getArea();
+			return getPreparedPolygon().getArea();
 		} else return 0;
 	}
 	
 	/**
-	 * Gets the polygon.
+	 * Gets the polygon. The polygon is cached until the coordinate list 
+	 * changes and must not be modified.
 	 *
 	 * @return the polygon
 	 */
 	public Polygon getPolygon() {
-		if(coordinateList.size()>2) {
-			GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
-			CoordinateList ringCoordinates = getCoordinateList();
-			ringCoordinates.closeRing();
-			return gf.createPolygon(gf.createLinearRing(ringCoordinates.toCoordinateArray()), null);
-		} else {
-			throw new IllegalStateException("Cannot create a polygon with fewer than 3 points.");
+		return getPreparedPolygon().getPolygon();
+	}
+	
+	/**
+	 * Gets the prepared polygon, creating it if necessary.
+	 *
+	 * @return the prepared polygon
+	 */
+	PreparedPolygon getPreparedPolygon() {
+		PreparedPolygon prepared = preparedPolygon;
+		if(prepared == null) {
+			if(coordinateList.size()>2) {
+				GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
+				CoordinateList ringCoordinates = getCoordinateList();
+				ringCoordinates.closeRing();
+				prepared = new PreparedPolygon(gf.createPolygon(gf.createLinearRing(
+						ringCoordinates.toCoordinateArray()), null));
+				preparedPolygon = prepared;
+			} else {
+				throw new IllegalStateException("Cannot create a polygon with fewer than 3 points.");
+			}
 		}
+		return prepared;
 	}
 	
 	/**
@@ -109,7 +127,7 @@ public abstract class AbstractRegion {
 	 */
 	public boolean containsPoint(Point point) {
 		if(coordinateList.size()>2) {
-			return getPolygon().contains(point);
+			return getPreparedPolygon().containsPoint(point);
 		} else return false;
 	}
 	
@@ -124,8 +142,38 @@ public abstract class AbstractRegion {
 	 */
 	public boolean containsPolygon(Polygon polygon, double overlapFraction) {
 		if(coordinateList.size()>2) {
-			double intersectionArea = getPolygon().intersection(polygon).getArea();
-			if(intersectionArea/Math.min(getPolygon().getArea(),polygon.getArea()) > overlapFraction) return true;
+			return containsPolygon(new PreparedPolygon(polygon), overlapFraction);
+		} else return false;
+	}
+	
+	/**
+	 * Determines whether the region contains a cell, measured by if minimum 
+	 * overlap fraction between the two is achieved.
+	 *
+	 * @param cell the cell
+	 * @param overlapFraction the minimum overlap fraction
+	 * @return true, if this region contains the minimum overlap fraction of
+	 * the specified cell
+	 */
+	public boolean containsCell(Cell cell, double overlapFraction) {
+		if(!cell.isImplicit() && cell.getPolygon() == null) return false;
+		return containsPolygon(cell.getPreparedPolygon(), overlapFraction);
+	}
+	
+	/**
+	 * Determines whether the region contains a prepared polygon, measured by 
+	 * if minimum overlap fraction between the two is achieved.
+	 *
+	 * @param polygon the prepared polygon
+	 * @param overlapFraction the minimum overlap fraction
+	 * @return true, if this region contains the minimum overlap fraction of
+	 * the specified polygon
+	 */
+	private boolean containsPolygon(PreparedPolygon polygon, double overlapFraction) {
+		if(coordinateList.size()>2) {
+			PreparedPolygon prepared = getPreparedPolygon();
+			double intersectionArea = prepared.getIntersectionArea(polygon);
+			if(intersectionArea/Math.min(prepared.getArea(),polygon.getArea()) > overlapFraction) return true;
 			else return false;
 		} else return false;
 	}
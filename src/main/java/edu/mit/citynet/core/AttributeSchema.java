@@ -0,0 +1,179 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The AttributeSchema class interns attribute names to integer slots shared
+ * by all node types and edge types. Each type holds its attribute values in
+ * an array indexed by slot, so that an attribute name is resolved to a slot
+ * once and its value is then read from any type without a search:
+ *
+ * <pre>
+ * int slot = AttributeSchema.findSlot("residentDensity");
+ * double density = node.getAttribute(slot); // NaN if not defined
+ * </pre>
+ *
+ * Only the names of attributes defined by a type or set for a node or edge
+ * are interned; reads use findSlot, which does not intern unknown names.
+ */
+public final class AttributeSchema {
+	private static final ConcurrentHashMap<String,Integer> slots =
+		new ConcurrentHashMap<String,Integer>();
+	private static final List<String> names = new ArrayList<String>();
+
+	/**
+	 * Instantiates a new attribute schema.
+	 */
+	private AttributeSchema() { }
+
+	/**
+	 * Gets the slot of an attribute name, interning the name if needed. Used
+	 * where an attribute is defined or a value is set.
+	 *
+	 * @param name the attribute name
+	 * @return the slot
+	 */
+	public static int getSlot(String name) {
+		Integer slot = slots.get(name);
+		if(slot == null) {
+			synchronized(names) {
+				slot = slots.get(name);
+				if(slot == null) {
+					slot = names.size();
+					names.add(name);
+					slots.put(name, slot);
+				}
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * Finds the slot of an attribute name without interning it.
+	 *
+	 * @param name the attribute name
+	 * @return the slot, or -1 if no attribute has the name
+	 */
+	public static int findSlot(String name) {
+		if(name == null) return -1;
+		Integer slot = slots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Gets the attribute name of a slot.
+	 *
+	 * @param slot the slot
+	 * @return the attribute name
+	 */
+	public static String getName(int slot) {
+		synchronized(names) {
+			return names.get(slot);
+		}
+	}
+
+	/**
+	 * Gets the number of slots.
+	 *
+	 * @return the number of slots
+	 */
+	public static int getNumberSlots() {
+		synchronized(names) {
+			return names.size();
+		}
+	}
+
+	/**
+	 * The Values class holds the attribute values of a type by slot, with NaN
+	 * where an attribute is not defined, and whether each attribute is 
+	 * defined, since a defined attribute may have the value NaN. Values are 
+	 * replaced rather than updated, after the attribute list of their type 
+	 * or one of its attributes is modified; the versions of both are 
+	 * recorded so that other types keep their values.
+	 */
+	static final class Values {
+		private final int listVersion;
+		private final AbstractAttribute[] attributes;
+		private final int[] versions;
+		private final double[] values;
+		private final boolean[] defined;
+
+		/**
+		 * Instantiates new values from the attributes of a type. Where a name
+		 * is repeated, the first attribute is used.
+		 *
+		 * @param attributes the attributes
+		 * @param listVersion the version of the attribute list
+		 */
+		Values(Collection<? extends AbstractAttribute> attributes, int listVersion) {
+			this.listVersion = listVersion;
+			this.attributes = attributes.toArray(new AbstractAttribute[attributes.size()]);
+			versions = new int[this.attributes.length];
+			for(int i=0; i<versions.length; i++) {
+				versions[i] = this.attributes[i].getVersion();
+			}
+			double[] values = new double[0];
+			boolean[] defined = new boolean[0];
+			for(AbstractAttribute attribute : this.attributes) {
+				if(attribute.getName() == null) continue;
+				int slot = getSlot(attribute.getName());
+				if(slot >= values.length) {
+					int length = values.length;
+					values = Arrays.copyOf(values, slot+1);
+					defined = Arrays.copyOf(defined, slot+1);
+					Arrays.fill(values, length, values.length, Double.NaN);
+				} else if(defined[slot]) {
+					continue;
+				}
+				values[slot] = attribute.getValue();
+				defined[slot] = true;
+			}
+			this.values = values;
+			this.defined = defined;
+		}
+
+		/**
+		 * Checks if neither the attribute list nor any of its attributes has 
+		 * been modified since the values were gathered.
+		 *
+		 * @param listVersion the current version of the attribute list
+		 * @return true, if current
+		 */
+		boolean isCurrent(int listVersion) {
+			if(listVersion != this.listVersion) return false;
+			for(int i=0; i<attributes.length; i++) {
+				if(attributes[i].getVersion() != versions[i]) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Gets the value of a slot.
+		 *
+		 * @param slot the slot
+		 * @return the value, or NaN if not defined
+		 */
+		double get(int slot) {
+			return slot >= 0 && slot < values.length ? values[slot] : Double.NaN;
+		}
+
+		/**
+		 * Checks if an attribute is defined for a slot.
+		 *
+		 * @param slot the slot
+		 * @return true, if defined
+		 */
+		boolean isDefined(int slot) {
+			return slot >= 0 && slot < defined.length && defined[slot];
+		}
+	}
+}
\ No newline at end of file
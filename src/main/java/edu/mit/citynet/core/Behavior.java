@@ -0,0 +1,126 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import edu.mit.citynet.CityNet;
+
+/**
+ * The Behavior class is the superclass of all behaviors (key performance
+ * indicators) of a city, mirroring the Behavior class of the MATLAB
+ * interface. A behavior is evaluated from the node and edge attribute values
+ * of the city's systems, read through a columnar snapshot of the city which
+ * can be shared between several behaviors.
+ */
+public abstract class Behavior {
+	private String name, description, units, bounds;
+	private double value = Double.NaN;
+
+	/**
+	 * Instantiates a new behavior.
+	 *
+	 * @param name the name
+	 * @param description the description
+	 * @param units the units
+	 * @param bounds the bounds
+	 */
+	protected Behavior(String name, String description, String units, String bounds) {
+		this.name = name;
+		this.description = description;
+		this.units = units;
+		this.bounds = bounds;
+	}
+
+	/**
+	 * Gets the name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the description.
+	 *
+	 * @return the description
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Gets the units.
+	 *
+	 * @return the units
+	 */
+	public String getUnits() {
+		return units;
+	}
+
+	/**
+	 * Gets the bounds.
+	 *
+	 * @return the bounds
+	 */
+	public String getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Gets the value of the last evaluation.
+	 *
+	 * @return the value, or NaN if not evaluated
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * Evaluates the behavior for the current city.
+	 *
+	 * @return the value
+	 */
+	public double evaluate() {
+		return evaluate(CityNet.getInstance().getCity());
+	}
+
+	/**
+	 * Evaluates the behavior for a city.
+	 *
+	 * @param city the city
+	 * @return the value
+	 */
+	public double evaluate(City city) {
+		return evaluate(new CityColumns(city));
+	}
+
+	/**
+	 * Evaluates the behavior from a columnar snapshot of a city. Evaluating
+	 * several behaviors from the same snapshot reads each attribute only once.
+	 *
+	 * @param columns the city columns
+	 * @return the value
+	 */
+	public double evaluate(CityColumns columns) {
+		value = evaluateImpl(columns);
+		return value;
+	}
+
+	/**
+	 * Evaluates the behavior from a columnar snapshot of a city.
+	 *
+	 * @param columns the city columns
+	 * @return the value
+	 */
+	protected abstract double evaluateImpl(CityColumns columns);
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return name + ": " + value + " " + units;
+	}
+}
\ No newline at end of file
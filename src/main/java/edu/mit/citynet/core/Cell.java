@@ -5,13 +5,27 @@
  */
 package edu.mit.citynet.core;
 
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 
+/**
+ * The Cell class is the elementary spatial unit of a city, at which nodes 
+ * are located. Cells generated by a cell region also remember their row and 
+ * column within the region grid.
+ * 
+ * Implicit cells belong to a cell grid but do not store a polygon. Their 
+ * polygon is computed from the grid each time it is requested and point 
+ * containment is evaluated arithmetically.
+ */
 public class Cell {
 	private int id;
 	private Polygon polygon;
+	private transient volatile PreparedPolygon preparedPolygon;
+	private CellRegion cellRegion;
+	private CellGrid cellGrid;
+	private int row, column;
 	
 	/**
 	 * Gets the id.
@@ -32,14 +46,37 @@ public class Cell {
 	}
 	
 	/**
-	 * Gets the polygon.
+	 * Gets the polygon. For implicit cells a new polygon is computed from 
+	 * the cell grid.
 	 *
 	 * @return the polygon
 	 */
 	public Polygon getPolygon() {
+		if(isImplicit()) return cellGrid.createPolygon(row, column);
 		return polygon;
 	}
 	
+	/**
+	 * Gets the envelope of the polygon.
+	 *
+	 * @return the envelope, or null if the cell has no polygon
+	 */
+	public Envelope getEnvelope() {
+		if(isImplicit()) return cellGrid.getEnvelope(row, column);
+		else if(polygon != null) return polygon.getEnvelopeInternal();
+		else return null;
+	}
+	
+	/**
+	 * Checks if the cell is implicit, i.e. its polygon is not stored but 
+	 * computed from its cell grid.
+	 *
+	 * @return true, if implicit
+	 */
+	public boolean isImplicit() {
+		return polygon == null && cellGrid != null;
+	}
+	
 	/**
 	 * Sets the polygon.
 	 *
@@ -47,6 +84,97 @@ public class Cell {
 	 */
 	public void setPolygon(Polygon polygon) {
 		this.polygon = polygon;
+		preparedPolygon = null;
+	}
+	
+	/**
+	 * Gets the prepared polygon, creating it if necessary. Prepared polygons 
+	 * of implicit cells are not cached.
+	 *
+	 * @return the prepared polygon
+	 */
+	PreparedPolygon getPreparedPolygon() {
+		if(isImplicit()) return new PreparedPolygon(getPolygon());
+		PreparedPolygon prepared = preparedPolygon;
+		if(prepared == null) {
+			prepared = new PreparedPolygon(polygon);
+			preparedPolygon = prepared;
+		}
+		return prepared;
+	}
+	
+	/**
+	 * Gets the cell region which generated this cell, or null if the cell was
+	 * not generated by a cell region.
+	 *
+	 * @return the cell region
+	 */
+	public CellRegion getCellRegion() {
+		return cellRegion;
+	}
+	
+	/**
+	 * Sets the cell region which generated this cell.
+	 *
+	 * @param cellRegion the new cell region
+	 */
+	public void setCellRegion(CellRegion cellRegion) {
+		this.cellRegion = cellRegion;
+	}
+	
+	/**
+	 * Gets the cell grid which generated this cell, or null if the cell was
+	 * not generated by a cell region.
+	 *
+	 * @return the cell grid
+	 */
+	public CellGrid getCellGrid() {
+		return cellGrid;
+	}
+	
+	/**
+	 * Sets the cell grid which generated this cell.
+	 *
+	 * @param cellGrid the new cell grid
+	 */
+	public void setCellGrid(CellGrid cellGrid) {
+		this.cellGrid = cellGrid;
+	}
+	
+	/**
+	 * Gets the row within the cell region grid.
+	 *
+	 * @return the row
+	 */
+	public int getRow() {
+		return row;
+	}
+	
+	/**
+	 * Sets the row within the cell region grid.
+	 *
+	 * @param row the new row
+	 */
+	public void setRow(int row) {
+		this.row = row;
+	}
+	
+	/**
+	 * Gets the column within the cell region grid.
+	 *
+	 * @return the column
+	 */
+	public int getColumn() {
+		return column;
+	}
+	
+	/**
+	 * Sets the column within the cell region grid.
+	 *
+	 * @param column the new column
+	 */
+	public void setColumn(int column) {
+		this.column = column;
 	}
 	
 	/**
@@ -56,7 +184,8 @@ public class Cell {
 	 * @return true, if the cell contains the point
 	 */
 	public boolean containsPoint(Point point) {
-		if (polygon != null) return polygon.contains(point);
+		if (isImplicit()) return cellGrid.contains(row, column, point.getCoordinate());
+		else if (polygon != null) return getPreparedPolygon().containsPoint(point);
 		else return false;
 	}
 	
@@ -67,7 +196,7 @@ public class Cell {
 	 * @return true, if the cell intersects the line
 	 */
 	public boolean intersectsLine(LineString line) {
-		if (polygon != null) return polygon.intersects(line);
+		if (polygon != null || isImplicit()) return getPreparedPolygon().intersectsLine(line);
 		else return false;
 	}
 	
@@ -77,7 +206,7 @@ public class Cell {
 	 * @return the area
 	 */
 	public double getArea() {
-		return polygon.getArea();
+		return getPreparedPolygon().getArea();
 	}
 	
 	/* (non-Javadoc)
@@ -89,6 +218,13 @@ public class Cell {
 		} else return false;
 	}
 	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode() {
+		return id;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -0,0 +1,251 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ *
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * The CellAdjacency class answers orthogonal (shared edge) and adjacent
+ * (shared edge or vertex) neighbor questions between cells without computing
+ * polygon intersections.
+ *
+ * Cells generated by a cell region are looked up by their row and column in
+ * the region grid. All other neighbors are found by hashing cell vertices,
+ * which assumes that neighboring cells meet at common vertices (i.e. cells
+ * do not touch along part of an edge only).
+ */
+public class CellAdjacency {
+	private Map<GridPosition, Cell> gridCells;
+	private Map<Coordinate, List<Cell>> vertexCells;
+
+	/**
+	 * The GridPosition class identifies a row and column within the grid of
+	 * a particular cell region.
+	 */
+	private static class GridPosition {
+		private CellRegion cellRegion;
+		private int row, column;
+
+		/**
+		 * Instantiates a new grid position.
+		 *
+		 * @param cellRegion the cell region
+		 * @param row the row
+		 * @param column the column
+		 */
+		private GridPosition(CellRegion cellRegion, int row, int column) {
+			this.cellRegion = cellRegion;
+			this.row = row;
+			this.column = column;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals(Object object) {
+			if(object instanceof GridPosition) {
+				GridPosition position = (GridPosition)object;
+				return cellRegion==position.cellRegion
+						&& row==position.row && column==position.column;
+			} else return false;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		public int hashCode() {
+			return 31*(31*System.identityHashCode(cellRegion) + row) + column;
+		}
+	}
+
+	/**
+	 * Instantiates a new cell adjacency for a set of cells.
+	 *
+	 * @param cells the cells
+	 */
+	public CellAdjacency(Collection<Cell> cells) {
+		gridCells = new HashMap<GridPosition, Cell>();
+		vertexCells = new HashMap<Coordinate, List<Cell>>();
+		for(Cell cell : cells) {
+			if(cell.getCellRegion() != null) {
+				gridCells.put(new GridPosition(cell.getCellRegion(),
+						cell.getRow(), cell.getColumn()), cell);
+			}
+			for(Coordinate vertex : getVertices(cell)) {
+				List<Cell> list = vertexCells.get(vertex);
+				if(list == null) {
+					list = new ArrayList<Cell>(4);
+					vertexCells.put(vertex, list);
+				}
+				if(!list.contains(cell)) list.add(cell);
+			}
+		}
+	}
+
+	/**
+	 * Gets the vertices of a cell, excluding the closing coordinate.
+	 *
+	 * @param cell the cell
+	 * @return the vertices
+	 */
+	private static Coordinate[] getVertices(Cell cell) {
+		Polygon polygon = cell.getPolygon();
+		if(polygon == null) return new Coordinate[0];
+		Coordinate[] ring = polygon.getExteriorRing().getCoordinates();
+		Coordinate[] vertices = new Coordinate[Math.max(0, ring.length-1)];
+		System.arraycopy(ring, 0, vertices, 0, vertices.length);
+		return vertices;
+	}
+
+	/**
+	 * Gets the neighbors of a cell.
+	 *
+	 * @param cell the cell
+	 * @param includeVertices true, if cells sharing only a vertex are neighbors
+	 * @return the neighbors
+	 */
+	public List<Cell> getNeighbors(Cell cell, boolean includeVertices) {
+		List<Cell> neighbors = new ArrayList<Cell>();
+		if(cell.getCellRegion() != null) {
+			for(int i=-1; i<=1; i++) {
+				for(int j=-1; j<=1; j++) {
+					if((i==0 && j==0) || (!includeVertices && i!=0 && j!=0))
+						continue;
+					Cell neighbor = gridCells.get(new GridPosition(
+							cell.getCellRegion(), cell.getRow()+i, cell.getColumn()+j));
+					if(neighbor != null) neighbors.add(neighbor);
+				}
+			}
+		}
+		Coordinate[] vertices = getVertices(cell);
+		Map<Cell, boolean[]> sharedVertices = new LinkedHashMap<Cell, boolean[]>();
+		for(int k=0; k<vertices.length; k++) {
+			List<Cell> list = vertexCells.get(vertices[k]);
+			if(list == null) continue;
+			for(Cell other : list) {
+				if(other.equals(cell) || (cell.getCellRegion() != null
+						&& cell.getCellRegion()==other.getCellRegion()))
+					continue; // same cell or already found in grid
+				boolean[] shared = sharedVertices.get(other);
+				if(shared == null) {
+					shared = new boolean[vertices.length];
+					sharedVertices.put(other, shared);
+				}
+				shared[k] = true;
+			}
+		}
+		for(Cell other : sharedVertices.keySet()) {
+			boolean[] shared = sharedVertices.get(other);
+			boolean sharesEdge = false;
+			for(int k=0; k<shared.length; k++) {
+				if(shared[k] && shared[(k+1)%shared.length]) {
+					sharesEdge = true;
+					break;
+				}
+			}
+			if(sharesEdge || includeVertices) neighbors.add(other);
+		}
+		return neighbors;
+	}
+
+	/**
+	 * Gets the orthogonal neighbors of a cell, i.e. cells sharing an edge.
+	 *
+	 * @param cell the cell
+	 * @return the orthogonal neighbors
+	 */
+	public List<Cell> getOrthogonalNeighbors(Cell cell) {
+		return getNeighbors(cell, false);
+	}
+
+	/**
+	 * Gets the adjacent neighbors of a cell, i.e. cells sharing an edge or a
+	 * vertex.
+	 *
+	 * @param cell the cell
+	 * @return the adjacent neighbors
+	 */
+	public List<Cell> getAdjacentNeighbors(Cell cell) {
+		return getNeighbors(cell, true);
+	}
+
+	/**
+	 * Gets the pairs of neighboring cells within a list of distinct cells. 
+	 * Pairs are ordered by the index of the first and then the second cell in 
+	 * the list, with the first cell always preceding the second one.
+	 *
+	 * @param cells the cells
+	 * @param includeVertices true, if cells sharing only a vertex are neighbors
+	 * @return the cell pairs
+	 */
+	public static List<Cell[]> getCellPairs(List<Cell> cells, boolean includeVertices) {
+		Map<Cell, Integer> cellIndices = new HashMap<Cell, Integer>();
+		for(int i=0; i<cells.size(); i++) {
+			cellIndices.put(cells.get(i), i);
+		}
+		CellAdjacency adjacency = new CellAdjacency(cells);
+		List<Cell[]> pairs = new ArrayList<Cell[]>();
+		for(int i=0; i<cells.size(); i++) {
+			List<Integer> destinations = new ArrayList<Integer>();
+			for(Cell neighbor : adjacency.getNeighbors(cells.get(i), includeVertices)) {
+				Integer j = cellIndices.get(neighbor);
+				if(j != null && j > i) destinations.add(j);
+			}
+			Collections.sort(destinations);
+			for(Integer j : destinations) {
+				pairs.add(new Cell[]{cells.get(i), cells.get(j)});
+			}
+		}
+		return pairs;
+	}
+	
+	/**
+	 * Gets the pairs of nodes located at neighboring cells. Pairs are ordered
+	 * by the index of the first and then the second node in the list, with the
+	 * first node always preceding the second one.
+	 *
+	 * @param nodes the nodes
+	 * @param includeVertices true, if cells sharing only a vertex are neighbors
+	 * @return the node pairs
+	 */
+	public static List<Node[]> getNodePairs(List<Node> nodes, boolean includeVertices) {
+		Map<Cell, List<Integer>> cellNodes = new HashMap<Cell, List<Integer>>();
+		for(int i=0; i<nodes.size(); i++) {
+			List<Integer> list = cellNodes.get(nodes.get(i).getCell());
+			if(list == null) {
+				list = new ArrayList<Integer>(1);
+				cellNodes.put(nodes.get(i).getCell(), list);
+			}
+			list.add(i);
+		}
+		CellAdjacency adjacency = new CellAdjacency(cellNodes.keySet());
+		List<Node[]> pairs = new ArrayList<Node[]>();
+		for(int i=0; i<nodes.size(); i++) {
+			List<Integer> destinations = new ArrayList<Integer>();
+			for(Cell neighbor : adjacency.getNeighbors(nodes.get(i).getCell(), includeVertices)) {
+				List<Integer> list = cellNodes.get(neighbor);
+				if(list == null) continue;
+				for(Integer j : list) {
+					if(j > i) destinations.add(j);
+				}
+			}
+			Collections.sort(destinations);
+			for(Integer j : destinations) {
+				pairs.add(new Node[]{nodes.get(i), nodes.get(j)});
+			}
+		}
+		return pairs;
+	}
+}
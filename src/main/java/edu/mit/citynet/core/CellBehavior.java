@@ -0,0 +1,84 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+/**
+ * The CellBehavior class is the superclass of behaviors which are evaluated
+ * for each cell of a city. Cells are evaluated in parallel and the value of
+ * the behavior is the sum over all cells.
+ */
+public abstract class CellBehavior extends Behavior {
+	private CityColumns columns;
+	private double[] cellValues = new double[0];
+
+	/**
+	 * Instantiates a new cell behavior.
+	 *
+	 * @param name the name
+	 * @param description the description
+	 * @param units the units
+	 * @param bounds the bounds
+	 */
+	protected CellBehavior(String name, String description, String units, String bounds) {
+		super(name, description, units, bounds);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Behavior#evaluateImpl(edu.mit.citynet.core.CityColumns)
+	 */
+	protected final double evaluateImpl(final CityColumns columns) {
+		prepare(columns);
+		final double[] values = new double[columns.getNumberCells()];
+		CityColumns.forEachCell(values.length, new CityColumns.CellLoop() {
+			public void compute(int from, int to) {
+				for(int c=from; c<to; c++) values[c] = evaluateCell(columns, c);
+			}
+		});
+		this.columns = columns;
+		cellValues = values;
+		double value = 0;
+		for(double cellValue : values) value += cellValue;
+		return value;
+	}
+
+	/**
+	 * Prepares an evaluation, for example by gathering attribute arrays, before
+	 * cells are evaluated in parallel. The default implementation does nothing.
+	 *
+	 * @param columns the city columns
+	 */
+	protected void prepare(CityColumns columns) { }
+
+	/**
+	 * Evaluates a cell. Cells are evaluated concurrently.
+	 *
+	 * @param columns the city columns
+	 * @param cell the cell index
+	 * @return the cell value
+	 */
+	protected abstract double evaluateCell(CityColumns columns, int cell);
+
+	/**
+	 * Gets the value of a cell from the last evaluation.
+	 *
+	 * @param cell the cell
+	 * @return the cell value, or NaN if the cell was not evaluated
+	 */
+	public double getCellValue(Cell cell) {
+		int index = columns == null ? -1 : columns.getCellIndex(cell);
+		return index < 0 ? Double.NaN : cellValues[index];
+	}
+
+	/**
+	 * Gets the cell values from the last evaluation, in the order of the
+	 * city's cells.
+	 *
+	 * @return the cell values
+	 */
+	public double[] getCellValues() {
+		return cellValues.clone();
+	}
+}
\ No newline at end of file
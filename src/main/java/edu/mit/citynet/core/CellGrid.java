@@ -0,0 +1,200 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+import edu.mit.citynet.CityNet;
+
+/**
+ * The CellGrid class describes the regular grid of cells generated by a cell
+ * region, fixed at the time of generation. Rows are arranged along the x-axis
+ * and columns along the y-axis. The geometry of any grid cell can be computed
+ * from its row and column, so implicit cells do not need to store a polygon
+ * and cells overlapping an envelope are found by arithmetic alone.
+ */
+public class CellGrid {
+	private CellRegion cellRegion;
+	private double[] x, y;
+
+	/**
+	 * Instantiates a new cell grid.
+	 *
+	 * @param cellRegion the cell region
+	 * @param x the x-coordinates of the row boundaries (one more than rows)
+	 * @param y the y-coordinates of the column boundaries (one more than
+	 * columns)
+	 */
+	public CellGrid(CellRegion cellRegion, double[] x, double[] y) {
+		this.cellRegion = cellRegion;
+		this.x = x;
+		this.y = y;
+	}
+
+	/**
+	 * Gets the cell region.
+	 *
+	 * @return the cell region
+	 */
+	public CellRegion getCellRegion() {
+		return cellRegion;
+	}
+
+	/**
+	 * Gets the number rows.
+	 *
+	 * @return the number rows
+	 */
+	public int getNumberRows() {
+		return x.length-1;
+	}
+
+	/**
+	 * Gets the number columns.
+	 *
+	 * @return the number columns
+	 */
+	public int getNumberColumns() {
+		return y.length-1;
+	}
+
+	/**
+	 * Gets the index of a cell in row and column order.
+	 *
+	 * @param row the row
+	 * @param column the column
+	 * @return the index
+	 */
+	public int getIndex(int row, int column) {
+		return row*getNumberColumns()+column;
+	}
+
+	/**
+	 * Gets the envelope of a cell.
+	 *
+	 * @param row the row
+	 * @param column the column
+	 * @return the envelope
+	 */
+	public Envelope getEnvelope(int row, int column) {
+		return new Envelope(x[row], x[row+1], y[column], y[column+1]);
+	}
+
+	/**
+	 * Creates the polygon of a cell.
+	 *
+	 * @param row the row
+	 * @param column the column
+	 * @return the polygon
+	 */
+	public Polygon createPolygon(int row, int column) {
+		GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
+		Coordinate c1 = new Coordinate(x[row], y[column]);
+		Coordinate c2 = new Coordinate(x[row+1], y[column]);
+		Coordinate c3 = new Coordinate(x[row+1], y[column+1]);
+		Coordinate c4 = new Coordinate(x[row], y[column+1]);
+		return gf.createPolygon(gf.createLinearRing(
+				new Coordinate[]{c1,c2,c3,c4,c1}), null);
+	}
+
+	/**
+	 * Determines whether a cell contains a coordinate, with the same result
+	 * as the contains predicate of the cell polygon.
+	 *
+	 * @param row the row
+	 * @param column the column
+	 * @param c the coordinate
+	 * @return true, if the cell contains the coordinate
+	 */
+	public boolean contains(int row, int column, Coordinate c) {
+		if(c.x < x[row] || c.x > x[row+1] || c.y < y[column] || c.y > y[column+1])
+			return false;
+		if(x[row]==x[row+1] || y[column]==y[column+1])
+			return false; // degenerate cell
+		// JTS excludes the corners, but not the edges, of rectangles
+		return !((c.x == x[row] || c.x == x[row+1])
+				&& (c.y == y[column] || c.y == y[column+1]));
+	}
+
+	/**
+	 * Gets the first row whose cells may intersect an envelope.
+	 *
+	 * @param envelope the envelope
+	 * @return the first row, or the number of rows if none
+	 */
+	public int getFirstRow(Envelope envelope) {
+		return getFirst(x, envelope.getMinX());
+	}
+
+	/**
+	 * Gets the last row whose cells may intersect an envelope.
+	 *
+	 * @param envelope the envelope
+	 * @return the last row, or -1 if none
+	 */
+	public int getLastRow(Envelope envelope) {
+		return getLast(x, envelope.getMaxX());
+	}
+
+	/**
+	 * Gets the first column whose cells may intersect an envelope.
+	 *
+	 * @param envelope the envelope
+	 * @return the first column, or the number of columns if none
+	 */
+	public int getFirstColumn(Envelope envelope) {
+		return getFirst(y, envelope.getMinY());
+	}
+
+	/**
+	 * Gets the last column whose cells may intersect an envelope.
+	 *
+	 * @param envelope the envelope
+	 * @return the last column, or -1 if none
+	 */
+	public int getLastColumn(Envelope envelope) {
+		return getLast(y, envelope.getMaxY());
+	}
+
+	/**
+	 * Gets the first interval [b[i], b[i+1]] whose upper bound is not below
+	 * a minimum value.
+	 *
+	 * @param b the ascending boundaries
+	 * @param min the minimum value
+	 * @return the first interval
+	 */
+	private static int getFirst(double[] b, double min) {
+		int low = 0, high = b.length-1;
+		while(low < high) {
+			int middle = (low+high)>>>1;
+			if(b[middle+1] < min) low = middle+1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the last interval [b[i], b[i+1]] whose lower bound is not above
+	 * a maximum value.
+	 *
+	 * @param b the ascending boundaries
+	 * @param max the maximum value
+	 * @return the last interval
+	 */
+	private static int getLast(double[] b, double max) {
+		int low = -1, high = b.length-2;
+		while(low < high) {
+			int middle = (low+high+1)>>>1;
+			if(b[middle] > max) high = middle-1;
+			else low = middle;
+		}
+		return low;
+	}
+}
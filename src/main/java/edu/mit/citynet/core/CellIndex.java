@@ -0,0 +1,125 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * The CellIndex class is a spatial index over a list of cells which returns
+ * the list indices of cells whose envelopes intersect a query envelope.
+ * Consecutive cells of a cell grid, stored in row and column order, are
+ * looked up by arithmetic on the grid. All other cells are stored in an
+ * STR tree.
+ *
+ * The index must be rebuilt whenever cells are added or removed, but may be
+ * queried concurrently once built.
+ */
+final class CellIndex {
+	private static final int MIN_GRID_RUN_LENGTH = 16;
+
+	private STRtree tree;
+	private List<GridRun> gridRuns;
+
+	/**
+	 * The GridRun class describes consecutive cells of a cell grid in the
+	 * list of cells.
+	 */
+	private static class GridRun {
+		private CellGrid cellGrid;
+		private int listIndex, gridIndex, length;
+
+		/**
+		 * Instantiates a new grid run.
+		 *
+		 * @param cellGrid the cell grid
+		 * @param listIndex the list index of the first cell
+		 * @param gridIndex the grid index of the first cell
+		 * @param length the number of cells
+		 */
+		private GridRun(CellGrid cellGrid, int listIndex, int gridIndex, int length) {
+			this.cellGrid = cellGrid;
+			this.listIndex = listIndex;
+			this.gridIndex = gridIndex;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Instantiates a new cell index.
+	 *
+	 * @param cells the cells
+	 */
+	CellIndex(List<Cell> cells) {
+		tree = new STRtree();
+		gridRuns = new ArrayList<GridRun>();
+		int i = 0;
+		while(i < cells.size()) {
+			Cell cell = cells.get(i);
+			int j = i+1;
+			if(cell.getCellGrid() != null) {
+				CellGrid grid = cell.getCellGrid();
+				int gridIndex = grid.getIndex(cell.getRow(), cell.getColumn());
+				while(j < cells.size() && isNextInGrid(cells.get(j), grid, gridIndex+j-i)) {
+					j++;
+				}
+				if(j-i >= MIN_GRID_RUN_LENGTH) {
+					gridRuns.add(new GridRun(grid, i, gridIndex, j-i));
+					i = j;
+					continue;
+				}
+			}
+			for(; i<j; i++) {
+				Envelope envelope = cells.get(i).getEnvelope();
+				if(envelope != null) tree.insert(envelope, i);
+			}
+		}
+		tree.build();
+	}
+
+	/**
+	 * Checks if a cell is at a grid index of a cell grid.
+	 *
+	 * @param cell the cell
+	 * @param grid the cell grid
+	 * @param gridIndex the grid index
+	 * @return true, if the cell is at the grid index
+	 */
+	private static boolean isNextInGrid(Cell cell, CellGrid grid, int gridIndex) {
+		return cell.getCellGrid() == grid
+				&& grid.getIndex(cell.getRow(), cell.getColumn()) == gridIndex;
+	}
+
+	/**
+	 * Adds the list indices of cells whose envelopes intersect an envelope.
+	 * Indices are not sorted and a cell appears once per query.
+	 *
+	 * @param envelope the envelope
+	 * @param indices the indices
+	 */
+	@SuppressWarnings("unchecked")
+	void query(Envelope envelope, Collection<Integer> indices) {
+		indices.addAll(tree.query(envelope));
+		for(GridRun run : gridRuns) {
+			CellGrid grid = run.cellGrid;
+			int firstColumn = grid.getFirstColumn(envelope);
+			int lastColumn = grid.getLastColumn(envelope);
+			if(firstColumn > lastColumn) continue;
+			int lastRow = grid.getLastRow(envelope);
+			for(int row = grid.getFirstRow(envelope); row <= lastRow; row++) {
+				int from = Math.max(grid.getIndex(row, firstColumn), run.gridIndex);
+				int to = Math.min(grid.getIndex(row, lastColumn), run.gridIndex+run.length-1);
+				for(int k = from; k <= to; k++) {
+					indices.add(run.listIndex+k-run.gridIndex);
+				}
+			}
+		}
+	}
+}
@@ -5,6 +5,11 @@
  */
 package edu.mit.citynet.core;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateList;
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -23,6 +28,7 @@ public class CellRegion extends AbstractRegion implements Cloneable {
 	private int id;
 	private int numberRows;
 	private int numberColumns;
+	private boolean implicit;
 	
 	/**
 	 * Instantiates a new cell region.
@@ -59,6 +65,18 @@ public class CellRegion extends AbstractRegion implements Cloneable {
 	 * Generate cells.
 	 */
 	public void generateCells() {
+		CityNet.getInstance().getCity().addAllCells(createCells());
+	}
+	
+	/**
+	 * Creates the cells of the region grid without adding them to the city. 
+	 * A block of cell ids is reserved at once and assigned in row and column 
+	 * order, while stripes of rows are created in parallel. Implicit cells 
+	 * are created without polygons.
+	 *
+	 * @return the cells
+	 */
+	public List<Cell> createCells() {
 		// force rectangular region
 		double minX = Double.MAX_VALUE, maxX = Double.MIN_VALUE,
 			minY = Double.MAX_VALUE, maxY = Double.MIN_VALUE;
@@ -70,22 +88,75 @@ public class CellRegion extends AbstractRegion implements Cloneable {
 		}
 		double cellWidth = Math.abs((maxX-minX)/numberRows);
 		double cellHeight = Math.abs((maxY-minY)/numberColumns);
-		GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
-		for(int i=0; i<numberRows; i++) {
-			for(int j=0; j<numberColumns; j++) {
-				Coordinate c1 = new Coordinate(minX+cellWidth*i,
-						minY+cellHeight*j);
-				Coordinate c2 = new Coordinate(minX+cellWidth*(i+1),
-						minY+cellHeight*j);
-				Coordinate c3 = new Coordinate(minX+cellWidth*(i+1),
-						minY+cellHeight*(j+1));
-				Coordinate c4 = new Coordinate(minX+cellWidth*i,
-						minY+cellHeight*(j+1));
-				Cell cell = new Cell();
-				cell.setId(CityNet.getInstance().getNextCellId());
-				cell.setPolygon(gf.createPolygon(gf.createLinearRing(
-						new Coordinate[]{c1,c2,c3,c4,c1}), null));
-				CityNet.getInstance().getCity().addCell(cell);
+		double[] x = new double[numberRows+1];
+		for(int i=0; i<=numberRows; i++) {
+			x[i] = minX+cellWidth*i;
+		}
+		double[] y = new double[numberColumns+1];
+		for(int j=0; j<=numberColumns; j++) {
+			y[j] = minY+cellHeight*j;
+		}
+		CellGrid grid = new CellGrid(this, x, y);
+		Cell[] cells = new Cell[numberRows*numberColumns];
+		int firstId = CityNet.getInstance().reserveCellIds(cells.length);
+		ForkJoinPool.commonPool().invoke(new CellStripe(
+				cells, firstId, grid, 0, numberRows));
+		return Arrays.asList(cells);
+	}
+	
+	/**
+	 * The CellStripe class creates the cells in a stripe of rows of the 
+	 * region grid, splitting large stripes to be created in parallel.
+	 */
+	private class CellStripe extends RecursiveAction {
+		private static final long serialVersionUID = 3172466935411540283L;
+		private static final int MIN_STRIPE_CELLS = 4096;
+		
+		private Cell[] cells;
+		private int firstId;
+		private CellGrid grid;
+		private int fromRow, toRow;
+		
+		/**
+		 * Instantiates a new cell stripe.
+		 *
+		 * @param cells the cells of the grid, in row and column order
+		 * @param firstId the id of the first cell in the grid
+		 * @param grid the cell grid
+		 * @param fromRow the first row (inclusive)
+		 * @param toRow the last row (exclusive)
+		 */
+		private CellStripe(Cell[] cells, int firstId, CellGrid grid, 
+				int fromRow, int toRow) {
+			this.cells = cells;
+			this.firstId = firstId;
+			this.grid = grid;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			if(toRow-fromRow > 1 && (toRow-fromRow)*numberColumns > MIN_STRIPE_CELLS) {
+				int middleRow = (fromRow+toRow)/2;
+				invokeAll(new CellStripe(cells, firstId, grid, fromRow, middleRow),
+						new CellStripe(cells, firstId, grid, middleRow, toRow));
+				return;
+			}
+			for(int i=fromRow; i<toRow; i++) {
+				for(int j=0; j<numberColumns; j++) {
+					int index = grid.getIndex(i, j);
+					Cell cell = new Cell();
+					cell.setId(firstId+index);
+					if(!implicit) cell.setPolygon(grid.createPolygon(i, j));
+					cell.setCellGrid(grid);
+					cell.setCellRegion(CellRegion.this);
+					cell.setRow(i);
+					cell.setColumn(j);
+					cells[index] = cell;
+				}
 			}
 		}
 	}
@@ -126,6 +197,25 @@ public class CellRegion extends AbstractRegion implements Cloneable {
 		this.numberColumns = numberColumns;
 	}
 	
+	/**
+	 * Checks if implicit cells are generated, which compute their polygons 
+	 * from the grid when needed instead of storing them.
+	 *
+	 * @return true, if implicit
+	 */
+	public boolean isImplicit() {
+		return implicit;
+	}
+
+	/**
+	 * Sets whether implicit cells are generated.
+	 *
+	 * @param implicit true, if implicit
+	 */
+	public void setImplicit(boolean implicit) {
+		this.implicit = implicit;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#equals(java.lang.Object)
 	 */
@@ -152,6 +242,7 @@ public class CellRegion extends AbstractRegion implements Cloneable {
 		clone.setCoordinateList(getCoordinateList());
 		clone.setNumberColumns(getNumberColumns());
 		clone.setNumberRows(getNumberRows());
+		clone.setImplicit(isImplicit());
 		return clone;
 	}
 }
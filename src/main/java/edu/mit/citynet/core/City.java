@@ -10,13 +10,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import javax.imageio.ImageIO;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateList;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 
 import edu.mit.citynet.CityNet;
@@ -35,9 +39,14 @@ public class City {
 	private String imageFilePath;
 	private transient Image image;
 	private CoordinateList imageCoordinates;
-	private List<Cell> cells;
+	private ArrayList<Cell> cells;
+	private transient CellIndex cellIndex;
+	private transient volatile CellIds cellIds;
+	private transient int cellModCount;
+	private transient CityChangeListener changeListener;
 	private List<CellRegion> cellRegions;
 	private List<CitySystem> systems;
+	private List<Cell> cellsView;
 	
 	/**
 	 * Instantiates a new City.Net city.
@@ -47,6 +56,7 @@ public class City {
 		cells = new ArrayList<Cell>();
 		cellRegions = new ArrayList<CellRegion>();
 		systems = new ArrayList<CitySystem>();
+		cellsView = Collections.unmodifiableList(cells);
 		imageCoordinates = new CoordinateList(new Coordinate[]{		
 			new Coordinate(0,0), new Coordinate(1,0), 
 			new Coordinate(1,1), new Coordinate(0,1)});
@@ -61,6 +71,17 @@ public class City {
 		return new ArrayList<Cell>(cells);
 	}
 	
+	/**
+	 * Gets an unmodifiable view of the cells. Unlike getCells, no copy is 
+	 * made and the view reflects later changes to the city, so it must not 
+	 * be used while adding or removing cells.
+	 *
+	 * @return the cells view
+	 */
+	public List<Cell> getCellsView() {
+		return cellsView;
+	}
+	
 	/**
 	 * Sets the cells.
 	 *
@@ -68,7 +89,21 @@ public class City {
 	 * @return true, if successful
 	 */
 	public boolean addAllCells(Collection<Cell> cells) {
-		return this.cells.addAll(cells);
+		invalidateCellIndex();
+		cellModCount++;
+		boolean added = this.cells.addAll(cells);
+		if(added && changeListener != null) changeListener.cellsAdded(cells);
+		return added;
+	}
+	
+	/**
+	 * Ensures the city can hold a number of cells without growing its cell 
+	 * storage, e.g. before adding the cells of several cell regions.
+	 *
+	 * @param numberCells the total number of cells
+	 */
+	public void ensureCellCapacity(int numberCells) {
+		cells.ensureCapacity(numberCells);
 	}
 	
 	/**
@@ -78,7 +113,16 @@ public class City {
 	 * @return true, if successful
 	 */
 	public boolean removeAllCells(Collection<Cell> cells) {
-		return this.cells.removeAll(cells);
+		invalidateCellIndex();
+		cellModCount++;
+		boolean removed = this.cells.removeAll(new HashSet<Cell>(cells));
+		if(removed) {
+			for(CitySystem system : systems) {
+				system.cellsRemoved(cells);
+			}
+		}
+		if(removed && changeListener != null) changeListener.cellsRemoved(cells);
+		return removed;
 	}
 	
 	/**
@@ -90,7 +134,200 @@ public class City {
 	public boolean addCell(Cell cell) {
 		if(cell.getId()==0) 
 			cell.setId(CityNet.getInstance().getNextCellId());
-		return cells.add(cell);
+		invalidateCellIndex();
+		cellModCount++;
+		boolean added = cells.add(cell);
+		if(added && changeListener != null) 
+			changeListener.cellsAdded(Collections.singletonList(cell));
+		return added;
+	}
+	
+	/**
+	 * Gets the number of times cells have been added or removed, which only 
+	 * increases, e.g. to detect changed cells since a save. Changes made to 
+	 * cells in place are not counted.
+	 *
+	 * @return the cell modification count
+	 */
+	public int getCellModCount() {
+		return cellModCount;
+	}
+	
+	/**
+	 * Gets the change listener.
+	 *
+	 * @return the change listener, or null if none
+	 */
+	public CityChangeListener getChangeListener() {
+		return changeListener;
+	}
+	
+	/**
+	 * Sets the change listener, which is notified when cells, systems, nodes 
+	 * or edges are added to or removed from the city or its systems.
+	 *
+	 * @param changeListener the new change listener, or null to remove it
+	 */
+	public void setChangeListener(CityChangeListener changeListener) {
+		this.changeListener = changeListener;
+		for(CitySystem system : systems) {
+			system.setChangeListener(changeListener);
+		}
+	}
+	
+	/**
+	 * Gets the cells whose envelopes intersect the specified envelope, in the 
+	 * same order as they appear in the list of cells. The candidates are 
+	 * found using a spatial index and must still be tested against the exact 
+	 * geometry.
+	 *
+	 * @param envelope the envelope
+	 * @return the candidate cells
+	 */
+	public List<Cell> getCells(Envelope envelope) {
+		return getCells(Collections.singletonList(envelope));
+	}
+	
+	/**
+	 * Gets the cells whose envelopes intersect any of the specified envelopes, 
+	 * in the same order as they appear in the list of cells. Each cell is 
+	 * included at most once. May be called concurrently as long as cells are 
+	 * not added or removed.
+	 *
+	 * @param envelopes the envelopes
+	 * @return the candidate cells
+	 */
+	public List<Cell> getCells(Collection<Envelope> envelopes) {
+		CellIndex index = getCellIndex();
+		List<Integer> indices = new ArrayList<Integer>();
+		for(Envelope envelope : envelopes) {
+			index.query(envelope, indices);
+		}
+		Collections.sort(indices);
+		List<Cell> candidateCells = new ArrayList<Cell>(indices.size());
+		for(int i=0; i<indices.size(); i++) {
+			if(i==0 || !indices.get(i).equals(indices.get(i-1)))
+				candidateCells.add(cells.get(indices.get(i)));
+		}
+		return candidateCells;
+	}
+	
+	/**
+	 * Gets the cell spatial index, building it if necessary. Items are the 
+	 * indices of cells in the list of cells. Cells of cell grids are found by 
+	 * arithmetic on the grid rather than stored in the index.
+	 *
+	 * @return the cell index
+	 */
+	private synchronized CellIndex getCellIndex() {
+		if(cellIndex == null) {
+			cellIndex = new CellIndex(cells);
+		}
+		return cellIndex;
+	}
+	
+	/**
+	 * Gets the cells containing a point, in the same order as they appear in
+	 * the list of cells.
+	 *
+	 * @param point the point
+	 * @return the cells containing the point
+	 */
+	public List<Cell> getCellsContaining(Point point) {
+		List<Cell> containingCells = new ArrayList<Cell>();
+		for(Cell cell : getCells(point.getEnvelopeInternal())) {
+			if(cell.containsPoint(point)) containingCells.add(cell);
+		}
+		return containingCells;
+	}
+	
+	/**
+	 * Gets the cell with an id. Cells are located with a binary search as 
+	 * long as their ids are in ascending order (as by generation) and with a 
+	 * hash index otherwise. May be called concurrently as long as cells are 
+	 * not added or removed.
+	 *
+	 * @param id the cell id
+	 * @return the cell, or null if no cell has the id
+	 */
+	public Cell getCell(int id) {
+		CellIds index = cellIds;
+		if(index == null) index = getCellIds();
+		int row = index.getRow(id);
+		return row < 0 ? null : cells.get(row);
+	}
+	
+	/**
+	 * Gets the cell id index, building it if necessary.
+	 *
+	 * @return the cell id index
+	 */
+	private synchronized CellIds getCellIds() {
+		if(cellIds == null) {
+			cellIds = new CellIds(cells);
+		}
+		return cellIds;
+	}
+	
+	/**
+	 * Invalidates the cell spatial and id indices so they are rebuilt on the 
+	 * next query. Must be called if the polygon or id of a cell changes 
+	 * after it is added.
+	 */
+	public synchronized void invalidateCellIndex() {
+		cellIndex = null;
+		cellIds = null;
+	}
+	
+	/**
+	 * The CellIds class locates cells in the list of cells by id.
+	 */
+	private static final class CellIds {
+		private final List<Cell> cells;
+		private LongIntMap rows;
+		
+		/**
+		 * Instantiates a new cell id index. A hash index is only built if 
+		 * the ids are not in ascending order.
+		 *
+		 * @param cells the cells
+		 */
+		private CellIds(List<Cell> cells) {
+			this.cells = cells;
+			for(int i=1; i<cells.size(); i++) {
+				if(cells.get(i).getId() < cells.get(i-1).getId()) {
+					rows = new LongIntMap(cells.size());
+					break;
+				}
+			}
+			if(rows != null) {
+				for(int i=0; i<cells.size(); i++) {
+					rows.putIfAbsent(cells.get(i).getId(), i);
+				}
+			}
+		}
+		
+		/**
+		 * Gets the row of the first cell with an id.
+		 *
+		 * @param id the cell id
+		 * @return the row, or -1 if no cell has the id
+		 */
+		private int getRow(int id) {
+			if(rows != null) return rows.get(id);
+			int low = 0, high = cells.size()-1;
+			while(low <= high) {
+				int mid = (low + high) >>> 1;
+				int midId = cells.get(mid).getId();
+				if(midId < id) low = mid+1;
+				else if(midId > id) high = mid-1;
+				else {
+					while(mid > 0 && cells.get(mid-1).getId() == id) mid--;
+					return mid;
+				}
+			}
+			return -1;
+		}
 	}
 
 	/**
@@ -109,7 +346,13 @@ public class City {
 	 * @return true, if successful
 	 */
 	public boolean addAllSystems(Collection<CitySystem> systems) {
-		return this.systems.addAll(systems);
+		boolean added = this.systems.addAll(systems);
+		for(CitySystem system : systems) {
+			system.setCity(this);
+			system.setChangeListener(changeListener);
+			if(changeListener != null) changeListener.systemAdded(system);
+		}
+		return added;
 	}
 	
 	/**
@@ -119,7 +362,15 @@ public class City {
 	 * @return true, if successful
 	 */
 	public boolean removeAllSystems(Collection<CitySystem> systems) {
-		return this.systems.removeAll(systems);
+		List<CitySystem> removed = new ArrayList<CitySystem>(this.systems);
+		removed.retainAll(systems);
+		this.systems.removeAll(removed);
+		for(CitySystem system : removed) {
+			system.setCity(null);
+			system.setChangeListener(null);
+			if(changeListener != null) changeListener.systemRemoved(system);
+		}
+		return !removed.isEmpty();
 	}
 
 	/**
@@ -329,7 +580,11 @@ public class City {
 	public boolean addSystem(CitySystem system) {
 		if(system.getId()==0)
 			system.setId(CityNet.getInstance().getNextSystemId());
-		return systems.add(system);
+		boolean added = systems.add(system);
+		system.setCity(this);
+		system.setChangeListener(changeListener);
+		if(changeListener != null) changeListener.systemAdded(system);
+		return added;
 	}
 	
 	/**
@@ -339,6 +594,12 @@ public class City {
 	 * @return true, if successful
 	 */
 	public boolean removeSystem(CitySystem system) {
-		return systems.remove(system);
+		boolean removed = systems.remove(system);
+		if(removed) {
+			system.setCity(null);
+			system.setChangeListener(null);
+			if(changeListener != null) changeListener.systemRemoved(system);
+		}
+		return removed;
 	}
 }
@@ -0,0 +1,79 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.Collection;
+
+/**
+ * The CityChangeListener interface is notified when cells, systems, nodes or
+ * edges are added to or removed from a city, e.g. to journal the changes. It
+ * is notified on the thread changing the city, after the change. Changes
+ * made to objects in place (e.g. city details, regions or types) are not
+ * notified.
+ */
+public interface CityChangeListener {
+
+	/**
+	 * Notifies that cells were added to the city.
+	 *
+	 * @param cells the added cells
+	 */
+	public void cellsAdded(Collection<Cell> cells);
+
+	/**
+	 * Notifies that cells were removed from the city.
+	 *
+	 * @param cells the removed cells
+	 */
+	public void cellsRemoved(Collection<Cell> cells);
+
+	/**
+	 * Notifies that a system, which may already hold nodes and edges, was
+	 * added to the city.
+	 *
+	 * @param system the added system
+	 */
+	public void systemAdded(CitySystem system);
+
+	/**
+	 * Notifies that a system was removed from the city.
+	 *
+	 * @param system the removed system
+	 */
+	public void systemRemoved(CitySystem system);
+
+	/**
+	 * Notifies that nodes were added to a system.
+	 *
+	 * @param system the system
+	 * @param nodes the added nodes
+	 */
+	public void nodesAdded(CitySystem system, Collection<Node> nodes);
+
+	/**
+	 * Notifies that nodes were removed from a system.
+	 *
+	 * @param system the system
+	 * @param nodes the removed nodes
+	 */
+	public void nodesRemoved(CitySystem system, Collection<Node> nodes);
+
+	/**
+	 * Notifies that edges were added to a system.
+	 *
+	 * @param system the system
+	 * @param edges the added edges
+	 */
+	public void edgesAdded(CitySystem system, Collection<Edge> edges);
+
+	/**
+	 * Notifies that edges were removed from a system.
+	 *
+	 * @param system the system
+	 * @param edges the removed edges
+	 */
+	public void edgesRemoved(CitySystem system, Collection<Edge> edges);
+}
\ No newline at end of file
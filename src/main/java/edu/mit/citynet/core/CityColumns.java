@@ -0,0 +1,191 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The CityColumns class is a columnar snapshot of a city used to evaluate
+ * behaviors. Cells are numbered by their position in the city, cell areas are
+ * held in an array, and each system is described by a SystemColumns object
+ * which groups its nodes by cell and gathers attribute values into arrays.
+ *
+ * The snapshot does not follow later changes to the city.
+ */
+public class CityColumns {
+	private List<Cell> cells;
+	private Map<Cell,Integer> cellIndices;
+	private List<SystemColumns> systems;
+	private double[] cellAreas;
+
+	/**
+	 * Instantiates a new city columns snapshot.
+	 *
+	 * @param city the city
+	 */
+	public CityColumns(City city) {
+		cells = new ArrayList<Cell>(city.getCellsView());
+		cellIndices = new HashMap<Cell,Integer>(2*cells.size());
+		for(int i=0; i<cells.size(); i++) {
+			cellIndices.put(cells.get(i), i);
+		}
+		systems = new ArrayList<SystemColumns>();
+		for(CitySystem system : city.getSystems()) {
+			systems.add(new SystemColumns(this, system));
+		}
+	}
+
+	/**
+	 * Gets the number of cells.
+	 *
+	 * @return the number of cells
+	 */
+	public int getNumberCells() {
+		return cells.size();
+	}
+
+	/**
+	 * Gets a cell.
+	 *
+	 * @param index the cell index
+	 * @return the cell
+	 */
+	public Cell getCell(int index) {
+		return cells.get(index);
+	}
+
+	/**
+	 * Gets the cells in index order.
+	 *
+	 * @return the cells
+	 */
+	public List<Cell> getCells() {
+		return Collections.unmodifiableList(cells);
+	}
+
+	/**
+	 * Gets the index of a cell.
+	 *
+	 * @param cell the cell
+	 * @return the cell index, or -1 if the cell is not in the city
+	 */
+	public int getCellIndex(Cell cell) {
+		Integer index = cell == null ? null : cellIndices.get(cell);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Gets the cell areas by cell index, computed in parallel on first use.
+	 *
+	 * @return the cell areas
+	 */
+	public synchronized double[] getCellAreas() {
+		if(cellAreas == null) {
+			final double[] areas = new double[cells.size()];
+			forEachCell(areas.length, new CellLoop() {
+				public void compute(int from, int to) {
+					for(int i=from; i<to; i++) areas[i] = cells.get(i).getArea();
+				}
+			});
+			cellAreas = areas;
+		}
+		return cellAreas;
+	}
+
+	/**
+	 * Gets the system snapshots in the order of the city's systems.
+	 *
+	 * @return the systems
+	 */
+	public List<SystemColumns> getSystems() {
+		return Collections.unmodifiableList(systems);
+	}
+
+	/**
+	 * Gets the first system snapshot with a name.
+	 *
+	 * @param name the name
+	 * @param ignoreCase whether to ignore case
+	 * @return the system, or null if none is found
+	 */
+	public SystemColumns getSystem(String name, boolean ignoreCase) {
+		for(SystemColumns system : systems) {
+			String systemName = system.getSystem().getName();
+			if(ignoreCase ? name.equalsIgnoreCase(systemName) : name.equals(systemName)) {
+				return system;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Runs a loop over cell indices in parallel on the common fork-join pool.
+	 *
+	 * @param numberCells the number of cells
+	 * @param loop the loop body
+	 */
+	static void forEachCell(int numberCells, CellLoop loop) {
+		ForkJoinPool.commonPool().invoke(new CellRange(loop, 0, numberCells));
+	}
+
+	/**
+	 * The CellLoop interface is the body of a parallel loop over cells.
+	 */
+	interface CellLoop {
+
+		/**
+		 * Computes a range of cells.
+		 *
+		 * @param from the first cell index (inclusive)
+		 * @param to the last cell index (exclusive)
+		 */
+		void compute(int from, int to);
+	}
+
+	/**
+	 * The CellRange class runs a loop over a range of cell indices, splitting
+	 * the range in halves until it is small enough.
+	 */
+	private static class CellRange extends RecursiveAction {
+		private static final long serialVersionUID = 6521896360153950322L;
+		private static final int MIN_RANGE_CELLS = 1024;
+
+		private CellLoop loop;
+		private int from, to;
+
+		/**
+		 * Instantiates a new cell range.
+		 *
+		 * @param loop the loop body
+		 * @param from the first cell index (inclusive)
+		 * @param to the last cell index (exclusive)
+		 */
+		private CellRange(CellLoop loop, int from, int to) {
+			this.loop = loop;
+			this.from = from;
+			this.to = to;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			if(to-from > MIN_RANGE_CELLS) {
+				int middle = (from+to)>>>1;
+				invokeAll(new CellRange(loop, from, middle),
+						new CellRange(loop, middle, to));
+			} else {
+				loop.compute(from, to);
+			}
+		}
+	}
+}
\ No newline at end of file
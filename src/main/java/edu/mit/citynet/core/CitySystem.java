@@ -7,7 +7,12 @@ package edu.mit.citynet.core;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.ImageIcon;
 
@@ -27,10 +32,18 @@ public class CitySystem {
 	private List<NodeType> nodeTypes;
 	private List<EdgeType> edgeTypes;
 	private List<Node> nodes;
+	private transient NodeKeyIndex nodeIndex;
 	private List<Edge> edges;
 	private List<NodeRegion> nodeRegions;
 	private List<EdgeRegion> edgeRegions;
 	private List<Region> regions;
+	private List<Node> nodesView;
+	private List<Edge> edgesView;
+	private List<Region> regionsView;
+	private InstanceAttributes nodeAttributes, edgeAttributes;
+	private transient int nodeModCount, edgeModCount;
+	private transient CityChangeListener changeListener;
+	private transient City city;
 	
 	/**
 	 * The CitySystemType enumeration defines the possible system types.
@@ -113,10 +126,16 @@ public class CitySystem {
 		nodeTypes = new ArrayList<NodeType>();
 		edgeTypes = new ArrayList<EdgeType>();
 		nodes = new ArrayList<Node>();
+		nodeIndex = new NodeKeyIndex();
 		edges = new ArrayList<Edge>();
 		nodeRegions = new ArrayList<NodeRegion>();
 		edgeRegions = new ArrayList<EdgeRegion>();
 		regions = new ArrayList<Region>();
+		nodesView = Collections.unmodifiableList(nodes);
+		edgesView = Collections.unmodifiableList(edges);
+		regionsView = Collections.unmodifiableList(regions);
+		nodeAttributes = new InstanceAttributes();
+		edgeAttributes = new InstanceAttributes();
 	}
 	
 	/**
@@ -163,6 +182,17 @@ public class CitySystem {
 	public List<Region> getRegions() {
 		return new ArrayList<Region>(regions);
 	}
+	
+	/**
+	 * Gets an unmodifiable view of the regions. Unlike getRegions, no copy is 
+	 * made and the view reflects later changes to the system, so it must not 
+	 * be used while adding or removing regions.
+	 *
+	 * @return the regions view
+	 */
+	public List<Region> getRegionsView() {
+		return regionsView;
+	}
 
 	/**
 	 * Gets a copy of the edges.
@@ -174,13 +204,41 @@ public class CitySystem {
 	}
 	
 	/**
-	 * Adds the edge.
+	 * Gets an unmodifiable view of the edges. Unlike getEdges, no copy is 
+	 * made and the view reflects later changes to the system, so it must not 
+	 * be used while adding or removing edges.
+	 *
+	 * @return the edges view
+	 */
+	public List<Edge> getEdgesView() {
+		return edgesView;
+	}
+	
+	/**
+	 * Adds the edge. With columnar storage, the edge is copied into the edge 
+	 * table and later changes to the added edge object are not reflected in 
+	 * the system.
 	 *
 	 * @param edge the edge
 	 * @return true, if successful
 	 */
 	public boolean addEdge(Edge edge) {
-		return edges.add(edge);
+		edgeModCount++;
+		boolean added = edges.add(edge);
+		if(added && changeListener != null) 
+			changeListener.edgesAdded(this, Collections.singletonList(edge));
+		return added;
+	}
+	
+	/**
+	 * Gets the number of times edges have been added or removed, which only 
+	 * increases, e.g. to detect changed edges since a save. Changes made to 
+	 * edge objects in place are not counted.
+	 *
+	 * @return the edge modification count
+	 */
+	public int getEdgeModCount() {
+		return edgeModCount;
 	}
 
 	/**
@@ -238,13 +296,241 @@ public class CitySystem {
 	}
 	
 	/**
-	 * Adds the node.
+	 * Gets an unmodifiable view of the nodes. Unlike getNodes, no copy is 
+	 * made and the view reflects later changes to the system, so it must not 
+	 * be used while adding or removing nodes.
+	 *
+	 * @return the nodes view
+	 */
+	public List<Node> getNodesView() {
+		return nodesView;
+	}
+	
+	/**
+	 * Adds the node. With columnar storage, the node is copied into the node 
+	 * table and later changes to the added node object are not reflected in 
+	 * the system.
 	 *
 	 * @param node the node
 	 * @return true, if successful
 	 */
 	public boolean addNode(Node node) {
-		return nodes.add(node);
+		indexNode(node);
+		nodeModCount++;
+		boolean added = nodes.add(node);
+		if(added && changeListener != null) 
+			changeListener.nodesAdded(this, Collections.singletonList(node));
+		return added;
+	}
+	
+	/**
+	 * Gets the number of times nodes have been added or removed, which only 
+	 * increases, e.g. to detect changed nodes since a save. Changes made to 
+	 * node objects in place are not counted.
+	 *
+	 * @return the node modification count
+	 */
+	public int getNodeModCount() {
+		return nodeModCount;
+	}
+	
+	/**
+	 * Sets the change listener, which is notified when nodes or edges are 
+	 * added to or removed from the system (see City.setChangeListener).
+	 *
+	 * @param changeListener the new change listener, or null to remove it
+	 */
+	void setChangeListener(CityChangeListener changeListener) {
+		this.changeListener = changeListener;
+	}
+	
+	/**
+	 * Sets the city holding the system, through which columnar nodes 
+	 * resolve their cells by id.
+	 *
+	 * @param city the city, or null if the system was removed from its city
+	 */
+	void setCity(City city) {
+		this.city = city;
+		if(isColumnar()) ((NodeTable)nodes).setCity(city);
+	}
+	
+	/**
+	 * Notifies that cells were removed from the city, so that columnar nodes 
+	 * still referring to them keep them.
+	 *
+	 * @param cells the removed cells
+	 */
+	void cellsRemoved(Collection<Cell> cells) {
+		if(isColumnar()) ((NodeTable)nodes).cellsRemoved(cells);
+	}
+	
+	/**
+	 * Checks if nodes and edges are stored in primitive columns.
+	 *
+	 * @return true, if columnar
+	 */
+	public boolean isColumnar() {
+		return nodes instanceof NodeTable;
+	}
+	
+	/**
+	 * Sets whether nodes and edges are stored in primitive columns, which 
+	 * takes a fraction of the memory of node and edge objects for large 
+	 * systems. Existing nodes and edges are migrated to the new storage and 
+	 * previously obtained views must be obtained again.
+	 *
+	 * @param columnar true to store nodes and edges in columns
+	 */
+	public void setColumnar(boolean columnar) {
+		if(columnar == isColumnar()) return;
+		if(columnar) {
+			NodeTable nodeTable = new NodeTable();
+			nodeTable.setCity(city);
+			nodeTable.addAll(nodes);
+			EdgeTable edgeTable = new EdgeTable(nodeTable);
+			edgeTable.addAll(edges);
+			nodes = nodeTable;
+			edges = edgeTable;
+			nodeIndex.clear();
+		} else {
+			List<Node> nodeList = ((NodeTable)nodes).copyNodes();
+			Map<Integer,Node> nodeMap = new HashMap<Integer,Node>();
+			for(Node node : nodeList) {
+				if(!nodeMap.containsKey(node.getId())) nodeMap.put(node.getId(), node);
+			}
+			edges = new ArrayList<Edge>(((EdgeTable)edges).copyEdges(nodeMap));
+			nodes = new ArrayList<Node>(nodeList);
+			for(Node node : nodes) {
+				indexNode(node);
+			}
+		}
+		nodesView = Collections.unmodifiableList(nodes);
+		edgesView = Collections.unmodifiableList(edges);
+	}
+	
+	/**
+	 * Gets the node table for direct access to the node columns.
+	 *
+	 * @return the node table, or null if the system is not columnar
+	 */
+	public NodeTable getNodeTable() {
+		return isColumnar()?(NodeTable)nodes:null;
+	}
+	
+	/**
+	 * Gets the edge table for direct access to the edge columns.
+	 *
+	 * @return the edge table, or null if the system is not columnar
+	 */
+	public EdgeTable getEdgeTable() {
+		return isColumnar()?(EdgeTable)edges:null;
+	}
+	
+	/**
+	 * Gets the attribute values of individual nodes, which override the 
+	 * values of their node types.
+	 *
+	 * @return the node attributes
+	 */
+	public InstanceAttributes getNodeAttributes() {
+		return nodeAttributes;
+	}
+	
+	/**
+	 * Gets the attribute values of individual edges, which override the 
+	 * values of their edge types.
+	 *
+	 * @return the edge attributes
+	 */
+	public InstanceAttributes getEdgeAttributes() {
+		return edgeAttributes;
+	}
+	
+	/**
+	 * Gets the value of an attribute of a node, which is the value set for 
+	 * the node if any or else the value of its node type.
+	 *
+	 * @param node the node
+	 * @param slot the attribute slot
+	 * @return the value, or NaN if the attribute is not defined
+	 */
+	public double getNodeAttribute(Node node, int slot) {
+		double value = nodeAttributes.isEmpty() ? Double.NaN 
+				: nodeAttributes.getValue(node.getId(), slot);
+		return Double.isNaN(value) ? node.getAttribute(slot) : value;
+	}
+	
+	/**
+	 * Gets the value of an attribute of an edge, which is the value set for 
+	 * the edge if any or else the value of its edge type.
+	 *
+	 * @param edge the edge
+	 * @param slot the attribute slot
+	 * @return the value, or NaN if the attribute is not defined
+	 */
+	public double getEdgeAttribute(Edge edge, int slot) {
+		double value = edgeAttributes.isEmpty() ? Double.NaN 
+				: edgeAttributes.getValue(edge.getId(), slot);
+		return Double.isNaN(value) ? edge.getAttribute(slot) : value;
+	}
+	
+	/**
+	 * Gets the node at a cell and layer.
+	 *
+	 * @param cell the cell
+	 * @param layer the layer
+	 * @return the node, or null if no node exists at the cell and layer
+	 */
+	public Node getNode(Cell cell, Layer layer) {
+		if(cell == null || layer == null) return null;
+		if(isColumnar()) return ((NodeTable)nodes).getNode(cell, layer);
+		return nodeIndex.get(getNodeKey(cell, layer));
+	}
+	
+	/**
+	 * Gets the node index key for a cell and layer.
+	 *
+	 * @param cell the cell
+	 * @param layer the layer
+	 * @return the node key
+	 */
+	static long getNodeKey(Cell cell, Layer layer) {
+		return ((long)cell.getId() << 32) | (layer.getId() & 0xffffffffL);
+	}
+	
+	/**
+	 * Adds a node to the cell and layer index. If several nodes share the 
+	 * same cell and layer, the first one is indexed. Node tables maintain 
+	 * their own index.
+	 *
+	 * @param node the node
+	 */
+	private void indexNode(Node node) {
+		if(isColumnar() || node.getCell() == null || node.getLayer() == null) return;
+		nodeIndex.add(getNodeKey(node.getCell(), node.getLayer()), node);
+	}
+
+	/**
+	 * Removes the nodes about to be removed from the cell and layer index. 
+	 * Only if a removed node was indexed and other nodes share its cell and
+	 * layer are the remaining nodes searched for the first one to index.
+	 *
+	 * @param removedNodes the nodes about to be removed
+	 */
+	private void unindexNodes(Set<Node> removedNodes) {
+		boolean vacated = false;
+		for(Node node : this.nodes) {
+			if(node.getCell() == null || node.getLayer() == null 
+					|| !removedNodes.contains(node)) continue;
+			vacated |= nodeIndex.remove(getNodeKey(node.getCell(), node.getLayer()), node);
+		}
+		if(!vacated) return;
+		for(Node node : this.nodes) {
+			if(node.getCell() == null || node.getLayer() == null 
+					|| removedNodes.contains(node)) continue;
+			nodeIndex.replace(getNodeKey(node.getCell(), node.getLayer()), node);
+		}
 	}
 
 	/**
@@ -312,7 +598,10 @@ public class CitySystem {
 	 * @return true, if successful
 	 */
 	public boolean addAllEdges(Collection<Edge> edges) {
-		return this.edges.addAll(edges);
+		edgeModCount++;
+		boolean added = this.edges.addAll(edges);
+		if(added && changeListener != null) changeListener.edgesAdded(this, edges);
+		return added;
 	}
 	
 	/**
@@ -322,7 +611,18 @@ public class CitySystem {
 	 * @return true, if successful
 	 */
 	public boolean removeAllEdges(Collection<Edge> edges) {
-		return this.edges.removeAll(edges);
+		boolean removed = this.edges.removeAll(new HashSet<Edge>(edges));
+		if(removed) edgeModCount++;
+		if(removed && !edgeAttributes.isEmpty()) {
+			int[] ids = new int[edges.size()];
+			int i = 0;
+			for(Edge edge : edges) {
+				ids[i++] = edge.getId();
+			}
+			edgeAttributes.removeAll(ids);
+		}
+		if(removed && changeListener != null) changeListener.edgesRemoved(this, edges);
+		return removed;
 	}
 
 	/**
@@ -410,7 +710,13 @@ public class CitySystem {
 	 * @return true, if successful
 	 */
 	public boolean addAllNodes(Collection<Node> nodes) {
-		return this.nodes.addAll(nodes);
+		for(Node node : nodes) {
+			indexNode(node);
+		}
+		nodeModCount++;
+		boolean added = this.nodes.addAll(nodes);
+		if(added && changeListener != null) changeListener.nodesAdded(this, nodes);
+		return added;
 	}
 	
 	/**
@@ -420,7 +726,20 @@ public class CitySystem {
 	 * @return true, if successful
 	 */
 	public boolean removeAllNodes(Collection<Node> nodes) {
-		return this.nodes.removeAll(nodes);
+		Set<Node> removedNodes = new HashSet<Node>(nodes);
+		if(!isColumnar()) unindexNodes(removedNodes);
+		boolean removed = this.nodes.removeAll(removedNodes);
+		if(removed) nodeModCount++;
+		if(removed && !nodeAttributes.isEmpty()) {
+			int[] ids = new int[nodes.size()];
+			int i = 0;
+			for(Node node : nodes) {
+				ids[i++] = node.getId();
+			}
+			nodeAttributes.removeAll(ids);
+		}
+		if(removed && changeListener != null) changeListener.nodesRemoved(this, nodes);
+		return removed;
 	}
 
 	/**
@@ -0,0 +1,141 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+/**
+ * The ColumnarEdge class is a flyweight edge which reads and writes a row of
+ * an edge table. The flyweight keeps its id to locate the row again after rows
+ * were removed from the table. Once its row has been removed, the flyweight
+ * behaves as an empty edge.
+ */
+final class ColumnarEdge extends Edge {
+	private final EdgeTable table;
+	private int row, version, id;
+
+	/**
+	 * Instantiates a new columnar edge.
+	 *
+	 * @param table the edge table
+	 * @param row the row
+	 */
+	ColumnarEdge(EdgeTable table, int row) {
+		this.table = table;
+		this.row = row;
+		this.version = table.getVersion();
+		this.id = table.getId(row);
+	}
+
+	/**
+	 * Gets the current row of the edge.
+	 *
+	 * @return the row, or -1 if the edge was removed from the table
+	 */
+	private int getRow() {
+		if(version != table.getVersion()) {
+			row = table.getRow(id);
+			version = table.getVersion();
+		}
+		return row;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#getId()
+	 */
+	public int getId() {
+		int row = getRow();
+		if(row >= 0) id = table.getId(row);
+		return id;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#setId(int)
+	 */
+	public void setId(int id) {
+		int row = getRow();
+		if(row >= 0) table.setId(row, id);
+		this.id = id;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#getOrigin()
+	 */
+	public Node getOrigin() {
+		int row = getRow();
+		return row < 0 ? null : table.getOrigin(row);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#setOrigin(edu.mit.citynet.core.Node)
+	 */
+	public void setOrigin(Node origin) {
+		int row = getRow();
+		if(row >= 0) table.setOrigin(row, origin);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#getDestination()
+	 */
+	public Node getDestination() {
+		int row = getRow();
+		return row < 0 ? null : table.getDestination(row);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#setDestination(edu.mit.citynet.core.Node)
+	 */
+	public void setDestination(Node destination) {
+		int row = getRow();
+		if(row >= 0) table.setDestination(row, destination);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#getEdgeType()
+	 */
+	public EdgeType getEdgeType() {
+		int row = getRow();
+		return row < 0 ? null : table.getEdgeType(row);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#setEdgeType(edu.mit.citynet.core.EdgeType)
+	 */
+	public void setEdgeType(EdgeType edgeType) {
+		int row = getRow();
+		if(row >= 0) table.setEdgeType(row, edgeType);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#getEdgeDirection()
+	 */
+	public EdgeDirection getEdgeDirection() {
+		int row = getRow();
+		return row < 0 ? null : table.getEdgeDirection(row);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#setEdgeDirection(edu.mit.citynet.core.EdgeDirection)
+	 */
+	public void setEdgeDirection(EdgeDirection edgeDirection) {
+		int row = getRow();
+		if(row >= 0) table.setEdgeDirection(row, edgeDirection);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#getRegion()
+	 */
+	public Region getRegion() {
+		int row = getRow();
+		return row < 0 ? null : table.getRegion(row);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Edge#setRegion(edu.mit.citynet.core.Region)
+	 */
+	public void setRegion(Region region) {
+		int row = getRow();
+		if(row >= 0) table.setRegion(row, region);
+	}
+}
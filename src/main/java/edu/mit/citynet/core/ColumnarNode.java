@@ -0,0 +1,134 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+/**
+ * The ColumnarNode class is a flyweight node which reads and writes a row of
+ * a node table. The flyweight keeps its id to locate the row again after rows
+ * were removed from the table. Once its row has been removed, the flyweight
+ * behaves as an empty node.
+ */
+final class ColumnarNode extends Node {
+	private final NodeTable table;
+	private int row, version, id;
+
+	/**
+	 * Instantiates a new columnar node.
+	 *
+	 * @param table the node table
+	 * @param row the row
+	 */
+	ColumnarNode(NodeTable table, int row) {
+		this.table = table;
+		this.row = row;
+		this.version = table.getVersion();
+		this.id = table.getId(row);
+	}
+
+	/**
+	 * Gets the node table.
+	 *
+	 * @return the node table
+	 */
+	NodeTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Gets the current row of the node.
+	 *
+	 * @return the row, or -1 if the node was removed from the table
+	 */
+	int getRow() {
+		if(version != table.getVersion()) {
+			row = table.getRow(id);
+			version = table.getVersion();
+		}
+		return row;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Node#getId()
+	 */
+	public int getId() {
+		int row = getRow();
+		if(row >= 0) id = table.getId(row);
+		return id;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Node#setId(int)
+	 */
+	public void setId(int id) {
+		int row = getRow();
+		if(row >= 0) table.setId(row, id);
+		this.id = id;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Node#getCell()
+	 */
+	public Cell getCell() {
+		int row = getRow();
+		return row < 0 ? null : table.getCell(row);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Node#setCell(edu.mit.citynet.core.Cell)
+	 */
+	public void setCell(Cell cell) {
+		int row = getRow();
+		if(row >= 0) table.setCell(row, cell);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Node#getLayer()
+	 */
+	public Layer getLayer() {
+		int row = getRow();
+		return row < 0 ? null : table.getLayer(row);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Node#setLayer(edu.mit.citynet.core.Layer)
+	 */
+	public void setLayer(Layer layer) {
+		int row = getRow();
+		if(row >= 0) table.setLayer(row, layer);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Node#getNodeType()
+	 */
+	public NodeType getNodeType() {
+		int row = getRow();
+		return row < 0 ? null : table.getNodeType(row);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Node#setNodeType(edu.mit.citynet.core.NodeType)
+	 */
+	public void setNodeType(NodeType nodeType) {
+		int row = getRow();
+		if(row >= 0) table.setNodeType(row, nodeType);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Node#getRegion()
+	 */
+	public Region getRegion() {
+		int row = getRow();
+		return row < 0 ? null : table.getRegion(row);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Node#setRegion(edu.mit.citynet.core.Region)
+	 */
+	public void setRegion(Region region) {
+		int row = getRow();
+		if(row >= 0) table.setRegion(row, region);
+	}
+}
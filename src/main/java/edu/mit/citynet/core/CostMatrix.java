@@ -0,0 +1,239 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The CostMatrix class stores a matrix of origin-destination costs as 32-bit
+ * floats outside of the Java heap. The matrix is split into blocks of whole
+ * rows, each held in a direct buffer or mapped from a file, so matrices larger
+ * than the heap (or than a single buffer) are supported. File-backed matrices
+ * are paged to disk by the operating system as rows are written.
+ *
+ * The file format is a 16-byte header (the characters "CNCM", a format
+ * version, the number of rows and the number of columns, as little-endian
+ * ints) followed by the costs in row order as little-endian floats, which can
+ * be read directly by MATLAB. Unreachable destinations have infinite cost.
+ */
+public class CostMatrix {
+	private static final int MAGIC = 0x4d434e43; // "CNCM" in little-endian order
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final long BLOCK_SIZE = 1L << 28;
+
+	private final int numberRows, numberColumns, rowsPerBlock;
+	private final FloatBuffer[] blocks;
+	private final MappedByteBuffer[] mappedBlocks;
+	private final File file;
+
+	/**
+	 * Instantiates a new cost matrix.
+	 *
+	 * @param numberRows the number of rows
+	 * @param numberColumns the number of columns
+	 * @param file the backing file, or null for direct buffers
+	 * @param channel the file channel, or null for direct buffers
+	 * @param mode the file mapping mode
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private CostMatrix(int numberRows, int numberColumns, File file,
+			FileChannel channel, FileChannel.MapMode mode) throws IOException {
+		if(numberRows < 0 || numberColumns < 0) {
+			throw new IllegalArgumentException("Matrix dimensions cannot be negative.");
+		}
+		this.numberRows = numberRows;
+		this.numberColumns = numberColumns;
+		this.file = file;
+		long rowSize = 4L*Math.max(1, numberColumns);
+		if(rowSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Matrix rows are too long.");
+		}
+		rowsPerBlock = (int)Math.max(1, Math.min(numberRows, BLOCK_SIZE/rowSize));
+		int numberBlocks = numberRows == 0 ? 0 : (numberRows-1)/rowsPerBlock+1;
+		blocks = new FloatBuffer[numberBlocks];
+		mappedBlocks = new MappedByteBuffer[channel == null ? 0 : numberBlocks];
+		for(int b=0; b<numberBlocks; b++) {
+			int rows = Math.min(rowsPerBlock, numberRows-b*rowsPerBlock);
+			long size = 4L*rows*numberColumns;
+			ByteBuffer buffer;
+			if(channel == null) {
+				buffer = ByteBuffer.allocateDirect((int)size);
+			} else {
+				mappedBlocks[b] = channel.map(mode,
+						HEADER_SIZE + 4L*b*rowsPerBlock*numberColumns, size);
+				buffer = mappedBlocks[b];
+			}
+			blocks[b] = buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		}
+	}
+
+	/**
+	 * Allocates a cost matrix in direct (off-heap) memory.
+	 *
+	 * @param numberRows the number of rows
+	 * @param numberColumns the number of columns
+	 * @return the cost matrix
+	 */
+	public static CostMatrix allocate(int numberRows, int numberColumns) {
+		try {
+			return new CostMatrix(numberRows, numberColumns, null, null, null);
+		} catch(IOException e) {
+			throw new IllegalStateException(e); // not thrown without a file
+		}
+	}
+
+	/**
+	 * Creates a cost matrix mapped from a new file, replacing any existing
+	 * file.
+	 *
+	 * @param file the file
+	 * @param numberRows the number of rows
+	 * @param numberColumns the number of columns
+	 * @return the cost matrix
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static CostMatrix create(File file, int numberRows, int numberColumns)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength(HEADER_SIZE + 4L*numberRows*numberColumns);
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(numberRows).putInt(numberColumns).flip();
+			channel.write(header, 0);
+			return new CostMatrix(numberRows, numberColumns, file,
+					channel, FileChannel.MapMode.READ_WRITE);
+		} finally {
+			raf.close(); // mappings remain valid after the channel is closed
+		}
+	}
+
+	/**
+	 * Opens a cost matrix file for reading.
+	 *
+	 * @param file the file
+	 * @return the cost matrix
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static CostMatrix open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining() && channel.read(header, header.position()) >= 0);
+			header.flip();
+			if(header.remaining() < HEADER_SIZE || header.getInt() != MAGIC
+					|| header.getInt() != VERSION) {
+				throw new IOException("File is not a cost matrix: " + file);
+			}
+			int numberRows = header.getInt(), numberColumns = header.getInt();
+			if(channel.size() < HEADER_SIZE + 4L*numberRows*numberColumns) {
+				throw new IOException("Cost matrix file is truncated: " + file);
+			}
+			return new CostMatrix(numberRows, numberColumns, file,
+					channel, FileChannel.MapMode.READ_ONLY);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Gets the number of rows (origins).
+	 *
+	 * @return the number of rows
+	 */
+	public int getNumberRows() {
+		return numberRows;
+	}
+
+	/**
+	 * Gets the number of columns (destinations).
+	 *
+	 * @return the number of columns
+	 */
+	public int getNumberColumns() {
+		return numberColumns;
+	}
+
+	/**
+	 * Gets the backing file.
+	 *
+	 * @return the file, or null if the matrix is held in memory
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets a cost.
+	 *
+	 * @param row the row
+	 * @param column the column
+	 * @return the cost
+	 */
+	public float getCost(int row, int column) {
+		checkIndex(row, column);
+		return blocks[row/rowsPerBlock].get((row%rowsPerBlock)*numberColumns + column);
+	}
+
+	/**
+	 * Gets the costs of a row.
+	 *
+	 * @param row the row
+	 * @return the costs
+	 */
+	public float[] getRow(int row) {
+		checkIndex(row, 0);
+		float[] costs = new float[numberColumns];
+		FloatBuffer block = blocks[row/rowsPerBlock].duplicate();
+		block.position((row%rowsPerBlock)*numberColumns);
+		block.get(costs);
+		return costs;
+	}
+
+	/**
+	 * Sets the costs of a row. Different rows may be set concurrently.
+	 *
+	 * @param row the row
+	 * @param costs the costs
+	 */
+	void setRow(int row, float[] costs) {
+		checkIndex(row, 0);
+		FloatBuffer block = blocks[row/rowsPerBlock].duplicate();
+		block.position((row%rowsPerBlock)*numberColumns);
+		block.put(costs, 0, numberColumns);
+	}
+
+	/**
+	 * Writes any changes of a file-backed matrix to the file.
+	 */
+	public void flush() {
+		for(MappedByteBuffer buffer : mappedBlocks) {
+			if(!buffer.isReadOnly()) buffer.force();
+		}
+	}
+
+	/**
+	 * Checks that a row and column are within the matrix.
+	 *
+	 * @param row the row
+	 * @param column the column
+	 */
+	private void checkIndex(int row, int column) {
+		if(row < 0 || row >= numberRows || column < 0 || column >= Math.max(1, numberColumns)) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", Column: " + column);
+		}
+	}
+}
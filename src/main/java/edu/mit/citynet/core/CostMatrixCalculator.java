@@ -0,0 +1,201 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The CostMatrixCalculator class computes origin-destination cost matrices
+ * between the nodes of a system graph. Each row is computed by a single
+ * Dijkstra search from its origin, which stops once all destinations are
+ * settled, and the rows are computed concurrently on a fork-join pool.
+ *
+ * Matrices are held in direct memory or, for matrices which do not fit in
+ * memory, written to a file as rows are completed. For example, a 50,000 by
+ * 50,000 matrix takes 10 GB and should be written to a file.
+ */
+public class CostMatrixCalculator {
+	private static final int ROWS_PER_TASK = 8;
+
+	private RoutingEngine routingEngine;
+	private ForkJoinPool pool;
+	private AtomicInteger completedRows = new AtomicInteger();
+
+	/**
+	 * Instantiates a new cost matrix calculator using the common fork-join
+	 * pool.
+	 *
+	 * @param routingEngine the routing engine
+	 */
+	public CostMatrixCalculator(RoutingEngine routingEngine) {
+		this(routingEngine, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Instantiates a new cost matrix calculator.
+	 *
+	 * @param routingEngine the routing engine
+	 * @param pool the fork-join pool
+	 */
+	public CostMatrixCalculator(RoutingEngine routingEngine, ForkJoinPool pool) {
+		this.routingEngine = routingEngine;
+		this.pool = pool;
+	}
+
+	/**
+	 * Gets the number of rows completed by the current or last computation,
+	 * which may be polled from another thread to report progress.
+	 *
+	 * @return the number of completed rows
+	 */
+	public int getCompletedRows() {
+		return completedRows.get();
+	}
+
+	/**
+	 * Computes the costs between all nodes of the graph in direct memory.
+	 *
+	 * @return the cost matrix
+	 */
+	public CostMatrix computeMatrix() {
+		SystemGraph graph = routingEngine.getGraph();
+		int[] vertices = new int[graph.getNumberVertices()];
+		for(int v=0; v<vertices.length; v++) vertices[v] = v;
+		CostMatrix matrix = CostMatrix.allocate(vertices.length, vertices.length);
+		computeMatrix(matrix, vertices, vertices);
+		return matrix;
+	}
+
+	/**
+	 * Computes the costs from origins to destinations in direct memory.
+	 *
+	 * @param origins the origins (rows)
+	 * @param destinations the destinations (columns)
+	 * @return the cost matrix
+	 */
+	public CostMatrix computeMatrix(List<Node> origins, List<Node> destinations) {
+		CostMatrix matrix = CostMatrix.allocate(origins.size(), destinations.size());
+		computeMatrix(matrix, getVertices(origins), getVertices(destinations));
+		return matrix;
+	}
+
+	/**
+	 * Computes the costs from origins to destinations into a file.
+	 *
+	 * @param origins the origins (rows)
+	 * @param destinations the destinations (columns)
+	 * @param file the file
+	 * @return the file-backed cost matrix
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public CostMatrix computeMatrix(List<Node> origins, List<Node> destinations,
+			File file) throws IOException {
+		int[] originVertices = getVertices(origins);
+		int[] destinationVertices = getVertices(destinations);
+		CostMatrix matrix = CostMatrix.create(file, origins.size(), destinations.size());
+		computeMatrix(matrix, originVertices, destinationVertices);
+		matrix.flush();
+		return matrix;
+	}
+
+	/**
+	 * Computes the rows of a cost matrix on the fork-join pool.
+	 *
+	 * @param matrix the matrix
+	 * @param origins the origin vertices
+	 * @param destinations the destination vertices
+	 */
+	private void computeMatrix(CostMatrix matrix, int[] origins, int[] destinations) {
+		boolean[] isDestination = new boolean[routingEngine.getGraph().getNumberVertices()];
+		int numberDestinations = 0;
+		for(int vertex : destinations) {
+			if(!isDestination[vertex]) {
+				isDestination[vertex] = true;
+				numberDestinations++;
+			}
+		}
+		completedRows.set(0);
+		pool.invoke(new RowTask(matrix, origins, destinations, isDestination,
+				numberDestinations, 0, origins.length));
+	}
+
+	/**
+	 * Gets the graph vertices of nodes.
+	 *
+	 * @param nodes the nodes
+	 * @return the vertices
+	 */
+	private int[] getVertices(List<Node> nodes) {
+		int[] vertices = new int[nodes.size()];
+		for(int i=0; i<vertices.length; i++) {
+			vertices[i] = routingEngine.getGraph().getVertex(nodes.get(i));
+			if(vertices[i] < 0) {
+				throw new IllegalArgumentException("Nodes must be in the graph.");
+			}
+		}
+		return vertices;
+	}
+
+	/**
+	 * The RowTask class computes a range of rows of a cost matrix, splitting
+	 * the range in halves until it is small enough.
+	 */
+	private class RowTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private CostMatrix matrix;
+		private int[] origins, destinations;
+		private boolean[] isDestination;
+		private int numberDestinations, from, to;
+
+		/**
+		 * Instantiates a new row task.
+		 *
+		 * @param matrix the matrix
+		 * @param origins the origin vertices
+		 * @param destinations the destination vertices
+		 * @param isDestination the destination flags by vertex
+		 * @param numberDestinations the number of distinct destinations
+		 * @param from the first row
+		 * @param to the row after the last row
+		 */
+		private RowTask(CostMatrix matrix, int[] origins, int[] destinations,
+				boolean[] isDestination, int numberDestinations, int from, int to) {
+			this.matrix = matrix;
+			this.origins = origins;
+			this.destinations = destinations;
+			this.isDestination = isDestination;
+			this.numberDestinations = numberDestinations;
+			this.from = from;
+			this.to = to;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			if(to-from > ROWS_PER_TASK) {
+				int middle = (from+to)>>>1;
+				invokeAll(new RowTask(matrix, origins, destinations, isDestination,
+								numberDestinations, from, middle),
+						new RowTask(matrix, origins, destinations, isDestination,
+								numberDestinations, middle, to));
+				return;
+			}
+			float[] costs = new float[destinations.length];
+			for(int row=from; row<to; row++) {
+				routingEngine.getCosts(origins[row], destinations,
+						isDestination, numberDestinations, costs);
+				matrix.setRow(row, costs);
+				completedRows.incrementAndGet();
+			}
+		}
+	}
+}
@@ -17,12 +17,13 @@ public class Edge {
 	private Node origin, destination;
 	private EdgeType edgeType;
 	private EdgeDirection edgeDirection;
+	private transient Region region;
 	
 	/**
 	 * Instantiates a new edge.
 	 */
 	public Edge() {
-		setEdgeDirection(EdgeDirection.UNDIRECTED);
+		edgeDirection = EdgeDirection.UNDIRECTED;
 	}
 	
 	/**
@@ -115,12 +116,31 @@ public class Edge {
 		this.edgeDirection = edgeDirection;
 	}
 	
+	/**
+	 * Gets the region which generated the edge, if any.
+	 *
+	 * @return the region
+	 */
+	public Region getRegion() {
+		return region;
+	}
+	
+	/**
+	 * Sets the region which generated the edge.
+	 *
+	 * @param region the new region
+	 */
+	public void setRegion(Region region) {
+		this.region = region;
+	}
+	
 	/**
 	 * Gets the Euclidean length.
 	 *
 	 * @return the Euclidean length
 	 */
 	public double getEuclideanLength() {
+		Node origin = getOrigin(), destination = getDestination();
 		if(origin != null && destination != null) {
 			LineSegment ls = new LineSegment(
 					origin.getCell().getPolygon().getCentroid().getCoordinate(),
@@ -136,11 +156,20 @@ public class Edge {
 	 * @return the edge type attribute value
 	 */
 	public Double getEdgeTypeAttributeValue(String attributeName) {
-		for(EdgeTypeAttribute attribute : edgeType.getAttributes()) {
-			if(attribute.getName().equals(attributeName))
-				return attribute.getValue();
-		}
-		return null;
+		int slot = AttributeSchema.findSlot(attributeName);
+		EdgeType edgeType = getEdgeType();
+		return edgeType.hasAttribute(slot) ? edgeType.getAttribute(slot) : null;
+	}
+
+	/**
+	 * Gets the value of a edge type attribute by its slot in the attribute
+	 * schema.
+	 *
+	 * @param slot the slot
+	 * @return the value, or NaN if the attribute is not defined
+	 */
+	public double getAttribute(int slot) {
+		return getEdgeType().getAttribute(slot);
 	}
 	
 	/* (non-Javadoc)
@@ -148,14 +177,21 @@ public class Edge {
 	 */
 	public boolean equals(Object object) {
 		if(object instanceof Edge) {
-			return id==((Edge)object).getId();
+			return getId()==((Edge)object).getId();
 		} else return false;
 	}
 	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode() {
+		return getId();
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		return "Edge" + id;
+		return "Edge" + getId();
 	}
 }
@@ -15,7 +15,6 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateList;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.geom.Point;
 
 import edu.mit.citynet.CityNet;
 import edu.mit.citynet.util.CityNetIcon;
@@ -138,7 +137,7 @@ public class EdgeRegion extends AbstractRegion implements Cloneable {
 			// TODO: processes nodes in uncertain order, may impact 
 			// connectivity of resulting edges
 			for(int i=0;i<layers.size()-1;i++) {
-				for(Node node : system.getNodes()) {
+				for(Node node : system.getNodesView()) {
 					LineString line = gf.createLineString(
 							new Coordinate[]{coords.getCoordinate(i),
 									coords.getCoordinate(i+1)});
@@ -157,12 +156,10 @@ public class EdgeRegion extends AbstractRegion implements Cloneable {
 		case POLYPOINT:
 			nodes = new Vector<Node>();
 			for(int i=0;i<layers.size();i++) {
-				for(Node node : system.getNodes()) {
-					if(node.getLayer().equals(layers.get(i))
-							&& node.getCell().containsPoint(gf.createPoint(
-									coords.getCoordinate(i)))) {
-						nodes.addElement(node);
-					}
+				for(Cell cell : CityNet.getInstance().getCity().getCellsContaining(
+						gf.createPoint(coords.getCoordinate(i)))) {
+					Node node = system.getNode(cell, layers.get(i));
+					if(node != null) nodes.addElement(node);
 				}
 			}
 			for(int i=0;i<nodes.size()-1;i++) {
@@ -173,52 +170,33 @@ public class EdgeRegion extends AbstractRegion implements Cloneable {
 			break;
 		case POLYGON_ORTHOGONAL:
 			nodes = new Vector<Node>();
-			for(Node node : system.getNodes()) {
+			for(Node node : system.getNodesView()) {
 				if(node.getLayer().equals(layers.get(0))
-						&& this.containsPolygon(node.getCell().getPolygon(), 0.5)) {
+						&& this.containsCell(node.getCell(), 0.5)) {
 					nodes.add(node);
 				}
 			}
-			for(int i=0;i<nodes.size();i++) {
-				for(int j=i+1;j<nodes.size();j++) {
-					Node origin = nodes.get(i);
-					Node destination = nodes.get(j);
-					if(origin.getCell().getPolygon().intersection(
-							destination.getCell().getPolygon()) 
-							instanceof LineString) {
-						createEdge(system,origin,destination);
-					}
-				}
+			for(Node[] pair : CellAdjacency.getNodePairs(nodes, false)) {
+				createEdge(system,pair[0],pair[1]);
 			}
 			break;
 		case POLYGON_ADJACENT:
 			nodes = new Vector<Node>();
-			for(Node node : system.getNodes()) {
+			for(Node node : system.getNodesView()) {
 				if(node.getLayer().equals(layers.get(0))
-						&& this.containsPolygon(node.getCell().getPolygon(), 0.5)) {
+						&& this.containsCell(node.getCell(), 0.5)) {
 					nodes.add(node);
 				}
 			}
-			for(int i=0;i<nodes.size();i++) {
-				for(int j=i+1;j<nodes.size();j++) {
-					Node origin = nodes.get(i);
-					Node destination = nodes.get(j);
-					if(origin.getCell().getPolygon().intersection(
-							destination.getCell().getPolygon()) 
-							instanceof LineString || 
-							origin.getCell().getPolygon().intersection(
-									destination.getCell().getPolygon()) 
-									instanceof Point) {
-						createEdge(system,origin,destination);
-					}
-				}
+			for(Node[] pair : CellAdjacency.getNodePairs(nodes, true)) {
+				createEdge(system,pair[0],pair[1]);
 			}
 			break;
 		case POLYGON_CONNECTED:
 			nodes = new Vector<Node>();
-			for(Node node : system.getNodes()) {
+			for(Node node : system.getNodesView()) {
 				if(node.getLayer().equals(layers.get(0))
-						&& this.containsPolygon(node.getCell().getPolygon(), 0.5)) {
+						&& this.containsCell(node.getCell(), 0.5)) {
 					nodes.add(node);
 				}
 			}
@@ -0,0 +1,613 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The EdgeTable class stores the edges of a system in primitive columns
+ * instead of individual edge objects. Origins and destinations are stored as
+ * rows of the node table of the system, which follow the nodes when rows of
+ * the node table are removed or node ids change, edge types and
+ * regions are encoded as dictionary codes, and edge directions as ordinals,
+ * so an edge takes 17 bytes. Edges added to the table are copied into the
+ * columns; the edges returned by the table are flyweights which read and
+ * write the columns of their row.
+ *
+ * Rows keep the order in which edges were added. Edges are located by id
+ * with a binary search as long as ids are added in ascending order (as by
+ * generation) and with a hash index otherwise.
+ */
+public final class EdgeTable extends AbstractList<Edge> {
+	private static final int NO_NODE = -1;
+	private static final EdgeDirection[] DIRECTIONS = EdgeDirection.values();
+
+	private final NodeTable nodeTable;
+	private int[] ids = new int[16];
+	private int[] origins = new int[16];
+	private int[] destinations = new int[16];
+	private short[] edgeTypes = new short[16];
+	private short[] regions = new short[16];
+	private byte[] directions = new byte[16];
+	private int size;
+	private int version;
+	private LongIntMap idRows;
+	private List<Node> externalNodes = new ArrayList<Node>();
+	private Map<Node,Integer> externalCodes = new IdentityHashMap<Node,Integer>();
+	private ValueDictionary<EdgeType> edgeTypeDictionary = new ValueDictionary<EdgeType>(Short.MAX_VALUE);
+	private ValueDictionary<Region> regionDictionary = new ValueDictionary<Region>(Short.MAX_VALUE);
+
+	/**
+	 * Instantiates a new edge table.
+	 *
+	 * @param nodeTable the node table used to resolve origins and destinations
+	 */
+	public EdgeTable(NodeTable nodeTable) {
+		this.nodeTable = nodeTable;
+		nodeTable.setEdgeTable(this);
+	}
+
+	/**
+	 * Gets the node table used to resolve origins and destinations.
+	 *
+	 * @return the node table
+	 */
+	public NodeTable getNodeTable() {
+		return nodeTable;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	public int size() {
+		return size;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#get(int)
+	 */
+	public Edge get(int row) {
+		checkRow(row);
+		return new ColumnarEdge(this, row);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#add(java.lang.Object)
+	 */
+	public boolean add(Edge edge) {
+		addCodes(edge.getId(), encodeNode(edge.getOrigin()), 
+				encodeNode(edge.getDestination()), edge.getEdgeType(), 
+				edge.getRegion(), edge.getEdgeDirection());
+		return true;
+	}
+
+	/**
+	 * Adds an edge given by its values and the rows of its origin and
+	 * destination in the node table, without creating an edge object, e.g.
+	 * to load the edges of a file.
+	 *
+	 * @param id the edge id
+	 * @param originRow the row of the origin, or -1 if none
+	 * @param destinationRow the row of the destination, or -1 if none
+	 * @param edgeType the edge type
+	 * @param region the region
+	 * @param edgeDirection the edge direction
+	 * @return the row
+	 */
+	public int addRow(int id, int originRow, int destinationRow, EdgeType edgeType,
+			Region region, EdgeDirection edgeDirection) {
+		if(originRow < NO_NODE || originRow >= nodeTable.size()
+				|| destinationRow < NO_NODE || destinationRow >= nodeTable.size()) {
+			throw new IndexOutOfBoundsException("Origin row: " + originRow 
+					+ ", Destination row: " + destinationRow + ", Size: " + nodeTable.size());
+		}
+		return addCodes(id, originRow, destinationRow, edgeType, region, edgeDirection);
+	}
+
+	/**
+	 * Adds an edge given by its values and the codes of its origin and
+	 * destination (see encodeNode).
+	 *
+	 * @param id the edge id
+	 * @param origin the code of the origin
+	 * @param destination the code of the destination
+	 * @param edgeType the edge type
+	 * @param region the region
+	 * @param edgeDirection the edge direction
+	 * @return the row
+	 */
+	private int addCodes(int id, int origin, int destination, EdgeType edgeType,
+			Region region, EdgeDirection edgeDirection) {
+		if(size == ids.length) {
+			int capacity = Math.max(16, ids.length + (ids.length >> 1));
+			ids = Arrays.copyOf(ids, capacity);
+			origins = Arrays.copyOf(origins, capacity);
+			destinations = Arrays.copyOf(destinations, capacity);
+			edgeTypes = Arrays.copyOf(edgeTypes, capacity);
+			regions = Arrays.copyOf(regions, capacity);
+			directions = Arrays.copyOf(directions, capacity);
+		}
+		int row = size;
+		ids[row] = id;
+		origins[row] = origin;
+		destinations[row] = destination;
+		edgeTypes[row] = (short)edgeTypeDictionary.encode(edgeType);
+		regions[row] = (short)regionDictionary.encode(region);
+		directions[row] = encodeDirection(edgeDirection);
+		size++;
+		if(idRows == null && row > 0 && ids[row] < ids[row-1]) {
+			idRows = new LongIntMap(size);
+			for(int i=0; i<row; i++) idRows.putIfAbsent(ids[i], i);
+		}
+		if(idRows != null) idRows.putIfAbsent(ids[row], row);
+		modCount++;
+		return row;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#remove(int)
+	 */
+	public Edge remove(int row) {
+		checkRow(row);
+		Edge edge = copyEdge(row, null);
+		boolean[] removed = new boolean[size];
+		removed[row] = true;
+		compact(removed);
+		return edge;
+	}
+
+	/**
+	 * Removes all edges equal to any of the given edges in a single pass
+	 * over the columns.
+	 *
+	 * @param edges the edges
+	 * @return true, if any edge was removed
+	 */
+	public boolean removeAll(Collection<?> edges) {
+		LongIntMap removedIds = new LongIntMap(edges.size());
+		for(Object object : edges) {
+			if(object instanceof Edge) removedIds.put(((Edge)object).getId(), 0);
+		}
+		boolean[] removed = new boolean[size];
+		boolean any = false;
+		for(int i=0; i<size; i++) {
+			removed[i] = removedIds.get(ids[i]) >= 0;
+			any |= removed[i];
+		}
+		if(any) compact(removed);
+		return any;
+	}
+
+	/**
+	 * Removes rows and shifts the remaining rows down in one pass. Values no 
+	 * longer referred to by any row are released.
+	 *
+	 * @param removed the removed flags by row
+	 */
+	private void compact(boolean[] removed) {
+		int n = 0;
+		for(int i=0; i<size; i++) {
+			if(removed[i]) continue;
+			ids[n] = ids[i];
+			origins[n] = origins[i];
+			destinations[n] = destinations[i];
+			edgeTypes[n] = edgeTypes[i];
+			regions[n] = regions[i];
+			directions[n] = directions[i];
+			n++;
+		}
+		size = n;
+		edgeTypeDictionary.compact(edgeTypes, size);
+		regionDictionary.compact(regions, size);
+		retainExternalNodes();
+		version++;
+		modCount++;
+		indexIds();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#clear()
+	 */
+	public void clear() {
+		size = 0;
+		externalNodes.clear();
+		externalCodes.clear();
+		edgeTypeDictionary.clear();
+		regionDictionary.clear();
+		version++;
+		modCount++;
+		indexIds();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#contains(java.lang.Object)
+	 */
+	public boolean contains(Object object) {
+		return indexOf(object) >= 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#indexOf(java.lang.Object)
+	 */
+	public int indexOf(Object object) {
+		if(object instanceof Edge) return getRow(((Edge)object).getId());
+		return -1;
+	}
+
+	/**
+	 * Gets the row of the edge with an id.
+	 *
+	 * @param id the edge id
+	 * @return the row, or -1 if no edge has the id
+	 */
+	public int getRow(int id) {
+		if(idRows != null) return idRows.get(id);
+		int row = Arrays.binarySearch(ids, 0, size, id);
+		if(row < 0) return -1;
+		while(row > 0 && ids[row-1] == id) row--;
+		return row;
+	}
+
+	/**
+	 * Gets the edge id of a row.
+	 *
+	 * @param row the row
+	 * @return the edge id
+	 */
+	public int getId(int row) {
+		return ids[row];
+	}
+
+	/**
+	 * Gets the origin node id of a row.
+	 *
+	 * @param row the row
+	 * @return the origin node id, or Integer.MIN_VALUE if no origin
+	 */
+	public int getOriginId(int row) {
+		return getNodeId(origins[row]);
+	}
+
+	/**
+	 * Gets the destination node id of a row.
+	 *
+	 * @param row the row
+	 * @return the destination node id, or Integer.MIN_VALUE if no destination
+	 */
+	public int getDestinationId(int row) {
+		return getNodeId(destinations[row]);
+	}
+
+	/**
+	 * Gets the origin of a row.
+	 *
+	 * @param row the row
+	 * @return the origin
+	 */
+	public Node getOrigin(int row) {
+		return decodeNode(origins[row]);
+	}
+
+	/**
+	 * Gets the destination of a row.
+	 *
+	 * @param row the row
+	 * @return the destination
+	 */
+	public Node getDestination(int row) {
+		return decodeNode(destinations[row]);
+	}
+
+	/**
+	 * Gets the edge type of a row.
+	 *
+	 * @param row the row
+	 * @return the edge type
+	 */
+	public EdgeType getEdgeType(int row) {
+		return edgeTypeDictionary.decode(edgeTypes[row]);
+	}
+
+	/**
+	 * Gets the edge direction of a row.
+	 *
+	 * @param row the row
+	 * @return the edge direction
+	 */
+	public EdgeDirection getEdgeDirection(int row) {
+		return directions[row] < 0 ? null : DIRECTIONS[directions[row]];
+	}
+
+	/**
+	 * Gets the region of a row.
+	 *
+	 * @param row the row
+	 * @return the region
+	 */
+	public Region getRegion(int row) {
+		return regionDictionary.decode(regions[row]);
+	}
+
+	/**
+	 * Sets the edge id of a row.
+	 *
+	 * @param row the row
+	 * @param id the new id
+	 */
+	void setId(int row, int id) {
+		int oldId = ids[row];
+		ids[row] = id;
+		if(idRows == null) {
+			if((row > 0 && ids[row-1] > id) || (row < size-1 && ids[row+1] < id)) {
+				idRows = new LongIntMap(size);
+				for(int i=0; i<size; i++) idRows.putIfAbsent(ids[i], i);
+			}
+			return;
+		}
+		if(idRows.get(oldId) == row) idRows.remove(oldId);
+		int other = idRows.get(id);
+		if(other < 0 || other > row) idRows.put(id, row);
+	}
+
+	/**
+	 * Sets the origin of a row.
+	 *
+	 * @param row the row
+	 * @param origin the new origin
+	 */
+	void setOrigin(int row, Node origin) {
+		origins[row] = encodeNode(origin);
+	}
+
+	/**
+	 * Sets the destination of a row.
+	 *
+	 * @param row the row
+	 * @param destination the new destination
+	 */
+	void setDestination(int row, Node destination) {
+		destinations[row] = encodeNode(destination);
+	}
+
+	/**
+	 * Sets the edge type of a row.
+	 *
+	 * @param row the row
+	 * @param edgeType the new edge type
+	 */
+	void setEdgeType(int row, EdgeType edgeType) {
+		edgeTypes[row] = (short)edgeTypeDictionary.encode(edgeType);
+	}
+
+	/**
+	 * Sets the edge direction of a row.
+	 *
+	 * @param row the row
+	 * @param edgeDirection the new edge direction
+	 */
+	void setEdgeDirection(int row, EdgeDirection edgeDirection) {
+		directions[row] = encodeDirection(edgeDirection);
+	}
+
+	/**
+	 * Sets the region of a row.
+	 *
+	 * @param row the row
+	 * @param region the new region
+	 */
+	void setRegion(int row, Region region) {
+		regions[row] = (short)regionDictionary.encode(region);
+	}
+
+	/**
+	 * Gets the version of the table, which changes whenever rows are removed
+	 * so that flyweights must locate their row again by id.
+	 *
+	 * @return the version
+	 */
+	int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Creates a plain edge object with the values of a row.
+	 *
+	 * @param row the row
+	 * @param nodes the plain nodes by id to use as origin and destination,
+	 * or null to use the nodes of the node table
+	 * @return the edge
+	 */
+	Edge copyEdge(int row, Map<Integer,Node> nodes) {
+		Edge edge = new Edge();
+		edge.setId(ids[row]);
+		edge.setOrigin(nodes != null && nodes.containsKey(getOriginId(row)) ?
+				nodes.get(getOriginId(row)) : getOrigin(row));
+		edge.setDestination(nodes != null && nodes.containsKey(getDestinationId(row)) ?
+				nodes.get(getDestinationId(row)) : getDestination(row));
+		edge.setEdgeType(getEdgeType(row));
+		edge.setEdgeDirection(getEdgeDirection(row));
+		edge.setRegion(getRegion(row));
+		return edge;
+	}
+
+	/**
+	 * Creates plain edge objects with the values of all rows.
+	 *
+	 * @param nodes the plain nodes by id to use as origins and destinations
+	 * @return the edges
+	 */
+	List<Edge> copyEdges(Map<Integer,Node> nodes) {
+		List<Edge> edges = new ArrayList<Edge>(size);
+		for(int i=0; i<size; i++) {
+			edges.add(copyEdge(i, nodes));
+		}
+		return edges;
+	}
+
+	/**
+	 * Replaces the node table rows of origins and destinations after rows of 
+	 * the node table are removed. Origins and destinations whose rows are 
+	 * removed keep a plain copy of their node, as node objects would. Must 
+	 * be called before the node table moves its rows.
+	 *
+	 * @param newRows the new row of each node table row, or -1 if removed
+	 */
+	void remapNodes(int[] newRows) {
+		LongIntMap removedCodes = new LongIntMap(16);
+		for(int i=0; i<size; i++) {
+			origins[i] = remapNode(origins[i], newRows, removedCodes);
+			destinations[i] = remapNode(destinations[i], newRows, removedCodes);
+		}
+	}
+
+	/**
+	 * Replaces the node table row of an origin or destination.
+	 *
+	 * @param code the origin or destination code
+	 * @param newRows the new row of each node table row, or -1 if removed
+	 * @param removedCodes the negated codes of the copies of removed nodes by row
+	 * @return the new code
+	 */
+	private int remapNode(int code, int[] newRows, LongIntMap removedCodes) {
+		if(code < 0) return code;
+		if(newRows[code] >= 0) return newRows[code];
+		int kept = removedCodes.get(code);
+		if(kept < 0) {
+			kept = -encodeExternal(nodeTable.copyNode(code));
+			removedCodes.put(code, kept);
+		}
+		return -kept;
+	}
+
+	/**
+	 * Encodes a node as its row in the node table. Nodes which are not in 
+	 * the node table are kept so that they can be returned as they are.
+	 *
+	 * @param node the node
+	 * @return the code: the row, NO_NODE if the node is null, or a negative 
+	 * code of a kept node
+	 */
+	private int encodeNode(Node node) {
+		if(node == null) return NO_NODE;
+		int row = -1;
+		if(node instanceof ColumnarNode && ((ColumnarNode)node).getTable() == nodeTable) {
+			row = ((ColumnarNode)node).getRow();
+		}
+		if(row < 0) row = nodeTable.getRow(node.getId());
+		return row < 0 ? encodeExternal(node) : row;
+	}
+
+	/**
+	 * Encodes a node which is not in the node table.
+	 *
+	 * @param node the node
+	 * @return the negative code of the kept node
+	 */
+	private int encodeExternal(Node node) {
+		Integer index = externalCodes.get(node);
+		if(index == null) {
+			index = externalNodes.size();
+			externalNodes.add(node);
+			externalCodes.put(node, index);
+		}
+		return -2 - index;
+	}
+
+	/**
+	 * Decodes a node.
+	 *
+	 * @param code the code
+	 * @return the node
+	 */
+	private Node decodeNode(int code) {
+		if(code == NO_NODE) return null;
+		return code >= 0 ? nodeTable.get(code) : externalNodes.get(-2 - code);
+	}
+
+	/**
+	 * Gets the id of an encoded node.
+	 *
+	 * @param code the code
+	 * @return the node id, or Integer.MIN_VALUE if no node
+	 */
+	private int getNodeId(int code) {
+		if(code == NO_NODE) return Integer.MIN_VALUE;
+		return code >= 0 ? nodeTable.getId(code) : externalNodes.get(-2 - code).getId();
+	}
+
+	/**
+	 * Releases the kept nodes which are no longer referred to by any row.
+	 */
+	private void retainExternalNodes() {
+		if(externalNodes.isEmpty()) return;
+		int[] remap = new int[externalNodes.size()];
+		Arrays.fill(remap, -1);
+		for(int i=0; i<size; i++) {
+			if(origins[i] < NO_NODE) remap[-2 - origins[i]] = 0;
+			if(destinations[i] < NO_NODE) remap[-2 - destinations[i]] = 0;
+		}
+		List<Node> used = new ArrayList<Node>();
+		for(int k=0; k<remap.length; k++) {
+			if(remap[k] < 0) continue;
+			remap[k] = used.size();
+			used.add(externalNodes.get(k));
+		}
+		if(used.size() == externalNodes.size()) return;
+		for(int i=0; i<size; i++) {
+			if(origins[i] < NO_NODE) origins[i] = -2 - remap[-2 - origins[i]];
+			if(destinations[i] < NO_NODE) destinations[i] = -2 - remap[-2 - destinations[i]];
+		}
+		externalNodes = used;
+		externalCodes.clear();
+		for(int k=0; k<used.size(); k++) {
+			externalCodes.put(used.get(k), k);
+		}
+	}
+
+	/**
+	 * Encodes an edge direction as its ordinal.
+	 *
+	 * @param edgeDirection the edge direction
+	 * @return the ordinal, or -1 if the edge direction is null
+	 */
+	private static byte encodeDirection(EdgeDirection edgeDirection) {
+		return edgeDirection == null ? -1 : (byte)edgeDirection.ordinal();
+	}
+
+	/**
+	 * Rebuilds the id index, which is only required if ids are not sorted.
+	 */
+	private void indexIds() {
+		if(idRows == null) return;
+		idRows = null;
+		for(int i=1; i<size; i++) {
+			if(ids[i] < ids[i-1]) {
+				idRows = new LongIntMap(size);
+				break;
+			}
+		}
+		if(idRows != null) {
+			for(int i=0; i<size; i++) idRows.putIfAbsent(ids[i], i);
+		}
+	}
+
+	/**
+	 * Checks that a row is within the table.
+	 *
+	 * @param row the row
+	 */
+	private void checkRow(int row) {
+		if(row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+		}
+	}
+}
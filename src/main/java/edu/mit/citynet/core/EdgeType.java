@@ -31,6 +31,8 @@ public class EdgeType implements Cloneable {
 	private String name, description;
 	private Color color;
 	private List<EdgeTypeAttribute> attributes;
+	private volatile AttributeSchema.Values attributeValues;
+	private volatile int attributesVersion;
 	
 	/**
 	 * Instantiates a new node type and initializes the attributes to an empty 
@@ -132,7 +134,9 @@ public class EdgeType implements Cloneable {
 	public boolean addAttribute(EdgeTypeAttribute attribute) {
 		if(attribute.getId()==0)
 			attribute.setId(CityNet.getInstance().getNextEdgeTypeAttributeId());
-		return attributes.add(attribute);
+		boolean added = attributes.add(attribute);
+		attributesVersion++;
+		return added;
 	}
 	
 	/**
@@ -142,7 +146,9 @@ public class EdgeType implements Cloneable {
 	 * @return true, if successful
 	 */
 	public boolean addAllAttributes(Collection<EdgeTypeAttribute> attributes) {
-		return this.attributes.addAll(attributes);
+		boolean added = this.attributes.addAll(attributes);
+		attributesVersion++;
+		return added;
 	}
 	
 	/**
@@ -152,7 +158,9 @@ public class EdgeType implements Cloneable {
 	 * @return true, if successful
 	 */
 	public boolean removeAllAttributes(Collection<EdgeTypeAttribute> attributes) {
-		return this.attributes.removeAll(attributes);
+		boolean removed = this.attributes.removeAll(attributes);
+		attributesVersion++;
+		return removed;
 	}
 	
 	/**
@@ -163,6 +171,43 @@ public class EdgeType implements Cloneable {
 	public void setAttributes(Collection<EdgeTypeAttribute> attributes) {
 		this.attributes.clear();
 		this.attributes.addAll(attributes);
+		attributesVersion++;
+	}
+
+	/**
+	 * Gets the value of an attribute by its slot in the attribute schema.
+	 *
+	 * @param slot the slot
+	 * @return the value, or NaN if the attribute is not defined
+	 */
+	public double getAttribute(int slot) {
+		return getAttributeValues().get(slot);
+	}
+
+	/**
+	 * Checks if an attribute is defined by its slot in the attribute schema. 
+	 * A defined attribute may have the value NaN.
+	 *
+	 * @param slot the slot
+	 * @return true, if the attribute is defined
+	 */
+	public boolean hasAttribute(int slot) {
+		return getAttributeValues().isDefined(slot);
+	}
+
+	/**
+	 * Gets the attribute values by slot, gathering them again if the 
+	 * attributes or any of their names or values were modified.
+	 *
+	 * @return the attribute values
+	 */
+	private AttributeSchema.Values getAttributeValues() {
+		AttributeSchema.Values values = attributeValues;
+		if(values == null || !values.isCurrent(attributesVersion)) {
+			values = new AttributeSchema.Values(attributes, attributesVersion);
+			attributeValues = values;
+		}
+		return values;
 	}
 	
 	/* (non-Javadoc)
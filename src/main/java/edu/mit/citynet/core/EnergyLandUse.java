@@ -0,0 +1,96 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The EnergyLandUse behavior computes the land used by the power stations of
+ * the energy systems in each cell, in square kilometers, mirroring the
+ * EnergyLandUse behavior of the MATLAB interface. Stations missing one of
+ * their attributes use no land.
+ */
+public class EnergyLandUse extends CellBehavior {
+	public static final String SYSTEM_NAME = "Energy";
+	public static final String CSP_STATION = "CSP Station";
+	public static final String PV_STATION = "PV Station";
+	public static final String WIND_FARM = "Wind Farm";
+
+	private List<SystemColumns> systems = new ArrayList<SystemColumns>();
+	private List<double[]> nodeLandUses = new ArrayList<double[]>();
+
+	/**
+	 * Instantiates a new energy land use behavior.
+	 */
+	public EnergyLandUse() {
+		super("Land Use", "Calculates the land area occupied by the energy system.",
+				"sq-km", "[0,inf)");
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CellBehavior#prepare(edu.mit.citynet.core.CityColumns)
+	 */
+	protected void prepare(CityColumns columns) {
+		systems.clear();
+		nodeLandUses.clear();
+		for(SystemColumns system : columns.getSystems()) {
+			if(SYSTEM_NAME.equalsIgnoreCase(system.getSystem().getName())) {
+				systems.add(system);
+				nodeLandUses.add(getNodeLandUse(system));
+			}
+		}
+	}
+
+	/**
+	 * Gets the land use of each node of an energy system.
+	 *
+	 * @param system the system
+	 * @return the land use by node index
+	 */
+	private double[] getNodeLandUse(SystemColumns system) {
+		boolean[] csp = system.getNodeTypeMask(CSP_STATION);
+		boolean[] pv = system.getNodeTypeMask(PV_STATION);
+		boolean[] wind = system.getNodeTypeMask(WIND_FARM);
+		double[] mirrorLength = system.getNodeAttribute("Mirror Length");
+		double[] mirrorWidth = system.getNodeAttribute("Mirror Width");
+		double[] numberMirrors = system.getNodeAttribute("Number of mirrors");
+		double[] areaMultiplier = system.getNodeAttribute("Area Multiplier");
+		double[] panelLength = system.getNodeAttribute("Panel Length");
+		double[] panelWidth = system.getNodeAttribute("Panel Width");
+		double[] numberPanels = system.getNodeAttribute("Number of panels");
+		double[] numberTurbines = system.getNodeAttribute("Number of turbines");
+		double[] bladeLength = system.getNodeAttribute("Turbine blade length");
+		double[] nodeLandUse = new double[system.getNumberNodes()];
+		for(int i=0; i<nodeLandUse.length; i++) {
+			double landUse = 0;
+			if(csp[i]) {
+				landUse = mirrorLength[i]*mirrorWidth[i]*numberMirrors[i]*areaMultiplier[i]/1e6;
+			} else if(pv[i]) {
+				landUse = panelLength[i]*panelWidth[i]*numberPanels[i]*1.5/1e6;
+			} else if(wind[i]) {
+				landUse = numberTurbines[i]*4*6.5/1e6*Math.pow(2*bladeLength[i], 2);
+			}
+			nodeLandUse[i] = Double.isNaN(landUse) ? 0 : landUse;
+		}
+		return nodeLandUse;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CellBehavior#evaluateCell(edu.mit.citynet.core.CityColumns, int)
+	 */
+	protected double evaluateCell(CityColumns columns, int cell) {
+		double landUse = 0;
+		for(int s=0; s<systems.size(); s++) {
+			SystemColumns system = systems.get(s);
+			double[] nodeLandUse = nodeLandUses.get(s);
+			for(int i=system.getFirstCellNode(cell); i<system.getEndCellNode(cell); i++) {
+				landUse += nodeLandUse[system.getCellNode(i)];
+			}
+		}
+		return landUse;
+	}
+}
\ No newline at end of file
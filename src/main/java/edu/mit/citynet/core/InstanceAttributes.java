@@ -0,0 +1,234 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.Arrays;
+
+/**
+ * The InstanceAttributes class holds attribute values of individual nodes or
+ * edges of a system which override the values of their node type or edge type,
+ * such as the population of one building or the capacity of one link.
+ *
+ * Values are stored in one dense column of doubles per attribute slot (see
+ * AttributeSchema), with one row for each node or edge having any value, so
+ * millions of values take a few arrays rather than millions of objects. Rows
+ * are found from node or edge ids through a primitive hash map. Missing
+ * values are NaN, in which case the type value applies.
+ */
+public final class InstanceAttributes {
+	private LongIntMap rows = new LongIntMap(16);
+	private int[] ids = new int[16];
+	private double[][] columns = new double[0][];
+	private int numberRows;
+	private int modCount;
+
+	/**
+	 * Instantiates new instance attributes.
+	 */
+	InstanceAttributes() { }
+
+	/**
+	 * Gets the number of nodes or edges having values.
+	 *
+	 * @return the number of rows
+	 */
+	public synchronized int size() {
+		return numberRows;
+	}
+
+	/**
+	 * Checks if no node or edge has values.
+	 *
+	 * @return true, if empty
+	 */
+	public synchronized boolean isEmpty() {
+		return numberRows == 0;
+	}
+
+	/**
+	 * Gets the value of an attribute of a node or edge.
+	 *
+	 * @param id the node or edge id
+	 * @param slot the attribute slot
+	 * @return the value, or NaN if the node or edge has no value
+	 */
+	public synchronized double getValue(int id, int slot) {
+		if(slot < 0 || slot >= columns.length || columns[slot] == null) return Double.NaN;
+		int row = rows.get(id);
+		return row < 0 ? Double.NaN : columns[slot][row];
+	}
+
+	/**
+	 * Sets the value of an attribute of a node or edge. Setting NaN removes
+	 * the value so the type value applies.
+	 *
+	 * @param id the node or edge id
+	 * @param slot the attribute slot
+	 * @param value the value
+	 */
+	public synchronized void setValue(int id, int slot, double value) {
+		if(slot < 0) {
+			throw new IllegalArgumentException("Attribute slot cannot be negative.");
+		}
+		int row = rows.get(id);
+		if(row < 0) {
+			if(Double.isNaN(value)) return;
+			row = addRow(id);
+		}
+		getColumn(slot)[row] = value;
+		modCount++;
+	}
+
+	/**
+	 * Sets the values of an attribute of many nodes or edges.
+	 *
+	 * @param ids the node or edge ids
+	 * @param slot the attribute slot
+	 * @param values the values, in the order of ids
+	 */
+	public synchronized void setValues(int[] ids, int slot, double[] values) {
+		if(ids.length != values.length) {
+			throw new IllegalArgumentException("Ids and values must have the same length.");
+		}
+		for(int i=0; i<ids.length; i++) {
+			setValue(ids[i], slot, values[i]);
+		}
+	}
+
+	/**
+	 * Gets the slots having values of any node or edge.
+	 *
+	 * @return the slots in increasing order
+	 */
+	public synchronized int[] getSlots() {
+		int[] slots = new int[columns.length];
+		int numberSlots = 0;
+		for(int slot=0; slot<columns.length; slot++) {
+			if(columns[slot] != null) slots[numberSlots++] = slot;
+		}
+		return Arrays.copyOf(slots, numberSlots);
+	}
+
+	/**
+	 * Gets the ids of the nodes or edges having values, in row order.
+	 *
+	 * @return the ids
+	 */
+	public synchronized int[] getIds() {
+		return Arrays.copyOf(ids, numberRows);
+	}
+
+	/**
+	 * Gets the values of a slot in row order, matching the order of the ids.
+	 *
+	 * @param slot the attribute slot
+	 * @return the values, NaN where a node or edge has no value
+	 */
+	public synchronized double[] getValues(int slot) {
+		double[] values = new double[numberRows];
+		if(slot >= 0 && slot < columns.length && columns[slot] != null) {
+			System.arraycopy(columns[slot], 0, values, 0, numberRows);
+		} else {
+			Arrays.fill(values, Double.NaN);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the number of times values have been set or removed, which only 
+	 * increases, e.g. to detect changed values since a save.
+	 *
+	 * @return the modification count
+	 */
+	public synchronized int getModCount() {
+		return modCount;
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	public synchronized void clear() {
+		rows.clear();
+		ids = new int[16];
+		columns = new double[0][];
+		numberRows = 0;
+		modCount++;
+	}
+
+	/**
+	 * Removes the values of nodes or edges, compacting the columns.
+	 *
+	 * @param removedIds the node or edge ids
+	 */
+	synchronized void removeAll(int[] removedIds) {
+		if(numberRows == 0) return;
+		boolean[] removed = new boolean[numberRows];
+		for(int id : removedIds) {
+			int row = rows.get(id);
+			if(row >= 0) removed[row] = true;
+		}
+		int kept = 0;
+		for(int row=0; row<numberRows; row++) {
+			if(removed[row]) continue;
+			if(kept != row) {
+				ids[kept] = ids[row];
+				for(double[] column : columns) {
+					if(column != null) column[kept] = column[row];
+				}
+			}
+			kept++;
+		}
+		if(kept == numberRows) return;
+		for(double[] column : columns) {
+			if(column != null) Arrays.fill(column, kept, numberRows, Double.NaN);
+		}
+		numberRows = kept;
+		modCount++;
+		rows = new LongIntMap(numberRows);
+		for(int row=0; row<numberRows; row++) {
+			rows.put(ids[row], row);
+		}
+	}
+
+	/**
+	 * Adds a row for a node or edge, growing the columns if needed.
+	 *
+	 * @param id the node or edge id
+	 * @return the row
+	 */
+	private int addRow(int id) {
+		if(numberRows == ids.length) {
+			int capacity = 2*ids.length;
+			ids = Arrays.copyOf(ids, capacity);
+			for(int slot=0; slot<columns.length; slot++) {
+				if(columns[slot] != null) {
+					columns[slot] = Arrays.copyOf(columns[slot], capacity);
+					Arrays.fill(columns[slot], numberRows, capacity, Double.NaN);
+				}
+			}
+		}
+		ids[numberRows] = id;
+		rows.put(id, numberRows);
+		return numberRows++;
+	}
+
+	/**
+	 * Gets the column of a slot, creating it if needed.
+	 *
+	 * @param slot the attribute slot
+	 * @return the column
+	 */
+	private double[] getColumn(int slot) {
+		if(slot >= columns.length) {
+			columns = Arrays.copyOf(columns, slot+1);
+		}
+		if(columns[slot] == null) {
+			columns[slot] = new double[ids.length];
+			Arrays.fill(columns[slot], Double.NaN);
+		}
+		return columns[slot];
+	}
+}
\ No newline at end of file
@@ -1,5 +1,10 @@
 package edu.mit.citynet.core;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import com.vividsolutions.jts.geom.GeometryFactory;
 
 import edu.mit.citynet.CityNet;
@@ -57,51 +62,102 @@ public class InterLayerRegion extends Region implements Cloneable {
 	}
 	
 	/* (non-Javadoc)
-	 * @see edu.mit.citynet.core.Region#generateRegion(edu.mit.citynet.core.CitySystem)
+	 * @see edu.mit.citynet.core.Region#prepareGeneration()
 	 */
-	public void generateRegion(CitySystem system) {
+	public RegionGeneration prepareGeneration() {
 		GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
+		City city = CityNet.getInstance().getCity();
 		
-		Node[] originNodes = new Node[getCoordinateList().size()];
-		Node[] destinationNodes = new Node[getCoordinateList().size()];
+		Generation generation = new Generation();
 		for(int i=0;i<getCoordinateList().size();i++) {
-			for(Node node : system.getNodes()) {
-				if(node.getLayer().equals(originLayer)
-						&& node.getCell().containsPoint(gf.createPoint(
-								getCoordinateList().getCoordinate(i)))) {
-					originNodes[i] = node;
-				} else if(node.getLayer().equals(destinationLayer)
-						&& node.getCell().containsPoint(gf.createPoint(
-								getCoordinateList().getCoordinate(i)))) {
-					destinationNodes[i] = node;
-				}
-				if(originNodes[i]!=null && destinationNodes[i]!=null) break;
-			}
-		}
-		for(int i=0;i<getCoordinateList().size()-1;i++) {
-			if(originNodes[i] != null 
-					&& destinationNodes[i] != null 
-					&& !originNodes[i].equals(destinationNodes[i])) {
-				createEdge(system,originNodes[i],destinationNodes[i]);
-			}
+			generation.pointCells.add(city.getCellsContaining(
+					gf.createPoint(getCoordinateList().getCoordinate(i))));
 		}
+		return generation;
 	}
 	
 	/**
-	 * Creates the edge.
-	 *
-	 * @param system the system
-	 * @param origin the origin
-	 * @param destination the destination
+	 * The Generation class stores the cells at each point of an inter-layer
+	 * region and the region properties at the time it was prepared.
 	 */
-	private void createEdge(CitySystem system, Node origin, Node destination) {
-		Edge edge = new Edge();
-		edge.setId(CityNet.getInstance().getNextEdgeId());
-		edge.setOrigin(origin);
-		edge.setDestination(destination);
-		edge.setEdgeDirection(getEdgeDirection());
-		edge.setEdgeType(getEdgeType());
-		system.addEdge(edge);
+	private class Generation implements RegionGeneration {
+		private Layer originLayer = getOriginLayer();
+		private Layer destinationLayer = getDestinationLayer();
+		private EdgeType edgeType = getEdgeType();
+		private EdgeDirection edgeDirection = getEdgeDirection();
+		private List<List<Cell>> pointCells = new ArrayList<List<Cell>>();
+		private Set<Cell> cells;
+		
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.core.RegionGeneration#getRegion()
+		 */
+		public Region getRegion() {
+			return InterLayerRegion.this;
+		}
+		
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.core.RegionGeneration#getLayers()
+		 */
+		public Set<Layer> getLayers() {
+			Set<Layer> layers = new HashSet<Layer>();
+			layers.add(originLayer);
+			layers.add(destinationLayer);
+			return layers;
+		}
+		
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.core.RegionGeneration#getCells()
+		 */
+		public Set<Cell> getCells() {
+			if(cells == null) {
+				cells = new HashSet<Cell>();
+				for(List<Cell> list : pointCells) {
+					cells.addAll(list);
+				}
+			}
+			return cells;
+		}
+		
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.core.RegionGeneration#generate(edu.mit.citynet.core.CitySystem)
+		 */
+		public void generate(CitySystem system) {
+			Node[] originNodes = new Node[pointCells.size()];
+			Node[] destinationNodes = new Node[pointCells.size()];
+			for(int i=0;i<pointCells.size();i++) {
+				for(Cell cell : pointCells.get(i)) {
+					if(originNodes[i]==null)
+						originNodes[i] = system.getNode(cell, originLayer);
+					if(destinationNodes[i]==null)
+						destinationNodes[i] = system.getNode(cell, destinationLayer);
+				}
+			}
+			for(int i=0;i<pointCells.size()-1;i++) {
+				if(originNodes[i] != null 
+						&& destinationNodes[i] != null 
+						&& !originNodes[i].equals(destinationNodes[i])) {
+					createEdge(system,originNodes[i],destinationNodes[i]);
+				}
+			}
+		}
+		
+		/**
+		 * Creates the edge.
+		 *
+		 * @param system the system
+		 * @param origin the origin
+		 * @param destination the destination
+		 */
+		private void createEdge(CitySystem system, Node origin, Node destination) {
+			Edge edge = new Edge();
+			edge.setId(CityNet.getInstance().getNextEdgeId());
+			edge.setOrigin(origin);
+			edge.setDestination(destination);
+			edge.setEdgeDirection(edgeDirection);
+			edge.setEdgeType(edgeType);
+			edge.setRegion(InterLayerRegion.this);
+			system.addEdge(edge);
+		}
 	}
 	
 	/* (non-Javadoc)
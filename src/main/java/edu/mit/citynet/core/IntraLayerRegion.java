@@ -1,11 +1,16 @@
 package edu.mit.citynet.core;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.geom.Point;
 
 import edu.mit.citynet.CityNet;
 
@@ -139,189 +144,226 @@ public class IntraLayerRegion extends Region implements Cloneable {
 	}
 	
 	/* (non-Javadoc)
-	 * @see edu.mit.citynet.core.Region#generateRegion(edu.mit.citynet.core.CitySystem)
+	 * @see edu.mit.citynet.core.Region#prepareGeneration()
 	 */
-	public void generateRegion(CitySystem system) {
+	public RegionGeneration prepareGeneration() {
 		GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
-		Vector<Node> newNodes = new Vector<Node>();
-		switch(nodeGenerationType) {
-		case POLYGON:
-			for(Cell cell : CityNet.getInstance().getCity().getCells()) {
-				if(containsPolygon(cell.getPolygon(), 0.5)) {
-					newNodes.add(createNode(system,cell));
-				}
+		Generation generation = new Generation();
+		generation.nodeCells = getCellsForNodeGeneration(nodeGenerationType);
+		switch(edgeGenerationType) {
+		case SEQUENTIAL:
+			for(int i=0;i<getCoordinateList().size();i++) {
+				generation.edgeCells.addAll(CityNet.getInstance().getCity().getCellsContaining(
+						gf.createPoint(getCoordinateList().getCoordinate(i))));
 			}
 			break;
-		case POLYLINE:
-			LineString line = gf.createLineString(getCoordinateList().toCoordinateArray());
-			for(Cell cell : CityNet.getInstance().getCity().getCells()) {
-				if(cell.intersectsLine(line)) {
-					newNodes.add(createNode(system,cell));
-				}
+		case ORTHOGONAL:
+		case ADJACENT:
+		case CONNECTED:
+			// TODO: special case if not polygon node generation but wants
+			// orthogonal edge generation...
+			if(nodeGenerationType==NodeGenerationType.NONE) {
+				generation.edgeCells = getCellsForNodeGeneration(NodeGenerationType.POLYGON);
+			} else {
+				generation.edgeCells = generation.nodeCells;
 			}
-			break;
-		case POLYPOINT:
-			for(Cell cell : CityNet.getInstance().getCity().getCells()) {
-				for(Coordinate coord : getCoordinateList().toCoordinateArray()) {
-					if(cell.containsPoint(gf.createPoint(coord))) {
-						newNodes.add(createNode(system,cell));
-						break;
-					}
-				}
+			if(edgeGenerationType!=EdgeGenerationType.CONNECTED) {
+				generation.cellPairs = CellAdjacency.getCellPairs(generation.edgeCells, 
+						edgeGenerationType==EdgeGenerationType.ADJACENT);
 			}
 			break;
 		case NONE:
 			// do nothing
 		}
-
-		Vector<Node> nodes;
-		switch(edgeGenerationType) {
-		case SEQUENTIAL:
-			nodes = new Vector<Node>();
-			for(int i=0;i<getCoordinateList().size();i++) {
-				for(Node node : system.getNodes()) {
-					if(node.getLayer().equals(layer)
-							&& node.getCell().containsPoint(gf.createPoint(
-									getCoordinateList().getCoordinate(i)))) {
-						nodes.addElement(node);
-					}
-				}
+		return generation;
+	}
+	
+	/**
+	 * The Generation class stores the cells matched by an intra-layer region 
+	 * and the region properties at the time it was prepared.
+	 */
+	private class Generation implements RegionGeneration {
+		private Layer layer = getLayer();
+		private NodeType nodeType = getNodeType();
+		private EdgeGenerationType edgeGenerationType = getEdgeGenerationType();
+		private EdgeType edgeType = getEdgeType();
+		private EdgeDirection edgeDirection = getEdgeDirection();
+		private List<Cell> nodeCells = new ArrayList<Cell>();
+		private List<Cell> edgeCells = new ArrayList<Cell>();
+		private List<Cell[]> cellPairs = new ArrayList<Cell[]>();
+		private Set<Cell> cells;
+		
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.core.RegionGeneration#getRegion()
+		 */
+		public Region getRegion() {
+			return IntraLayerRegion.this;
+		}
+		
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.core.RegionGeneration#getLayers()
+		 */
+		public Set<Layer> getLayers() {
+			return Collections.singleton(layer);
+		}
+		
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.core.RegionGeneration#getCells()
+		 */
+		public Set<Cell> getCells() {
+			if(cells == null) {
+				cells = new HashSet<Cell>(nodeCells);
+				cells.addAll(edgeCells);
 			}
-			for(int i=0;i<nodes.size()-1;i++) {
-				if(!nodes.get(i).equals(nodes.get(i+1))) {
-					createEdge(system,nodes.get(i),nodes.get(i+1));
-				}
+			return cells;
+		}
+		
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.core.RegionGeneration#generate(edu.mit.citynet.core.CitySystem)
+		 */
+		public void generate(CitySystem system) {
+			for(Cell cell : nodeCells) {
+				createNode(system,cell);
 			}
-			break;
-		case ORTHOGONAL:
-			nodes = getNodesForEdgeGeneration(nodeGenerationType,system);
-			for(int i=0;i<nodes.size();i++) {
-				for(int j=i+1;j<nodes.size();j++) {
-					Node origin = nodes.get(i);
-					Node destination = nodes.get(j);
-					if(origin.getCell().getPolygon().intersection(
-							destination.getCell().getPolygon()) 
-							instanceof LineString) {
-						createEdge(system,origin,destination);
+			
+			Vector<Node> nodes;
+			switch(edgeGenerationType) {
+			case SEQUENTIAL:
+				nodes = getNodes(system);
+				for(int i=0;i<nodes.size()-1;i++) {
+					if(!nodes.get(i).equals(nodes.get(i+1))) {
+						createEdge(system,nodes.get(i),nodes.get(i+1));
 					}
 				}
-			}
-			break;
-		case ADJACENT:
-			nodes = getNodesForEdgeGeneration(nodeGenerationType,system);
-			for(int i=0;i<nodes.size();i++) {
-				for(int j=i+1;j<nodes.size();j++) {
-					Node origin = nodes.get(i);
-					Node destination = nodes.get(j);
-					if(origin.getCell().getPolygon().intersection(
-							destination.getCell().getPolygon()) 
-							instanceof LineString || 
-							origin.getCell().getPolygon().intersection(
-									destination.getCell().getPolygon()) 
-									instanceof Point) {
+				break;
+			case ORTHOGONAL:
+			case ADJACENT:
+				for(Cell[] pair : cellPairs) {
+					Node origin = system.getNode(pair[0], layer);
+					Node destination = system.getNode(pair[1], layer);
+					if(origin != null && destination != null) {
 						createEdge(system,origin,destination);
 					}
 				}
-			}
-			break;
-		case CONNECTED:
-			nodes = getNodesForEdgeGeneration(nodeGenerationType,system);
-			for(int i=0;i<nodes.size();i++) {
-				for(int j=i+1;j<nodes.size();j++) {
-					Node origin = nodes.get(i);
-					Node destination = nodes.get(j);
-					if(!origin.equals(destination)) {
-						createEdge(system,origin,destination);
+				break;
+			case CONNECTED:
+				nodes = getNodes(system);
+				for(int i=0;i<nodes.size();i++) {
+					for(int j=i+1;j<nodes.size();j++) {
+						Node origin = nodes.get(i);
+						Node destination = nodes.get(j);
+						if(!origin.equals(destination)) {
+							createEdge(system,origin,destination);
+						}
 					}
 				}
+				break;
+			case NONE:
+				// do nothing
 			}
-			break;
-		case NONE:
-			// do nothing
+		}
+		
+		/**
+		 * Gets the nodes in the layer at the cells for edge generation.
+		 *
+		 * @param system the system
+		 * @return the nodes
+		 */
+		private Vector<Node> getNodes(CitySystem system) {
+			Vector<Node> nodes = new Vector<Node>();
+			for(Cell cell : edgeCells) {
+				Node node = system.getNode(cell, layer);
+				if(node != null) nodes.add(node);
+			}
+			return nodes;
+		}
+		
+		/**
+		 * Creates the node.
+		 *
+		 * @param system the system
+		 * @param cell the cell
+		 */
+		private Node createNode(CitySystem system, Cell cell) {
+			if(system.getNode(cell, layer) != null) {
+				return null; // node exists at same location
+			}
+			Node node = new Node();
+			node.setId(CityNet.getInstance().getNextNodeId());
+			node.setCell(cell);
+			node.setLayer(layer);
+			node.setNodeType(nodeType);
+			node.setRegion(IntraLayerRegion.this);
+			system.addNode(node);
+			return node;
+		}
+		
+		/**
+		 * Creates the edge.
+		 *
+		 * @param system the system
+		 * @param origin the origin
+		 * @param destination the destination
+		 */
+		private Edge createEdge(CitySystem system, Node origin, Node destination) {
+			Edge edge = new Edge();
+			edge.setId(CityNet.getInstance().getNextEdgeId());
+			edge.setOrigin(origin);
+			edge.setDestination(destination);
+			edge.setEdgeDirection(edgeDirection);
+			edge.setEdgeType(edgeType);
+			edge.setRegion(IntraLayerRegion.this);
+			system.addEdge(edge);
+			return edge;
 		}
 	}
 	
 	/**
-	 * Gets the nodes for edge generation.
+	 * Gets the cells matched by a node generation type, in the same order as
+	 * the city cells. Candidate cells are found using the city spatial index 
+	 * before testing the exact geometry.
 	 *
 	 * @param nodeGenerationType the node generation type
-	 * @param system the system
-	 * @return the nodes for edge generation
+	 * @return the matching cells
 	 */
-	private Vector<Node> getNodesForEdgeGeneration(NodeGenerationType nodeGenerationType, CitySystem system) {
+	private List<Cell> getCellsForNodeGeneration(NodeGenerationType nodeGenerationType) {
 		GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
-		Vector<Node> nodes = new Vector<Node>();
-		if(nodeGenerationType==NodeGenerationType.POLYGON 
-				|| nodeGenerationType==NodeGenerationType.NONE) {
-			for(Node node : system.getNodes()) {
-				if(node.getLayer().equals(layer)
-						&& this.containsPolygon(node.getCell().getPolygon(), 0.5)) {
-					nodes.add(node);
+		City city = CityNet.getInstance().getCity();
+		List<Cell> cells = new ArrayList<Cell>();
+		switch(nodeGenerationType) {
+		case POLYGON:
+			if(getCoordinateList().size()<3) break;
+			for(Cell cell : city.getCells(getPolygon().getEnvelopeInternal())) {
+				if(containsCell(cell, 0.5)) {
+					cells.add(cell);
 				}
 			}
-		} else if(nodeGenerationType==NodeGenerationType.POLYLINE) {
-			// TODO: special case if not polygon node generation but wants
-			// orthogonal edge generation...
+			break;
+		case POLYLINE:
 			LineString line = gf.createLineString(getCoordinateList().toCoordinateArray());
-			for(Node node : system.getNodes()) {
-				if(node.getLayer().equals(layer)
-						&& node.getCell().intersectsLine(line)) {
-					nodes.add(node);
+			for(Cell cell : city.getCells(line.getEnvelopeInternal())) {
+				if(cell.intersectsLine(line)) {
+					cells.add(cell);
 				}
 			}
-		} else if(nodeGenerationType==NodeGenerationType.POLYPOINT) {
-			// TODO: special case if not polygon node generation but wants
-			// orthogonal edge generation...
-			for(Node node : system.getNodes()) {
-				if(node.getLayer().equals(layer)) {
-					for(Coordinate coord : getCoordinateList().toCoordinateArray()) {
-						if(node.getCell().containsPoint(gf.createPoint(coord))) {
-							nodes.add(node);
-							break;
-						}
+			break;
+		case POLYPOINT:
+			List<Envelope> envelopes = new ArrayList<Envelope>();
+			for(Coordinate coord : getCoordinateList().toCoordinateArray()) {
+				envelopes.add(new Envelope(coord));
+			}
+			for(Cell cell : city.getCells(envelopes)) {
+				for(Coordinate coord : getCoordinateList().toCoordinateArray()) {
+					if(cell.containsPoint(gf.createPoint(coord))) {
+						cells.add(cell);
+						break;
 					}
 				}
 			}
+			break;
+		case NONE:
+			// do nothing
 		}
-		return nodes;
-	}
-	
-	/**
-	 * Creates the node.
-	 *
-	 * @param system the system
-	 * @param cell the cell
-	 */
-	private Node createNode(CitySystem system, Cell cell) {
-		for(Node n : system.getNodes()) {
-			if(n.getCell().equals(cell) && n.getLayer().equals(layer)) {
-				return null; // node exists at same location
-			}
-		}
-		Node node = new Node();
-		node.setId(CityNet.getInstance().getNextNodeId());
-		node.setCell(cell);
-		node.setLayer(layer);
-		node.setNodeType(nodeType);
-		system.addNode(node);
-		return node;
-	}
-	
-	/**
-	 * Creates the edge.
-	 *
-	 * @param system the system
-	 * @param origin the origin
-	 * @param destination the destination
-	 */
-	private Edge createEdge(CitySystem system, Node origin, Node destination) {
-		Edge edge = new Edge();
-		edge.setId(CityNet.getInstance().getNextEdgeId());
-		edge.setOrigin(origin);
-		edge.setDestination(destination);
-		edge.setEdgeDirection(getEdgeDirection());
-		edge.setEdgeType(getEdgeType());
-		system.addEdge(edge);
-		return edge;
+		return cells;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,156 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.Arrays;
+
+/**
+ * The LongIntMap class is an open-addressing hash map from long keys to
+ * non-negative int values which stores its entries in two primitive arrays,
+ * avoiding the boxed keys and entry objects of a HashMap.
+ */
+final class LongIntMap {
+	private static final int MISSING = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+
+	/**
+	 * Instantiates a new long int map.
+	 *
+	 * @param expectedSize the expected number of entries
+	 */
+	LongIntMap(int expectedSize) {
+		allocate(getCapacity(expectedSize));
+	}
+
+	/**
+	 * Gets the table capacity for a number of entries at a load factor of
+	 * one half.
+	 *
+	 * @param size the number of entries
+	 * @return the capacity, a power of two
+	 */
+	private static int getCapacity(int size) {
+		int capacity = 16;
+		while(capacity < 2*size) capacity <<= 1;
+		return capacity;
+	}
+
+	/**
+	 * Allocates empty tables.
+	 *
+	 * @param capacity the capacity
+	 */
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, MISSING);
+		size = 0;
+	}
+
+	/**
+	 * Gets the slot of a key, which is either the slot holding the key or
+	 * the empty slot where it would be inserted.
+	 *
+	 * @param key the key
+	 * @return the slot
+	 */
+	private int getSlot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		int mask = keys.length-1;
+		int slot = (int)(h ^ (h >>> 32)) & mask;
+		while(values[slot] != MISSING && keys[slot] != key) {
+			slot = (slot+1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Gets the value of a key.
+	 *
+	 * @param key the key
+	 * @return the value, or -1 if the key is not mapped
+	 */
+	int get(long key) {
+		return values[getSlot(key)];
+	}
+
+	/**
+	 * Maps a key to a value, replacing any previous value.
+	 *
+	 * @param key the key
+	 * @param value the non-negative value
+	 */
+	void put(long key, int value) {
+		int slot = getSlot(key);
+		if(values[slot] == MISSING) {
+			if(2*(size+1) > keys.length) {
+				grow();
+				slot = getSlot(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * Maps a key to a value if the key is not mapped yet.
+	 *
+	 * @param key the key
+	 * @param value the non-negative value
+	 */
+	void putIfAbsent(long key, int value) {
+		if(get(key) == MISSING) put(key, value);
+	}
+
+	/**
+	 * Removes the entry of a key. Entries following it in the same probe 
+	 * sequence are re-inserted so that they can still be found.
+	 *
+	 * @param key the key
+	 */
+	void remove(long key) {
+		int slot = getSlot(key);
+		if(values[slot] == MISSING) return;
+		values[slot] = MISSING;
+		size--;
+		int mask = keys.length-1;
+		for(int next = (slot+1) & mask; values[next] != MISSING; next = (next+1) & mask) {
+			long nextKey = keys[next];
+			int nextValue = values[next];
+			values[next] = MISSING;
+			size--;
+			put(nextKey, nextValue);
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	void clear() {
+		allocate(16);
+	}
+
+	/**
+	 * Doubles the capacity and re-inserts all entries.
+	 */
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(2*oldKeys.length);
+		for(int i=0; i<oldKeys.length; i++) {
+			if(oldValues[i] != MISSING) {
+				int slot = getSlot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				size++;
+			}
+		}
+	}
+}
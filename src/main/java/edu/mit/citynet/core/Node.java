@@ -16,6 +16,7 @@ public class Node {
 	private Cell cell;
 	private Layer layer;
 	private NodeType nodeType;
+	private transient Region region;
 	
 	/**
 	 * Gets the id.
@@ -89,6 +90,24 @@ public class Node {
 		this.nodeType = nodeType;
 	}
 	
+	/**
+	 * Gets the region which generated the node, if any.
+	 *
+	 * @return the region
+	 */
+	public Region getRegion() {
+		return region;
+	}
+	
+	/**
+	 * Sets the region which generated the node.
+	 *
+	 * @param region the new region
+	 */
+	public void setRegion(Region region) {
+		this.region = region;
+	}
+	
 	/**
 	 * Gets the node type attribute value.
 	 *
@@ -96,11 +115,20 @@ public class Node {
 	 * @return the node type attribute value
 	 */
 	public Double getNodeTypeAttributeValue(String attributeName) {
-		for(NodeTypeAttribute attribute : nodeType.getAttributes()) {
-			if(attribute.getName().equals(attributeName))
-				return attribute.getValue();
-		}
-		return null;
+		int slot = AttributeSchema.findSlot(attributeName);
+		NodeType nodeType = getNodeType();
+		return nodeType.hasAttribute(slot) ? nodeType.getAttribute(slot) : null;
+	}
+
+	/**
+	 * Gets the value of a node type attribute by its slot in the attribute
+	 * schema.
+	 *
+	 * @param slot the slot
+	 * @return the value, or NaN if the attribute is not defined
+	 */
+	public double getAttribute(int slot) {
+		return getNodeType().getAttribute(slot);
 	}
 	
 	/* (non-Javadoc)
@@ -108,14 +136,21 @@ public class Node {
 	 */
 	public boolean equals(Object object) {
 		if(object instanceof Node) {
-			return id==((Node)object).getId();
+			return getId()==((Node)object).getId();
 		} else return false;
 	}
 	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode() {
+		return getId();
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		return "Node" + id;
+		return "Node" + getId();
 	}
 }
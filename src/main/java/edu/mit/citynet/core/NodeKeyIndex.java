@@ -0,0 +1,173 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+/**
+ * The NodeKeyIndex class indexes the nodes of a system by cell and layer key
+ * (see CitySystem.getNodeKey) in an open-addressing hash table of primitive
+ * keys, avoiding the boxed keys and entry objects of a HashMap. Each key 
+ * holds the first node added with it and the number of nodes having it, so
+ * removing a node only requires looking for another node with its key if
+ * the removed node was the indexed one and others share its key.
+ */
+final class NodeKeyIndex {
+	private long[] keys;
+	private Node[] nodes;
+	private int[] counts;
+	private int size;
+
+	/**
+	 * Instantiates a new node key index.
+	 */
+	NodeKeyIndex() {
+		allocate(16);
+	}
+
+	/**
+	 * Allocates empty tables.
+	 *
+	 * @param capacity the capacity, a power of two
+	 */
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		nodes = new Node[capacity];
+		counts = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Gets the slot of a key, which is either the slot holding the key or
+	 * the empty slot where it would be inserted.
+	 *
+	 * @param key the key
+	 * @return the slot
+	 */
+	private int getSlot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		int mask = keys.length-1;
+		int slot = (int)(h ^ (h >>> 32)) & mask;
+		while(counts[slot] != 0 && keys[slot] != key) {
+			slot = (slot+1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Gets the indexed node of a key.
+	 *
+	 * @param key the key
+	 * @return the node, or null if no node has the key
+	 */
+	Node get(long key) {
+		return nodes[getSlot(key)];
+	}
+
+	/**
+	 * Adds a node with a key. The node is indexed unless another node 
+	 * already has the key.
+	 *
+	 * @param key the key
+	 * @param node the node
+	 */
+	void add(long key, Node node) {
+		int slot = getSlot(key);
+		if(counts[slot] == 0) {
+			if(2*(size+1) > keys.length) {
+				grow();
+				slot = getSlot(key);
+			}
+			keys[slot] = key;
+			nodes[slot] = node;
+			size++;
+		}
+		counts[slot]++;
+	}
+
+	/**
+	 * Removes a node with a key. If other nodes have the key and the removed
+	 * node was indexed, the key is left without a node until one is set 
+	 * with replace.
+	 *
+	 * @param key the key
+	 * @param node the node
+	 * @return true, if the key is left without a node
+	 */
+	boolean remove(long key, Node node) {
+		int slot = getSlot(key);
+		if(counts[slot] == 0) return false;
+		if(--counts[slot] == 0) {
+			delete(slot);
+			return false;
+		}
+		if(nodes[slot] != node) return false;
+		nodes[slot] = null;
+		return true;
+	}
+
+	/**
+	 * Indexes a node with a key if the key is left without a node.
+	 *
+	 * @param key the key
+	 * @param node the node
+	 * @return true, if the node was indexed
+	 */
+	boolean replace(long key, Node node) {
+		int slot = getSlot(key);
+		if(counts[slot] == 0 || nodes[slot] != null) return false;
+		nodes[slot] = node;
+		return true;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	void clear() {
+		allocate(16);
+	}
+
+	/**
+	 * Deletes the entry of a slot. Entries following it in the same probe
+	 * sequence are re-inserted so that they can still be found.
+	 *
+	 * @param slot the slot
+	 */
+	private void delete(int slot) {
+		counts[slot] = 0;
+		nodes[slot] = null;
+		size--;
+		int mask = keys.length-1;
+		for(int next = (slot+1) & mask; counts[next] != 0; next = (next+1) & mask) {
+			long nextKey = keys[next];
+			Node nextNode = nodes[next];
+			int nextCount = counts[next];
+			counts[next] = 0;
+			nodes[next] = null;
+			int target = getSlot(nextKey);
+			keys[target] = nextKey;
+			nodes[target] = nextNode;
+			counts[target] = nextCount;
+		}
+	}
+
+	/**
+	 * Doubles the capacity and re-inserts all entries.
+	 */
+	private void grow() {
+		long[] oldKeys = keys;
+		Node[] oldNodes = nodes;
+		int[] oldCounts = counts;
+		allocate(2*oldKeys.length);
+		for(int i=0; i<oldKeys.length; i++) {
+			if(oldCounts[i] != 0) {
+				int slot = getSlot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				nodes[slot] = oldNodes[i];
+				counts[slot] = oldCounts[i];
+				size++;
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -5,9 +5,13 @@
  */
 package edu.mit.citynet.core;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.swing.ImageIcon;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 
@@ -108,24 +112,30 @@ public class NodeRegion extends AbstractRegion implements Cloneable {
 	 */
 	public void generateNodes(CitySystem system) {
 		GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
+		City city = CityNet.getInstance().getCity();
 		switch(nodeRegionType) {
 		case POLYGON:
-			for(Cell cell : CityNet.getInstance().getCity().getCells()) {
-				if(containsPolygon(cell.getPolygon(), 0.5)) {
+			if(getCoordinateList().size()<3) break;
+			for(Cell cell : city.getCells(getPolygon().getEnvelopeInternal())) {
+				if(containsCell(cell, 0.5)) {
 					createNode(system,cell);
 				}
 			}
 			break;
 		case POLYLINE:
 			LineString line = gf.createLineString(getCoordinateList().toCoordinateArray());
-			for(Cell cell : CityNet.getInstance().getCity().getCells()) {
+			for(Cell cell : city.getCells(line.getEnvelopeInternal())) {
 				if(cell.intersectsLine(line)) {
 					createNode(system,cell);
 				}
 			}
 			break;
 		case POLYPOINT:
-			for(Cell cell : CityNet.getInstance().getCity().getCells()) {
+			List<Envelope> envelopes = new ArrayList<Envelope>();
+			for(Coordinate coord : getCoordinateList().toCoordinateArray()) {
+				envelopes.add(new Envelope(coord));
+			}
+			for(Cell cell : city.getCells(envelopes)) {
 				for(Coordinate coord : getCoordinateList().toCoordinateArray()) {
 					if(cell.containsPoint(gf.createPoint(coord))) {
 						createNode(system,cell);
@@ -140,10 +150,8 @@ public class NodeRegion extends AbstractRegion implements Cloneable {
 	}
 	
 	private void createNode(CitySystem system, Cell cell) {
-		for(Node n : system.getNodes()) {
-			if(n.getCell().equals(cell) && n.getLayer().equals(layer)) {
-				return; // node exists at same location
-			}
+		if(system.getNode(cell, layer) != null) {
+			return; // node exists at same location
 		}
 		Node node = new Node();
 		node.setId(CityNet.getInstance().getNextNodeId());
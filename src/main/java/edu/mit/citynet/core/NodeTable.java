@@ -0,0 +1,563 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The NodeTable class stores the nodes of a system in primitive columns
+ * instead of individual node objects. Cells are stored as cell ids and
+ * resolved through the city holding the system, and layers, node types and
+ * regions are encoded as dictionary codes, so a node takes 14 bytes. Nodes
+ * added to the table are copied into the columns; the nodes returned by the
+ * table are flyweights which read and write the columns of their row.
+ *
+ * Rows keep the order in which nodes were added. Nodes are located by id
+ * with a binary search as long as ids are added in ascending order (as by
+ * generation) and with a hash index otherwise.
+ */
+public final class NodeTable extends AbstractList<Node> {
+	private static final int NO_CELL = Integer.MIN_VALUE;
+
+	private int[] ids = new int[16];
+	private int[] cells = new int[16];
+	private short[] layers = new short[16];
+	private short[] nodeTypes = new short[16];
+	private short[] regions = new short[16];
+	private int size;
+	private int version;
+	private LongIntMap idRows;
+	private LongIntMap keyRows = new LongIntMap(16);
+	private City city;
+	private EdgeTable edgeTable;
+	private Map<Integer,Cell> externalCells = new HashMap<Integer,Cell>();
+	private ValueDictionary<Layer> layerDictionary = new ValueDictionary<Layer>(Short.MAX_VALUE);
+	private ValueDictionary<NodeType> nodeTypeDictionary = new ValueDictionary<NodeType>(Short.MAX_VALUE);
+	private ValueDictionary<Region> regionDictionary = new ValueDictionary<Region>(Short.MAX_VALUE);
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	public int size() {
+		return size;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#get(int)
+	 */
+	public Node get(int row) {
+		checkRow(row);
+		return new ColumnarNode(this, row);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#add(java.lang.Object)
+	 */
+	public boolean add(Node node) {
+		addRow(node.getId(), node.getCell(), node.getLayer(), 
+				node.getNodeType(), node.getRegion());
+		return true;
+	}
+
+	/**
+	 * Adds a node given by its values, without creating a node object, e.g.
+	 * to load the nodes of a file.
+	 *
+	 * @param id the node id
+	 * @param cell the cell
+	 * @param layer the layer
+	 * @param nodeType the node type
+	 * @param region the region
+	 * @return the row
+	 */
+	public int addRow(int id, Cell cell, Layer layer, NodeType nodeType, Region region) {
+		if(size == ids.length) {
+			int capacity = Math.max(16, ids.length + (ids.length >> 1));
+			ids = Arrays.copyOf(ids, capacity);
+			cells = Arrays.copyOf(cells, capacity);
+			layers = Arrays.copyOf(layers, capacity);
+			nodeTypes = Arrays.copyOf(nodeTypes, capacity);
+			regions = Arrays.copyOf(regions, capacity);
+		}
+		int row = size;
+		ids[row] = id;
+		cells[row] = encodeCell(cell);
+		layers[row] = (short)layerDictionary.encode(layer);
+		nodeTypes[row] = (short)nodeTypeDictionary.encode(nodeType);
+		regions[row] = (short)regionDictionary.encode(region);
+		size++;
+		if(idRows == null && row > 0 && ids[row] < ids[row-1]) {
+			idRows = new LongIntMap(size);
+			for(int i=0; i<row; i++) idRows.putIfAbsent(ids[i], i);
+		}
+		if(idRows != null) idRows.putIfAbsent(ids[row], row);
+		indexKey(row);
+		modCount++;
+		return row;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#remove(int)
+	 */
+	public Node remove(int row) {
+		checkRow(row);
+		Node node = copyNode(row);
+		boolean[] removed = new boolean[size];
+		removed[row] = true;
+		compact(removed);
+		return node;
+	}
+
+	/**
+	 * Removes all nodes equal to any of the given nodes in a single pass
+	 * over the columns.
+	 *
+	 * @param nodes the nodes
+	 * @return true, if any node was removed
+	 */
+	public boolean removeAll(Collection<?> nodes) {
+		LongIntMap removedIds = new LongIntMap(nodes.size());
+		for(Object object : nodes) {
+			if(object instanceof Node) removedIds.put(((Node)object).getId(), 0);
+		}
+		boolean[] removed = new boolean[size];
+		boolean any = false;
+		for(int i=0; i<size; i++) {
+			removed[i] = removedIds.get(ids[i]) >= 0;
+			any |= removed[i];
+		}
+		if(any) compact(removed);
+		return any;
+	}
+
+	/**
+	 * Removes rows and shifts the remaining rows down in one pass. Edges
+	 * referring to removed rows keep copies of the removed nodes, and values
+	 * no longer referred to by any row are released.
+	 *
+	 * @param removed the removed flags by row
+	 */
+	private void compact(boolean[] removed) {
+		if(edgeTable != null && !edgeTable.isEmpty()) {
+			int[] newRows = new int[size];
+			for(int i=0, n=0; i<size; i++) {
+				newRows[i] = removed[i] ? -1 : n++;
+			}
+			edgeTable.remapNodes(newRows);
+		}
+		int n = 0;
+		for(int i=0; i<size; i++) {
+			if(removed[i]) continue;
+			ids[n] = ids[i];
+			cells[n] = cells[i];
+			layers[n] = layers[i];
+			nodeTypes[n] = nodeTypes[i];
+			regions[n] = regions[i];
+			n++;
+		}
+		size = n;
+		layerDictionary.compact(layers, size);
+		nodeTypeDictionary.compact(nodeTypes, size);
+		regionDictionary.compact(regions, size);
+		retainExternalCells();
+		version++;
+		modCount++;
+		indexIds();
+		indexKeys();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#clear()
+	 */
+	public void clear() {
+		boolean[] removed = new boolean[size];
+		Arrays.fill(removed, true);
+		compact(removed);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#contains(java.lang.Object)
+	 */
+	public boolean contains(Object object) {
+		return indexOf(object) >= 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#indexOf(java.lang.Object)
+	 */
+	public int indexOf(Object object) {
+		if(object instanceof Node) return getRow(((Node)object).getId());
+		return -1;
+	}
+
+	/**
+	 * Gets the row of the node with an id.
+	 *
+	 * @param id the node id
+	 * @return the row, or -1 if no node has the id
+	 */
+	public int getRow(int id) {
+		if(idRows != null) return idRows.get(id);
+		int row = Arrays.binarySearch(ids, 0, size, id);
+		if(row < 0) return -1;
+		while(row > 0 && ids[row-1] == id) row--;
+		return row;
+	}
+
+	/**
+	 * Gets the node at a cell and layer. If several nodes share the same cell
+	 * and layer, the first one is returned.
+	 *
+	 * @param cell the cell
+	 * @param layer the layer
+	 * @return the node, or null if no node exists at the cell and layer
+	 */
+	public Node getNode(Cell cell, Layer layer) {
+		int row = keyRows.get(CitySystem.getNodeKey(cell, layer));
+		return row < 0 ? null : new ColumnarNode(this, row);
+	}
+
+	/**
+	 * Gets the node id of a row.
+	 *
+	 * @param row the row
+	 * @return the node id
+	 */
+	public int getId(int row) {
+		return ids[row];
+	}
+
+	/**
+	 * Gets the cell id of a row.
+	 *
+	 * @param row the row
+	 * @return the cell id, or Integer.MIN_VALUE if no cell
+	 */
+	public int getCellId(int row) {
+		return cells[row];
+	}
+
+	/**
+	 * Gets the cell of a row.
+	 *
+	 * @param row the row
+	 * @return the cell
+	 */
+	public Cell getCell(int row) {
+		return decodeCell(cells[row]);
+	}
+
+	/**
+	 * Gets the layer of a row.
+	 *
+	 * @param row the row
+	 * @return the layer
+	 */
+	public Layer getLayer(int row) {
+		return layerDictionary.decode(layers[row]);
+	}
+
+	/**
+	 * Gets the node type of a row.
+	 *
+	 * @param row the row
+	 * @return the node type
+	 */
+	public NodeType getNodeType(int row) {
+		return nodeTypeDictionary.decode(nodeTypes[row]);
+	}
+
+	/**
+	 * Gets the region of a row.
+	 *
+	 * @param row the row
+	 * @return the region
+	 */
+	public Region getRegion(int row) {
+		return regionDictionary.decode(regions[row]);
+	}
+
+	/**
+	 * Sets the node id of a row.
+	 *
+	 * @param row the row
+	 * @param id the new id
+	 */
+	void setId(int row, int id) {
+		int oldId = ids[row];
+		ids[row] = id;
+		if(idRows == null) {
+			if((row > 0 && ids[row-1] > id) || (row < size-1 && ids[row+1] < id)) {
+				idRows = new LongIntMap(size);
+				for(int i=0; i<size; i++) idRows.putIfAbsent(ids[i], i);
+			}
+			return;
+		}
+		if(idRows.get(oldId) == row) idRows.remove(oldId);
+		int other = idRows.get(id);
+		if(other < 0 || other > row) idRows.put(id, row);
+	}
+
+	/**
+	 * Sets the cell of a row.
+	 *
+	 * @param row the row
+	 * @param cell the new cell
+	 */
+	void setCell(int row, Cell cell) {
+		unindexKey(row);
+		cells[row] = encodeCell(cell);
+		indexKey(row);
+	}
+
+	/**
+	 * Sets the layer of a row.
+	 *
+	 * @param row the row
+	 * @param layer the new layer
+	 */
+	void setLayer(int row, Layer layer) {
+		unindexKey(row);
+		layers[row] = (short)layerDictionary.encode(layer);
+		indexKey(row);
+	}
+
+	/**
+	 * Sets the node type of a row.
+	 *
+	 * @param row the row
+	 * @param nodeType the new node type
+	 */
+	void setNodeType(int row, NodeType nodeType) {
+		nodeTypes[row] = (short)nodeTypeDictionary.encode(nodeType);
+	}
+
+	/**
+	 * Sets the region of a row.
+	 *
+	 * @param row the row
+	 * @param region the new region
+	 */
+	void setRegion(int row, Region region) {
+		regions[row] = (short)regionDictionary.encode(region);
+	}
+
+	/**
+	 * Sets the city through which cells are resolved by id. Cells of the
+	 * previous city still referred to by rows are kept, and kept cells which
+	 * the new city resolves are released.
+	 *
+	 * @param city the city, or null
+	 */
+	void setCity(City city) {
+		if(city == this.city) return;
+		if(this.city != null) {
+			for(int i=0; i<size; i++) {
+				if(cells[i] != NO_CELL && !externalCells.containsKey(cells[i])) {
+					Cell cell = this.city.getCell(cells[i]);
+					if(cell != null) externalCells.put(cells[i], cell);
+				}
+			}
+		}
+		this.city = city;
+		if(city != null) {
+			Iterator<Map.Entry<Integer,Cell>> i = externalCells.entrySet().iterator();
+			while(i.hasNext()) {
+				Map.Entry<Integer,Cell> e = i.next();
+				if(city.getCell(e.getKey()) == e.getValue()) i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Keeps the removed cells of the city which are still referred to by
+	 * rows, so that their nodes still return them.
+	 *
+	 * @param removedCells the removed cells
+	 */
+	void cellsRemoved(Collection<Cell> removedCells) {
+		if(size == 0) return;
+		Cell[] removed = removedCells.toArray(new Cell[removedCells.size()]);
+		LongIntMap removedIds = new LongIntMap(removed.length);
+		for(int i=0; i<removed.length; i++) {
+			removedIds.putIfAbsent(removed[i].getId(), i);
+		}
+		for(int i=0; i<size; i++) {
+			if(cells[i] == NO_CELL) continue;
+			int r = removedIds.get(cells[i]);
+			if(r >= 0 && !externalCells.containsKey(cells[i])) {
+				externalCells.put(cells[i], removed[r]);
+			}
+		}
+	}
+
+	/**
+	 * Sets the edge table whose origins and destinations refer to rows of
+	 * this table.
+	 *
+	 * @param edgeTable the edge table
+	 */
+	void setEdgeTable(EdgeTable edgeTable) {
+		this.edgeTable = edgeTable;
+	}
+
+	/**
+	 * Gets the version of the table, which changes whenever rows are removed
+	 * so that flyweights must locate their row again by id.
+	 *
+	 * @return the version
+	 */
+	int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Creates a plain node object with the values of a row.
+	 *
+	 * @param row the row
+	 * @return the node
+	 */
+	Node copyNode(int row) {
+		Node node = new Node();
+		node.setId(ids[row]);
+		node.setCell(getCell(row));
+		node.setLayer(getLayer(row));
+		node.setNodeType(getNodeType(row));
+		node.setRegion(getRegion(row));
+		return node;
+	}
+
+	/**
+	 * Creates plain node objects with the values of all rows.
+	 *
+	 * @return the nodes
+	 */
+	List<Node> copyNodes() {
+		List<Node> nodes = new ArrayList<Node>(size);
+		for(int i=0; i<size; i++) {
+			nodes.add(copyNode(i));
+		}
+		return nodes;
+	}
+
+	/**
+	 * Encodes a cell as its id. Cells which the city does not resolve are
+	 * kept so that they can be returned as they are.
+	 *
+	 * @param cell the cell
+	 * @return the cell id, or NO_CELL if the cell is null
+	 */
+	private int encodeCell(Cell cell) {
+		if(cell == null) return NO_CELL;
+		int id = cell.getId();
+		if(city == null || city.getCell(id) != cell) externalCells.put(id, cell);
+		return id;
+	}
+
+	/**
+	 * Decodes a cell id.
+	 *
+	 * @param id the cell id
+	 * @return the cell
+	 */
+	private Cell decodeCell(int id) {
+		if(id == NO_CELL) return null;
+		Cell cell = city == null ? null : city.getCell(id);
+		return cell != null || externalCells.isEmpty() ? cell : externalCells.get(id);
+	}
+
+	/**
+	 * Releases the kept cells which are no longer referred to by any row.
+	 */
+	private void retainExternalCells() {
+		if(externalCells.isEmpty()) return;
+		LongIntMap used = new LongIntMap(externalCells.size());
+		for(int i=0; i<size; i++) {
+			if(cells[i] != NO_CELL) used.put(cells[i], 0);
+		}
+		Iterator<Integer> i = externalCells.keySet().iterator();
+		while(i.hasNext()) {
+			if(used.get(i.next()) < 0) i.remove();
+		}
+	}
+
+	/**
+	 * Rebuilds the id index, which is only required if ids are not sorted.
+	 */
+	private void indexIds() {
+		if(idRows == null) return;
+		idRows = null;
+		for(int i=1; i<size; i++) {
+			if(ids[i] < ids[i-1]) {
+				idRows = new LongIntMap(size);
+				break;
+			}
+		}
+		if(idRows != null) {
+			for(int i=0; i<size; i++) idRows.putIfAbsent(ids[i], i);
+		}
+	}
+
+	/**
+	 * Rebuilds the cell and layer index.
+	 */
+	private void indexKeys() {
+		keyRows = new LongIntMap(size);
+		for(int i=0; i<size; i++) indexKey(i);
+	}
+
+	/**
+	 * Adds a row to the cell and layer index unless an earlier row has the
+	 * same cell and layer.
+	 *
+	 * @param row the row
+	 */
+	private void indexKey(int row) {
+		if(cells[row] == NO_CELL || layers[row] < 0) return;
+		long key = getKey(row);
+		int other = keyRows.get(key);
+		if(other < 0 || other > row) keyRows.put(key, row);
+	}
+
+	/**
+	 * Removes a row from the cell and layer index.
+	 *
+	 * @param row the row
+	 */
+	private void unindexKey(int row) {
+		if(cells[row] == NO_CELL || layers[row] < 0) return;
+		long key = getKey(row);
+		if(keyRows.get(key) == row) keyRows.remove(key);
+	}
+
+	/**
+	 * Gets the cell and layer index key of a row (see CitySystem).
+	 *
+	 * @param row the row
+	 * @return the key
+	 */
+	private long getKey(int row) {
+		return ((long)cells[row] << 32) | (getLayer(row).getId() & 0xffffffffL);
+	}
+
+	/**
+	 * Checks that a row is within the table.
+	 *
+	 * @param row the row
+	 */
+	private void checkRow(int row) {
+		if(row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+		}
+	}
+}
\ No newline at end of file
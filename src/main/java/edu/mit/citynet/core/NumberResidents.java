@@ -0,0 +1,56 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.List;
+
+/**
+ * The NumberResidents behavior counts the residents of each cell as the cell
+ * area times the resident density of each node in the cell, over all systems,
+ * mirroring the NumberResidentsCell behavior of the MATLAB interface.
+ */
+public class NumberResidents extends CellBehavior {
+	public static final String RESIDENT_DENSITY = "residentDensity";
+
+	private SystemColumns[] systems;
+	private double[][] densities;
+	private double[] areas;
+
+	/**
+	 * Instantiates a new number residents behavior.
+	 */
+	public NumberResidents() {
+		super("Number Residents", "Counts the number of residents based on nodal area "
+				+ "and residentDensity attributes.", "-", "[0,inf)");
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CellBehavior#prepare(edu.mit.citynet.core.CityColumns)
+	 */
+	protected void prepare(CityColumns columns) {
+		List<SystemColumns> systemList = columns.getSystems();
+		systems = systemList.toArray(new SystemColumns[systemList.size()]);
+		densities = new double[systems.length][];
+		for(int s=0; s<systems.length; s++) {
+			densities[s] = systems[s].getNodeAttribute(RESIDENT_DENSITY);
+		}
+		areas = columns.getCellAreas();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CellBehavior#evaluateCell(edu.mit.citynet.core.CityColumns, int)
+	 */
+	protected double evaluateCell(CityColumns columns, int cell) {
+		double density = 0;
+		for(int s=0; s<systems.length; s++) {
+			for(int i=systems[s].getFirstCellNode(cell); i<systems[s].getEndCellNode(cell); i++) {
+				double value = densities[s][systems[s].getCellNode(i)];
+				if(!Double.isNaN(value)) density += value;
+			}
+		}
+		return areas[cell]*density;
+	}
+}
\ No newline at end of file
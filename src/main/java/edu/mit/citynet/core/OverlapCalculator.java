@@ -0,0 +1,115 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * The OverlapCalculator class computes the overlap area of polygons. Most
+ * cells are axis-aligned rectangles, so whenever one of the polygons is a
+ * rectangle and the other one has no holes, the other polygon is clipped to
+ * the rectangle (Sutherland-Hodgman) and the area of the clipped ring is
+ * computed analytically. All other cases fall back to the JTS overlay.
+ */
+final class OverlapCalculator {
+
+	/**
+	 * Instantiates a new overlap calculator.
+	 */
+	private OverlapCalculator() { }
+
+	/**
+	 * Gets the area of the intersection of two prepared polygons.
+	 *
+	 * @param a the first polygon
+	 * @param b the second polygon
+	 * @return the intersection area
+	 */
+	static double getIntersectionArea(PreparedPolygon a, PreparedPolygon b) {
+		Envelope ea = a.getEnvelope(), eb = b.getEnvelope();
+		if(!ea.intersects(eb)) return 0;
+		if(a.isRectangle() && b.isRectangle()) {
+			Envelope intersection = ea.intersection(eb);
+			return intersection.getWidth()*intersection.getHeight();
+		} else if(a.isRectangle() && b.getPolygon().getNumInteriorRing()==0) {
+			if(ea.contains(eb)) return b.getArea();
+			return getClippedArea(ea, b.getShell());
+		} else if(b.isRectangle() && a.getPolygon().getNumInteriorRing()==0) {
+			if(eb.contains(ea)) return a.getArea();
+			return getClippedArea(eb, a.getShell());
+		}
+		return a.getPolygon().intersection(b.getPolygon()).getArea();
+	}
+
+	/**
+	 * Gets the area of a ring clipped to a rectangle.
+	 *
+	 * @param rectangle the rectangle
+	 * @param ring the closed ring coordinates
+	 * @return the clipped area
+	 */
+	static double getClippedArea(Envelope rectangle, Coordinate[] ring) {
+		// translate to the rectangle origin to limit round-off in the area
+		double x0 = rectangle.getMinX(), y0 = rectangle.getMinY();
+		int n = ring.length-1;
+		double[] x = new double[n], y = new double[n];
+		for(int i=0; i<n; i++) {
+			x[i] = ring[i].x-x0;
+			y[i] = ring[i].y-y0;
+		}
+		double[][] clipped = new double[][]{x, y};
+		clipped = clip(clipped[0], clipped[1], n, 0, 0, false);
+		clipped = clip(clipped[0], clipped[1], clipped[0].length, 0, rectangle.getMaxX()-x0, true);
+		clipped = clip(clipped[0], clipped[1], clipped[0].length, 1, 0, false);
+		clipped = clip(clipped[0], clipped[1], clipped[0].length, 1, rectangle.getMaxY()-y0, true);
+		x = clipped[0];
+		y = clipped[1];
+		double area = 0;
+		for(int i=0, j=x.length-1; i<x.length; j=i++) {
+			area += (x[j]+x[i])*(y[j]-y[i]);
+		}
+		return Math.abs(area)/2;
+	}
+
+	/**
+	 * Clips a ring to the half-plane on one side of an axis-aligned line.
+	 *
+	 * @param x the x-coordinates of the ring
+	 * @param y the y-coordinates of the ring
+	 * @param n the number of ring vertices
+	 * @param axis the axis, 0 for x and 1 for y
+	 * @param value the value of the line along the axis
+	 * @param below true to keep the values below the line, false for above
+	 * @return the x- and y-coordinates of the clipped ring
+	 */
+	private static double[][] clip(double[] x, double[] y, int n,
+			int axis, double value, boolean below) {
+		double[] cx = new double[2*n], cy = new double[2*n];
+		int m = 0;
+		for(int i=0; i<n; i++) {
+			int j = (i+n-1)%n;
+			double vi = axis==0?x[i]:y[i], vj = axis==0?x[j]:y[j];
+			boolean insideI = below?vi<=value:vi>=value;
+			boolean insideJ = below?vj<=value:vj>=value;
+			if(insideI != insideJ) {
+				double t = (value-vj)/(vi-vj);
+				cx[m] = axis==0?value:x[j]+t*(x[i]-x[j]);
+				cy[m] = axis==1?value:y[j]+t*(y[i]-y[j]);
+				m++;
+			}
+			if(insideI) {
+				cx[m] = x[i];
+				cy[m] = y[i];
+				m++;
+			}
+		}
+		double[] rx = new double[m], ry = new double[m];
+		System.arraycopy(cx, 0, rx, 0, m);
+		System.arraycopy(cy, 0, ry, 0, m);
+		return new double[][]{rx, ry};
+	}
+}
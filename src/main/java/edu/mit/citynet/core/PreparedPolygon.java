@@ -0,0 +1,144 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.algorithm.MCPointInRing;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * The PreparedPolygon class caches a polygon together with its envelope,
+ * area, and point-in-polygon structures so that repeated spatial predicates
+ * do not rebuild or re-analyze the polygon. Envelopes are used to reject
+ * disjoint geometries before the exact JTS predicates are evaluated.
+ *
+ * Prepared polygons are immutable and may be shared between threads.
+ */
+final class PreparedPolygon {
+	private static final int MIN_INDEXED_RING_SIZE = 32;
+
+	private final Polygon polygon;
+	private final Envelope envelope;
+	private final double area;
+	private final boolean rectangle;
+	private final Coordinate[] shell;
+	private final MCPointInRing shellIndex;
+
+	/**
+	 * Instantiates a new prepared polygon.
+	 *
+	 * @param polygon the polygon
+	 */
+	PreparedPolygon(Polygon polygon) {
+		this.polygon = polygon;
+		envelope = polygon.getEnvelopeInternal();
+		area = polygon.getArea();
+		rectangle = polygon.isRectangle();
+		shell = polygon.getExteriorRing().getCoordinates();
+		if(!rectangle && polygon.getNumInteriorRing()==0
+				&& shell.length >= MIN_INDEXED_RING_SIZE) {
+			shellIndex = new MCPointInRing((LinearRing)polygon.getExteriorRing());
+		} else {
+			shellIndex = null;
+		}
+	}
+
+	/**
+	 * Gets the polygon.
+	 *
+	 * @return the polygon
+	 */
+	Polygon getPolygon() {
+		return polygon;
+	}
+
+	/**
+	 * Gets the envelope.
+	 *
+	 * @return the envelope
+	 */
+	Envelope getEnvelope() {
+		return envelope;
+	}
+
+	/**
+	 * Gets the area.
+	 *
+	 * @return the area
+	 */
+	double getArea() {
+		return area;
+	}
+
+	/**
+	 * Checks if the polygon is an axis-aligned rectangle.
+	 *
+	 * @return true, if rectangle
+	 */
+	boolean isRectangle() {
+		return rectangle;
+	}
+	
+	/**
+	 * Gets the exterior ring coordinates, which must not be modified.
+	 *
+	 * @return the shell coordinates
+	 */
+	Coordinate[] getShell() {
+		return shell;
+	}
+
+	/**
+	 * Determines whether the polygon contains a point, with the same result 
+	 * as Polygon.contains. Points on the boundary are not contained, except 
+	 * for rectangles where JTS only excludes the corners.
+	 *
+	 * @param point the point
+	 * @return true, if the polygon contains the point
+	 */
+	boolean containsPoint(Point point) {
+		Coordinate c = point.getCoordinate();
+		if(c == null || !envelope.contains(c)) return false;
+		if(rectangle) {
+			return !((c.x == envelope.getMinX() || c.x == envelope.getMaxX())
+					&& (c.y == envelope.getMinY() || c.y == envelope.getMaxY()));
+		}
+		if(polygon.getNumInteriorRing() > 0) return polygon.contains(point);
+		if(CGAlgorithms.isOnLine(c, shell)) return false;
+		if(shellIndex != null) {
+			synchronized(shellIndex) {
+				return shellIndex.isInside(c);
+			}
+		}
+		return CGAlgorithms.isPointInRing(c, shell);
+	}
+
+	/**
+	 * Determines whether the polygon intersects a line.
+	 *
+	 * @param line the line
+	 * @return true, if the polygon intersects the line
+	 */
+	boolean intersectsLine(LineString line) {
+		if(!envelope.intersects(line.getEnvelopeInternal())) return false;
+		return polygon.intersects(line);
+	}
+
+	/**
+	 * Gets the area of the intersection with another polygon.
+	 *
+	 * @param other the other polygon
+	 * @return the intersection area
+	 */
+	double getIntersectionArea(PreparedPolygon other) {
+		return OverlapCalculator.getIntersectionArea(this, other);
+	}
+}
@@ -80,10 +80,21 @@ public abstract class Region extends AbstractRegion implements Cloneable {
 	 */
 	public abstract Region clone();
 	
+	/**
+	 * Prepares the generation of the region by evaluating its geometry 
+	 * against the city cells. Does not modify any system, so regions may be 
+	 * prepared concurrently.
+	 *
+	 * @return the region generation
+	 */
+	public abstract RegionGeneration prepareGeneration();
+	
 	/**
 	 * Generate region.
 	 *
 	 * @param system the system
 	 */
-	public abstract void generateRegion(CitySystem system);
+	public void generateRegion(CitySystem system) {
+		prepareGeneration().generate(system);
+	}
 }
\ No newline at end of file
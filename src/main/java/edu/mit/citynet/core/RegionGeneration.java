@@ -0,0 +1,46 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.Set;
+
+/**
+ * The RegionGeneration interface holds the geometric results of a region 
+ * (matched cells and neighboring cells), which are prepared without modifying 
+ * a system, and generates the corresponding nodes and edges in a system.
+ */
+public interface RegionGeneration {
+	
+	/**
+	 * Generates the nodes and edges in a system. Node and edge ids are 
+	 * assigned in the order they are generated.
+	 *
+	 * @param system the system
+	 */
+	public void generate(CitySystem system);
+	
+	/**
+	 * Gets the region which was prepared.
+	 *
+	 * @return the region
+	 */
+	public Region getRegion();
+	
+	/**
+	 * Gets the layers in which nodes are read or created during generation.
+	 *
+	 * @return the layers
+	 */
+	public Set<Layer> getLayers();
+	
+	/**
+	 * Gets the cells at which nodes are read or created during generation, 
+	 * in each of the layers.
+	 *
+	 * @return the cells
+	 */
+	public Set<Cell> getCells();
+}
@@ -0,0 +1,277 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The RegionGenerator class generates the nodes and edges of several regions.
+ * The geometry of each region is evaluated concurrently on a fork-join pool 
+ * and the results are then generated in the system one region at a time, in 
+ * the order of the regions, so node and edge ids do not depend on the number 
+ * of threads.
+ * 
+ * The generator remembers the prepared generation of each region so that 
+ * changed regions can later be regenerated incrementally. Nodes and edges 
+ * remember the region which generated them, which allows the outputs of 
+ * changed regions to be retracted without clearing the whole system.
+ */
+public class RegionGenerator {
+	private ForkJoinPool pool;
+	private Map<Region, RegionGeneration> generations = 
+			new HashMap<Region, RegionGeneration>();
+	
+	/**
+	 * Instantiates a new region generator using the common fork-join pool.
+	 */
+	public RegionGenerator() {
+		this(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Instantiates a new region generator.
+	 *
+	 * @param pool the fork-join pool
+	 */
+	public RegionGenerator(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * Prepares the generation of regions by submitting the evaluation of each 
+	 * region to the fork-join pool. The returned tasks are in the order of the 
+	 * regions; callers should join them in that order and cancel any tasks 
+	 * which are no longer needed.
+	 *
+	 * @param regions the regions
+	 * @return the region generation tasks
+	 */
+	public List<ForkJoinTask<RegionGeneration>> prepareRegions(List<Region> regions) {
+		List<ForkJoinTask<RegionGeneration>> tasks = 
+				new ArrayList<ForkJoinTask<RegionGeneration>>();
+		for(final Region region : regions) {
+			tasks.add(pool.submit(new Callable<RegionGeneration>() {
+				public RegionGeneration call() {
+					return region.prepareGeneration();
+				}
+			}));
+		}
+		return tasks;
+	}
+	
+	/**
+	 * Generates the nodes and edges of a prepared region in a system and 
+	 * remembers the generation for later incremental regeneration.
+	 *
+	 * @param system the system
+	 * @param generation the region generation
+	 */
+	public void generateRegion(CitySystem system, RegionGeneration generation) {
+		generation.generate(system);
+		generations.put(generation.getRegion(), generation);
+	}
+	
+	/**
+	 * Generates the nodes and edges of regions in a system. Cells must not be 
+	 * added to or removed from the city during generation.
+	 *
+	 * @param system the system
+	 * @param regions the regions
+	 */
+	public void generateRegions(CitySystem system, List<Region> regions) {
+		List<ForkJoinTask<RegionGeneration>> tasks = prepareRegions(regions);
+		try {
+			for(ForkJoinTask<RegionGeneration> task : tasks) {
+				generateRegion(system, task.join());
+			}
+		} finally {
+			for(ForkJoinTask<RegionGeneration> task : tasks) {
+				task.cancel(false);
+			}
+		}
+	}
+	
+	/**
+	 * Checks if any region generations are remembered, i.e. if the nodes and 
+	 * edges of the system can be regenerated incrementally.
+	 *
+	 * @return true, if successful
+	 */
+	public boolean hasGenerations() {
+		return !generations.isEmpty();
+	}
+	
+	/**
+	 * Forgets all region generations. Must be called whenever the nodes and 
+	 * edges of the system or the cells of the city are changed other than by 
+	 * this generator.
+	 */
+	public void clearGenerations() {
+		generations.clear();
+	}
+	
+	/**
+	 * Regenerates the nodes and edges of changed regions in a system. Changed 
+	 * regions which are no longer in the system are retracted only. Any other 
+	 * region reading or creating nodes at the same cells and layers as a 
+	 * retracted or regenerated region is regenerated as well, so the result 
+	 * matches a complete generation of the system regions apart from ids.
+	 *
+	 * @param system the system
+	 * @param changedRegions the added, modified, or removed regions
+	 */
+	public void regenerateRegions(CitySystem system, Collection<Region> changedRegions) {
+		List<Region> regions = system.getRegions();
+		Set<Region> changed = new HashSet<Region>(changedRegions);
+		for(Region region : changed) {
+			generations.remove(region);
+		}
+		
+		// prepare changed regions and any regions which were never prepared
+		List<Region> unprepared = new ArrayList<Region>();
+		for(Region region : regions) {
+			if(!generations.containsKey(region)) unprepared.add(region);
+		}
+		Map<Region, RegionGeneration> prepared = new HashMap<Region, RegionGeneration>();
+		List<ForkJoinTask<RegionGeneration>> tasks = prepareRegions(unprepared);
+		try {
+			for(ForkJoinTask<RegionGeneration> task : tasks) {
+				RegionGeneration generation = task.join();
+				prepared.put(generation.getRegion(), generation);
+			}
+		} finally {
+			for(ForkJoinTask<RegionGeneration> task : tasks) {
+				task.cancel(false);
+			}
+		}
+		
+		// find the nodes generated by each region
+		Map<Region, List<Node>> regionNodes = new HashMap<Region, List<Node>>();
+		for(Node node : system.getNodesView()) {
+			if(node.getRegion() == null) continue;
+			List<Node> nodes = regionNodes.get(node.getRegion());
+			if(nodes == null) {
+				nodes = new ArrayList<Node>();
+				regionNodes.put(node.getRegion(), nodes);
+			}
+			nodes.add(node);
+		}
+		
+		// find all regions affected by the changed regions
+		Set<Region> affected = new HashSet<Region>(changed);
+		Map<Layer, Set<Cell>> affectedCells = new HashMap<Layer, Set<Cell>>();
+		List<Region> pending = new ArrayList<Region>(changed);
+		while(!pending.isEmpty()) {
+			for(Region region : pending) {
+				if(regionNodes.containsKey(region)) {
+					for(Node node : regionNodes.get(region)) {
+						addCells(affectedCells, node.getLayer(), 
+								Collections.singleton(node.getCell()));
+					}
+				}
+				RegionGeneration generation = getGeneration(region, prepared);
+				if(generation != null) {
+					for(Layer layer : generation.getLayers()) {
+						addCells(affectedCells, layer, generation.getCells());
+					}
+				}
+			}
+			pending.clear();
+			for(Region region : regions) {
+				if(!affected.contains(region) && isAffected(
+						getGeneration(region, prepared), affectedCells)) {
+					affected.add(region);
+					pending.add(region);
+				}
+			}
+		}
+		
+		// retract the nodes and edges of affected regions
+		Set<Node> retractedNodes = new HashSet<Node>();
+		for(Region region : affected) {
+			if(regionNodes.containsKey(region)) 
+				retractedNodes.addAll(regionNodes.get(region));
+		}
+		List<Edge> retractedEdges = new ArrayList<Edge>();
+		for(Edge edge : system.getEdgesView()) {
+			if(affected.contains(edge.getRegion()) 
+					|| retractedNodes.contains(edge.getOrigin())
+					|| retractedNodes.contains(edge.getDestination())) {
+				retractedEdges.add(edge);
+			}
+		}
+		system.removeAllEdges(retractedEdges);
+		system.removeAllNodes(retractedNodes);
+		
+		// regenerate affected regions in order
+		for(Region region : regions) {
+			if(affected.contains(region)) {
+				generateRegion(system, getGeneration(region, prepared));
+			}
+		}
+	}
+	
+	/**
+	 * Gets the remembered or newly prepared generation of a region.
+	 *
+	 * @param region the region
+	 * @param prepared the newly prepared generations
+	 * @return the region generation
+	 */
+	private RegionGeneration getGeneration(Region region, 
+			Map<Region, RegionGeneration> prepared) {
+		if(prepared.containsKey(region)) return prepared.get(region);
+		return generations.get(region);
+	}
+	
+	/**
+	 * Adds cells to the affected cells of a layer.
+	 *
+	 * @param affectedCells the affected cells by layer
+	 * @param layer the layer
+	 * @param cells the cells
+	 */
+	private static void addCells(Map<Layer, Set<Cell>> affectedCells, 
+			Layer layer, Collection<Cell> cells) {
+		Set<Cell> set = affectedCells.get(layer);
+		if(set == null) {
+			set = new HashSet<Cell>();
+			affectedCells.put(layer, set);
+		}
+		set.addAll(cells);
+	}
+	
+	/**
+	 * Checks if a region generation reads or creates nodes at any of the 
+	 * affected cells.
+	 *
+	 * @param generation the region generation
+	 * @param affectedCells the affected cells by layer
+	 * @return true, if affected
+	 */
+	private static boolean isAffected(RegionGeneration generation, 
+			Map<Layer, Set<Cell>> affectedCells) {
+		if(generation == null) return false;
+		Set<Cell> cells = null;
+		for(Layer layer : generation.getLayers()) {
+			Set<Cell> layerCells = affectedCells.get(layer);
+			if(layerCells == null) continue;
+			if(cells == null) cells = generation.getCells();
+			if(!Collections.disjoint(cells, layerCells)) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Route class describes a path of edges between two nodes of a system
+ * graph, found by the routing engine.
+ */
+public class Route {
+	private SystemGraph graph;
+	private int[] vertices, edges;
+	private double cost;
+
+	/**
+	 * Instantiates a new route.
+	 *
+	 * @param graph the graph
+	 * @param vertices the vertices from origin to destination
+	 * @param edges the edge indices from origin to destination
+	 * @param cost the cost
+	 */
+	Route(SystemGraph graph, int[] vertices, int[] edges, double cost) {
+		this.graph = graph;
+		this.vertices = vertices;
+		this.edges = edges;
+		this.cost = cost;
+	}
+
+	/**
+	 * Gets the origin.
+	 *
+	 * @return the origin
+	 */
+	public Node getOrigin() {
+		return graph.getNode(vertices[0]);
+	}
+
+	/**
+	 * Gets the destination.
+	 *
+	 * @return the destination
+	 */
+	public Node getDestination() {
+		return graph.getNode(vertices[vertices.length-1]);
+	}
+
+	/**
+	 * Gets the total cost.
+	 *
+	 * @return the cost
+	 */
+	public double getCost() {
+		return cost;
+	}
+
+	/**
+	 * Gets the nodes from origin to destination.
+	 *
+	 * @return the nodes
+	 */
+	public List<Node> getNodes() {
+		List<Node> nodes = new ArrayList<Node>(vertices.length);
+		for(int vertex : vertices) {
+			nodes.add(graph.getNode(vertex));
+		}
+		return Collections.unmodifiableList(nodes);
+	}
+
+	/**
+	 * Gets the ids of the edges from origin to destination, as used by the
+	 * RenderSystemPath function of the MATLAB interface.
+	 *
+	 * @return the edge ids
+	 */
+	public int[] getEdgeIds() {
+		int[] edgeIds = new int[edges.length];
+		for(int i=0; i<edges.length; i++) {
+			edgeIds[i] = graph.getEdgeId(edges[i]);
+		}
+		return edgeIds;
+	}
+
+	/**
+	 * Gets the vertices from origin to destination.
+	 *
+	 * @return the vertices
+	 */
+	int[] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * Gets the edge indices from origin to destination.
+	 *
+	 * @return the edge indices
+	 */
+	int[] getEdges() {
+		return edges;
+	}
+
+	/**
+	 * Gets the number of edges.
+	 *
+	 * @return the number of edges
+	 */
+	public int getNumberEdges() {
+		return edges.length;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "Route" + getNodes() + " (" + cost + ")";
+	}
+}
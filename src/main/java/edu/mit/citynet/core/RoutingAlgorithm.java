@@ -0,0 +1,54 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+/**
+ * The RoutingAlgorithm enumeration provides the shortest path algorithms of
+ * the routing engine.
+ */
+public enum RoutingAlgorithm {
+	DIJKSTRA("Dijkstra","Searches outward from the origin in order of cost"),
+	A_STAR("A*","Guides the search toward the destination by straight-line distance"),
+	BIDIRECTIONAL("Bidirectional","Searches from both the origin and the destination");
+
+	private String name, description;
+
+	/**
+	 * Instantiates a new routing algorithm.
+	 *
+	 * @param name the name
+	 * @param description the description
+	 */
+	private RoutingAlgorithm(String name, String description) {
+		this.name = name;
+		this.description = description;
+	}
+
+	/**
+	 * Gets the name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the description.
+	 *
+	 * @return the description
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Enum#toString()
+	 */
+	public String toString() {
+		return getName();
+	}
+}
@@ -0,0 +1,534 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * The RoutingEngine class finds least-cost routes between the nodes of a
+ * system graph. The cost of an edge is either the value of an attribute of
+ * the edge (set for the edge, or else of its edge type) or its Euclidean
+ * length between cell centroids, and is computed once for all edges when the
+ * engine is created. Edges without a cost (e.g. whose edge type lacks the
+ * attribute) cannot be traversed.
+ *
+ * Routes are found with Dijkstra's algorithm, with A* using the straight-line
+ * distance to the destination as lower bound, or with a bidirectional
+ * Dijkstra search. Shortest path trees give the costs from one or more
+ * sources to all nodes. The engine may be queried by several threads at once;
+ * each thread reuses its own search space so that queries do not allocate
+ * arrays over all vertices.
+ */
+public class RoutingEngine {
+	private final SystemGraph graph;
+	private final double[] edgeCosts;
+	private final double[] x, y;
+	private final double heuristicScale;
+	private final ThreadLocal<SearchSpace[]> searchSpaces;
+
+	/**
+	 * The SearchSpace class holds the state of a search over the vertices of
+	 * a graph. Vertex states are invalidated in constant time by advancing a
+	 * stamp, and the priority queue is a binary heap with lazy deletion.
+	 */
+	private static class SearchSpace {
+		private double[] costs;
+		private int[] parentVertices, parentEdges;
+		private int[] reached, settled;
+		private int stamp;
+		private int[] heapVertices = new int[64];
+		private double[] heapKeys = new double[64];
+		private int heapSize;
+
+		/**
+		 * Instantiates a new search space.
+		 *
+		 * @param numberVertices the number of vertices
+		 */
+		private SearchSpace(int numberVertices) {
+			costs = new double[numberVertices];
+			parentVertices = new int[numberVertices];
+			parentEdges = new int[numberVertices];
+			reached = new int[numberVertices];
+			settled = new int[numberVertices];
+		}
+
+		/**
+		 * Resets all vertices to unreached and empties the queue.
+		 */
+		private void reset() {
+			if(++stamp == Integer.MAX_VALUE) {
+				Arrays.fill(reached, 0);
+				Arrays.fill(settled, 0);
+				stamp = 1;
+			}
+			heapSize = 0;
+		}
+
+		/**
+		 * Gets the cost of a vertex.
+		 *
+		 * @param vertex the vertex
+		 * @return the cost, or positive infinity if not reached
+		 */
+		private double getCost(int vertex) {
+			return reached[vertex] == stamp ? costs[vertex] : Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * Checks if a vertex is settled.
+		 *
+		 * @param vertex the vertex
+		 * @return true, if settled
+		 */
+		private boolean isSettled(int vertex) {
+			return settled[vertex] == stamp;
+		}
+
+		/**
+		 * Reaches a vertex with a cost and queues it with a key.
+		 *
+		 * @param vertex the vertex
+		 * @param cost the cost
+		 * @param parentVertex the previous vertex, or -1
+		 * @param parentEdge the edge from the previous vertex, or -1
+		 * @param key the key
+		 */
+		private void reach(int vertex, double cost, int parentVertex, int parentEdge, double key) {
+			reached[vertex] = stamp;
+			costs[vertex] = cost;
+			parentVertices[vertex] = parentVertex;
+			parentEdges[vertex] = parentEdge;
+			if(heapSize == heapVertices.length) {
+				heapVertices = Arrays.copyOf(heapVertices, 2*heapSize);
+				heapKeys = Arrays.copyOf(heapKeys, 2*heapSize);
+			}
+			int i = heapSize++;
+			while(i > 0) {
+				int parent = (i-1)>>>1;
+				if(heapKeys[parent] <= key) break;
+				heapVertices[i] = heapVertices[parent];
+				heapKeys[i] = heapKeys[parent];
+				i = parent;
+			}
+			heapVertices[i] = vertex;
+			heapKeys[i] = key;
+		}
+
+		/**
+		 * Gets the smallest key in the queue, which is a lower bound of the
+		 * keys of all vertices not settled yet.
+		 *
+		 * @return the smallest key, or positive infinity if empty
+		 */
+		private double peekKey() {
+			return heapSize == 0 ? Double.POSITIVE_INFINITY : heapKeys[0];
+		}
+
+		/**
+		 * Removes the vertex with the smallest key from the queue and settles
+		 * it, skipping vertices which are already settled.
+		 *
+		 * @return the settled vertex, or -1 if the queue is empty
+		 */
+		private int settle() {
+			while(heapSize > 0) {
+				int vertex = heapVertices[0];
+				int lastVertex = heapVertices[--heapSize];
+				double lastKey = heapKeys[heapSize];
+				int i = 0;
+				while(2*i+1 < heapSize) {
+					int child = 2*i+1;
+					if(child+1 < heapSize && heapKeys[child+1] < heapKeys[child]) child++;
+					if(lastKey <= heapKeys[child]) break;
+					heapVertices[i] = heapVertices[child];
+					heapKeys[i] = heapKeys[child];
+					i = child;
+				}
+				heapVertices[i] = lastVertex;
+				heapKeys[i] = lastKey;
+				if(!isSettled(vertex)) {
+					settled[vertex] = stamp;
+					return vertex;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Instantiates a new routing engine which uses the Euclidean lengths of
+	 * edges as costs.
+	 *
+	 * @param graph the graph
+	 */
+	public RoutingEngine(SystemGraph graph) {
+		this(graph, null);
+	}
+
+	/**
+	 * Instantiates a new routing engine which uses the values of an edge
+	 * attribute as costs, set for individual edges or else for their edge
+	 * types. Edges without a value of the attribute cannot be traversed.
+	 *
+	 * @param graph the graph
+	 * @param attributeName the attribute name, or null for Euclidean lengths
+	 */
+	public RoutingEngine(SystemGraph graph, String attributeName) {
+		this.graph = graph;
+		int numberVertices = graph.getNumberVertices();
+		x = new double[numberVertices];
+		y = new double[numberVertices];
+		boolean located = true;
+		for(int v=0; v<numberVertices; v++) {
+			Node node = graph.getNode(v);
+			Polygon polygon = node.getCell() == null ? null : node.getCell().getPolygon();
+			if(polygon == null) {
+				x[v] = y[v] = Double.NaN;
+				located = false;
+			} else {
+				Coordinate c = polygon.getCentroid().getCoordinate();
+				x[v] = c.x;
+				y[v] = c.y;
+			}
+		}
+		edgeCosts = new double[graph.getNumberEdges()];
+		int slot = attributeName == null ? -1 : AttributeSchema.findSlot(attributeName);
+		InstanceAttributes edgeAttributes = graph.getSystem().getEdgeAttributes();
+		if(edgeAttributes.isEmpty()) edgeAttributes = null;
+		double scale = Double.POSITIVE_INFINITY;
+		for(int e=0; e<edgeCosts.length; e++) {
+			double length = getDistance(graph.getEdgeOrigin(e), graph.getEdgeDestination(e));
+			double cost;
+			if(attributeName == null) {
+				cost = length;
+			} else {
+				cost = edgeAttributes == null ? Double.NaN 
+						: edgeAttributes.getValue(graph.getEdgeId(e), slot);
+				if(Double.isNaN(cost)) {
+					EdgeType edgeType = graph.getEdgeType(e);
+					cost = edgeType == null ? Double.NaN : edgeType.getAttribute(slot);
+				}
+			}
+			if(cost < 0) {
+				throw new IllegalArgumentException("Edge costs cannot be negative.");
+			} else if(Double.isNaN(cost)) {
+				cost = Double.POSITIVE_INFINITY; // cannot be traversed
+			}
+			edgeCosts[e] = cost;
+			if(length > 0 && cost < Double.POSITIVE_INFINITY) {
+				scale = Math.min(scale, cost/length);
+			}
+		}
+		// the straight-line distance scaled by the least cost per length is a
+		// lower bound of route costs, reduced slightly to absorb round-off
+		heuristicScale = located && scale < Double.POSITIVE_INFINITY ? scale*(1-1e-9) : 0;
+		searchSpaces = new ThreadLocal<SearchSpace[]>() {
+			protected SearchSpace[] initialValue() {
+				int numberVertices = RoutingEngine.this.graph.getNumberVertices();
+				return new SearchSpace[]{new SearchSpace(numberVertices),
+						new SearchSpace(numberVertices)};
+			}
+		};
+	}
+
+	/**
+	 * Gets the graph.
+	 *
+	 * @return the graph
+	 */
+	public SystemGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Gets the cost of an edge of the graph.
+	 *
+	 * @param edge the edge index
+	 * @return the cost, or positive infinity if the edge cannot be traversed
+	 */
+	public double getEdgeCost(int edge) {
+		return edgeCosts[edge];
+	}
+
+	/**
+	 * Gets the least-cost route between two nodes using A*.
+	 *
+	 * @param origin the origin
+	 * @param destination the destination
+	 * @return the route, or null if the destination cannot be reached
+	 */
+	public Route getRoute(Node origin, Node destination) {
+		return getRoute(origin, destination, RoutingAlgorithm.A_STAR);
+	}
+
+	/**
+	 * Gets the least-cost route between two nodes.
+	 *
+	 * @param origin the origin
+	 * @param destination the destination
+	 * @param algorithm the algorithm
+	 * @return the route, or null if the destination cannot be reached
+	 */
+	public Route getRoute(Node origin, Node destination, RoutingAlgorithm algorithm) {
+		int source = graph.getVertex(origin);
+		int target = graph.getVertex(destination);
+		if(source < 0 || target < 0) {
+			throw new IllegalArgumentException("Origin and destination must be in the graph.");
+		}
+		if(source == target) {
+			return new Route(graph, new int[]{source}, new int[0], 0);
+		}
+		SearchSpace[] spaces = searchSpaces.get();
+		switch(algorithm) {
+		case BIDIRECTIONAL:
+			return searchBidirectional(spaces[0], spaces[1], source, target);
+		case A_STAR:
+			return search(spaces[0], source, target, heuristicScale);
+		default:
+			return search(spaces[0], source, target, 0);
+		}
+	}
+
+	/**
+	 * Gets the least cost between two nodes using A*.
+	 *
+	 * @param origin the origin
+	 * @param destination the destination
+	 * @return the cost, or positive infinity if the destination cannot be
+	 * reached
+	 */
+	public double getCost(Node origin, Node destination) {
+		Route route = getRoute(origin, destination);
+		return route == null ? Double.POSITIVE_INFINITY : route.getCost();
+	}
+
+	/**
+	 * Gets the shortest path tree from a source node to all nodes.
+	 *
+	 * @param source the source
+	 * @return the shortest path tree
+	 */
+	public ShortestPathTree getShortestPathTree(Node source) {
+		return getShortestPathTree(Collections.singleton(source));
+	}
+
+	/**
+	 * Gets the shortest path tree from several source nodes to all nodes, in
+	 * which each node is reached from its nearest source.
+	 *
+	 * @param sources the sources
+	 * @return the shortest path tree
+	 */
+	public ShortestPathTree getShortestPathTree(Collection<Node> sources) {
+		SearchSpace space = new SearchSpace(graph.getNumberVertices());
+		space.reset();
+		for(Node node : sources) {
+			int source = graph.getVertex(node);
+			if(source < 0) {
+				throw new IllegalArgumentException("Sources must be in the graph.");
+			}
+			if(space.getCost(source) > 0) space.reach(source, 0, -1, -1, 0);
+		}
+		for(int u = space.settle(); u >= 0; u = space.settle()) {
+			relax(graph, space, u, -1, 0);
+		}
+		double[] costs = new double[graph.getNumberVertices()];
+		for(int v=0; v<costs.length; v++) {
+			costs[v] = space.getCost(v);
+		}
+		return new ShortestPathTree(graph, costs, space.parentVertices, space.parentEdges);
+	}
+
+	/**
+	 * Gets the least costs from a source vertex to target vertices with a
+	 * single Dijkstra search, which stops once all targets are settled.
+	 *
+	 * @param source the source vertex
+	 * @param targets the target vertices
+	 * @param isTarget the target flags by vertex
+	 * @param numberTargets the number of distinct target vertices
+	 * @param costs the costs by target, set to positive infinity for
+	 * unreachable targets
+	 */
+	void getCosts(int source, int[] targets, boolean[] isTarget,
+			int numberTargets, float[] costs) {
+		SearchSpace space = searchSpaces.get()[0];
+		space.reset();
+		space.reach(source, 0, -1, -1, 0);
+		int settled = 0;
+		for(int u = space.settle(); u >= 0; u = space.settle()) {
+			if(isTarget[u] && ++settled == numberTargets) break;
+			relax(graph, space, u, -1, 0);
+		}
+		for(int i=0; i<targets.length; i++) {
+			costs[i] = (float)space.getCost(targets[i]);
+		}
+	}
+
+	/**
+	 * Searches for a route with Dijkstra's algorithm, or with A* if the
+	 * heuristic scale is positive.
+	 *
+	 * @param space the search space
+	 * @param source the source vertex
+	 * @param target the target vertex
+	 * @param scale the heuristic scale
+	 * @return the route, or null if the target cannot be reached
+	 */
+	private Route search(SearchSpace space, int source, int target, double scale) {
+		space.reset();
+		space.reach(source, 0, -1, -1, getHeuristic(source, target, scale));
+		for(int u = space.settle(); u >= 0; u = space.settle()) {
+			if(u == target) {
+				return createRoute(graph, target, space.parentVertices,
+						space.parentEdges, space.costs[target]);
+			}
+			relax(graph, space, u, target, scale);
+		}
+		return null;
+	}
+
+	/**
+	 * Relaxes the arcs leaving a settled vertex.
+	 *
+	 * @param graph the graph or reverse graph
+	 * @param space the search space
+	 * @param u the settled vertex
+	 * @param target the target vertex for the heuristic
+	 * @param scale the heuristic scale, or 0 for none
+	 */
+	private void relax(SystemGraph graph, SearchSpace space, int u, int target, double scale) {
+		double cost = space.costs[u];
+		for(int arc = graph.getFirstArc(u), end = graph.getEndArc(u); arc < end; arc++) {
+			int v = graph.getTarget(arc);
+			int edge = graph.getArcEdge(arc);
+			double vCost = cost + edgeCosts[edge];
+			if(vCost < space.getCost(v) && !space.isSettled(v)) {
+				space.reach(v, vCost, u, edge, vCost + getHeuristic(v, target, scale));
+			}
+		}
+	}
+
+	/**
+	 * Searches for a route with Dijkstra's algorithm from both ends,
+	 * expanding the side with the smaller queue key until the best meeting
+	 * cost cannot be improved.
+	 *
+	 * @param forward the forward search space
+	 * @param backward the backward search space
+	 * @param source the source vertex
+	 * @param target the target vertex
+	 * @return the route, or null if the target cannot be reached
+	 */
+	private Route searchBidirectional(SearchSpace forward, SearchSpace backward,
+			int source, int target) {
+		SystemGraph reverse = graph.getReverse();
+		forward.reset();
+		backward.reset();
+		forward.reach(source, 0, -1, -1, 0);
+		backward.reach(target, 0, -1, -1, 0);
+		double best = Double.POSITIVE_INFINITY;
+		int meeting = -1;
+		while(forward.peekKey() + backward.peekKey() < best) {
+			boolean isForward = forward.peekKey() <= backward.peekKey();
+			SearchSpace space = isForward ? forward : backward;
+			SearchSpace other = isForward ? backward : forward;
+			int u = space.settle();
+			if(u < 0) break;
+			SystemGraph searchGraph = isForward ? graph : reverse;
+			double cost = space.costs[u];
+			for(int arc = searchGraph.getFirstArc(u), end = searchGraph.getEndArc(u); arc < end; arc++) {
+				int v = searchGraph.getTarget(arc);
+				int edge = searchGraph.getArcEdge(arc);
+				double vCost = cost + edgeCosts[edge];
+				if(vCost < space.getCost(v) && !space.isSettled(v)) {
+					space.reach(v, vCost, u, edge, vCost);
+				}
+				double total = space.getCost(v) + other.getCost(v);
+				if(total < best) {
+					best = total;
+					meeting = v;
+				}
+			}
+		}
+		if(meeting < 0) return null;
+		Route head = createRoute(graph, meeting, forward.parentVertices,
+				forward.parentEdges, forward.getCost(meeting));
+		Route tail = createRoute(graph, meeting, backward.parentVertices,
+				backward.parentEdges, backward.getCost(meeting));
+		int[] vertices = new int[head.getNumberEdges()+tail.getNumberEdges()+1];
+		int[] edges = new int[head.getNumberEdges()+tail.getNumberEdges()];
+		int[] headVertices = head.getVertices(), tailVertices = tail.getVertices();
+		System.arraycopy(headVertices, 0, vertices, 0, headVertices.length);
+		System.arraycopy(head.getEdges(), 0, edges, 0, head.getNumberEdges());
+		int[] tailEdges = tail.getEdges();
+		for(int i=0; i<tail.getNumberEdges(); i++) {
+			vertices[headVertices.length+i] = tailVertices[tailVertices.length-2-i];
+			edges[head.getNumberEdges()+i] = tailEdges[tailEdges.length-1-i];
+		}
+		return new Route(graph, vertices, edges, best);
+	}
+
+	/**
+	 * Gets the heuristic lower bound of the cost from a vertex to a target.
+	 *
+	 * @param vertex the vertex
+	 * @param target the target vertex
+	 * @param scale the heuristic scale, or 0 for none
+	 * @return the lower bound
+	 */
+	private double getHeuristic(int vertex, int target, double scale) {
+		return scale == 0 ? 0 : scale*getDistance(vertex, target);
+	}
+
+	/**
+	 * Gets the straight-line distance between the cell centroids of two
+	 * vertices.
+	 *
+	 * @param u the first vertex
+	 * @param v the second vertex
+	 * @return the distance, or NaN if either vertex has no cell
+	 */
+	private double getDistance(int u, int v) {
+		double dx = x[u]-x[v], dy = y[u]-y[v];
+		return Math.sqrt(dx*dx + dy*dy);
+	}
+
+	/**
+	 * Creates the route to a vertex by following the previous vertices back
+	 * to a source.
+	 *
+	 * @param graph the graph
+	 * @param vertex the last vertex
+	 * @param parentVertices the previous vertices by vertex, or -1
+	 * @param parentEdges the edges from the previous vertices by vertex
+	 * @param cost the cost
+	 * @return the route
+	 */
+	static Route createRoute(SystemGraph graph, int vertex,
+			int[] parentVertices, int[] parentEdges, double cost) {
+		int length = 0;
+		for(int v = vertex; parentVertices[v] >= 0; v = parentVertices[v]) {
+			length++;
+		}
+		int[] vertices = new int[length+1];
+		int[] edges = new int[length];
+		int v = vertex;
+		for(int i = length; i > 0; i--) {
+			vertices[i] = v;
+			edges[i-1] = parentEdges[v];
+			v = parentVertices[v];
+		}
+		vertices[0] = v;
+		return new Route(graph, vertices, edges, cost);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+/**
+ * The ShortestPathTree class holds the least costs and routes from one or
+ * more source nodes to all nodes of a system graph, found by the routing
+ * engine. With several sources, each node is reached from its nearest source.
+ */
+public class ShortestPathTree {
+	private SystemGraph graph;
+	private double[] costs;
+	private int[] parentVertices, parentEdges;
+
+	/**
+	 * Instantiates a new shortest path tree.
+	 *
+	 * @param graph the graph
+	 * @param costs the least costs by vertex
+	 * @param parentVertices the previous vertices by vertex, or -1
+	 * @param parentEdges the edges from the previous vertices by vertex
+	 */
+	ShortestPathTree(SystemGraph graph, double[] costs,
+			int[] parentVertices, int[] parentEdges) {
+		this.graph = graph;
+		this.costs = costs;
+		this.parentVertices = parentVertices;
+		this.parentEdges = parentEdges;
+	}
+
+	/**
+	 * Gets the graph.
+	 *
+	 * @return the graph
+	 */
+	public SystemGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Gets the least cost to reach a node.
+	 *
+	 * @param node the node
+	 * @return the cost, or positive infinity if the node cannot be reached
+	 */
+	public double getCost(Node node) {
+		int vertex = graph.getVertex(node);
+		return vertex < 0 ? Double.POSITIVE_INFINITY : costs[vertex];
+	}
+
+	/**
+	 * Gets the least costs by vertex of the graph.
+	 *
+	 * @return the costs
+	 */
+	public double[] getCosts() {
+		return costs.clone();
+	}
+
+	/**
+	 * Checks if a node can be reached.
+	 *
+	 * @param node the node
+	 * @return true, if reachable
+	 */
+	public boolean isReachable(Node node) {
+		return getCost(node) < Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Gets the route from the nearest source to a node.
+	 *
+	 * @param node the node
+	 * @return the route, or null if the node cannot be reached
+	 */
+	public Route getRoute(Node node) {
+		int vertex = graph.getVertex(node);
+		if(vertex < 0 || costs[vertex] == Double.POSITIVE_INFINITY) return null;
+		return RoutingEngine.createRoute(graph, vertex, parentVertices,
+				parentEdges, costs[vertex]);
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SystemColumns class is a columnar snapshot of a system used to evaluate
+ * behaviors. Nodes and edges are numbered by their position in the system.
+ * Nodes are grouped by cell so the nodes of a cell are found without a search,
+ * and node type and edge type attribute values are gathered into arrays
+ * (with NaN where an attribute is not defined) on first use, resolving each
+ * attribute name to its slot in the attribute schema once. Attribute arrays
+ * may include the values set for individual nodes and edges.
+ */
+public class SystemColumns {
+	private CitySystem system;
+	private int[] nodeIds, edgeIds, nodeCells, cellOffsets, cellNodes;
+	private LongIntMap nodeIndices, edgeIndices;
+	private NodeType[] nodeTypes;
+	private EdgeType[] edgeTypes;
+	private Map<String,double[]> nodeAttributes = new HashMap<String,double[]>();
+	private Map<String,double[]> edgeAttributes = new HashMap<String,double[]>();
+	private Map<String,double[]> nodeInstanceAttributes = new HashMap<String,double[]>();
+	private Map<String,double[]> edgeInstanceAttributes = new HashMap<String,double[]>();
+
+	/**
+	 * Instantiates a new system columns snapshot.
+	 *
+	 * @param city the city columns
+	 * @param system the system
+	 */
+	SystemColumns(CityColumns city, CitySystem system) {
+		this.system = system;
+		NodeTable nodeTable = system.getNodeTable();
+		List<Node> nodes = system.getNodesView();
+		nodeIds = new int[nodes.size()];
+		nodeCells = new int[nodes.size()];
+		nodeTypes = new NodeType[nodes.size()];
+		for(int i=0; i<nodeCells.length; i++) {
+			if(nodeTable != null) {
+				nodeIds[i] = nodeTable.getId(i);
+				nodeCells[i] = city.getCellIndex(nodeTable.getCell(i));
+				nodeTypes[i] = nodeTable.getNodeType(i);
+			} else {
+				Node node = nodes.get(i);
+				nodeIds[i] = node.getId();
+				nodeCells[i] = city.getCellIndex(node.getCell());
+				nodeTypes[i] = node.getNodeType();
+			}
+		}
+		EdgeTable edgeTable = system.getEdgeTable();
+		List<Edge> edges = system.getEdgesView();
+		edgeIds = new int[edges.size()];
+		edgeTypes = new EdgeType[edges.size()];
+		for(int i=0; i<edgeTypes.length; i++) {
+			edgeIds[i] = edgeTable != null ? edgeTable.getId(i) : edges.get(i).getId();
+			edgeTypes[i] = edgeTable != null ? edgeTable.getEdgeType(i)
+					: edges.get(i).getEdgeType();
+		}
+
+		// group nodes by cell with a counting sort
+		cellOffsets = new int[city.getNumberCells()+1];
+		for(int cell : nodeCells) {
+			if(cell >= 0) cellOffsets[cell+1]++;
+		}
+		for(int c=0; c<city.getNumberCells(); c++) {
+			cellOffsets[c+1] += cellOffsets[c];
+		}
+		cellNodes = new int[cellOffsets[city.getNumberCells()]];
+		int[] next = Arrays.copyOf(cellOffsets, city.getNumberCells());
+		for(int i=0; i<nodeCells.length; i++) {
+			if(nodeCells[i] >= 0) cellNodes[next[nodeCells[i]]++] = i;
+		}
+	}
+
+	/**
+	 * Gets the system.
+	 *
+	 * @return the system
+	 */
+	public CitySystem getSystem() {
+		return system;
+	}
+
+	/**
+	 * Gets the number of nodes.
+	 *
+	 * @return the number of nodes
+	 */
+	public int getNumberNodes() {
+		return nodeCells.length;
+	}
+
+	/**
+	 * Gets the number of edges.
+	 *
+	 * @return the number of edges
+	 */
+	public int getNumberEdges() {
+		return edgeTypes.length;
+	}
+
+	/**
+	 * Gets the cell index of a node.
+	 *
+	 * @param node the node index
+	 * @return the cell index, or -1 if the cell is not in the city
+	 */
+	public int getNodeCell(int node) {
+		return nodeCells[node];
+	}
+
+	/**
+	 * Gets the node type of a node.
+	 *
+	 * @param node the node index
+	 * @return the node type
+	 */
+	public NodeType getNodeType(int node) {
+		return nodeTypes[node];
+	}
+
+	/**
+	 * Gets the edge type of an edge.
+	 *
+	 * @param edge the edge index
+	 * @return the edge type
+	 */
+	public EdgeType getEdgeType(int edge) {
+		return edgeTypes[edge];
+	}
+
+	/**
+	 * Gets the position of the first node of a cell in the cell node order.
+	 *
+	 * @param cell the cell index
+	 * @return the position
+	 */
+	public int getFirstCellNode(int cell) {
+		return cellOffsets[cell];
+	}
+
+	/**
+	 * Gets the position after the last node of a cell in the cell node order.
+	 *
+	 * @param cell the cell index
+	 * @return the position
+	 */
+	public int getEndCellNode(int cell) {
+		return cellOffsets[cell+1];
+	}
+
+	/**
+	 * Gets the node at a position in the cell node order, in which the nodes
+	 * of each cell are adjacent.
+	 *
+	 * @param position the position
+	 * @return the node index
+	 */
+	public int getCellNode(int position) {
+		return cellNodes[position];
+	}
+
+	/**
+	 * Gets the values of a node type attribute by node index. The returned
+	 * array is shared and must not be modified.
+	 *
+	 * @param attributeName the attribute name
+	 * @return the values, NaN where the attribute is not defined
+	 */
+	public synchronized double[] getNodeTypeAttribute(String attributeName) {
+		double[] values = nodeAttributes.get(attributeName);
+		if(values == null) {
+			int slot = AttributeSchema.findSlot(attributeName);
+			values = new double[nodeTypes.length];
+			for(int i=0; i<values.length; i++) {
+				values[i] = nodeTypes[i] == null ? Double.NaN : nodeTypes[i].getAttribute(slot);
+			}
+			nodeAttributes.put(attributeName, values);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the values of an edge type attribute by edge index. The returned
+	 * array is shared and must not be modified.
+	 *
+	 * @param attributeName the attribute name
+	 * @return the values, NaN where the attribute is not defined
+	 */
+	public synchronized double[] getEdgeTypeAttribute(String attributeName) {
+		double[] values = edgeAttributes.get(attributeName);
+		if(values == null) {
+			int slot = AttributeSchema.findSlot(attributeName);
+			values = new double[edgeTypes.length];
+			for(int i=0; i<values.length; i++) {
+				values[i] = edgeTypes[i] == null ? Double.NaN : edgeTypes[i].getAttribute(slot);
+			}
+			edgeAttributes.put(attributeName, values);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the values of a node attribute by node index, which are the values
+	 * set for individual nodes where present or else the node type values.
+	 * The returned array is shared and must not be modified.
+	 *
+	 * @param attributeName the attribute name
+	 * @return the values, NaN where the attribute is not defined
+	 */
+	public synchronized double[] getNodeAttribute(String attributeName) {
+		InstanceAttributes instanceAttributes = system.getNodeAttributes();
+		double[] values = getNodeTypeAttribute(attributeName);
+		if(instanceAttributes.isEmpty()) return values;
+		double[] instanceValues = nodeInstanceAttributes.get(attributeName);
+		if(instanceValues == null) {
+			if(nodeIndices == null) nodeIndices = getIndices(nodeIds);
+			instanceValues = getInstanceValues(values, nodeIndices, 
+					instanceAttributes, AttributeSchema.findSlot(attributeName));
+			nodeInstanceAttributes.put(attributeName, instanceValues);
+		}
+		return instanceValues;
+	}
+
+	/**
+	 * Gets the values of an edge attribute by edge index, which are the values
+	 * set for individual edges where present or else the edge type values.
+	 * The returned array is shared and must not be modified.
+	 *
+	 * @param attributeName the attribute name
+	 * @return the values, NaN where the attribute is not defined
+	 */
+	public synchronized double[] getEdgeAttribute(String attributeName) {
+		InstanceAttributes instanceAttributes = system.getEdgeAttributes();
+		double[] values = getEdgeTypeAttribute(attributeName);
+		if(instanceAttributes.isEmpty()) return values;
+		double[] instanceValues = edgeInstanceAttributes.get(attributeName);
+		if(instanceValues == null) {
+			if(edgeIndices == null) edgeIndices = getIndices(edgeIds);
+			instanceValues = getInstanceValues(values, edgeIndices, 
+					instanceAttributes, AttributeSchema.findSlot(attributeName));
+			edgeInstanceAttributes.put(attributeName, instanceValues);
+		}
+		return instanceValues;
+	}
+
+	/**
+	 * Maps ids to their first index.
+	 *
+	 * @param ids the ids by index
+	 * @return the indices by id
+	 */
+	private static LongIntMap getIndices(int[] ids) {
+		LongIntMap indices = new LongIntMap(ids.length);
+		for(int i=0; i<ids.length; i++) {
+			indices.putIfAbsent(ids[i], i);
+		}
+		return indices;
+	}
+
+	/**
+	 * Overrides type values with the values set for individual nodes or
+	 * edges.
+	 *
+	 * @param typeValues the type values by index
+	 * @param indices the indices by id
+	 * @param instanceAttributes the instance attributes
+	 * @param slot the attribute slot
+	 * @return the values by index
+	 */
+	private static double[] getInstanceValues(double[] typeValues, LongIntMap indices,
+			InstanceAttributes instanceAttributes, int slot) {
+		double[] values = typeValues.clone();
+		int[] ids = instanceAttributes.getIds();
+		double[] instanceValues = instanceAttributes.getValues(slot);
+		for(int row=0; row<ids.length; row++) {
+			int index = indices.get(ids[row]);
+			if(index >= 0 && !Double.isNaN(instanceValues[row])) {
+				values[index] = instanceValues[row];
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Gets a mask of the nodes whose node type has a name.
+	 *
+	 * @param nodeTypeName the node type name
+	 * @return the mask by node index
+	 */
+	public boolean[] getNodeTypeMask(String nodeTypeName) {
+		boolean[] mask = new boolean[nodeTypes.length];
+		for(int i=0; i<mask.length; i++) {
+			mask[i] = nodeTypes[i] != null && nodeTypeName.equals(nodeTypes[i].getName());
+		}
+		return mask;
+	}
+}
\ No newline at end of file
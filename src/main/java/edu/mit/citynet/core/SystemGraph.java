@@ -0,0 +1,355 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The SystemGraph class is an immutable adjacency snapshot of the nodes and
+ * edges of a system in compressed sparse row (CSR) form. Nodes are numbered
+ * as vertices 0 to V-1 and the arcs leaving a vertex are stored contiguously,
+ * so neighbors are found without scanning the edges of the system. Directed
+ * edges give one arc from origin to destination and undirected edges give
+ * arcs in both directions.
+ *
+ * The snapshot may be restricted to the nodes of some layers and the edges
+ * of some edge types, and is built in O(V+E). Nodes and edges added to or
+ * removed from the system later are not reflected in the snapshot, which may
+ * be shared between threads.
+ */
+public final class SystemGraph {
+	private final CitySystem system;
+	private final Node[] nodes;
+	private final LongIntMap vertices;
+	private final int[] edgeIds;
+	private final EdgeType[] edgeTypes;
+	private final int[] edgeOrigins, edgeDestinations;
+	private final boolean[] edgeDirected;
+	private final int[] offsets, targets, arcEdges;
+	private volatile SystemGraph reverse;
+
+	/**
+	 * Instantiates a new system graph of all nodes and edges of a system.
+	 *
+	 * @param system the system
+	 */
+	public SystemGraph(CitySystem system) {
+		this(system, null, null);
+	}
+
+	/**
+	 * Instantiates a new system graph of the nodes in some layers and the
+	 * edges of some edge types of a system. Edges are only included if both
+	 * their origin and destination are included.
+	 *
+	 * @param system the system
+	 * @param layers the layers to include, or null for all layers
+	 * @param edgeTypes the edge types to include, or null for all edge types
+	 */
+	public SystemGraph(CitySystem system, Collection<Layer> layers,
+			Collection<EdgeType> edgeTypes) {
+		this.system = system;
+		Set<Layer> layerFilter = layers == null ? null : new HashSet<Layer>(layers);
+		Set<EdgeType> edgeTypeFilter = edgeTypes == null ? null : new HashSet<EdgeType>(edgeTypes);
+		NodeTable nodeTable = system.getNodeTable();
+		EdgeTable edgeTable = system.getEdgeTable();
+		List<Node> nodeList = system.getNodesView();
+		List<Edge> edgeList = system.getEdgesView();
+
+		// number the included nodes
+		Node[] nodes = new Node[nodeList.size()];
+		vertices = new LongIntMap(nodeList.size());
+		int numberVertices = 0;
+		for(int i=0; i<nodeList.size(); i++) {
+			Layer layer = nodeTable == null ? nodeList.get(i).getLayer() : nodeTable.getLayer(i);
+			if(layerFilter != null && !layerFilter.contains(layer)) continue;
+			int id = nodeTable == null ? nodeList.get(i).getId() : nodeTable.getId(i);
+			if(vertices.get(id) >= 0) continue; // duplicate node id
+			nodes[numberVertices] = nodeList.get(i);
+			vertices.put(id, numberVertices++);
+		}
+		this.nodes = Arrays.copyOf(nodes, numberVertices);
+
+		// resolve the included edges and count the arcs leaving each vertex
+		int[] edgeIds = new int[edgeList.size()];
+		EdgeType[] types = new EdgeType[edgeList.size()];
+		int[] origins = new int[edgeList.size()];
+		int[] destinations = new int[edgeList.size()];
+		boolean[] directed = new boolean[edgeList.size()];
+		offsets = new int[numberVertices+1];
+		int numberEdges = 0, numberArcs = 0;
+		for(int i=0; i<edgeList.size(); i++) {
+			Edge edge = edgeTable == null ? edgeList.get(i) : null;
+			EdgeType edgeType = edge == null ? edgeTable.getEdgeType(i) : edge.getEdgeType();
+			if(edgeTypeFilter != null && !edgeTypeFilter.contains(edgeType)) continue;
+			int origin = edge == null ? vertices.get(edgeTable.getOriginId(i)) : getVertex(edge.getOrigin());
+			int destination = edge == null ? vertices.get(edgeTable.getDestinationId(i)) : getVertex(edge.getDestination());
+			if(origin < 0 || destination < 0) continue;
+			EdgeDirection direction = edge == null ? edgeTable.getEdgeDirection(i) : edge.getEdgeDirection();
+			edgeIds[numberEdges] = edge == null ? edgeTable.getId(i) : edge.getId();
+			types[numberEdges] = edgeType;
+			origins[numberEdges] = origin;
+			destinations[numberEdges] = destination;
+			directed[numberEdges] = direction == EdgeDirection.DIRECTED;
+			offsets[origin+1]++;
+			numberArcs++;
+			if(!directed[numberEdges]) {
+				offsets[destination+1]++;
+				numberArcs++;
+			}
+			numberEdges++;
+		}
+		this.edgeIds = Arrays.copyOf(edgeIds, numberEdges);
+		this.edgeTypes = Arrays.copyOf(types, numberEdges);
+		this.edgeOrigins = Arrays.copyOf(origins, numberEdges);
+		this.edgeDestinations = Arrays.copyOf(destinations, numberEdges);
+		this.edgeDirected = Arrays.copyOf(directed, numberEdges);
+
+		// fill the arcs in edge order
+		for(int v=0; v<numberVertices; v++) {
+			offsets[v+1] += offsets[v];
+		}
+		targets = new int[numberArcs];
+		arcEdges = new int[numberArcs];
+		int[] next = Arrays.copyOf(offsets, numberVertices);
+		for(int e=0; e<numberEdges; e++) {
+			int arc = next[edgeOrigins[e]]++;
+			targets[arc] = edgeDestinations[e];
+			arcEdges[arc] = e;
+			if(!edgeDirected[e]) {
+				arc = next[edgeDestinations[e]]++;
+				targets[arc] = edgeOrigins[e];
+				arcEdges[arc] = e;
+			}
+		}
+	}
+
+	/**
+	 * Instantiates the reverse of a system graph, which shares the vertices
+	 * and edges of the graph but has all arcs reversed.
+	 *
+	 * @param graph the graph
+	 */
+	private SystemGraph(SystemGraph graph) {
+		system = graph.system;
+		nodes = graph.nodes;
+		vertices = graph.vertices;
+		edgeIds = graph.edgeIds;
+		edgeTypes = graph.edgeTypes;
+		edgeOrigins = graph.edgeOrigins;
+		edgeDestinations = graph.edgeDestinations;
+		edgeDirected = graph.edgeDirected;
+		int numberVertices = nodes.length;
+		offsets = new int[numberVertices+1];
+		for(int arc=0; arc<graph.targets.length; arc++) {
+			offsets[graph.targets[arc]+1]++;
+		}
+		for(int v=0; v<numberVertices; v++) {
+			offsets[v+1] += offsets[v];
+		}
+		targets = new int[graph.targets.length];
+		arcEdges = new int[graph.targets.length];
+		int[] next = Arrays.copyOf(offsets, numberVertices);
+		for(int v=0; v<numberVertices; v++) {
+			for(int arc=graph.offsets[v]; arc<graph.offsets[v+1]; arc++) {
+				int reverseArc = next[graph.targets[arc]]++;
+				targets[reverseArc] = v;
+				arcEdges[reverseArc] = graph.arcEdges[arc];
+			}
+		}
+		reverse = graph;
+	}
+
+	/**
+	 * Gets the reverse graph, in which each arc leads from the target to the
+	 * source of an arc of this graph. The reverse graph is built on first use.
+	 *
+	 * @return the reverse graph
+	 */
+	public SystemGraph getReverse() {
+		SystemGraph graph = reverse;
+		if(graph == null) {
+			synchronized(this) {
+				graph = reverse;
+				if(graph == null) {
+					graph = new SystemGraph(this);
+					reverse = graph;
+				}
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Gets the system.
+	 *
+	 * @return the system
+	 */
+	public CitySystem getSystem() {
+		return system;
+	}
+
+	/**
+	 * Gets the number of vertices.
+	 *
+	 * @return the number of vertices
+	 */
+	public int getNumberVertices() {
+		return nodes.length;
+	}
+
+	/**
+	 * Gets the number of edges.
+	 *
+	 * @return the number of edges
+	 */
+	public int getNumberEdges() {
+		return edgeIds.length;
+	}
+
+	/**
+	 * Gets the number of arcs.
+	 *
+	 * @return the number of arcs
+	 */
+	public int getNumberArcs() {
+		return targets.length;
+	}
+
+	/**
+	 * Gets the node of a vertex.
+	 *
+	 * @param vertex the vertex
+	 * @return the node
+	 */
+	public Node getNode(int vertex) {
+		return nodes[vertex];
+	}
+
+	/**
+	 * Gets the vertex of a node.
+	 *
+	 * @param node the node
+	 * @return the vertex, or -1 if the node is not in the graph
+	 */
+	public int getVertex(Node node) {
+		return node == null ? -1 : vertices.get(node.getId());
+	}
+
+	/**
+	 * Gets the first arc leaving a vertex.
+	 *
+	 * @param vertex the vertex
+	 * @return the first arc
+	 */
+	public int getFirstArc(int vertex) {
+		return offsets[vertex];
+	}
+
+	/**
+	 * Gets the arc after the last arc leaving a vertex.
+	 *
+	 * @param vertex the vertex
+	 * @return the end arc
+	 */
+	public int getEndArc(int vertex) {
+		return offsets[vertex+1];
+	}
+
+	/**
+	 * Gets the number of arcs leaving a vertex.
+	 *
+	 * @param vertex the vertex
+	 * @return the out degree
+	 */
+	public int getOutDegree(int vertex) {
+		return offsets[vertex+1]-offsets[vertex];
+	}
+
+	/**
+	 * Gets the vertex an arc leads to.
+	 *
+	 * @param arc the arc
+	 * @return the target vertex
+	 */
+	public int getTarget(int arc) {
+		return targets[arc];
+	}
+
+	/**
+	 * Gets the edge of an arc.
+	 *
+	 * @param arc the arc
+	 * @return the edge index
+	 */
+	public int getArcEdge(int arc) {
+		return arcEdges[arc];
+	}
+
+	/**
+	 * Gets the vertices adjacent to a vertex by the arcs leaving it.
+	 *
+	 * @param vertex the vertex
+	 * @return the neighbor vertices
+	 */
+	public int[] getNeighbors(int vertex) {
+		return Arrays.copyOfRange(targets, offsets[vertex], offsets[vertex+1]);
+	}
+
+	/**
+	 * Gets the id of an edge.
+	 *
+	 * @param edge the edge index
+	 * @return the edge id
+	 */
+	public int getEdgeId(int edge) {
+		return edgeIds[edge];
+	}
+
+	/**
+	 * Gets the edge type of an edge.
+	 *
+	 * @param edge the edge index
+	 * @return the edge type
+	 */
+	public EdgeType getEdgeType(int edge) {
+		return edgeTypes[edge];
+	}
+
+	/**
+	 * Gets the origin vertex of an edge.
+	 *
+	 * @param edge the edge index
+	 * @return the origin vertex
+	 */
+	public int getEdgeOrigin(int edge) {
+		return edgeOrigins[edge];
+	}
+
+	/**
+	 * Gets the destination vertex of an edge.
+	 *
+	 * @param edge the edge index
+	 * @return the destination vertex
+	 */
+	public int getEdgeDestination(int edge) {
+		return edgeDestinations[edge];
+	}
+
+	/**
+	 * Checks if an edge is directed.
+	 *
+	 * @param edge the edge index
+	 * @return true, if directed
+	 */
+	public boolean isEdgeDirected(int edge) {
+		return edgeDirected[edge];
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+/**
+ * The TotalResidentialWater behavior calculates the annual residential water
+ * demand of the city by application type (kitchen, faucets, shower, toilets
+ * and laundry), mirroring the TotalResidentialWater behavior of the MATLAB
+ * interface. Each residential node of the building system demands the
+ * residents of its cell times its water use per person each day.
+ */
+public class TotalResidentialWater extends CellBehavior {
+	public static final String SYSTEM_NAME = "Building";
+	public static final String RESIDENTIAL = "Residential";
+	private static final String[] APPLICATION_ATTRIBUTES = new String[]{
+		"waterKitchenPercent", "waterFaucetsPercent", "waterShowerPercent",
+		"waterToiletsPercent", "waterLaundryPercent"};
+	private static final int DAYS_PER_YEAR = 365;
+
+	private NumberResidents numberResidents = new NumberResidents();
+	private SystemColumns system;
+	private boolean[] residential;
+	private double[] residents, waterPerPerson;
+	private double[][] applicationPercents, cellApplicationWater;
+	private double[] applicationWater = new double[APPLICATION_ATTRIBUTES.length];
+
+	/**
+	 * Instantiates a new total residential water behavior.
+	 */
+	public TotalResidentialWater() {
+		super("Total Residential Water Demand per Year",
+				"Calculates the total residential water demand "
+				+ "in the city by application type.", "cubic meters", "[0,inf)");
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CellBehavior#prepare(edu.mit.citynet.core.CityColumns)
+	 */
+	protected void prepare(CityColumns columns) {
+		system = columns.getSystem(SYSTEM_NAME, false);
+		applicationPercents = new double[APPLICATION_ATTRIBUTES.length][];
+		cellApplicationWater = new double[APPLICATION_ATTRIBUTES.length][columns.getNumberCells()];
+		if(system == null) return;
+		numberResidents.evaluate(columns);
+		residents = numberResidents.getCellValues();
+		residential = system.getNodeTypeMask(RESIDENTIAL);
+		waterPerPerson = system.getNodeAttribute("waterPerPerson");
+		for(int a=0; a<APPLICATION_ATTRIBUTES.length; a++) {
+			applicationPercents[a] = system.getNodeAttribute(APPLICATION_ATTRIBUTES[a]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CellBehavior#evaluateCell(edu.mit.citynet.core.CityColumns, int)
+	 */
+	protected double evaluateCell(CityColumns columns, int cell) {
+		if(system == null) return 0;
+		double water = 0;
+		for(int i=system.getFirstCellNode(cell); i<system.getEndCellNode(cell); i++) {
+			int node = system.getCellNode(i);
+			if(!residential[node]) continue;
+			double nodeWater = residents[cell]*waterPerPerson[node]*DAYS_PER_YEAR;
+			water += nodeWater;
+			for(int a=0; a<APPLICATION_ATTRIBUTES.length; a++) {
+				cellApplicationWater[a][cell] += nodeWater*applicationPercents[a][node];
+			}
+		}
+		return water;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.Behavior#evaluate(edu.mit.citynet.core.CityColumns)
+	 */
+	public double evaluate(CityColumns columns) {
+		double value = super.evaluate(columns);
+		for(int a=0; a<APPLICATION_ATTRIBUTES.length; a++) {
+			applicationWater[a] = 0;
+			for(double cellWater : cellApplicationWater[a]) applicationWater[a] += cellWater;
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the annual water demand for kitchen use.
+	 *
+	 * @return the kitchen water demand
+	 */
+	public double getKitchen() {
+		return applicationWater[0];
+	}
+
+	/**
+	 * Gets the annual water demand for faucets use.
+	 *
+	 * @return the faucets water demand
+	 */
+	public double getFaucets() {
+		return applicationWater[1];
+	}
+
+	/**
+	 * Gets the annual water demand for shower use.
+	 *
+	 * @return the shower water demand
+	 */
+	public double getShower() {
+		return applicationWater[2];
+	}
+
+	/**
+	 * Gets the annual water demand for toilets use.
+	 *
+	 * @return the toilets water demand
+	 */
+	public double getToilets() {
+		return applicationWater[3];
+	}
+
+	/**
+	 * Gets the annual water demand for laundry use.
+	 *
+	 * @return the laundry water demand
+	 */
+	public double getLaundry() {
+		return applicationWater[4];
+	}
+}
\ No newline at end of file
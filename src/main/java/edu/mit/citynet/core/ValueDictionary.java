@@ -0,0 +1,109 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ValueDictionary class assigns consecutive codes to distinct values so
+ * that columnar tables can store a small integer code instead of a
+ * reference. Values are compared by identity, so decoding a code returns
+ * the same object which was encoded. The null value is encoded as -1.
+ *
+ * @param <T> the value type
+ */
+final class ValueDictionary<T> {
+	private final int maxSize;
+	private final List<T> values;
+	private final Map<T,Integer> codes;
+
+	/**
+	 * Instantiates a new value dictionary.
+	 *
+	 * @param maxSize the maximum number of distinct values
+	 */
+	ValueDictionary(int maxSize) {
+		this.maxSize = maxSize;
+		values = new ArrayList<T>();
+		codes = new IdentityHashMap<T,Integer>();
+	}
+
+	/**
+	 * Gets the code of a value, assigning a new code if required.
+	 *
+	 * @param value the value
+	 * @return the code
+	 */
+	int encode(T value) {
+		if(value == null) return -1;
+		Integer code = codes.get(value);
+		if(code == null) {
+			if(values.size() >= maxSize) {
+				throw new IllegalStateException("Columnar storage supports at most "
+						+ maxSize + " distinct values of type "
+						+ value.getClass().getSimpleName() + ".");
+			}
+			code = values.size();
+			values.add(value);
+			codes.put(value, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Gets the value of a code.
+	 *
+	 * @param code the code
+	 * @return the value
+	 */
+	T decode(int code) {
+		return code < 0 ? null : values.get(code);
+	}
+
+	/**
+	 * Removes the values which are no longer used by a column of codes and 
+	 * renumbers the remaining codes of the column, so that the dictionary 
+	 * does not keep removed values reachable or run out of codes.
+	 *
+	 * @param column the column of codes
+	 * @param size the number of rows in the column
+	 */
+	void compact(short[] column, int size) {
+		int[] remap = new int[values.size()];
+		Arrays.fill(remap, -1);
+		for(int i=0; i<size; i++) {
+			if(column[i] >= 0) remap[column[i]] = 0;
+		}
+		List<T> used = new ArrayList<T>();
+		for(int code=0; code<remap.length; code++) {
+			if(remap[code] < 0) continue;
+			remap[code] = used.size();
+			used.add(values.get(code));
+		}
+		if(used.size() == values.size()) return;
+		for(int i=0; i<size; i++) {
+			if(column[i] >= 0) column[i] = (short)remap[column[i]];
+		}
+		values.clear();
+		codes.clear();
+		for(T value : used) {
+			codes.put(value, values.size());
+			values.add(value);
+		}
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	void clear() {
+		values.clear();
+		codes.clear();
+	}
+}
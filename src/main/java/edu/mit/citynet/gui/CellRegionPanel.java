@@ -10,6 +10,7 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -33,6 +34,7 @@ public class CellRegionPanel extends JPanel {
 	private JTable coordinateTable;
 	private CoordinateTableModel coordinateTableModel;
 	private JSpinner rowsSpinner, columnsSpinner;
+	private JCheckBox implicitCheck;
 	private SpinnerNumberModel rowsModel, columnsModel;
 	
 	/**
@@ -71,7 +73,7 @@ public class CellRegionPanel extends JPanel {
 		add(new JLabel("Rows: ", JLabel.RIGHT), c);
 		c.gridx++;
 		c.fill = GridBagConstraints.NONE;
-		rowsModel = new SpinnerNumberModel(1,1,100,1);
+		rowsModel = new SpinnerNumberModel(1,1,10000,1);
 		rowsSpinner = new JSpinner(rowsModel);
 		add(rowsSpinner, c);
 		c.gridy++;
@@ -80,10 +82,14 @@ public class CellRegionPanel extends JPanel {
 		add(new JLabel("Columns: ", JLabel.RIGHT), c);
 		c.gridx++;
 		c.fill = GridBagConstraints.NONE;
-		columnsModel = new SpinnerNumberModel(1,1,100,1);
+		columnsModel = new SpinnerNumberModel(1,1,10000,1);
 		columnsSpinner = new JSpinner(columnsModel);
 		add(columnsSpinner, c);
 		c.gridy++;
+		implicitCheck = new JCheckBox("Implicit cells");
+		implicitCheck.setToolTipText("Compute cell geometry on demand instead of storing it");
+		add(implicitCheck, c);
+		c.gridy++;
 		c.gridx = 0;
 		c.anchor = GridBagConstraints.FIRST_LINE_END;
 		c.fill = GridBagConstraints.HORIZONTAL;
@@ -113,6 +119,7 @@ public class CellRegionPanel extends JPanel {
 		coordinateTableModel.setCoordinates(cellRegion.getCoordinateList());
 		rowsSpinner.setValue(cellRegion.getNumberRows());
 		columnsSpinner.setValue(cellRegion.getNumberColumns());
+		implicitCheck.setSelected(cellRegion.isImplicit());
 	}
 	
 	/**
@@ -124,5 +131,6 @@ public class CellRegionPanel extends JPanel {
 		cellRegion.setCoordinateList(coordinateTableModel.getCoordinates());
 		cellRegion.setNumberColumns(columnsModel.getNumber().intValue());
 		cellRegion.setNumberRows(rowsModel.getNumber().intValue());
+		cellRegion.setImplicit(implicitCheck.isSelected());
 	}
 }
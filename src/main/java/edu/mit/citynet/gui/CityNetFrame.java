@@ -7,6 +7,8 @@ package edu.mit.citynet.gui;
 
 import java.awt.Graphics;
 import java.awt.Image;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
@@ -19,12 +21,18 @@ import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 import javax.swing.filechooser.FileFilter;
 
 import edu.mit.citynet.CityNet;
 import edu.mit.citynet.core.City;
 import edu.mit.citynet.core.CitySystem;
-import edu.mit.citynet.io.SpreadsheetTemplate;
+import edu.mit.citynet.io.CityJournal;
+import edu.mit.citynet.io.CityTemplate;
+import edu.mit.citynet.io.GeoExporter;
+import edu.mit.citynet.io.GeoFormat;
+import edu.mit.citynet.io.GeoImporter;
+import edu.mit.citynet.io.TemplateFormat;
 import edu.mit.citynet.viz.DisplayOptionsPanel;
 
 /**
@@ -36,21 +44,30 @@ import edu.mit.citynet.viz.DisplayOptionsPanel;
  */
 public class CityNetFrame extends JFrame {
 	private static final long serialVersionUID = -4707459231955143750L;
+	private static final int MAX_JOURNALS = 8;
 	private CityNetMenuBar menuBar;
 	private JPanel backgroundPanel;
 	private CityTabbedPane cityPanel;
-	private JFileChooser fileChooser;
+	private JFileChooser fileChooser, geoFileChooser;
 	private CityDetailsPanel cityDetailsPanel;
 	private DisplayOptionsPanel displayOptionsPanel;
 	private SystemImportPanel systemImportPanel;
-	private SpreadsheetTemplate template;
+	private CityTemplate template;
+	private CityJournal journal;
+	private Timer journalTimer;
 	
 	/**
 	 * Instantiates a new city net frame.
 	 */
 	public CityNetFrame() {
 		super("City.Net");
-		template = new SpreadsheetTemplate();
+		template = TemplateFormat.SPREADSHEET.createTemplate();
+		journal = openJournal();
+		journalTimer = new Timer(1000, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				syncJournal();
+			}
+		});
 		menuBar = new CityNetMenuBar(this);
 		backgroundPanel = new BackgroundPanel();
 		fileChooser = new JFileChooser(System.getProperty("user.dir")) {
@@ -85,14 +102,42 @@ public class CityNetFrame extends JFrame {
 		        }
 				
 				if(extension != null) {
-					if(extension.equals("xls")) return true;
+					if(TemplateFormat.getTemplateFormat(s) != null) return true;
 					else return false;
 				} else return false;
 			}
 
 			@Override
 			public String getDescription() {
-				return "XLS Files";
+				return "City.Net Files (*.xls, *.xlsx, *.cnb)";
+			}
+		});
+		geoFileChooser = new JFileChooser(System.getProperty("user.dir")) {
+			private static final long serialVersionUID = -2461933807460870539L;
+			public void approveSelection() {
+				if(getDialogType()==JFileChooser.SAVE_DIALOG) {
+					File file = getSelectedFile();
+					if (file != null && file.exists()) {
+						int answer = JOptionPane.showOptionDialog(this, 
+								"File '" + file.getAbsolutePath() + "' already exists. Overwrite?", 
+								"City.Net | Warning", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE, null, null, null);
+					    if (answer == JOptionPane.NO_OPTION) {
+							return;
+					    }
+					}
+				}
+				super.approveSelection();
+		    }
+		};
+		geoFileChooser.setFileFilter(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				return f.isDirectory() || GeoFormat.getGeoFormat(f.getName()) != null;
+			}
+
+			@Override
+			public String getDescription() {
+				return "GIS Files (*.geojson, *.wkb)";
 			}
 		});
 		cityDetailsPanel = new CityDetailsPanel();
@@ -101,6 +146,37 @@ public class CityNetFrame extends JFrame {
 		initializeFrame();
 	}
 	
+	/**
+	 * Opens a journal in the home directory which no other instance of the 
+	 * application uses, preferring one left by a session which did not close
+	 * so that it can be recovered.
+	 *
+	 * @return the journal, with its file locked
+	 */
+	private static CityJournal openJournal() {
+		File home = new File(System.getProperty("user.home"));
+		for(int pass=0; pass<2; pass++) {
+			for(int i=0; i<MAX_JOURNALS; i++) {
+				File file = new File(home, i==0?".citynet.journal":".citynet-" + i + ".journal");
+				if(pass==0 && file.length()==0) continue;
+				CityJournal journal = new CityJournal(file.getAbsolutePath());
+				try {
+					if(journal.lock()) return journal;
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		try {
+			File file = File.createTempFile(".citynet-", ".journal", home);
+			file.deleteOnExit();
+			return new CityJournal(file.getAbsolutePath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new CityJournal(new File(home, ".citynet.journal").getAbsolutePath());
+		}
+	}
+
 	/**
 	 * Initializes the frame.
 	 */
@@ -154,6 +230,7 @@ public class CityNetFrame extends JFrame {
 		}
 		template.setFilePath(null);
 		openCityCommand(new City());
+		startJournal();
 		editCityDetailsCommand();
 	}
 	
@@ -167,15 +244,55 @@ public class CityNetFrame extends JFrame {
 		}
 		int returnVal = fileChooser.showOpenDialog(this);
 		if(returnVal == JFileChooser.APPROVE_OPTION) {
-			template.setFilePath(fileChooser.getSelectedFile().getAbsolutePath());
+			String filePath = fileChooser.getSelectedFile().getAbsolutePath();
+			TemplateFormat format = TemplateFormat.getTemplateFormat(filePath);
+			template = (format==null?TemplateFormat.SPREADSHEET:format).createTemplate();
+			template.setFilePath(filePath);
 			try {
 				openCityCommand(template.readTemplate());
+				startJournal();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 	
+	/**
+	 * Recovers the unsaved changes to a city from the journal of a previous 
+	 * session which did not close (prompts to recover the changes).
+	 */
+	public void recoverCityCommand() {
+		System.out.println("Recover City Command");
+		if(!journal.exists()) return;
+		try {
+			City city = journal.replay();
+			if(city != null) {
+				String message = "City.Net did not close properly. Recover unsaved changes to '" 
+						+ city.getName() + "'?";
+				if(!journal.isComplete()) {
+					message += "\nSome changes made to cells, nodes or edges in place " 
+							+ "could not be recovered.";
+				}
+				int answer = JOptionPane.showOptionDialog(this, message, 
+						"City.Net | Warning", JOptionPane.YES_NO_OPTION, 
+						JOptionPane.WARNING_MESSAGE, null, null, null);
+				if(answer == JOptionPane.YES_OPTION) {
+					String filePath = journal.getSnapshotPath();
+					TemplateFormat format = filePath==null?null:TemplateFormat.getTemplateFormat(filePath);
+					template = (format==null?TemplateFormat.SPREADSHEET:format).createTemplate();
+					template.setFilePath(filePath);
+					openCityCommand(city);
+					journal.resume(city);
+					journalTimer.start();
+					return;
+				}
+			}
+			journal.delete();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * Open city command.
 	 *
@@ -189,6 +306,33 @@ public class CityNetFrame extends JFrame {
 		repaint();
 	}
 	
+	/**
+	 * Starts journaling the changes to the open city since it was last read 
+	 * or saved.
+	 */
+	private void startJournal() {
+		try {
+			journal.start(cityPanel.getCity(), template.getFilePath());
+			journalTimer.start();
+		} catch (IOException e) {
+			journalTimer.stop();
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Hands the journaled changes off to be written to disk in the background
+	 * (called periodically).
+	 */
+	private void syncJournal() {
+		try {
+			journal.sync();
+		} catch (IOException e) {
+			journalTimer.stop();
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * Closes the existing city (prompts to save changes).
 	 *
@@ -205,6 +349,12 @@ public class CityNetFrame extends JFrame {
 	    } else if (answer == JOptionPane.YES_OPTION) {
 			saveCityCommand();
 	    }
+		journalTimer.stop();
+		try {
+			journal.delete();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		CityNet.getInstance().setCity(null);
 		cityPanel = null;
 		setContentPane(backgroundPanel);
@@ -222,9 +372,12 @@ public class CityNetFrame extends JFrame {
 			int returnVal = fileChooser.showSaveDialog(this);
 			if(returnVal == JFileChooser.APPROVE_OPTION) {
 				String filePath = fileChooser.getSelectedFile().getAbsolutePath();
-				if(!filePath.substring(filePath.length() - 4, filePath.length()).equals(".xls")) {
-					filePath += ".xls";
+				TemplateFormat format = TemplateFormat.getTemplateFormat(filePath);
+				if(format == null) {
+					format = TemplateFormat.SPREADSHEET;
+					filePath += "." + format.getExtension();
 				}
+				template = format.createTemplate();
 				template.setFilePath(filePath);
 				saveCityCommand();
 			}
@@ -242,6 +395,7 @@ public class CityNetFrame extends JFrame {
 			} else {
 				try {
 					template.writeTemplate(cityPanel.getCity());
+					startJournal();
 				} catch (IOException e) {
 					JOptionPane.showMessageDialog(this, "An error of type " + 
 							e.getClass().getSimpleName() + " occurred while saving the city.",
@@ -257,11 +411,13 @@ public class CityNetFrame extends JFrame {
 	 */
 	public void exitCommand() {
 		System.out.println("Exit Command");
-		if(cityPanel != null) {
-			if(closeCityCommand()) dispose();
-		} else {
-			dispose();
+		if(cityPanel != null && !closeCityCommand()) return;
+		try {
+			journal.release();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
+		dispose();
 	}
 	
 	/**
@@ -305,4 +461,47 @@ public class CityNetFrame extends JFrame {
 			}
 		}
 	}
+	
+	/**
+	 * Command to export the cells, nodes and edges of the city as 
+	 * geographic features.
+	 */
+	public void exportGeometryCommand() {
+		System.out.println("Export Geometry Command");
+		if(cityPanel != null) {
+			int returnVal = geoFileChooser.showSaveDialog(this);
+			if(returnVal == JFileChooser.APPROVE_OPTION) {
+				String filePath = geoFileChooser.getSelectedFile().getAbsolutePath();
+				GeoFormat format = GeoFormat.getGeoFormat(filePath);
+				if(format == null) {
+					format = GeoFormat.GEOJSON;
+					filePath += "." + format.getExtension();
+				}
+				try {
+					new GeoExporter(format).writeFeatures(cityPanel.getCity(), filePath);
+				} catch (IOException e) {
+					JOptionPane.showMessageDialog(this, "An error of type " + 
+							e.getClass().getSimpleName() + " occurred while exporting the geometry.",
+							"City.Net | Error", JOptionPane.ERROR_MESSAGE);
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Command to import cells, nodes and edges from geographic features.
+	 */
+	public void importGeometryCommand() {
+		System.out.println("Import Geometry Command");
+		if(cityPanel != null) {
+			int returnVal = geoFileChooser.showOpenDialog(this);
+			if(returnVal == JFileChooser.APPROVE_OPTION) {
+				String filePath = geoFileChooser.getSelectedFile().getAbsolutePath();
+				GeoFormat format = GeoFormat.getGeoFormat(filePath);
+				if(format == null) format = GeoFormat.GEOJSON;
+				cityPanel.importGeometryCommand(new GeoImporter(format), filePath);
+			}
+		}
+	}
 }
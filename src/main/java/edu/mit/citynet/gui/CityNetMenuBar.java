@@ -28,7 +28,8 @@ public class CityNetMenuBar extends JMenuBar {
 	private CityNetFrame frame;
 	private JMenu fileMenu;
 	private JMenuItem newCityItem, openCityItem, closeCityItem, 
-		saveCityAsItem, saveCityItem, importSystemsItem, exitItem;
+		saveCityAsItem, saveCityItem, importSystemsItem, 
+		exportGeometryItem, importGeometryItem, exitItem;
 	private JMenu editMenu;
 	private JMenuItem cityDetails, displayOptions;
 	
@@ -96,6 +97,20 @@ public class CityNetMenuBar extends JMenuBar {
         	}
         });
         fileMenu.add(importSystemsItem);
+        exportGeometryItem = new JMenuItem("Export Geometry...", KeyEvent.VK_G);
+        exportGeometryItem.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) {
+    			frame.exportGeometryCommand();
+        	}
+        });
+        fileMenu.add(exportGeometryItem);
+        importGeometryItem = new JMenuItem("Import Geometry...", KeyEvent.VK_M);
+        importGeometryItem.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) {
+    			frame.importGeometryCommand();
+        	}
+        });
+        fileMenu.add(importGeometryItem);
         fileMenu.addSeparator();
         exitItem = new JMenuItem("Exit");
         exitItem.setAccelerator(KeyStroke.getKeyStroke(
@@ -139,6 +154,8 @@ public class CityNetMenuBar extends JMenuBar {
 		saveCityItem.setEnabled(frame.isCityOpen());
 		saveCityAsItem.setEnabled(frame.isCityOpen());
 		importSystemsItem.setEnabled(frame.isCityOpen());
+		exportGeometryItem.setEnabled(frame.isCityOpen());
+		importGeometryItem.setEnabled(frame.isCityOpen());
 		editMenu.setEnabled(frame.isCityOpen());
 	}
 }
@@ -10,6 +10,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import javax.swing.JMenuItem;
@@ -20,9 +22,11 @@ import javax.swing.JTabbedPane;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import edu.mit.citynet.core.Cell;
 import edu.mit.citynet.core.CellRegion;
 import edu.mit.citynet.core.City;
 import edu.mit.citynet.core.CitySystem;
+import edu.mit.citynet.io.GeoImporter;
 import edu.mit.citynet.util.CityNetIcon;
 
 /**
@@ -37,6 +41,7 @@ public class CityTabbedPane extends JTabbedPane {
 	private City city;
 	private SystemDetailsPanel systemDetailsPanel;
 	private CityPanel cityVizPanel;
+	private boolean generatingCells;
 	
 	/**
 	 * Instantiates a new city panel.
@@ -159,28 +164,138 @@ public class CityTabbedPane extends JTabbedPane {
 	 */
 	public void clearCellsCommand() {
 		System.out.println("Clear Cells Command");
+		if(isGenerating()) return;
 		for(Component c : getComponents()) {
 			if(c instanceof SystemPanel) {
 				SystemPanel p = (SystemPanel)c;
-				if(!p.getSystem().getEdges().isEmpty())
+				if(!p.getSystem().getEdgesView().isEmpty())
 					p.clearEdgesCommand();
-				if(!p.getSystem().getNodes().isEmpty())
+				if(!p.getSystem().getNodesView().isEmpty())
 					p.clearNodesCommand();
+				p.clearGenerations();
 			}
 		}
 		city.removeAllCells(city.getCells());
 	}
 	
 	/**
-	 * Generate cells command.
+	 * Generate cells command. Cells are created in the background and added 
+	 * to the city one cell region at a time.
 	 */
-	public void generateCellsCommand(List<CellRegion> cellRegions) {
+	public void generateCellsCommand(final List<CellRegion> cellRegions) {
 		System.out.println("Generate Cells Command");
-		if(!city.getCells().isEmpty())
+		if(isGenerating()) return;
+		if(!city.getCellsView().isEmpty())
 			clearCellsCommand();
+		int numberCells = 0;
 		for(CellRegion r : cellRegions) {
-			r.generateCells();
+			numberCells += r.getNumberRows()*r.getNumberColumns();
 		}
+		city.ensureCellCapacity(numberCells);
+		generatingCells = true;
+		new GenerationWorker<List<Cell>>(this, 
+				"Generating cells in cell regions...", cellRegions.size()) {
+			protected Void doInBackground() {
+				for(CellRegion r : cellRegions) {
+					if(isCancelled()) break;
+					publish(r.createCells());
+				}
+				return null;
+			}
+			protected void generate(List<Cell> cells) {
+				city.addAllCells(cells);
+			}
+			protected void published() {
+				repaint();
+			}
+			protected void finished() {
+				generatingCells = false;
+				repaint();
+			}
+		}.start();
+	}
+	
+	/**
+	 * Import geometry command. The features of the file are read in the 
+	 * background and then added to the city at once, after discarding the 
+	 * region generations of all systems as their cells, nodes and edges 
+	 * change. Cells cannot change while importing.
+	 *
+	 * @param importer the geo importer
+	 * @param filePath the file path
+	 */
+	public void importGeometryCommand(final GeoImporter importer, final String filePath) {
+		if(isGenerating()) return;
+		for(Component c : getComponents()) {
+			if(c instanceof SystemPanel) ((SystemPanel)c).clearGenerations();
+		}
+		generatingCells = true;
+		new GenerationWorker<GeoImporter>(this, 
+				"Importing geometry from " + new File(filePath).getName() + "...", 1) {
+			private IOException failure;
+			protected Void doInBackground() {
+				try {
+					importer.prepareFeatures(city, filePath);
+					publish(importer);
+				} catch(IOException e) {
+					failure = e;
+				}
+				return null;
+			}
+			protected void generate(GeoImporter importer) {
+				importer.addFeatures();
+			}
+			protected void finished() {
+				generatingCells = false;
+				repaint();
+				if(failure != null) {
+					JOptionPane.showMessageDialog(CityTabbedPane.this, "An error of type " + 
+							failure.getClass().getSimpleName() + " occurred while importing the geometry.",
+							"City.Net | Error", JOptionPane.ERROR_MESSAGE);
+					failure.printStackTrace();
+				} else if(getGenerated() > 0) {
+					String message = "Imported " + importer.getNumberCells() + 
+							" cells, " + importer.getNumberNodes() + " nodes and " + 
+							importer.getNumberEdges() + " edges.";
+					if(importer.getNumberConvertedCells() > 0) {
+						message += "\n" + importer.getNumberConvertedCells() + " cell polygons " 
+								+ "were not rectangles and were replaced by their envelopes.";
+					}
+					JOptionPane.showMessageDialog(CityTabbedPane.this, message, 
+							"City.Net | Import Geometry", importer.getNumberConvertedCells() > 0 ? 
+							JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+				}
+			}
+		}.start();
+	}
+	
+	/**
+	 * Checks if cells are being generated in the background.
+	 *
+	 * @return true, if generating cells
+	 */
+	public boolean isGeneratingCells() {
+		return generatingCells;
+	}
+	
+	/**
+	 * Checks if cells, nodes, or edges are being generated in the background. 
+	 * If so, a message is shown since cells must not change while generating.
+	 *
+	 * @return true, if generating
+	 */
+	private boolean isGenerating() {
+		boolean generating = generatingCells;
+		for(Component c : getComponents()) {
+			if(c instanceof SystemPanel && ((SystemPanel)c).isGenerating()) 
+				generating = true;
+		}
+		if(generating) {
+			JOptionPane.showMessageDialog(this, 
+					"Cells cannot be changed until generation has finished.", 
+					"City.Net | Warning", JOptionPane.WARNING_MESSAGE);
+		}
+		return generating;
 	}
 	
 	/**
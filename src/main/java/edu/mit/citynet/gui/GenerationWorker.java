@@ -0,0 +1,125 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.gui;
+
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * The GenerationWorker class runs a generation command in the background
+ * while a progress monitor allows the user to follow and cancel it. Results
+ * computed in the background are published in order and applied to the model
+ * on the event dispatch thread, so the model is never changed while it is
+ * being painted.
+ *
+ * @param <V> the type of the published results
+ */
+public abstract class GenerationWorker<V> extends SwingWorker<Void,V> {
+	private Component parentComponent;
+	private ProgressMonitor progressMonitor;
+	private Timer cancelTimer;
+	private int generated;
+
+	/**
+	 * Instantiates a new generation worker.
+	 *
+	 * @param parentComponent the parent component
+	 * @param message the message
+	 * @param total the total number of results to generate
+	 */
+	public GenerationWorker(Component parentComponent, String message, int total) {
+		this.parentComponent = parentComponent;
+		progressMonitor = new ProgressMonitor(parentComponent, message, null, 0, total);
+		progressMonitor.setMillisToDecideToPopup(250);
+		progressMonitor.setMillisToPopup(500);
+		cancelTimer = new Timer(100, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if(progressMonitor.isCanceled()) cancel(false);
+			}
+		});
+	}
+
+	/**
+	 * Starts the worker.
+	 */
+	public void start() {
+		cancelTimer.start();
+		execute();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.swing.SwingWorker#process(java.util.List)
+	 */
+	protected final void process(List<V> results) {
+		for(V result : results) {
+			if(isCancelled()) return;
+			generate(result);
+			generated++;
+			progressMonitor.setProgress(generated);
+		}
+		published();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.swing.SwingWorker#done()
+	 */
+	protected final void done() {
+		cancelTimer.stop();
+		progressMonitor.close();
+		try {
+			get();
+		} catch(CancellationException e) {
+			// cancelled by the user; keep the results published so far
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException e) {
+			JOptionPane.showMessageDialog(parentComponent, "An error of type " +
+					e.getCause().getClass().getSimpleName() +
+					" occurred during generation.",
+					"City.Net | Error", JOptionPane.ERROR_MESSAGE);
+			e.getCause().printStackTrace();
+		}
+		finished();
+	}
+
+	/**
+	 * Gets the number of results generated so far.
+	 *
+	 * @return the number of results generated
+	 */
+	public int getGenerated() {
+		return generated;
+	}
+
+	/**
+	 * Applies a published result to the model. Called on the event dispatch
+	 * thread in the order in which results were published.
+	 *
+	 * @param result the result
+	 */
+	protected abstract void generate(V result);
+
+	/**
+	 * Called on the event dispatch thread after a batch of results has been
+	 * generated, e.g. to repaint the affected views.
+	 */
+	protected void published() { }
+
+	/**
+	 * Called on the event dispatch thread once the worker has completed,
+	 * failed, or been cancelled.
+	 */
+	protected void finished() { }
+}
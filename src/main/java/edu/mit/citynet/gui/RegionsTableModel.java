@@ -41,7 +41,7 @@ public class RegionsTableModel extends AbstractTableModel {
 	 * @see javax.swing.table.TableModel#getRowCount()
 	 */
 	public int getRowCount() {
-		return system.getRegions().size();
+		return system.getRegionsView().size();
 	}
 
 	/* (non-Javadoc)
@@ -56,34 +56,34 @@ public class RegionsTableModel extends AbstractTableModel {
 	 */
 	public Object getValueAt(int row, int col) {
 		switch(col) {
-		case 0: return system.getRegions().get(row).getDescription();
+		case 0: return system.getRegionsView().get(row).getDescription();
 		case 1: 
-			if(system.getRegions().get(row) instanceof IntraLayerRegion) {
-				return ((IntraLayerRegion)system.getRegions().get(row)).getLayer();
+			if(system.getRegionsView().get(row) instanceof IntraLayerRegion) {
+				return ((IntraLayerRegion)system.getRegionsView().get(row)).getLayer();
 			} else return null;
 		case 2: 
-			if(system.getRegions().get(row) instanceof IntraLayerRegion) {
-				return ((IntraLayerRegion)system.getRegions().get(row)).getNodeGenerationType();
+			if(system.getRegionsView().get(row) instanceof IntraLayerRegion) {
+				return ((IntraLayerRegion)system.getRegionsView().get(row)).getNodeGenerationType();
 			} else return null;
 		case 3: 
-			if(system.getRegions().get(row) instanceof IntraLayerRegion) {
-				return ((IntraLayerRegion)system.getRegions().get(row)).getNodeType();
+			if(system.getRegionsView().get(row) instanceof IntraLayerRegion) {
+				return ((IntraLayerRegion)system.getRegionsView().get(row)).getNodeType();
 			} else return null;
 		case 4: 
-			if(system.getRegions().get(row) instanceof IntraLayerRegion) {
-				return ((IntraLayerRegion)system.getRegions().get(row)).getEdgeGenerationType();
+			if(system.getRegionsView().get(row) instanceof IntraLayerRegion) {
+				return ((IntraLayerRegion)system.getRegionsView().get(row)).getEdgeGenerationType();
 			} else return null;
-		case 5: return system.getRegions().get(row).getEdgeType();
-		case 6: return system.getRegions().get(row).getEdgeDirection();
-		case 7: return CoordinateFormat.createForMatlabSyntax(system.getRegions().get(row).getCoordinateList())[0];
-		case 8: return CoordinateFormat.createForMatlabSyntax(system.getRegions().get(row).getCoordinateList())[1];
+		case 5: return system.getRegionsView().get(row).getEdgeType();
+		case 6: return system.getRegionsView().get(row).getEdgeDirection();
+		case 7: return CoordinateFormat.createForMatlabSyntax(system.getRegionsView().get(row).getCoordinateList())[0];
+		case 8: return CoordinateFormat.createForMatlabSyntax(system.getRegionsView().get(row).getCoordinateList())[1];
 		case 9:
-			if(system.getRegions().get(row) instanceof InterLayerRegion) {
-				return ((InterLayerRegion)system.getRegions().get(row)).getOriginLayer();
+			if(system.getRegionsView().get(row) instanceof InterLayerRegion) {
+				return ((InterLayerRegion)system.getRegionsView().get(row)).getOriginLayer();
 			} else return null;
 		case 10:
-			if(system.getRegions().get(row) instanceof InterLayerRegion) {
-				return ((InterLayerRegion)system.getRegions().get(row)).getDestinationLayer();
+			if(system.getRegionsView().get(row) instanceof InterLayerRegion) {
+				return ((InterLayerRegion)system.getRegionsView().get(row)).getDestinationLayer();
 			} else return null;
 		default: return null;
 		}
@@ -93,10 +93,10 @@ public class RegionsTableModel extends AbstractTableModel {
 	 * @see javax.swing.table.AbstractTableModel#isCellEditable(int, int)
 	 */
 	public boolean isCellEditable(int row, int col) {
-		if(system.getRegions().get(row) instanceof IntraLayerRegion) {
+		if(system.getRegionsView().get(row) instanceof IntraLayerRegion) {
 			if(col <= 7) return true;
 			else return false;
-		} else if(system.getRegions().get(row) instanceof InterLayerRegion) {
+		} else if(system.getRegionsView().get(row) instanceof InterLayerRegion) {
 			if(col <= 0 || col >= 5) return true;
 			else return false;
 		}
@@ -130,37 +130,37 @@ public class RegionsTableModel extends AbstractTableModel {
 		switch(col) {
 		case 0: 
 			if(value instanceof String) 
-				system.getRegions().get(row).setDescription((String)value); 
+				system.getRegionsView().get(row).setDescription((String)value); 
 			break;
 		case 1: 
-			if(system.getRegions().get(row) instanceof IntraLayerRegion 
+			if(system.getRegionsView().get(row) instanceof IntraLayerRegion 
 					&& value instanceof Layer) 
-				((IntraLayerRegion)system.getRegions().get(row)).setLayer((Layer)value); 
+				((IntraLayerRegion)system.getRegionsView().get(row)).setLayer((Layer)value); 
 			break;
 		case 2:
-			if(system.getRegions().get(row) instanceof IntraLayerRegion 
+			if(system.getRegionsView().get(row) instanceof IntraLayerRegion 
 					&& value instanceof NodeGenerationType) 
-				((IntraLayerRegion)system.getRegions().get(row)).setNodeGenerationType((NodeGenerationType)value); 
+				((IntraLayerRegion)system.getRegionsView().get(row)).setNodeGenerationType((NodeGenerationType)value); 
 			break;
 		case 3:
-			if(system.getRegions().get(row) instanceof IntraLayerRegion 
+			if(system.getRegionsView().get(row) instanceof IntraLayerRegion 
 					&& value instanceof NodeType) 
-				((IntraLayerRegion)system.getRegions().get(row)).setNodeType((NodeType)value); 
+				((IntraLayerRegion)system.getRegionsView().get(row)).setNodeType((NodeType)value); 
 			break;
 		case 4: 
-			if(system.getRegions().get(row) instanceof IntraLayerRegion 
+			if(system.getRegionsView().get(row) instanceof IntraLayerRegion 
 					&& value instanceof EdgeGenerationType) 
-				((IntraLayerRegion)system.getRegions().get(row)).setEdgeGenerationType((EdgeGenerationType)value); 
+				((IntraLayerRegion)system.getRegionsView().get(row)).setEdgeGenerationType((EdgeGenerationType)value); 
 			break;
 		case 5:
-			if(system.getRegions().get(row) instanceof IntraLayerRegion 
+			if(system.getRegionsView().get(row) instanceof IntraLayerRegion 
 					&& value instanceof EdgeType) 
-				((IntraLayerRegion)system.getRegions().get(row)).setEdgeType((EdgeType)value); 
+				((IntraLayerRegion)system.getRegionsView().get(row)).setEdgeType((EdgeType)value); 
 			break;
 		case 6:
-			if(system.getRegions().get(row) instanceof IntraLayerRegion 
+			if(system.getRegionsView().get(row) instanceof IntraLayerRegion 
 					&& value instanceof EdgeDirection) 
-				((IntraLayerRegion)system.getRegions().get(row)).setEdgeDirection((EdgeDirection)value); 
+				((IntraLayerRegion)system.getRegionsView().get(row)).setEdgeDirection((EdgeDirection)value); 
 			break;
 		case 7: 
 			if(value instanceof String && CoordinateFormat.isValidMatlabSyntax((String)value)) {
@@ -175,7 +175,7 @@ public class RegionsTableModel extends AbstractTableModel {
 					// remove extra y-coordinate... default to last
 					yCoords = yCoords.substring(0, yCoords.lastIndexOf(" ")) + "]";
 				}
-				system.getRegions().get(row).setCoordinateList(
+				system.getRegionsView().get(row).setCoordinateList(
 						CoordinateFormat.createFromMatlabSyntax((String)value, yCoords)); 
 			}
 			break;
@@ -192,19 +192,19 @@ public class RegionsTableModel extends AbstractTableModel {
 					// remove extra x-coordinate... default to last
 					xCoords = xCoords.substring(0, xCoords.lastIndexOf(" ")) + "]";
 				}
-				system.getRegions().get(row).setCoordinateList(
+				system.getRegionsView().get(row).setCoordinateList(
 						CoordinateFormat.createFromMatlabSyntax(xCoords, (String)value));
 			}
 			break;
 		case 9: 
-			if(system.getRegions().get(row) instanceof InterLayerRegion 
+			if(system.getRegionsView().get(row) instanceof InterLayerRegion 
 					&& value instanceof Layer) 
-				((InterLayerRegion)system.getRegions().get(row)).setOriginLayer((Layer)value); 
+				((InterLayerRegion)system.getRegionsView().get(row)).setOriginLayer((Layer)value); 
 			break;
 		case 10: 
-			if(system.getRegions().get(row) instanceof InterLayerRegion 
+			if(system.getRegionsView().get(row) instanceof InterLayerRegion 
 					&& value instanceof Layer) 
-				((InterLayerRegion)system.getRegions().get(row)).setDestinationLayer((Layer)value); 
+				((InterLayerRegion)system.getRegionsView().get(row)).setDestinationLayer((Layer)value); 
 			break;
 		}
     	fireTableRowsUpdated(row, row);
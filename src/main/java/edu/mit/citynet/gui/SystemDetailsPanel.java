@@ -13,6 +13,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import javax.swing.DefaultListCellRenderer;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JList;
@@ -33,6 +34,7 @@ public class SystemDetailsPanel extends JPanel {
 	private JTextField nameText;
 	private JComboBox typeCombo;
 	private JTextArea descriptionText;
+	private JCheckBox columnarCheck;
 	
 	/**
 	 * Instantiates a new system details panel.
@@ -103,6 +105,11 @@ public class SystemDetailsPanel extends JPanel {
 		descriptionText.setWrapStyleWord(true);
 		descriptionText.setMargin(new Insets(2,2,2,2));
 		add(new JScrollPane(descriptionText),c);
+		c.gridy++;
+		c.fill = GridBagConstraints.HORIZONTAL;
+		columnarCheck = new JCheckBox("Columnar storage");
+		columnarCheck.setToolTipText("Store nodes and edges in compact columns for large systems");
+		add(columnarCheck, c);
 	}
 	
 	/**
@@ -116,6 +123,7 @@ public class SystemDetailsPanel extends JPanel {
 		nameText.setText(system.getName());
 		typeCombo.setSelectedItem(system.getType());
 		descriptionText.setText(system.getDescription());
+		columnarCheck.setSelected(system.isColumnar());
 	}
 	
 	/**
@@ -129,5 +137,6 @@ public class SystemDetailsPanel extends JPanel {
 		system.setName(nameText.getText());
 		system.setType((CitySystemType)typeCombo.getSelectedItem());
 		system.setDescription(descriptionText.getText());
+		system.setColumnar(columnarCheck.isSelected());
 	}
 }
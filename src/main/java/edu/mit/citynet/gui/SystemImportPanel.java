@@ -39,7 +39,8 @@ import edu.mit.citynet.core.Layer;
 import edu.mit.citynet.core.NodeRegion;
 import edu.mit.citynet.core.NodeType;
 import edu.mit.citynet.core.NodeTypeAttribute;
-import edu.mit.citynet.io.SpreadsheetTemplate;
+import edu.mit.citynet.io.CityTemplate;
+import edu.mit.citynet.io.TemplateFormat;
 import edu.mit.citynet.util.CityNetIcon;
 
 /**
@@ -76,14 +77,14 @@ public class SystemImportPanel extends JPanel {
 		        }
 				
 				if(extension != null) {
-					if(extension.equals("xls")) return true;
+					if(TemplateFormat.getTemplateFormat(s) != null) return true;
 					else return false;
 				} else return false;
 			}
 
 			@Override
 			public String getDescription() {
-				return "XLS Files";
+				return "City.Net Files (*.xls, *.xlsx, *.cnb)";
 			}
 		});
 		initializePanel();
@@ -155,8 +156,10 @@ public class SystemImportPanel extends JPanel {
 		if(returnVal == JFileChooser.APPROVE_OPTION) {
 			try {
 				filePathText.setText(fileChooser.getSelectedFile().getAbsolutePath());
-				SpreadsheetTemplate template = new SpreadsheetTemplate();
-				template.setFilePath(fileChooser.getSelectedFile().getAbsolutePath());
+				String filePath = fileChooser.getSelectedFile().getAbsolutePath();
+				TemplateFormat format = TemplateFormat.getTemplateFormat(filePath);
+				CityTemplate template = (format==null?TemplateFormat.SPREADSHEET:format).createTemplate();
+				template.setFilePath(filePath);
 				City city = template.readTemplate();
 				systemsList.setEnabled(true);
 				systemsListModel.clear();
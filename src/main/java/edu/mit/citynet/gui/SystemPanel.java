@@ -12,9 +12,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
@@ -36,6 +39,8 @@ import edu.mit.citynet.core.IntraLayerRegion;
 import edu.mit.citynet.core.Layer;
 import edu.mit.citynet.core.NodeType;
 import edu.mit.citynet.core.Region;
+import edu.mit.citynet.core.RegionGeneration;
+import edu.mit.citynet.core.RegionGenerator;
 import edu.mit.citynet.gui.SystemTreeModel.MutableEdgeTypeTreeNode;
 import edu.mit.citynet.gui.SystemTreeModel.MutableLayerTreeNode;
 import edu.mit.citynet.gui.SystemTreeModel.MutableNodeTypeTreeNode;
@@ -63,6 +68,9 @@ public class SystemPanel extends JSplitPane {
 	private EdgeTypePanel edgeTypePanel;
 	private IntraLayerRegionPanel intraLayerRegionPanel;
 	private InterLayerRegionPanel interLayerRegionPanel;
+	private JButton generateButton, clearButton;
+	private RegionGenerator regionGenerator = new RegionGenerator();
+	private boolean generating;
 	
 	/**
 	 * Instantiates a new system viz panel.
@@ -153,16 +161,16 @@ public class SystemPanel extends JSplitPane {
 		c.weighty = 0;
 		JPanel generationButtonPanel = new JPanel();
 		generationButtonPanel.setLayout(new BoxLayout(generationButtonPanel,BoxLayout.LINE_AXIS));
-		JButton generateNodesButton = new JButton("Generate",CityNetIcon.GENERATE.getIcon());
-		generateNodesButton.setToolTipText("Generate nodes and edges from regions");
-		generateNodesButton.addActionListener(new ActionListener() {
+		generateButton = new JButton("Generate",CityNetIcon.GENERATE.getIcon());
+		generateButton.setToolTipText("Generate nodes and edges from regions");
+		generateButton.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				generateRegionsCommand(system.getRegions());
 				layeredPane.repaint();
 			}
 		});
-		generationButtonPanel.add(generateNodesButton);
-		JButton clearButton = new JButton("Clear",CityNetIcon.DELETE.getIcon());
+		generationButtonPanel.add(generateButton);
+		clearButton = new JButton("Clear",CityNetIcon.DELETE.getIcon());
 		clearButton.setToolTipText("Clear all nodes and edges");
 		clearButton.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
@@ -517,6 +525,7 @@ public class SystemPanel extends JSplitPane {
 				system.removeRegion(region);
 				systemTree.getModel().removeRegion(region);
 			}
+			regenerateRegionsCommand(dependentRegions);
 			system.removeLayer(layer);
 			systemTree.getModel().removeLayer(layer);
 			layeredPane.repaint();
@@ -584,6 +593,7 @@ public class SystemPanel extends JSplitPane {
 				system.removeRegion(region);
 				systemTree.getModel().removeRegion(region);
 			}
+			regenerateRegionsCommand(dependentRegions);
 			system.removeNodeType(nodeType);
 			systemTree.getModel().removeNodeType(nodeType);
 			layeredPane.repaint();
@@ -670,6 +680,7 @@ public class SystemPanel extends JSplitPane {
 				system.removeRegion(region);
 				systemTree.getModel().removeRegion(region);
 			}
+			regenerateRegionsCommand(dependentRegions);
 			system.removeEdgeType(edgeType);
 			systemTree.getModel().removeEdgeType(edgeType);
 			layeredPane.repaint();
@@ -709,6 +720,7 @@ public class SystemPanel extends JSplitPane {
 			intraLayerRegionPanel.saveRegionCommand();
 			system.addRegion(region);
 			systemTree.getModel().addRegion(region);
+			regenerateRegionsCommand(Collections.singleton(region));
 			layeredPane.repaint();
 		}
 	}
@@ -727,6 +739,7 @@ public class SystemPanel extends JSplitPane {
 			interLayerRegionPanel.saveRegionCommand();
 			system.addRegion(region);
 			systemTree.getModel().addRegion(region);
+			regenerateRegionsCommand(Collections.singleton(region));
 			layeredPane.repaint();
 		}
 	}
@@ -746,6 +759,7 @@ public class SystemPanel extends JSplitPane {
 			if(value == JOptionPane.OK_OPTION) {
 				intraLayerRegionPanel.saveRegionCommand();
 				systemTree.getModel().updateRegion(region);
+				regenerateRegionsCommand(Collections.singleton(region));
 				layeredPane.repaint();
 			}
 		} else if(region instanceof InterLayerRegion) {
@@ -756,6 +770,7 @@ public class SystemPanel extends JSplitPane {
 			if(value == JOptionPane.OK_OPTION) {
 				interLayerRegionPanel.saveRegionCommand();
 				systemTree.getModel().updateRegion(region);
+				regenerateRegionsCommand(Collections.singleton(region));
 				layeredPane.repaint();
 			}
 		}
@@ -774,6 +789,7 @@ public class SystemPanel extends JSplitPane {
 		if(value == JOptionPane.OK_OPTION) {
 			system.removeRegion(region);
 			systemTree.getModel().removeRegion(region);
+			regenerateRegionsCommand(Collections.singleton(region));
 			layeredPane.repaint();
 		}
 	}
@@ -792,6 +808,8 @@ public class SystemPanel extends JSplitPane {
 				intraLayerRegionPanel.saveRegionCommand();
 				system.addRegion(newRegion);
 				systemTree.getModel().addRegion(newRegion);
+				regenerateRegionsCommand(Collections.singleton(newRegion));
+				layeredPane.repaint();
 			}
 		} else if(region instanceof InterLayerRegion) {
 			interLayerRegionPanel.loadRegion((InterLayerRegion)newRegion);
@@ -802,6 +820,8 @@ public class SystemPanel extends JSplitPane {
 				interLayerRegionPanel.saveRegionCommand();
 				system.addRegion(newRegion);
 				systemTree.getModel().addRegion(newRegion);
+				regenerateRegionsCommand(Collections.singleton(newRegion));
+				layeredPane.repaint();
 			}
 		}
 	}
@@ -811,6 +831,7 @@ public class SystemPanel extends JSplitPane {
 	 */
 	private void editRegionTableCommand() {
 		System.out.println("Edit Region Table Command");
+		Set<Region> changedRegions = new HashSet<Region>(system.getRegions());
 		RegionsTable table = new RegionsTable(system);
 		JScrollPane tableScroll = new JScrollPane(table);
 		tableScroll.addMouseListener(table.getMouseAdapter());
@@ -818,6 +839,8 @@ public class SystemPanel extends JSplitPane {
 				"City.Net | Regions", JOptionPane.PLAIN_MESSAGE);
 		if(table.getCellEditor()!=null) table.getCellEditor().stopCellEditing();
 		systemTree.setSystem(system); // hacked update... bleh
+		changedRegions.addAll(system.getRegions());
+		regenerateRegionsCommand(changedRegions);
 		layeredPane.repaint();
 	}
 
@@ -826,9 +849,10 @@ public class SystemPanel extends JSplitPane {
 	 */
 	public void clearNodesCommand() {
 		System.out.println("Clear Nodes Command");
-		if(!system.getEdges().isEmpty())
+		if(!system.getEdgesView().isEmpty())
 			clearEdgesCommand();
 		system.removeAllNodes(system.getNodes());
+		regionGenerator.clearGenerations();
 	}
 	
 	/**
@@ -836,15 +860,78 @@ public class SystemPanel extends JSplitPane {
 	 *
 	 * @param regions the regions
 	 */
-	public void generateRegionsCommand(List<Region> regions) {
+	public void generateRegionsCommand(final List<Region> regions) {
 		System.out.println("Generate Regions Command");
-		if(!system.getNodes().isEmpty())
+		if(cityPanel.isGeneratingCells()) return;
+		if(!system.getNodesView().isEmpty())
 			clearNodesCommand();
-		if(!system.getEdges().isEmpty())
+		if(!system.getEdgesView().isEmpty())
 			clearEdgesCommand();
-		for(Region r : regions) {
-			r.generateRegion(system);
-		}
+		generating = true;
+		generateButton.setEnabled(false);
+		clearButton.setEnabled(false);
+		new GenerationWorker<RegionGeneration>(this, 
+				"Generating nodes and edges from regions...", regions.size()) {
+			protected Void doInBackground() {
+				List<ForkJoinTask<RegionGeneration>> tasks = 
+						regionGenerator.prepareRegions(regions);
+				try {
+					for(ForkJoinTask<RegionGeneration> task : tasks) {
+						if(isCancelled()) break;
+						publish(task.join());
+					}
+				} finally {
+					for(ForkJoinTask<RegionGeneration> task : tasks) {
+						task.cancel(false);
+					}
+				}
+				return null;
+			}
+			protected void generate(RegionGeneration generation) {
+				regionGenerator.generateRegion(system, generation);
+				systemTree.getModel().updateRegion(generation.getRegion());
+			}
+			protected void published() {
+				layeredPane.repaint();
+			}
+			protected void finished() {
+				generating = false;
+				generateButton.setEnabled(true);
+				clearButton.setEnabled(true);
+				layeredPane.repaint();
+			}
+		}.start();
+	}
+	
+	/**
+	 * Regenerates the nodes and edges of added, modified, or removed regions 
+	 * if the system was previously generated. Only the outputs of affected 
+	 * regions are retracted and regenerated.
+	 *
+	 * @param regions the changed regions
+	 */
+	private void regenerateRegionsCommand(Collection<Region> regions) {
+		if(isGenerating() || cityPanel.isGeneratingCells() 
+				|| !regionGenerator.hasGenerations()) return;
+		System.out.println("Regenerate Regions Command");
+		regionGenerator.regenerateRegions(system, regions);
+	}
+	
+	/**
+	 * Checks if nodes and edges are being generated in the background.
+	 *
+	 * @return true, if generating
+	 */
+	public boolean isGenerating() {
+		return generating;
+	}
+	
+	/**
+	 * Discards the cached region generations, e.g. when the cells they were 
+	 * generated on are removed. The next regeneration is a full generation.
+	 */
+	public void clearGenerations() {
+		regionGenerator.clearGenerations();
 	}
 	
 	/**
@@ -853,6 +940,7 @@ public class SystemPanel extends JSplitPane {
 	public void clearEdgesCommand() {
 		System.out.println("Clear Edges Command");
 		system.removeAllEdges(system.getEdges());
+		regionGenerator.clearGenerations();
 	}
 	
 	/**
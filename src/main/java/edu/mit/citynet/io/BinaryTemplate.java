@@ -0,0 +1,1653 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateList;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import edu.mit.citynet.CityNet;
+import edu.mit.citynet.core.AttributeSchema;
+import edu.mit.citynet.core.Cell;
+import edu.mit.citynet.core.CellGrid;
+import edu.mit.citynet.core.CellRegion;
+import edu.mit.citynet.core.City;
+import edu.mit.citynet.core.CitySystem;
+import edu.mit.citynet.core.CitySystem.CitySystemType;
+import edu.mit.citynet.core.Edge;
+import edu.mit.citynet.core.EdgeDirection;
+import edu.mit.citynet.core.EdgeGenerationType;
+import edu.mit.citynet.core.EdgeTable;
+import edu.mit.citynet.core.EdgeType;
+import edu.mit.citynet.core.EdgeTypeAttribute;
+import edu.mit.citynet.core.InstanceAttributes;
+import edu.mit.citynet.core.InterLayerRegion;
+import edu.mit.citynet.core.IntraLayerRegion;
+import edu.mit.citynet.core.Layer;
+import edu.mit.citynet.core.Node;
+import edu.mit.citynet.core.NodeGenerationType;
+import edu.mit.citynet.core.NodeTable;
+import edu.mit.citynet.core.NodeType;
+import edu.mit.citynet.core.NodeTypeAttribute;
+import edu.mit.citynet.core.Region;
+
+/**
+ * The BinaryTemplate class provides file input/output methods for the
+ * synthesis template in a binary columnar format, which loads large cities
+ * much faster than the spreadsheet format.
+ *
+ * The file starts with a header (magic number, version and a directory of
+ * section offsets and lengths) followed by the sections. The META section
+ * holds the city details, cell regions, cell grids and systems with their
+ * layers, types and regions. The CELLS, NODES and EDGES sections hold one
+ * typed column after another (e.g. all cell ids, then all minimum x-
+ * coordinates), and the VALUES section holds the attribute values of
+ * individual nodes and edges. All values are little-endian.
+ *
+ * Reading maps the sections with FileChannel.map but still decodes every row
+ * into the heap when the file is opened, so opening a city takes time and 
+ * memory in proportion to its cells, nodes and edges; the mapped sections 
+ * are not kept as backing store. Nodes and edges of columnar systems are 
+ * copied into their node and edge tables without creating node or edge 
+ * objects; cells are always created as objects, those of a cell grid as 
+ * grid cells without polygons if implicit.
+ *
+ * Saving a city which was read from or last written to the same file only 
+ * writes the sections which have changed since (see CityStamp; the META 
+ * section is compared byte for byte). Changed sections are appended to the 
+ * file like a journal and the directory in the header is updated once they 
+ * are forced to disk. The file is written anew, to a temporary file which
+ * then replaces it, once the replaced sections take more space than the 
+ * current ones. Either way an interrupted save leaves the previous version 
+ * readable.
+ */
+public class BinaryTemplate implements CityTemplate {
+	public static final int MAGIC = 0x54424e43; // "CNBT"
+	public static final int VERSION = 1;
+	public static final int META = 0, CELLS = 1, NODES = 2, EDGES = 3, VALUES = 4;
+	private static final int NUMBER_SECTIONS = 5;
+	private static final int HEADER_SIZE = 12 + 20*NUMBER_SECTIONS;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte INTRA_LAYER = 0, INTER_LAYER = 1;
+	private static final byte NODE_VALUES = 0, EDGE_VALUES = 1;
+	private static final byte IMPLICIT = 1;
+
+	private String filePath;
+	private transient Map<Integer,Layer> layerMap;
+	private transient Map<Integer,NodeType> nodeTypeMap;
+	private transient Map<Integer,EdgeType> edgeTypeMap;
+	private transient CityStamp stamp;
+	private transient String stampFilePath;
+	private transient long stampFileLength;
+	private transient byte[] meta;
+	private transient List<CellGrid> grids;
+	private transient long[] offsets, lengths;
+
+	/**
+	 * Instantiates a new binary template.
+	 */
+	public BinaryTemplate() {
+		// maps store quick look-up values by id
+		layerMap = new HashMap<Integer,Layer>();
+		nodeTypeMap = new HashMap<Integer,NodeType>();
+		edgeTypeMap = new HashMap<Integer,EdgeType>();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.io.CityTemplate#getFilePath()
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.io.CityTemplate#setFilePath(java.lang.String)
+	 */
+	public void setFilePath(String filePath) {
+		this.filePath = filePath;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.io.CityTemplate#readTemplate()
+	 */
+	public City readTemplate() throws IOException {
+		layerMap.clear();
+		nodeTypeMap.clear();
+		edgeTypeMap.clear();
+		stamp = null;
+		ByteBuffer[] sections = new ByteBuffer[NUMBER_SECTIONS];
+		long[] offsets = new long[NUMBER_SECTIONS];
+		long[] lengths = new long[NUMBER_SECTIONS];
+		long fileLength;
+		RandomAccessFile file = new RandomAccessFile(filePath, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			fileLength = channel.size();
+			if(channel.size() < HEADER_SIZE) {
+				throw new IOException("File is not a binary template.");
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getInt() != MAGIC) {
+				throw new IOException("File is not a binary template.");
+			}
+			int version = header.getInt();
+			if(version != VERSION) {
+				throw new IOException("Binary template version " + version + " is not supported.");
+			}
+			int numberSections = header.getInt();
+			for(int i=0; i<numberSections; i++) {
+				int section = header.getInt();
+				long offset = header.getLong();
+				long length = header.getLong();
+				if(section < 0 || section >= NUMBER_SECTIONS) continue;
+				if(offset < 0 || length < 0 || offset + length > channel.size()) {
+					throw new IOException("Binary template is truncated.");
+				}
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				sections[section] = buffer;
+				offsets[section] = offset;
+				lengths[section] = length;
+			}
+		} finally {
+			file.close(); // mapped buffers remain valid
+		}
+		for(ByteBuffer section : sections) {
+			if(section == null) throw new IOException("Binary template is missing a section.");
+		}
+		byte[] meta = new byte[sections[META].remaining()];
+		sections[META].duplicate().get(meta);
+		City city = new City();
+		List<CellGrid> grids = new ArrayList<CellGrid>();
+		List<CitySystem> systems = new ArrayList<CitySystem>();
+		readMeta(sections[META], city, grids, systems);
+		Cell[] cells = readCells(sections[CELLS], grids);
+		city.ensureCellCapacity(cells.length);
+		city.addAllCells(Arrays.asList(cells));
+		city.addAllSystems(systems); // columnar nodes resolve cells through the city
+		int[] nodeRows = readNodes(sections[NODES], cells, systems);
+		readEdges(sections[EDGES], sections[NODES], nodeRows, systems);
+		readValues(sections[VALUES], systems);
+		setSaved(city, meta, grids, offsets, lengths, fileLength);
+		return city;
+	}
+
+	/**
+	 * Remembers the state of a city as read from or written to the file, for
+	 * later saves to write only the changed sections.
+	 *
+	 * @param city the city
+	 * @param meta the bytes of the META section
+	 * @param grids the cell grids of the META section
+	 * @param offsets the offsets of the sections
+	 * @param lengths the lengths of the sections
+	 * @param fileLength the file length
+	 */
+	private void setSaved(City city, byte[] meta, List<CellGrid> grids,
+			long[] offsets, long[] lengths, long fileLength) {
+		stamp = new CityStamp(city);
+		stampFilePath = filePath;
+		stampFileLength = fileLength;
+		this.meta = meta;
+		this.grids = grids;
+		this.offsets = offsets;
+		this.lengths = lengths;
+	}
+
+	/**
+	 * Reads the city details, cell regions, cell grids and systems (without
+	 * nodes and edges) from the META section.
+	 *
+	 * @param in the section
+	 * @param city the city
+	 * @param grids the list to which to add the cell grids
+	 * @param systems the list to which to add the systems
+	 */
+	void readMeta(ByteBuffer in, City city, List<CellGrid> grids,
+			List<CitySystem> systems) {
+		city.setName(getString(in));
+		city.setLatitude(in.getDouble());
+		city.setLongitude(in.getDouble());
+		city.setRotation(in.getDouble());
+		String imageFilePath = getString(in);
+		if(imageFilePath != null) city.setImageFilePath(imageFilePath);
+		city.setImageCoordinates(getCoordinates(in));
+
+		Map<Integer,CellRegion> cellRegionMap = new HashMap<Integer,CellRegion>();
+		int numberCellRegions = in.getInt();
+		for(int i=0; i<numberCellRegions; i++) {
+			CellRegion cellRegion = new CellRegion();
+			cellRegion.setId(in.getInt());
+			cellRegion.setNumberRows(in.getInt());
+			cellRegion.setNumberColumns(in.getInt());
+			cellRegion.setImplicit(in.get() == IMPLICIT);
+			cellRegion.setDescription(getString(in));
+			cellRegion.setCoordinateList(getCoordinates(in));
+			cellRegionMap.put(cellRegion.getId(), cellRegion);
+			city.addCellRegion(cellRegion);
+		}
+
+		int numberGrids = in.getInt();
+		for(int i=0; i<numberGrids; i++) {
+			grids.add(readGrid(in, cellRegionMap));
+		}
+
+		int numberSystems = in.getInt();
+		for(int i=0; i<numberSystems; i++) {
+			CitySystem system = new CitySystem();
+			system.setId(in.getInt());
+			system.setName(getString(in));
+			system.setType(CitySystemType.getInstance(system.getName()));
+			system.setDescription(getString(in));
+			system.setColumnar(in.get() == 1);
+			int numberLayers = in.getInt();
+			for(int j=0; j<numberLayers; j++) {
+				Layer layer = new Layer();
+				layer.setId(in.getInt());
+				layer.setName(getString(in));
+				layer.setDescription(getString(in));
+				layer.setDisplayHeight(in.getDouble());
+				layerMap.put(layer.getId(), layer);
+				system.addLayer(layer);
+			}
+			int numberNodeTypes = in.getInt();
+			for(int j=0; j<numberNodeTypes; j++) {
+				NodeType nodeType = new NodeType();
+				nodeType.setId(in.getInt());
+				nodeType.setName(getString(in));
+				nodeType.setDescription(getString(in));
+				nodeType.setColor(getColor(in));
+				List<NodeTypeAttribute> attributes = new ArrayList<NodeTypeAttribute>();
+				int numberAttributes = in.getInt();
+				for(int k=0; k<numberAttributes; k++) {
+					NodeTypeAttribute attribute = new NodeTypeAttribute();
+					attribute.setId(in.getInt());
+					attribute.setName(getString(in));
+					attribute.setDescription(getString(in));
+					attribute.setUnits(getString(in));
+					attribute.setBounds(getString(in));
+					attribute.setValue(in.getDouble());
+					attributes.add(attribute);
+				}
+				nodeType.addAllAttributes(attributes);
+				nodeTypeMap.put(nodeType.getId(), nodeType);
+				system.addNodeType(nodeType);
+			}
+			int numberEdgeTypes = in.getInt();
+			for(int j=0; j<numberEdgeTypes; j++) {
+				EdgeType edgeType = new EdgeType();
+				edgeType.setId(in.getInt());
+				edgeType.setName(getString(in));
+				edgeType.setDescription(getString(in));
+				edgeType.setColor(getColor(in));
+				List<EdgeTypeAttribute> attributes = new ArrayList<EdgeTypeAttribute>();
+				int numberAttributes = in.getInt();
+				for(int k=0; k<numberAttributes; k++) {
+					EdgeTypeAttribute attribute = new EdgeTypeAttribute();
+					attribute.setId(in.getInt());
+					attribute.setName(getString(in));
+					attribute.setDescription(getString(in));
+					attribute.setUnits(getString(in));
+					attribute.setBounds(getString(in));
+					attribute.setValue(in.getDouble());
+					attributes.add(attribute);
+				}
+				edgeType.addAllAttributes(attributes);
+				edgeTypeMap.put(edgeType.getId(), edgeType);
+				system.addEdgeType(edgeType);
+			}
+			List<Region> regions = new ArrayList<Region>();
+			int numberRegions = in.getInt();
+			for(int j=0; j<numberRegions; j++) {
+				regions.add(readRegion(in));
+			}
+			system.addAllRegions(regions);
+			systems.add(system);
+		}
+	}
+
+	/**
+	 * Reads a region from the META section.
+	 *
+	 * @param in the section
+	 * @return the region
+	 */
+	private Region readRegion(ByteBuffer in) {
+		byte kind = in.get();
+		Region region;
+		if(kind == INTER_LAYER) {
+			InterLayerRegion interRegion = new InterLayerRegion();
+			interRegion.setOriginLayer(layerMap.get(in.getInt()));
+			interRegion.setDestinationLayer(layerMap.get(in.getInt()));
+			region = interRegion;
+		} else {
+			IntraLayerRegion intraRegion = new IntraLayerRegion();
+			intraRegion.setLayer(layerMap.get(in.getInt()));
+			intraRegion.setNodeType(nodeTypeMap.get(in.getInt()));
+			intraRegion.setNodeGenerationType(
+					NodeGenerationType.getNodeGenerationType(getString(in)));
+			intraRegion.setEdgeGenerationType(
+					EdgeGenerationType.getEdgeGenerationType(getString(in)));
+			region = intraRegion;
+		}
+		region.setId(in.getInt());
+		region.setDescription(getString(in));
+		region.setCoordinateList(getCoordinates(in));
+		region.setEdgeType(edgeTypeMap.get(in.getInt()));
+		region.setEdgeDirection(in.get()==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
+		return region;
+	}
+
+	/**
+	 * Reads a cell grid, written as the id of its cell region and its x- and
+	 * y-coordinates, from the META section or a journal record.
+	 *
+	 * @param in the buffer
+	 * @param cellRegions the cell regions by id
+	 * @return the cell grid
+	 */
+	static CellGrid readGrid(ByteBuffer in, Map<Integer,CellRegion> cellRegions) {
+		CellRegion cellRegion = cellRegions.get(in.getInt());
+		double[] x = new double[in.getInt()];
+		for(int j=0; j<x.length; j++) x[j] = in.getDouble();
+		double[] y = new double[in.getInt()];
+		for(int j=0; j<y.length; j++) y[j] = in.getDouble();
+		return new CellGrid(cellRegion, x, y);
+	}
+
+	/**
+	 * Reads the cells from the CELLS section.
+	 *
+	 * @param in the section
+	 * @param grids the cell grids
+	 * @return the cells, in file order
+	 */
+	private static Cell[] readCells(ByteBuffer in, List<CellGrid> grids) {
+		CellColumns columns = new CellColumns(in);
+		Cell[] cells = new Cell[columns.size()];
+		for(int i=0; i<cells.length; i++) {
+			cells[i] = columns.createCell(i, grids);
+		}
+		return cells;
+	}
+
+	/**
+	 * Reads the nodes from the NODES section and adds them to their systems.
+	 * Nodes of columnar systems are added to their node tables directly, 
+	 * without creating node objects.
+	 *
+	 * @param in the section
+	 * @param cells the cells, in file order
+	 * @param systems the systems
+	 * @return the rows of the nodes in the nodes of their systems, in file order
+	 */
+	private int[] readNodes(ByteBuffer in, Cell[] cells, List<CitySystem> systems) {
+		NodeColumns columns = new NodeColumns(in);
+		int n = columns.size();
+		int[] cellIds = new int[cells.length];
+		for(int i=0; i<cells.length; i++) cellIds[i] = cells[i].getId();
+		IdIndex cellIndex = new IdIndex(cellIds);
+		int[] rows = new int[n];
+		List<List<Node>> systemNodes = getLists(systems.size());
+		for(int i=0; i<n; i++) {
+			int s = columns.getSystem(i);
+			int c = cellIndex.get(columns.getCellId(i));
+			NodeTable table = systems.get(s).getNodeTable();
+			if(table != null) {
+				rows[i] = table.addRow(columns.getId(i), c < 0 ? null : cells[c],
+						layerMap.get(columns.getLayerId(i)),
+						nodeTypeMap.get(columns.getNodeTypeId(i)), null);
+				continue;
+			}
+			Node node = new Node();
+			node.setId(columns.getId(i));
+			node.setCell(c < 0 ? null : cells[c]);
+			node.setLayer(layerMap.get(columns.getLayerId(i)));
+			node.setNodeType(nodeTypeMap.get(columns.getNodeTypeId(i)));
+			rows[i] = systemNodes.get(s).size();
+			systemNodes.get(s).add(node);
+		}
+		for(int s=0; s<systems.size(); s++) {
+			if(!systemNodes.get(s).isEmpty()) systems.get(s).addAllNodes(systemNodes.get(s));
+		}
+		return rows;
+	}
+
+	/**
+	 * Reads the edges from the EDGES section and adds them to their systems.
+	 * Edges of columnar systems are added to their edge tables directly, 
+	 * without creating edge objects.
+	 *
+	 * @param in the section
+	 * @param nodesIn the NODES section
+	 * @param nodeRows the rows of the nodes in the nodes of their systems, 
+	 * in file order
+	 * @param systems the systems
+	 */
+	private void readEdges(ByteBuffer in, ByteBuffer nodesIn, int[] nodeRows,
+			List<CitySystem> systems) {
+		EdgeColumns columns = new EdgeColumns(in);
+		NodeColumns nodeColumns = new NodeColumns(nodesIn);
+		int[] nodeIds = new int[nodeRows.length];
+		int[] nodeSystems = new int[nodeRows.length];
+		for(int i=0; i<nodeRows.length; i++) {
+			nodeIds[i] = nodeColumns.getId(i);
+			nodeSystems[i] = nodeColumns.getSystem(i);
+		}
+		IdIndex nodeIndex = new IdIndex(nodeIds);
+		List<List<Edge>> systemEdges = getLists(systems.size());
+		for(int i=0; i<columns.size(); i++) {
+			int s = columns.getSystem(i);
+			int o = nodeIndex.get(columns.getOriginId(i));
+			int d = nodeIndex.get(columns.getDestinationId(i));
+			EdgeType type = edgeTypeMap.get(columns.getEdgeTypeId(i));
+			EdgeDirection edgeDirection = columns.getEdgeDirection(i);
+			EdgeTable table = systems.get(s).getEdgeTable();
+			if(table != null && (o < 0 || nodeSystems[o] == s) 
+					&& (d < 0 || nodeSystems[d] == s)) {
+				table.addRow(columns.getId(i), o < 0 ? -1 : nodeRows[o],
+						d < 0 ? -1 : nodeRows[d], type, null, edgeDirection);
+				continue;
+			}
+			Edge edge = new Edge();
+			edge.setId(columns.getId(i));
+			edge.setEdgeType(type);
+			edge.setOrigin(o < 0 ? null : 
+				systems.get(nodeSystems[o]).getNodesView().get(nodeRows[o]));
+			edge.setDestination(d < 0 ? null : 
+				systems.get(nodeSystems[d]).getNodesView().get(nodeRows[d]));
+			edge.setEdgeDirection(edgeDirection);
+			if(table != null) table.add(edge);
+			else systemEdges.get(s).add(edge);
+		}
+		for(int s=0; s<systems.size(); s++) {
+			if(!systemEdges.get(s).isEmpty()) systems.get(s).addAllEdges(systemEdges.get(s));
+		}
+	}
+
+	/**
+	 * Reads the attribute values of individual nodes and edges from the
+	 * VALUES section.
+	 *
+	 * @param in the section
+	 * @param systems the systems
+	 */
+	private void readValues(ByteBuffer in, List<CitySystem> systems) {
+		int numberBlocks = in.getInt();
+		for(int i=0; i<numberBlocks; i++) {
+			CitySystem system = systems.get(in.getInt());
+			byte kind = in.get();
+			readValueBlock(in, kind == EDGE_VALUES ?
+					system.getEdgeAttributes() : system.getNodeAttributes());
+		}
+	}
+
+	/**
+	 * Reads the values of one attribute, written as the attribute name (null
+	 * if none) and the ids and values, from the VALUES section or a journal 
+	 * record.
+	 *
+	 * @param in the buffer
+	 * @param attributes the attribute values to set
+	 */
+	static void readValueBlock(ByteBuffer in, InstanceAttributes attributes) {
+		String name = getString(in);
+		if(name == null) return;
+		int[] ids = new int[in.getInt()];
+		double[] values = new double[ids.length];
+		in.asIntBuffer().get(ids);
+		in.position(in.position() + 4*ids.length);
+		in.asDoubleBuffer().get(values);
+		in.position(in.position() + 8*values.length);
+		attributes.setValues(ids, AttributeSchema.getSlot(name), values);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.io.CityTemplate#writeTemplate(edu.mit.citynet.core.City)
+	 */
+	public void writeTemplate(City city) throws IOException {
+		if(stamp != null && stamp.isCity(city) && filePath.equals(stampFilePath)
+				&& new File(filePath).length() == stampFileLength) {
+			long liveLength = 0;
+			for(long length : lengths) liveLength += length;
+			if(stampFileLength - HEADER_SIZE - liveLength <= liveLength) {
+				appendTemplate(city);
+				return;
+			}
+		}
+		writeFullTemplate(city);
+	}
+
+	/**
+	 * Writes all sections of a city to a temporary file next to the file, 
+	 * forces it to disk and then moves it over the file, so the file is 
+	 * never left partly written.
+	 *
+	 * @param city the city
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeFullTemplate(City city) throws IOException {
+		stamp = null;
+		List<Cell> cells = getSortedCells(city);
+		List<CellGrid> grids = getGrids(cells);
+		Map<CellGrid,Integer> gridMap = getGridMap(grids);
+		byte[] meta = getMeta(city, grids);
+		long[] offsets = new long[NUMBER_SECTIONS];
+		long[] lengths = new long[NUMBER_SECTIONS];
+		long fileLength;
+		File target = new File(filePath).getAbsoluteFile();
+		File temporary = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		boolean written = false;
+		RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			SectionWriter out = new SectionWriter(channel, 0);
+			out.position(HEADER_SIZE);
+			for(int section=0; section<NUMBER_SECTIONS; section++) {
+				offsets[section] = out.position();
+				switch(section) {
+				case META: out.putBytes(meta); break;
+				case CELLS: writeCells(out, cells, gridMap); break;
+				case NODES: writeNodes(out, getNodeLists(city), getNodeTables(city)); break;
+				case EDGES: writeEdges(out, getEdgeLists(city), getEdgeTables(city)); break;
+				case VALUES: writeValues(out, city.getSystems()); break;
+				}
+				lengths[section] = out.position() - offsets[section];
+			}
+			out.position(0);
+			writeHeader(out, offsets, lengths);
+			out.flush();
+			channel.force(true);
+			fileLength = channel.size();
+			file.close();
+			try {
+				Files.move(temporary.toPath(), target.toPath(), 
+						StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch(AtomicMoveNotSupportedException ex) {
+				Files.move(temporary.toPath(), target.toPath(), 
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			written = true;
+		} finally {
+			file.close();
+			if(!written) temporary.delete();
+		}
+		setSaved(city, meta, grids, offsets, lengths, fileLength);
+	}
+
+	/**
+	 * Appends the changed sections of a city to the file and then updates the
+	 * directory in the header to point to them. The sections are forced to 
+	 * disk before the header is written, so the file holds either the 
+	 * previous or the new version of the city.
+	 *
+	 * @param city the city
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void appendTemplate(City city) throws IOException {
+		boolean[] changed = new boolean[NUMBER_SECTIONS];
+		changed[CELLS] = stamp.areCellsChanged();
+		changed[NODES] = stamp.areNodesChanged();
+		changed[EDGES] = stamp.areEdgesChanged();
+		changed[VALUES] = stamp.areValuesChanged();
+		List<Cell> cells = null;
+		Map<CellGrid,Integer> gridMap = null;
+		List<CellGrid> grids = this.grids;
+		if(changed[CELLS]) {
+			cells = getSortedCells(city);
+			grids = getGrids(cells);
+			gridMap = getGridMap(grids);
+		}
+		byte[] meta = getMeta(city, grids);
+		changed[META] = !Arrays.equals(meta, this.meta);
+		long[] offsets = this.offsets.clone();
+		long[] lengths = this.lengths.clone();
+		long fileLength = stampFileLength;
+		stamp = null;
+		RandomAccessFile file = new RandomAccessFile(filePath, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			SectionWriter out = new SectionWriter(channel, 0);
+			out.position(fileLength);
+			for(int section=0; section<NUMBER_SECTIONS; section++) {
+				if(!changed[section]) continue;
+				offsets[section] = out.position();
+				switch(section) {
+				case META: out.putBytes(meta); break;
+				case CELLS: writeCells(out, cells, gridMap); break;
+				case NODES: writeNodes(out, getNodeLists(city), getNodeTables(city)); break;
+				case EDGES: writeEdges(out, getEdgeLists(city), getEdgeTables(city)); break;
+				case VALUES: writeValues(out, city.getSystems()); break;
+				}
+				lengths[section] = out.position() - offsets[section];
+			}
+			if(out.position() > fileLength) {
+				out.flush();
+				channel.force(false);
+				out.position(0);
+				writeHeader(out, offsets, lengths);
+				out.flush();
+				channel.force(false);
+			}
+			fileLength = channel.size();
+		} finally {
+			file.close();
+		}
+		setSaved(city, meta, grids, offsets, lengths, fileLength);
+	}
+
+	/**
+	 * Writes the header: magic number, version and the directory of section 
+	 * offsets and lengths.
+	 *
+	 * @param out the writer
+	 * @param offsets the offsets of the sections
+	 * @param lengths the lengths of the sections
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void writeHeader(SectionWriter out, long[] offsets, long[] lengths)
+			throws IOException {
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putInt(NUMBER_SECTIONS);
+		for(int section=0; section<NUMBER_SECTIONS; section++) {
+			out.putInt(section);
+			out.putLong(offsets[section]);
+			out.putLong(lengths[section]);
+		}
+	}
+
+	/**
+	 * Gets the cells of a city in order of id.
+	 *
+	 * @param city the city
+	 * @return the sorted cells
+	 */
+	private static List<Cell> getSortedCells(City city) {
+		List<Cell> cells = new ArrayList<Cell>(city.getCellsView());
+		Collections.sort(cells, new Comparator<Cell>() {
+			public int compare(Cell cell1, Cell cell2) {
+				return cell1.getId() < cell2.getId() ? -1
+						: (cell1.getId() == cell2.getId() ? 0 : 1);
+			}
+		});
+		return cells;
+	}
+
+	/**
+	 * Gets the cell grids of cells, in order of their first cell.
+	 *
+	 * @param cells the cells
+	 * @return the cell grids
+	 */
+	private static List<CellGrid> getGrids(List<Cell> cells) {
+		Map<CellGrid,Integer> gridMap = new IdentityHashMap<CellGrid,Integer>();
+		List<CellGrid> grids = new ArrayList<CellGrid>();
+		for(Cell cell : cells) {
+			if(cell.getCellGrid() != null && !gridMap.containsKey(cell.getCellGrid())) {
+				gridMap.put(cell.getCellGrid(), grids.size());
+				grids.add(cell.getCellGrid());
+			}
+		}
+		return grids;
+	}
+
+	/**
+	 * Gets the indices of cell grids.
+	 *
+	 * @param grids the cell grids
+	 * @return the indices of the cell grids
+	 */
+	private static Map<CellGrid,Integer> getGridMap(List<CellGrid> grids) {
+		Map<CellGrid,Integer> gridMap = new IdentityHashMap<CellGrid,Integer>();
+		for(int i=0; i<grids.size(); i++) gridMap.put(grids.get(i), i);
+		return gridMap;
+	}
+
+	/**
+	 * Gets the bytes of the META section of a city.
+	 *
+	 * @param city the city
+	 * @param grids the cell grids
+	 * @return the bytes
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	byte[] getMeta(City city, List<CellGrid> grids) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SectionWriter out = new SectionWriter(Channels.newChannel(bytes), 0);
+		writeMeta(out, city, grids);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes the city details, cell regions, cell grids and systems (without
+	 * nodes and edges) to the META section.
+	 *
+	 * @param out the writer
+	 * @param city the city
+	 * @param grids the cell grids
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeMeta(SectionWriter out, City city, List<CellGrid> grids)
+			throws IOException {
+		out.putString(city.getName());
+		out.putDouble(city.getLatitude());
+		out.putDouble(city.getLongitude());
+		out.putDouble(city.getRotation());
+		out.putString(city.getImageFilePath());
+		out.putCoordinates(city.getImageCoordinates());
+
+		out.putInt(city.getCellRegions().size());
+		for(CellRegion cellRegion : city.getCellRegions()) {
+			out.putInt(cellRegion.getId());
+			out.putInt(cellRegion.getNumberRows());
+			out.putInt(cellRegion.getNumberColumns());
+			out.put(cellRegion.isImplicit() ? IMPLICIT : 0);
+			out.putString(cellRegion.getDescription());
+			out.putCoordinates(cellRegion.getCoordinateList());
+		}
+
+		out.putInt(grids.size());
+		for(CellGrid grid : grids) {
+			writeGrid(out, grid);
+		}
+
+		out.putInt(city.getSystems().size());
+		for(CitySystem system : city.getSystems()) {
+			out.putInt(system.getId());
+			out.putString(system.getName());
+			out.putString(system.getDescription());
+			out.put((byte)(system.isColumnar() ? 1 : 0));
+			out.putInt(system.getLayers().size());
+			for(Layer layer : system.getLayers()) {
+				out.putInt(layer.getId());
+				out.putString(layer.getName());
+				out.putString(layer.getDescription());
+				out.putDouble(layer.getDisplayHeight());
+			}
+			out.putInt(system.getNodeTypes().size());
+			for(NodeType nodeType : system.getNodeTypes()) {
+				out.putInt(nodeType.getId());
+				out.putString(nodeType.getName());
+				out.putString(nodeType.getDescription());
+				out.putColor(nodeType.getColor());
+				out.putInt(nodeType.getAttributes().size());
+				for(NodeTypeAttribute attribute : nodeType.getAttributes()) {
+					out.putInt(attribute.getId());
+					out.putString(attribute.getName());
+					out.putString(attribute.getDescription());
+					out.putString(attribute.getUnits());
+					out.putString(attribute.getBounds());
+					out.putDouble(attribute.getValue());
+				}
+			}
+			out.putInt(system.getEdgeTypes().size());
+			for(EdgeType edgeType : system.getEdgeTypes()) {
+				out.putInt(edgeType.getId());
+				out.putString(edgeType.getName());
+				out.putString(edgeType.getDescription());
+				out.putColor(edgeType.getColor());
+				out.putInt(edgeType.getAttributes().size());
+				for(EdgeTypeAttribute attribute : edgeType.getAttributes()) {
+					out.putInt(attribute.getId());
+					out.putString(attribute.getName());
+					out.putString(attribute.getDescription());
+					out.putString(attribute.getUnits());
+					out.putString(attribute.getBounds());
+					out.putDouble(attribute.getValue());
+				}
+			}
+			List<Region> regions = system.getRegionsView();
+			out.putInt(regions.size());
+			for(Region region : regions) {
+				writeRegion(out, region);
+			}
+		}
+	}
+
+	/**
+	 * Writes a region to the META section.
+	 *
+	 * @param out the writer
+	 * @param region the region
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeRegion(SectionWriter out, Region region) throws IOException {
+		if(region instanceof InterLayerRegion) {
+			InterLayerRegion interRegion = (InterLayerRegion)region;
+			out.put(INTER_LAYER);
+			out.putInt(getId(interRegion.getOriginLayer()));
+			out.putInt(getId(interRegion.getDestinationLayer()));
+		} else {
+			IntraLayerRegion intraRegion = (IntraLayerRegion)region;
+			out.put(INTRA_LAYER);
+			out.putInt(getId(intraRegion.getLayer()));
+			out.putInt(intraRegion.getNodeType()==null?0:intraRegion.getNodeType().getId());
+			out.putString(intraRegion.getNodeGenerationType()==null?
+					NodeGenerationType.NONE.getName():intraRegion.getNodeGenerationType().getName());
+			out.putString(intraRegion.getEdgeGenerationType()==null?
+					EdgeGenerationType.NONE.getName():intraRegion.getEdgeGenerationType().getName());
+		}
+		out.putInt(region.getId());
+		out.putString(region.getDescription());
+		out.putCoordinates(region.getCoordinateList());
+		out.putInt(region.getEdgeType()==null?0:region.getEdgeType().getId());
+		out.put((byte)(region.getEdgeDirection()==EdgeDirection.DIRECTED?1:0));
+	}
+
+	/**
+	 * Writes the cells to the CELLS section or a journal record, one column 
+	 * at a time. Cells without a cell grid are written as their envelopes.
+	 *
+	 * @param out the writer
+	 * @param cells the cells
+	 * @param gridMap the indices of the cell grids
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static void writeCells(SectionWriter out, List<Cell> cells,
+			Map<CellGrid,Integer> gridMap) throws IOException {
+		out.putInt(cells.size());
+		for(Cell cell : cells) out.putInt(cell.getId());
+		for(int k=0; k<4; k++) {
+			for(Cell cell : cells) {
+				Envelope envelope = cell.getCellGrid() == null ? cell.getEnvelope() : null;
+				if(envelope == null) out.putDouble(Double.NaN);
+				else if(k == 0) out.putDouble(envelope.getMinX());
+				else if(k == 1) out.putDouble(envelope.getMinY());
+				else if(k == 2) out.putDouble(envelope.getMaxX());
+				else out.putDouble(envelope.getMaxY());
+			}
+		}
+		for(Cell cell : cells) {
+			out.putInt(cell.getCellGrid() == null ? -1 : gridMap.get(cell.getCellGrid()));
+		}
+		for(Cell cell : cells) out.putInt(cell.getRow());
+		for(Cell cell : cells) out.putInt(cell.getColumn());
+		for(Cell cell : cells) out.put(cell.isImplicit() ? IMPLICIT : 0);
+	}
+
+	/**
+	 * Writes the nodes of systems to the NODES section or a journal record,
+	 * one column at a time. Columnar systems are read from their node tables.
+	 *
+	 * @param out the writer
+	 * @param systemNodes the nodes of each system
+	 * @param tables the node tables of each system, null if not columnar
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static void writeNodes(SectionWriter out, List<List<Node>> systemNodes,
+			List<NodeTable> tables) throws IOException {
+		int n = 0;
+		for(List<Node> nodes : systemNodes) n += nodes.size();
+		out.putInt(n);
+		for(int k=0; k<5; k++) {
+			for(int s=0; s<systemNodes.size(); s++) {
+				NodeTable table = tables.get(s);
+				List<Node> nodes = systemNodes.get(s);
+				for(int i=0; i<nodes.size(); i++) {
+					Node node = table == null ? nodes.get(i) : null;
+					switch(k) {
+					case 0: out.putInt(table == null ? node.getId() : table.getId(i)); break;
+					case 1: out.putInt(s); break;
+					case 2: out.putInt(getId(table == null ? node.getCell() : table.getCell(i))); break;
+					case 3: out.putInt(getId(table == null ? node.getLayer() : table.getLayer(i))); break;
+					default:
+						NodeType nodeType = table == null ? node.getNodeType() : table.getNodeType(i);
+						out.putInt(nodeType == null ? 0 : nodeType.getId());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the edges of systems to the EDGES section or a journal record,
+	 * one column at a time. Columnar systems are read from their edge tables.
+	 *
+	 * @param out the writer
+	 * @param systemEdges the edges of each system
+	 * @param tables the edge tables of each system, null if not columnar
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static void writeEdges(SectionWriter out, List<List<Edge>> systemEdges,
+			List<EdgeTable> tables) throws IOException {
+		int n = 0;
+		for(List<Edge> edges : systemEdges) n += edges.size();
+		out.putInt(n);
+		for(int k=0; k<6; k++) {
+			for(int s=0; s<systemEdges.size(); s++) {
+				EdgeTable table = tables.get(s);
+				List<Edge> edges = systemEdges.get(s);
+				for(int i=0; i<edges.size(); i++) {
+					Edge edge = table == null ? edges.get(i) : null;
+					switch(k) {
+					case 0: out.putInt(table == null ? edge.getId() : table.getId(i)); break;
+					case 1: out.putInt(s); break;
+					case 2:
+						EdgeType edgeType = table == null ? edge.getEdgeType() : table.getEdgeType(i);
+						out.putInt(edgeType == null ? 0 : edgeType.getId());
+						break;
+					case 3:
+						out.putInt(table == null ? (edge.getOrigin() == null ? 0
+								: edge.getOrigin().getId()) : table.getOriginId(i));
+						break;
+					case 4:
+						out.putInt(table == null ? (edge.getDestination() == null ? 0
+								: edge.getDestination().getId()) : table.getDestinationId(i));
+						break;
+					default:
+						EdgeDirection direction = table == null ?
+								edge.getEdgeDirection() : table.getEdgeDirection(i);
+						out.put((byte)(direction==EdgeDirection.DIRECTED?1:0));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the nodes of each system of a city.
+	 *
+	 * @param city the city
+	 * @return the nodes of each system
+	 */
+	private static List<List<Node>> getNodeLists(City city) {
+		List<List<Node>> lists = new ArrayList<List<Node>>();
+		for(CitySystem system : city.getSystems()) lists.add(system.getNodesView());
+		return lists;
+	}
+
+	/**
+	 * Gets the node table of each system of a city.
+	 *
+	 * @param city the city
+	 * @return the node tables, null for systems which are not columnar
+	 */
+	private static List<NodeTable> getNodeTables(City city) {
+		List<NodeTable> tables = new ArrayList<NodeTable>();
+		for(CitySystem system : city.getSystems()) tables.add(system.getNodeTable());
+		return tables;
+	}
+
+	/**
+	 * Gets the edges of each system of a city.
+	 *
+	 * @param city the city
+	 * @return the edges of each system
+	 */
+	private static List<List<Edge>> getEdgeLists(City city) {
+		List<List<Edge>> lists = new ArrayList<List<Edge>>();
+		for(CitySystem system : city.getSystems()) lists.add(system.getEdgesView());
+		return lists;
+	}
+
+	/**
+	 * Gets the edge table of each system of a city.
+	 *
+	 * @param city the city
+	 * @return the edge tables, null for systems which are not columnar
+	 */
+	private static List<EdgeTable> getEdgeTables(City city) {
+		List<EdgeTable> tables = new ArrayList<EdgeTable>();
+		for(CitySystem system : city.getSystems()) tables.add(system.getEdgeTable());
+		return tables;
+	}
+
+	/**
+	 * Writes the attribute values of individual nodes and edges to the VALUES
+	 * section, one block of ids and values for each system and attribute.
+	 *
+	 * @param out the writer
+	 * @param systems the systems
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeValues(SectionWriter out, List<CitySystem> systems)
+			throws IOException {
+		int numberBlocks = 0;
+		for(CitySystem system : systems) {
+			numberBlocks += system.getNodeAttributes().getSlots().length;
+			numberBlocks += system.getEdgeAttributes().getSlots().length;
+		}
+		out.putInt(numberBlocks);
+		for(int s=0; s<systems.size(); s++) {
+			for(byte kind=NODE_VALUES; kind<=EDGE_VALUES; kind++) {
+				InstanceAttributes attributes = kind == EDGE_VALUES ?
+						systems.get(s).getEdgeAttributes() : systems.get(s).getNodeAttributes();
+				int[] ids = attributes.getIds();
+				for(int slot : attributes.getSlots()) {
+					out.putInt(s);
+					out.put(kind);
+					writeValueBlock(out, AttributeSchema.getName(slot), ids, attributes.getValues(slot));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the values of one attribute as the attribute name and the ids 
+	 * and values to the VALUES section or a journal record.
+	 *
+	 * @param out the writer
+	 * @param name the attribute name
+	 * @param ids the node or edge ids
+	 * @param values the values, in the order of ids
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static void writeValueBlock(SectionWriter out, String name, int[] ids, double[] values)
+			throws IOException {
+		out.putString(name);
+		out.putInt(ids.length);
+		for(int id : ids) out.putInt(id);
+		for(double value : values) out.putDouble(value);
+	}
+
+	/**
+	 * Writes a cell grid as the id of its cell region and its x- and 
+	 * y-coordinates to the META section or a journal record.
+	 *
+	 * @param out the writer
+	 * @param grid the cell grid
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static void writeGrid(SectionWriter out, CellGrid grid) throws IOException {
+		out.putInt(grid.getCellRegion() == null ? 0 : grid.getCellRegion().getId());
+		out.putInt(grid.getNumberRows()+1);
+		for(int i=0; i<grid.getNumberRows(); i++) {
+			out.putDouble(grid.getEnvelope(i, 0).getMinX());
+		}
+		out.putDouble(grid.getEnvelope(grid.getNumberRows()-1, 0).getMaxX());
+		out.putInt(grid.getNumberColumns()+1);
+		for(int j=0; j<grid.getNumberColumns(); j++) {
+			out.putDouble(grid.getEnvelope(0, j).getMinY());
+		}
+		out.putDouble(grid.getEnvelope(0, grid.getNumberColumns()-1).getMaxY());
+	}
+
+	/**
+	 * Gets the id of a cell, or 0 if null.
+	 *
+	 * @param cell the cell
+	 * @return the id
+	 */
+	private static int getId(Cell cell) {
+		return cell == null ? 0 : cell.getId();
+	}
+
+	/**
+	 * Gets the id of a layer, or 0 if null.
+	 *
+	 * @param layer the layer
+	 * @return the id
+	 */
+	private static int getId(Layer layer) {
+		return layer == null ? 0 : layer.getId();
+	}
+
+	/**
+	 * Creates a number of empty lists.
+	 *
+	 * @param size the number of lists
+	 * @return the lists
+	 */
+	private static <T> List<List<T>> getLists(int size) {
+		List<List<T>> lists = new ArrayList<List<T>>(size);
+		for(int i=0; i<size; i++) lists.add(new ArrayList<T>());
+		return lists;
+	}
+
+	/**
+	 * Reads a string written as its length in bytes (-1 if null) and its
+	 * UTF-8 bytes.
+	 *
+	 * @param in the buffer
+	 * @return the string
+	 */
+	static String getString(ByteBuffer in) {
+		int length = in.getInt();
+		if(length < 0) return null;
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Reads a coordinate list written as its number of coordinates (-1 if
+	 * null) and the x- and y-coordinates of each.
+	 *
+	 * @param in the buffer
+	 * @return the coordinate list
+	 */
+	private static CoordinateList getCoordinates(ByteBuffer in) {
+		int length = in.getInt();
+		if(length < 0) return null;
+		Coordinate[] coordinates = new Coordinate[length];
+		for(int i=0; i<length; i++) {
+			coordinates[i] = new Coordinate(in.getDouble(), in.getDouble());
+		}
+		return new CoordinateList(coordinates);
+	}
+
+	/**
+	 * Reads a color written as a flag (0 if null) and its ARGB value.
+	 *
+	 * @param in the buffer
+	 * @return the color
+	 */
+	private static Color getColor(ByteBuffer in) {
+		boolean defined = in.get() == 1;
+		int argb = in.getInt();
+		return defined ? new Color(argb, true) : null;
+	}
+
+	/**
+	 * The CellColumns class reads the columns of a CELLS section (or journal
+	 * record) in place: the ids, the minimum and maximum x- and y-coordinates
+	 * (NaN for cells of a cell grid or without polygon), the cell grid
+	 * indices (-1 if none), rows, columns and implicit flags.
+	 */
+	static final class CellColumns {
+		private final ByteBuffer in;
+		private final int size, ids, minX, minY, maxX, maxY, grid, row, column, flags;
+
+		/**
+		 * Instantiates new cell columns.
+		 *
+		 * @param in the section, starting at its first byte
+		 */
+		CellColumns(ByteBuffer in) {
+			this.in = in;
+			size = in.getInt(0);
+			ids = 4;
+			minX = ids + 4*size;
+			minY = minX + 8*size;
+			maxX = minY + 8*size;
+			maxY = maxX + 8*size;
+			grid = maxY + 8*size;
+			row = grid + 4*size;
+			column = row + 4*size;
+			flags = column + 4*size;
+		}
+
+		/**
+		 * Gets the number of cells.
+		 *
+		 * @return the number of cells
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Gets the length of the columns in bytes.
+		 *
+		 * @return the length
+		 */
+		int length() {
+			return flags + size;
+		}
+
+		/**
+		 * Creates a cell. Cells of a cell grid take their geometry and cell
+		 * region from the grid, and other cells are rectangles.
+		 *
+		 * @param i the index
+		 * @param grids the cell grids
+		 * @return the cell
+		 */
+		Cell createCell(int i, List<CellGrid> grids) {
+			Cell cell = new Cell();
+			cell.setId(in.getInt(ids + 4*i));
+			int g = in.getInt(grid + 4*i);
+			if(g >= 0 && g < grids.size()) {
+				CellGrid cellGrid = grids.get(g);
+				cell.setCellGrid(cellGrid);
+				cell.setCellRegion(cellGrid.getCellRegion());
+				cell.setRow(in.getInt(row + 4*i));
+				cell.setColumn(in.getInt(column + 4*i));
+				if(in.get(flags + i) != IMPLICIT) {
+					cell.setPolygon(cellGrid.createPolygon(cell.getRow(), cell.getColumn()));
+				}
+			} else if(!Double.isNaN(in.getDouble(minX + 8*i))) {
+				GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
+				double x1 = in.getDouble(minX + 8*i);
+				double y1 = in.getDouble(minY + 8*i);
+				double x2 = in.getDouble(maxX + 8*i);
+				double y2 = in.getDouble(maxY + 8*i);
+				Coordinate c1 = new Coordinate(x1,y1);
+				Coordinate c2 = new Coordinate(x2,y1);
+				Coordinate c3 = new Coordinate(x2,y2);
+				Coordinate c4 = new Coordinate(x1,y2);
+				cell.setPolygon(gf.createPolygon(gf.createLinearRing(
+						new Coordinate[]{c1,c2,c3,c4,c1}), null));
+			}
+			return cell;
+		}
+	}
+
+	/**
+	 * The NodeColumns class reads the columns of a NODES section (or journal
+	 * record) in place: the ids, system indices and the ids of the cells, 
+	 * layers and node types (0 if none).
+	 */
+	static final class NodeColumns {
+		private final ByteBuffer in;
+		private final int size, ids, system, cell, layer, nodeType;
+
+		/**
+		 * Instantiates new node columns.
+		 *
+		 * @param in the section, starting at its first byte
+		 */
+		NodeColumns(ByteBuffer in) {
+			this.in = in;
+			size = in.getInt(0);
+			ids = 4;
+			system = ids + 4*size;
+			cell = system + 4*size;
+			layer = cell + 4*size;
+			nodeType = layer + 4*size;
+		}
+
+		/**
+		 * Gets the number of nodes.
+		 *
+		 * @return the number of nodes
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Gets the id of a node.
+		 *
+		 * @param i the index
+		 * @return the id
+		 */
+		int getId(int i) {
+			return in.getInt(ids + 4*i);
+		}
+
+		/**
+		 * Gets the system index of a node.
+		 *
+		 * @param i the index
+		 * @return the system index
+		 */
+		int getSystem(int i) {
+			return in.getInt(system + 4*i);
+		}
+
+		/**
+		 * Gets the cell id of a node.
+		 *
+		 * @param i the index
+		 * @return the cell id
+		 */
+		int getCellId(int i) {
+			return in.getInt(cell + 4*i);
+		}
+
+		/**
+		 * Gets the layer id of a node.
+		 *
+		 * @param i the index
+		 * @return the layer id
+		 */
+		int getLayerId(int i) {
+			return in.getInt(layer + 4*i);
+		}
+
+		/**
+		 * Gets the node type id of a node.
+		 *
+		 * @param i the index
+		 * @return the node type id
+		 */
+		int getNodeTypeId(int i) {
+			return in.getInt(nodeType + 4*i);
+		}
+	}
+
+	/**
+	 * The EdgeColumns class reads the columns of an EDGES section (or journal
+	 * record) in place: the ids, system indices, the ids of the edge types, 
+	 * origins and destinations (0 if none) and the directed flags.
+	 */
+	static final class EdgeColumns {
+		private final ByteBuffer in;
+		private final int size, ids, system, edgeType, origin, destination, direction;
+
+		/**
+		 * Instantiates new edge columns.
+		 *
+		 * @param in the section, starting at its first byte
+		 */
+		EdgeColumns(ByteBuffer in) {
+			this.in = in;
+			size = in.getInt(0);
+			ids = 4;
+			system = ids + 4*size;
+			edgeType = system + 4*size;
+			origin = edgeType + 4*size;
+			destination = origin + 4*size;
+			direction = destination + 4*size;
+		}
+
+		/**
+		 * Gets the number of edges.
+		 *
+		 * @return the number of edges
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Gets the id of an edge.
+		 *
+		 * @param i the index
+		 * @return the id
+		 */
+		int getId(int i) {
+			return in.getInt(ids + 4*i);
+		}
+
+		/**
+		 * Gets the system index of an edge.
+		 *
+		 * @param i the index
+		 * @return the system index
+		 */
+		int getSystem(int i) {
+			return in.getInt(system + 4*i);
+		}
+
+		/**
+		 * Gets the edge type id of an edge.
+		 *
+		 * @param i the index
+		 * @return the edge type id
+		 */
+		int getEdgeTypeId(int i) {
+			return in.getInt(edgeType + 4*i);
+		}
+
+		/**
+		 * Gets the origin id of an edge.
+		 *
+		 * @param i the index
+		 * @return the origin id
+		 */
+		int getOriginId(int i) {
+			return in.getInt(origin + 4*i);
+		}
+
+		/**
+		 * Gets the destination id of an edge.
+		 *
+		 * @param i the index
+		 * @return the destination id
+		 */
+		int getDestinationId(int i) {
+			return in.getInt(destination + 4*i);
+		}
+
+		/**
+		 * Gets the direction of an edge.
+		 *
+		 * @param i the index
+		 * @return the edge direction
+		 */
+		EdgeDirection getEdgeDirection(int i) {
+			return in.get(direction + i)==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED;
+		}
+	}
+
+	/**
+	 * The IdIndex class finds the index of an id in a column of ids by binary
+	 * search, sorting a copy of the ids only if they are not already sorted.
+	 */
+	private static final class IdIndex {
+		private int[] ids, indices;
+
+		/**
+		 * Instantiates a new id index.
+		 *
+		 * @param ids the ids by index
+		 */
+		private IdIndex(int[] ids) {
+			boolean sorted = true;
+			for(int i=1; i<ids.length && sorted; i++) {
+				sorted = ids[i-1] < ids[i];
+			}
+			if(sorted) {
+				this.ids = ids;
+				return;
+			}
+			long[] keys = new long[ids.length];
+			for(int i=0; i<ids.length; i++) {
+				keys[i] = ((long)ids[i] << 32) | i;
+			}
+			Arrays.sort(keys);
+			this.ids = new int[ids.length];
+			indices = new int[ids.length];
+			for(int i=0; i<ids.length; i++) {
+				this.ids[i] = (int)(keys[i] >> 32);
+				indices[i] = (int)keys[i];
+			}
+		}
+
+		/**
+		 * Gets the index of an id.
+		 *
+		 * @param id the id
+		 * @return the index, or -1 if not found
+		 */
+		private int get(int id) {
+			int i = Arrays.binarySearch(ids, id);
+			if(i < 0) return -1;
+			return indices == null ? i : indices[i];
+		}
+	}
+
+	/**
+	 * The SectionWriter class writes little-endian values to a channel (a 
+	 * file, or memory for the META section and journal records) through a 
+	 * direct buffer.
+	 */
+	static final class SectionWriter {
+		private WritableByteChannel channel;
+		private long channelPosition;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+		/**
+		 * Instantiates a new section writer.
+		 *
+		 * @param channel the channel
+		 * @param position the position of the channel
+		 */
+		SectionWriter(WritableByteChannel channel, long position) {
+			this.channel = channel;
+			this.channelPosition = position;
+		}
+
+		/**
+		 * Gets the position in the file of the next value.
+		 *
+		 * @return the position
+		 */
+		private long position() {
+			return channelPosition + buffer.position();
+		}
+
+		/**
+		 * Sets the position in the file of the next value.
+		 *
+		 * @param position the position
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void position(long position) throws IOException {
+			flush();
+			((FileChannel)channel).position(position);
+			channelPosition = position;
+		}
+
+		/**
+		 * Writes the buffered values to the file.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void flush() throws IOException {
+			buffer.flip();
+			while(buffer.hasRemaining()) channelPosition += channel.write(buffer);
+			buffer.clear();
+		}
+
+		/**
+		 * Ensures the buffer has room for a number of bytes.
+		 *
+		 * @param bytes the number of bytes
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void ensureRemaining(int bytes) throws IOException {
+			if(buffer.remaining() < bytes) flush();
+		}
+
+		/**
+		 * Writes a byte.
+		 *
+		 * @param value the value
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void put(byte value) throws IOException {
+			ensureRemaining(1);
+			buffer.put(value);
+		}
+
+		/**
+		 * Writes an int.
+		 *
+		 * @param value the value
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void putInt(int value) throws IOException {
+			ensureRemaining(4);
+			buffer.putInt(value);
+		}
+
+		/**
+		 * Writes a long.
+		 *
+		 * @param value the value
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void putLong(long value) throws IOException {
+			ensureRemaining(8);
+			buffer.putLong(value);
+		}
+
+		/**
+		 * Writes a double.
+		 *
+		 * @param value the value
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void putDouble(double value) throws IOException {
+			ensureRemaining(8);
+			buffer.putDouble(value);
+		}
+
+		/**
+		 * Writes a string as its length in bytes (-1 if null) and its UTF-8
+		 * bytes.
+		 *
+		 * @param value the string
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void putString(String value) throws IOException {
+			if(value == null) {
+				putInt(-1);
+				return;
+			}
+			byte[] bytes = value.getBytes(UTF8);
+			putInt(bytes.length);
+			putBytes(bytes);
+		}
+
+		/**
+		 * Writes bytes.
+		 *
+		 * @param bytes the bytes
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void putBytes(byte[] bytes) throws IOException {
+			for(int i=0; i<bytes.length; i+=BUFFER_SIZE) {
+				int length = Math.min(BUFFER_SIZE, bytes.length-i);
+				ensureRemaining(length);
+				buffer.put(bytes, i, length);
+			}
+		}
+
+		/**
+		 * Writes a coordinate list as its number of coordinates (-1 if null)
+		 * and the x- and y-coordinates of each.
+		 *
+		 * @param coordinates the coordinate list
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void putCoordinates(CoordinateList coordinates) throws IOException {
+			if(coordinates == null) {
+				putInt(-1);
+				return;
+			}
+			putInt(coordinates.size());
+			for(int i=0; i<coordinates.size(); i++) {
+				putDouble(coordinates.getCoordinate(i).x);
+				putDouble(coordinates.getCoordinate(i).y);
+			}
+		}
+
+		/**
+		 * Writes a color as a flag (0 if null) and its ARGB value.
+		 *
+		 * @param color the color
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void putColor(Color color) throws IOException {
+			put((byte)(color == null ? 0 : 1));
+			putInt(color == null ? 0 : color.getRGB());
+		}
+	}
+}
\ No newline at end of file
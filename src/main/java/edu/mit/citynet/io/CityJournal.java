@@ -0,0 +1,1533 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+import edu.mit.citynet.core.AttributeSchema;
+import edu.mit.citynet.core.Cell;
+import edu.mit.citynet.core.CellGrid;
+import edu.mit.citynet.core.CellRegion;
+import edu.mit.citynet.core.City;
+import edu.mit.citynet.core.CityChangeListener;
+import edu.mit.citynet.core.CitySystem;
+import edu.mit.citynet.core.Edge;
+import edu.mit.citynet.core.EdgeTable;
+import edu.mit.citynet.core.EdgeType;
+import edu.mit.citynet.core.InstanceAttributes;
+import edu.mit.citynet.core.InterLayerRegion;
+import edu.mit.citynet.core.IntraLayerRegion;
+import edu.mit.citynet.core.Layer;
+import edu.mit.citynet.core.Node;
+import edu.mit.citynet.core.NodeTable;
+import edu.mit.citynet.core.NodeType;
+import edu.mit.citynet.core.Region;
+import edu.mit.citynet.io.BinaryTemplate.CellColumns;
+import edu.mit.citynet.io.BinaryTemplate.EdgeColumns;
+import edu.mit.citynet.io.BinaryTemplate.NodeColumns;
+import edu.mit.citynet.io.BinaryTemplate.SectionWriter;
+
+/**
+ * The CityJournal class keeps an append-only journal of the changes made to
+ * a city since its snapshot (the template it was last read from or written
+ * to, or a new city), so the changes survive a crash and can be replayed
+ * over the snapshot when the application starts again.
+ *
+ * Cells, nodes and edges are journaled as they are added to or removed from
+ * the city (see CityChangeListener). Changes made in place, e.g. to the city
+ * details, cell regions, layers, types and regions (setCoordinateList), are
+ * journaled by the periodic sync as a copy of the META section of the binary
+ * template (see BinaryTemplate) whenever it differs from the last one, and
+ * attribute values as a copy of those whose modification count changed.
+ * Changes made to cell, node and edge objects in place (e.g. setNodeType) 
+ * are not journaled; instead every few syncs the checksums of the cells, 
+ * nodes and edges (see CityStamp) are journaled, and a replay which does 
+ * not reproduce the last of them is reported as incomplete.
+ *
+ * Each record holds its length, type, payload and a CRC-32 checksum. Cells,
+ * cell grids, nodes, edges and attribute values are encoded as in the 
+ * sections of the binary template, with the same encoders. Records are 
+ * collected in a buffer on the thread changing the city, which hands them
+ * off to a background thread writing them to the file and, on sync, 
+ * forcing them to disk, so an edit only costs a buffered write and at most
+ * the changes since the last sync are lost. Replay reads the records one at
+ * a time through a buffer, stops at the first incomplete or corrupt record,
+ * and does not replay a journal whose snapshot has changed since it was 
+ * started.
+ *
+ * The journal file is locked (see FileChannel.tryLock) from the time it is
+ * first used until the journal is released, so that two instances of the 
+ * application never share a journal file.
+ */
+public class CityJournal implements CityChangeListener {
+	public static final int MAGIC = 0x4a424e43; // "CNBJ"
+	public static final int VERSION = 3;
+	private static final int META = 0, GRID = 1, CELLS_ADDED = 2, CELLS_REMOVED = 3,
+		NODES_ADDED = 4, NODES_REMOVED = 5, EDGES_ADDED = 6, EDGES_REMOVED = 7,
+		VALUES = 8, STAMP = 9;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int CHUNK_SIZE = 4096;
+	private static final int STAMP_INTERVAL = 10;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte NODE_VALUES = 0, EDGE_VALUES = 1;
+
+	private String filePath;
+	private BinaryTemplate template;
+	private City city;
+	private FileChannel channel;
+	private ByteBuffer buffer, record;
+	private ByteArrayOutputStream sectionBytes;
+	private SectionWriter section;
+	private CRC32 checksum;
+	private ExecutorService writer;
+	private boolean forced;
+	private int syncs;
+	private volatile IOException failure;
+	private String snapshotPath;
+	private long length;
+	private boolean complete;
+	private byte[] meta;
+	private List<CellGrid> grids;
+	private transient Set<Integer> cellRegionIds, systemIds, layerIds, nodeTypeIds, edgeTypeIds;
+	private transient Map<CellGrid,Integer> gridMap;
+	private transient Map<InstanceAttributes,Integer> valueModCounts;
+
+	/**
+	 * Instantiates a new city journal.
+	 *
+	 * @param filePath the file path of the journal
+	 */
+	public CityJournal(String filePath) {
+		this.filePath = filePath;
+		template = new BinaryTemplate();
+		buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		record = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		sectionBytes = new ByteArrayOutputStream();
+		section = new SectionWriter(Channels.newChannel(sectionBytes), 0);
+		checksum = new CRC32();
+		writer = Executors.newSingleThreadExecutor(new WriterThreadFactory());
+		// sets and maps store the state of the city as journaled
+		cellRegionIds = new HashSet<Integer>();
+		systemIds = new HashSet<Integer>();
+		layerIds = new HashSet<Integer>();
+		nodeTypeIds = new HashSet<Integer>();
+		edgeTypeIds = new HashSet<Integer>();
+		gridMap = new IdentityHashMap<CellGrid,Integer>();
+		valueModCounts = new IdentityHashMap<InstanceAttributes,Integer>();
+	}
+
+	/**
+	 * Gets the file path of the journal.
+	 *
+	 * @return the file path
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Gets the file path of the snapshot of the last replayed journal.
+	 *
+	 * @return the file path, or null if the snapshot is a new city
+	 */
+	public String getSnapshotPath() {
+		return snapshotPath;
+	}
+
+	/**
+	 * Checks if the last replayed journal reproduced the checksums last 
+	 * journaled, i.e. if no changes made to cells, nodes or edges in place
+	 * were lost.
+	 *
+	 * @return true, if complete
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Checks if the journal file exists and holds a journal, e.g. if a 
+	 * previous session did not close it.
+	 *
+	 * @return true, if the journal exists
+	 */
+	public boolean exists() {
+		return new File(filePath).length() > 0;
+	}
+
+	/**
+	 * Opens and locks the journal file, creating it if needed, unless it is
+	 * already locked by this journal.
+	 *
+	 * @return true, if locked; false if another instance holds the lock
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized boolean lock() throws IOException {
+		if(channel != null) return true;
+		FileChannel channel = new RandomAccessFile(filePath, "rw").getChannel();
+		FileLock lock;
+		try {
+			lock = channel.tryLock();
+		} catch(OverlappingFileLockException e) {
+			lock = null; // held by another journal of this application
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+		if(lock == null) {
+			channel.close();
+			return false;
+		}
+		this.channel = channel; // closing the channel releases the lock
+		return true;
+	}
+
+	/**
+	 * Locks the journal file or throws an exception if it is in use.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void requireLock() throws IOException {
+		if(!lock()) {
+			throw new IOException("City journal is used by another instance.");
+		}
+	}
+
+	/**
+	 * Starts a new journal of the changes to a city, which must be in the
+	 * state of its snapshot: the template at a file path, or a new city.
+	 *
+	 * @param city the city
+	 * @param snapshotPath the file path of the template, or null if new
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void start(City city, String snapshotPath) throws IOException {
+		detach();
+		requireLock();
+		File snapshot = snapshotPath == null ? null : new File(snapshotPath);
+		try {
+			channel.truncate(0);
+			channel.position(0);
+			putString(record, snapshotPath);
+			record.flip();
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.put(record);
+			buffer.putLong(snapshot == null ? 0 : snapshot.length());
+			buffer.putLong(snapshot == null ? 0 : snapshot.lastModified());
+			record.clear();
+			meta = template.getMeta(city, Collections.<CellGrid>emptyList());
+			grids = new ArrayList<CellGrid>();
+			attach(city);
+			writeStamp();
+			handOff(true);
+			forced = true;
+		} catch(IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Resumes the journal after replaying it, appending the later changes to
+	 * the city returned by the replay.
+	 *
+	 * @param city the replayed city
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void resume(City city) throws IOException {
+		if(grids == null) throw new IllegalStateException("Journal was not replayed.");
+		List<CellGrid> grids = this.grids;
+		detach();
+		requireLock();
+		try {
+			channel.truncate(length);
+			channel.position(length);
+			this.grids = grids;
+			attach(city);
+			checkMeta();
+			writeStamp();
+			handOff(true);
+			forced = true;
+		} catch(IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Attaches the journal to a city once the journal file is open.
+	 *
+	 * @param city the city
+	 */
+	private void attach(City city) {
+		this.city = city;
+		failure = null;
+		syncs = 0;
+		gridMap.clear();
+		for(int i=0; i<grids.size(); i++) gridMap.put(grids.get(i), i);
+		valueModCounts.clear();
+		for(CitySystem system : city.getSystems()) {
+			valueModCounts.put(system.getNodeAttributes(), system.getNodeAttributes().getModCount());
+			valueModCounts.put(system.getEdgeAttributes(), system.getEdgeAttributes().getModCount());
+		}
+		setKnownIds();
+		city.setChangeListener(this);
+	}
+
+	/**
+	 * Journals the changes made in place and hands the journaled changes off
+	 * to be written to the file and forced to disk in the background. This 
+	 * should be called periodically on the thread changing the city.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred, also if
+	 * journaling or writing a change failed since the last sync.
+	 */
+	public synchronized void sync() throws IOException {
+		if(failure != null) {
+			IOException e = failure;
+			close();
+			failure = null;
+			throw e;
+		}
+		if(city == null) return;
+		try {
+			checkMeta();
+			checkValues();
+			if(++syncs % STAMP_INTERVAL == 0) writeStamp();
+			if(!forced) {
+				handOff(true);
+				forced = true;
+			}
+		} catch(IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Discards the journal, e.g. once the city is closed. The file is 
+	 * emptied but stays locked for the next city.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void delete() throws IOException {
+		detach();
+		grids = null;
+		requireLock();
+		channel.truncate(0);
+	}
+
+	/**
+	 * Closes the journal and releases the lock of the file, deleting the 
+	 * file if it holds no journal, e.g. when the application exits.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void release() throws IOException {
+		detach();
+		if(channel != null && channel.size() == 0) {
+			// deleted while locked, so no other instance is using it
+			new File(filePath).delete();
+		}
+		close();
+	}
+
+	/**
+	 * Detaches the journal from the city once the records handed off have
+	 * been written, keeping the file open and locked.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void detach() throws IOException {
+		if(city != null && city.getChangeListener() == this) {
+			city.setChangeListener(null);
+		}
+		city = null;
+		buffer.clear();
+		record.clear();
+		awaitWrites();
+	}
+
+	/**
+	 * Detaches the journal from the city and closes the file, releasing the
+	 * lock.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void close() throws IOException {
+		detach();
+		if(channel != null) {
+			FileChannel channel = this.channel;
+			this.channel = null;
+			channel.close();
+		}
+	}
+
+	/**
+	 * Stops journaling after a change could not be journaled. The failure is
+	 * thrown by the next sync.
+	 *
+	 * @param e the exception
+	 */
+	private void fail(IOException e) {
+		failure = e;
+		try {
+			close();
+		} catch(IOException ex) {
+			// the failure is reported instead
+		}
+	}
+
+	/**
+	 * Replays the journal over its snapshot.
+	 *
+	 * @return the city, or null if the snapshot has changed since the
+	 * journal was started
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized City replay() throws IOException {
+		detach();
+		requireLock();
+		// read rather than mapped, as a mapped file cannot be truncated on
+		// resume on some platforms; a first pass finds the last stamp
+		RecordInput input = new RecordInput(channel, 0);
+		if(!input.fill(8) || input.getBuffer().getInt() != MAGIC) {
+			throw new IOException("File is not a city journal.");
+		}
+		int version = input.getBuffer().getInt();
+		if(version != VERSION) {
+			throw new IOException("City journal version " + version + " is not supported.");
+		}
+		String snapshotPath = input.getString();
+		if(!input.fill(16)) throw new IOException("City journal is truncated.");
+		long snapshotLength = input.getBuffer().getLong();
+		long snapshotModified = input.getBuffer().getLong();
+		long headerLength = input.getPosition();
+		long stampEnd = -1;
+		while(input.next()) {
+			if(input.getType() == STAMP) stampEnd = input.getPosition();
+		}
+		City city;
+		if(snapshotPath == null) {
+			city = new City();
+		} else {
+			File snapshot = new File(snapshotPath);
+			if(snapshot.length() != snapshotLength || snapshot.lastModified() != snapshotModified) {
+				return null;
+			}
+			TemplateFormat format = TemplateFormat.getTemplateFormat(snapshotPath);
+			CityTemplate snapshotTemplate = (format==null?TemplateFormat.SPREADSHEET:format).createTemplate();
+			snapshotTemplate.setFilePath(snapshotPath);
+			city = snapshotTemplate.readTemplate();
+		}
+		Replay replay = new Replay(template, city);
+		boolean complete = true;
+		input = new RecordInput(channel, headerLength);
+		while(input.next()) {
+			ByteBuffer payload = input.getPayload();
+			if(input.getType() != STAMP) {
+				replay.apply(input.getType(), payload);
+			} else if(input.getPosition() == stampEnd) {
+				long[] checksums = CityStamp.getChecksums(city);
+				for(long value : checksums) {
+					complete &= payload.getLong() == value;
+				}
+			}
+		}
+		this.snapshotPath = snapshotPath;
+		this.length = input.getPosition();
+		this.complete = complete;
+		meta = replay.meta != null ? replay.meta
+				: template.getMeta(city, Collections.<CellGrid>emptyList());
+		grids = replay.grids;
+		return city;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CityChangeListener#cellsAdded(java.util.Collection)
+	 */
+	public synchronized void cellsAdded(Collection<Cell> cells) {
+		if(city == null) return;
+		try {
+			for(Cell cell : cells) {
+				if(cell.getCellRegion() != null && !cellRegionIds.contains(cell.getCellRegion().getId())) {
+					checkMeta();
+					break;
+				}
+			}
+			for(Cell cell : cells) {
+				if(cell.getCellGrid() != null && !gridMap.containsKey(cell.getCellGrid())) {
+					writeGrid(cell.getCellGrid());
+				}
+			}
+			Iterator<Cell> iterator = cells.iterator();
+			List<Cell> chunk = new ArrayList<Cell>();
+			while(iterator.hasNext()) {
+				chunk.clear();
+				while(chunk.size() < CHUNK_SIZE && iterator.hasNext()) {
+					chunk.add(iterator.next());
+				}
+				beginRecord(CELLS_ADDED);
+				// the CELLS section takes cell regions from the cell grids
+				putInt(chunk.size());
+				for(Cell cell : chunk) {
+					putInt(cell.getCellRegion() == null ? 0 : cell.getCellRegion().getId());
+				}
+				BinaryTemplate.writeCells(section, chunk, gridMap);
+				putSection();
+				endRecord();
+			}
+		} catch(IOException e) {
+			fail(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CityChangeListener#cellsRemoved(java.util.Collection)
+	 */
+	public synchronized void cellsRemoved(Collection<Cell> cells) {
+		if(city == null) return;
+		try {
+			Iterator<Cell> iterator = cells.iterator();
+			while(iterator.hasNext()) {
+				beginRecord(CELLS_REMOVED);
+				int count = record.position();
+				putInt(0);
+				int n = 0;
+				for(; n<CHUNK_SIZE && iterator.hasNext(); n++) {
+					putInt(iterator.next().getId());
+				}
+				record.putInt(count, n);
+				endRecord();
+			}
+		} catch(IOException e) {
+			fail(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CityChangeListener#systemAdded(edu.mit.citynet.core.CitySystem)
+	 */
+	public synchronized void systemAdded(CitySystem system) {
+		if(city == null) return;
+		try {
+			checkMeta();
+		} catch(IOException e) {
+			fail(e);
+			return;
+		}
+		if(!system.getNodesView().isEmpty()) nodesAdded(system, system.getNodesView());
+		if(!system.getEdgesView().isEmpty()) edgesAdded(system, system.getEdgesView());
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CityChangeListener#systemRemoved(edu.mit.citynet.core.CitySystem)
+	 */
+	public synchronized void systemRemoved(CitySystem system) {
+		if(city == null) return;
+		valueModCounts.remove(system.getNodeAttributes());
+		valueModCounts.remove(system.getEdgeAttributes());
+		try {
+			checkMeta();
+		} catch(IOException e) {
+			fail(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CityChangeListener#nodesAdded(edu.mit.citynet.core.CitySystem, java.util.Collection)
+	 */
+	public synchronized void nodesAdded(CitySystem system, Collection<Node> nodes) {
+		if(city == null) return;
+		try {
+			boolean known = systemIds.contains(system.getId());
+			for(Iterator<Node> i = nodes.iterator(); known && i.hasNext(); ) {
+				Node node = i.next();
+				known = (node.getLayer() == null || layerIds.contains(node.getLayer().getId()))
+						&& (node.getNodeType() == null || nodeTypeIds.contains(node.getNodeType().getId()));
+			}
+			if(!known) checkMeta();
+			Iterator<Node> iterator = nodes.iterator();
+			List<Node> chunk = new ArrayList<Node>();
+			while(iterator.hasNext()) {
+				chunk.clear();
+				while(chunk.size() < CHUNK_SIZE && iterator.hasNext()) {
+					chunk.add(iterator.next());
+				}
+				beginRecord(NODES_ADDED);
+				putInt(system.getId());
+				BinaryTemplate.writeNodes(section, Collections.singletonList(chunk),
+						Collections.<NodeTable>singletonList(null));
+				putSection();
+				endRecord();
+			}
+		} catch(IOException e) {
+			fail(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CityChangeListener#nodesRemoved(edu.mit.citynet.core.CitySystem, java.util.Collection)
+	 */
+	public synchronized void nodesRemoved(CitySystem system, Collection<Node> nodes) {
+		if(city == null) return;
+		try {
+			Iterator<Node> iterator = nodes.iterator();
+			while(iterator.hasNext()) {
+				beginRecord(NODES_REMOVED);
+				putInt(system.getId());
+				int count = record.position();
+				putInt(0);
+				int n = 0;
+				for(; n<CHUNK_SIZE && iterator.hasNext(); n++) {
+					putInt(iterator.next().getId());
+				}
+				record.putInt(count, n);
+				endRecord();
+			}
+		} catch(IOException e) {
+			fail(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CityChangeListener#edgesAdded(edu.mit.citynet.core.CitySystem, java.util.Collection)
+	 */
+	public synchronized void edgesAdded(CitySystem system, Collection<Edge> edges) {
+		if(city == null) return;
+		try {
+			boolean known = systemIds.contains(system.getId());
+			for(Iterator<Edge> i = edges.iterator(); known && i.hasNext(); ) {
+				Edge edge = i.next();
+				known = edge.getEdgeType() == null || edgeTypeIds.contains(edge.getEdgeType().getId());
+			}
+			if(!known) checkMeta();
+			Iterator<Edge> iterator = edges.iterator();
+			List<Edge> chunk = new ArrayList<Edge>();
+			while(iterator.hasNext()) {
+				chunk.clear();
+				while(chunk.size() < CHUNK_SIZE && iterator.hasNext()) {
+					chunk.add(iterator.next());
+				}
+				beginRecord(EDGES_ADDED);
+				putInt(system.getId());
+				BinaryTemplate.writeEdges(section, Collections.singletonList(chunk),
+						Collections.<EdgeTable>singletonList(null));
+				putSection();
+				endRecord();
+			}
+		} catch(IOException e) {
+			fail(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.core.CityChangeListener#edgesRemoved(edu.mit.citynet.core.CitySystem, java.util.Collection)
+	 */
+	public synchronized void edgesRemoved(CitySystem system, Collection<Edge> edges) {
+		if(city == null) return;
+		try {
+			Iterator<Edge> iterator = edges.iterator();
+			while(iterator.hasNext()) {
+				beginRecord(EDGES_REMOVED);
+				putInt(system.getId());
+				int count = record.position();
+				putInt(0);
+				int n = 0;
+				for(; n<CHUNK_SIZE && iterator.hasNext(); n++) {
+					putInt(iterator.next().getId());
+				}
+				record.putInt(count, n);
+				endRecord();
+			}
+		} catch(IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Journals the META section of the city if it differs from the last one.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void checkMeta() throws IOException {
+		byte[] meta = template.getMeta(city, Collections.<CellGrid>emptyList());
+		if(Arrays.equals(meta, this.meta)) return;
+		beginRecord(META);
+		ensureCapacity(meta.length);
+		record.put(meta);
+		endRecord();
+		this.meta = meta;
+		setKnownIds();
+	}
+
+	/**
+	 * Remembers the ids of the cell regions, systems, layers and types of the
+	 * city as journaled.
+	 */
+	private void setKnownIds() {
+		cellRegionIds.clear();
+		systemIds.clear();
+		layerIds.clear();
+		nodeTypeIds.clear();
+		edgeTypeIds.clear();
+		for(CellRegion cellRegion : city.getCellRegions()) {
+			cellRegionIds.add(cellRegion.getId());
+		}
+		for(CitySystem system : city.getSystems()) {
+			systemIds.add(system.getId());
+			for(Layer layer : system.getLayers()) layerIds.add(layer.getId());
+			for(NodeType nodeType : system.getNodeTypes()) nodeTypeIds.add(nodeType.getId());
+			for(EdgeType edgeType : system.getEdgeTypes()) edgeTypeIds.add(edgeType.getId());
+		}
+	}
+
+	/**
+	 * Journals the attribute values of the systems whose modification count
+	 * changed since they were last journaled.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void checkValues() throws IOException {
+		for(CitySystem system : city.getSystems()) {
+			checkValues(system, NODE_VALUES, system.getNodeAttributes());
+			checkValues(system, EDGE_VALUES, system.getEdgeAttributes());
+		}
+	}
+
+	/**
+	 * Journals the attribute values of the nodes or edges of a system if
+	 * their modification count changed, one record for each attribute. The
+	 * first record clears the previous values.
+	 *
+	 * @param system the system
+	 * @param kind the kind of values (NODE_VALUES or EDGE_VALUES)
+	 * @param attributes the attribute values
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void checkValues(CitySystem system, byte kind, InstanceAttributes attributes)
+			throws IOException {
+		int modCount = attributes.getModCount();
+		Integer previous = valueModCounts.get(attributes);
+		valueModCounts.put(attributes, modCount);
+		if(previous == null ? attributes.isEmpty() : previous == modCount) return;
+		int[] ids = attributes.getIds();
+		int[] slots = attributes.getSlots();
+		for(int i=0; i<Math.max(1, slots.length); i++) {
+			beginRecord(VALUES);
+			putInt(system.getId());
+			putByte(kind);
+			putByte((byte)(i == 0 ? 1 : 0));
+			if(i < slots.length) {
+				BinaryTemplate.writeValueBlock(section, AttributeSchema.getName(slots[i]),
+						ids, attributes.getValues(slots[i]));
+				putSection();
+			} else {
+				putString(null);
+			}
+			endRecord();
+		}
+	}
+
+	/**
+	 * Journals the checksums of the cells, nodes and edges of the city, which
+	 * a replay compares with those of the replayed city.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeStamp() throws IOException {
+		long[] checksums = CityStamp.getChecksums(city);
+		beginRecord(STAMP);
+		ensureCapacity(8*checksums.length);
+		for(long value : checksums) record.putLong(value);
+		endRecord();
+	}
+
+	/**
+	 * Journals a cell grid, which later records refer to by index.
+	 *
+	 * @param grid the cell grid
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeGrid(CellGrid grid) throws IOException {
+		gridMap.put(grid, grids.size());
+		grids.add(grid);
+		beginRecord(GRID);
+		BinaryTemplate.writeGrid(section, grid);
+		putSection();
+		endRecord();
+	}
+
+	/**
+	 * Begins a record of a type.
+	 *
+	 * @param type the type
+	 */
+	private void beginRecord(int type) {
+		record.clear();
+		record.putInt(0);
+		record.putInt(type);
+	}
+
+	/**
+	 * Ends a record with its length and checksum and appends it to the
+	 * buffer, handing the buffer off first if the record does not fit, or
+	 * hands the record off by itself if larger than the buffer.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void endRecord() throws IOException {
+		int recordLength = record.position() - 8;
+		record.putInt(0, recordLength);
+		checksum.reset();
+		checksum.update(record.array(), record.arrayOffset() + 4, recordLength + 4);
+		putInt((int)checksum.getValue());
+		record.flip();
+		if(record.remaining() > buffer.remaining()) handOff(false);
+		if(record.remaining() > buffer.remaining()) {
+			write(record, false);
+		} else {
+			buffer.put(record);
+		}
+		record.clear();
+		forced = false;
+	}
+
+	/**
+	 * Hands the buffered records off to be written to the file in the 
+	 * background.
+	 *
+	 * @param force whether to force the file to disk once written
+	 */
+	private void handOff(boolean force) {
+		buffer.flip();
+		write(buffer, force);
+		buffer.clear();
+	}
+
+	/**
+	 * Copies the remaining bytes of a buffer and hands them off to be written
+	 * to the file in the background, after the bytes handed off before.
+	 *
+	 * @param bytes the bytes
+	 * @param force whether to force the file to disk once written
+	 */
+	private void write(ByteBuffer bytes, boolean force) {
+		byte[] copy = new byte[bytes.remaining()];
+		bytes.get(copy);
+		writer.execute(new Write(channel, ByteBuffer.wrap(copy), force));
+	}
+
+	/**
+	 * Waits until the bytes handed off have been written.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void awaitWrites() throws IOException {
+		Future<?> done = writer.submit(new Runnable() {
+			public void run() { }
+		});
+		try {
+			done.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing the city journal.");
+		} catch(ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Ensures the record has room for a number of bytes, growing it if not.
+	 *
+	 * @param bytes the number of bytes
+	 */
+	private void ensureCapacity(int bytes) {
+		if(record.remaining() >= bytes) return;
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(2*record.capacity(),
+				record.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+		record.flip();
+		larger.put(record);
+		record = larger;
+	}
+
+	/**
+	 * Writes the values written to the section writer to the record.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void putSection() throws IOException {
+		section.flush();
+		byte[] bytes = sectionBytes.toByteArray();
+		sectionBytes.reset();
+		ensureCapacity(bytes.length);
+		record.put(bytes);
+	}
+
+	/**
+	 * Writes a byte to the record.
+	 *
+	 * @param value the value
+	 */
+	private void putByte(byte value) {
+		ensureCapacity(1);
+		record.put(value);
+	}
+
+	/**
+	 * Writes an int to the record.
+	 *
+	 * @param value the value
+	 */
+	private void putInt(int value) {
+		ensureCapacity(4);
+		record.putInt(value);
+	}
+
+	/**
+	 * Writes a string to the record as its length in bytes (-1 if null) and
+	 * its UTF-8 bytes.
+	 *
+	 * @param value the value
+	 */
+	private void putString(String value) {
+		byte[] bytes = value == null ? null : value.getBytes(UTF8);
+		ensureCapacity(4 + (bytes == null ? 0 : bytes.length));
+		putString(record, value);
+	}
+
+	/**
+	 * Writes a string to a buffer as its length in bytes (-1 if null) and
+	 * its UTF-8 bytes.
+	 *
+	 * @param out the buffer
+	 * @param value the value
+	 */
+	private static void putString(ByteBuffer out, String value) {
+		if(value == null) {
+			out.putInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		out.putInt(bytes.length);
+		out.put(bytes);
+	}
+
+	/**
+	 * The Write class writes bytes handed off by the journal to the file and
+	 * optionally forces the file to disk, on the background thread. Once a 
+	 * write failed, later writes are skipped and the failure is thrown by 
+	 * the next sync.
+	 */
+	private final class Write implements Runnable {
+		private final FileChannel channel;
+		private final ByteBuffer bytes;
+		private final boolean force;
+
+		/**
+		 * Instantiates a new write.
+		 *
+		 * @param channel the channel of the journal file
+		 * @param bytes the bytes
+		 * @param force whether to force the file to disk once written
+		 */
+		private Write(FileChannel channel, ByteBuffer bytes, boolean force) {
+			this.channel = channel;
+			this.bytes = bytes;
+			this.force = force;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			if(failure != null) return;
+			try {
+				while(bytes.hasRemaining()) channel.write(bytes);
+				if(force) channel.force(false);
+			} catch(IOException e) {
+				failure = e;
+			}
+		}
+	}
+
+	/**
+	 * The WriterThreadFactory class creates the daemon thread writing the 
+	 * journal, which does not keep the application from exiting.
+	 */
+	private static final class WriterThreadFactory implements ThreadFactory {
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+		 */
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "CityJournal");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * The RecordInput class reads a journal file through a buffer, one record
+	 * at a time, so that the journal is never held in memory as a whole. The
+	 * buffer only grows to hold the largest record.
+	 */
+	private static final class RecordInput {
+		private final FileChannel channel;
+		private final CRC32 checksum = new CRC32();
+		private ByteBuffer in;
+		private long readPosition;
+		private int type;
+		private ByteBuffer payload;
+
+		/**
+		 * Instantiates a new record input.
+		 *
+		 * @param channel the channel of the journal file
+		 * @param position the position from which to read
+		 */
+		private RecordInput(FileChannel channel, long position) {
+			this.channel = channel;
+			readPosition = position;
+			in = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			in.flip();
+		}
+
+		/**
+		 * Gets the buffer, holding the bytes at the position.
+		 *
+		 * @return the buffer
+		 */
+		private ByteBuffer getBuffer() {
+			return in;
+		}
+
+		/**
+		 * Gets the position in the file of the next byte to read, i.e. the
+		 * end of the last record read.
+		 *
+		 * @return the position
+		 */
+		private long getPosition() {
+			return readPosition - in.remaining();
+		}
+
+		/**
+		 * Gets the type of the last record read.
+		 *
+		 * @return the type
+		 */
+		private int getType() {
+			return type;
+		}
+
+		/**
+		 * Gets the payload of the last record read, which is only valid until
+		 * the next record is read.
+		 *
+		 * @return the payload
+		 */
+		private ByteBuffer getPayload() {
+			return payload;
+		}
+
+		/**
+		 * Fills the buffer until it holds a number of bytes, growing it if 
+		 * needed.
+		 *
+		 * @param bytes the number of bytes
+		 * @return true, if the buffer holds the bytes; false at the end of file
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private boolean fill(int bytes) throws IOException {
+			if(in.remaining() >= bytes) return true;
+			if(bytes > in.capacity()) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(bytes, 
+						2*in.capacity())).order(ByteOrder.LITTLE_ENDIAN);
+				larger.put(in);
+				larger.flip();
+				in = larger;
+			}
+			in.compact();
+			while(in.position() < bytes) {
+				int read = channel.read(in, readPosition);
+				if(read < 0) break;
+				readPosition += read;
+			}
+			in.flip();
+			return in.remaining() >= bytes;
+		}
+
+		/**
+		 * Reads a string, written as its length in bytes (-1 if null) and its
+		 * UTF-8 bytes.
+		 *
+		 * @return the string
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private String getString() throws IOException {
+			if(!fill(4) || !fill(4 + Math.max(0, in.getInt(in.position())))) {
+				throw new IOException("City journal is truncated.");
+			}
+			return BinaryTemplate.getString(in);
+		}
+
+		/**
+		 * Reads the next record if it is complete and its checksum matches.
+		 *
+		 * @return true, if a record was read
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private boolean next() throws IOException {
+			if(!fill(8)) return false;
+			int recordLength = in.getInt(in.position());
+			if(recordLength < 0 || recordLength > channel.size() - getPosition() - 12) {
+				return false;
+			}
+			if(!fill(recordLength + 12)) return false;
+			int start = in.position();
+			ByteBuffer record = in.duplicate();
+			record.position(start + 4).limit(start + 8 + recordLength);
+			checksum.reset();
+			checksum.update(record);
+			if(in.getInt(start + 8 + recordLength) != (int)checksum.getValue()) return false;
+			type = in.getInt(start + 4);
+			record.position(start + 8);
+			payload = record.slice().order(ByteOrder.LITTLE_ENDIAN);
+			in.position(start + 12 + recordLength);
+			return true;
+		}
+	}
+
+	/**
+	 * The Replay class applies journal records to a city, looking up the
+	 * objects referred to by id.
+	 */
+	private static final class Replay {
+		private BinaryTemplate template;
+		private City city;
+		private byte[] meta;
+		private List<CellGrid> grids = new ArrayList<CellGrid>();
+		private Map<Integer,CellRegion> cellRegions = new HashMap<Integer,CellRegion>();
+		private Map<Integer,CitySystem> systems = new HashMap<Integer,CitySystem>();
+		private Map<Integer,Layer> layers = new HashMap<Integer,Layer>();
+		private Map<Integer,NodeType> nodeTypes = new HashMap<Integer,NodeType>();
+		private Map<Integer,EdgeType> edgeTypes = new HashMap<Integer,EdgeType>();
+		private Map<Integer,Cell> cells;
+		private Map<Integer,Map<Integer,Node>> nodes = new HashMap<Integer,Map<Integer,Node>>();
+
+		/**
+		 * Instantiates a new replay.
+		 *
+		 * @param template the template reading META records
+		 * @param city the city
+		 */
+		private Replay(BinaryTemplate template, City city) {
+			this.template = template;
+			this.city = city;
+			index();
+		}
+
+		/**
+		 * Indexes the cell regions, systems, layers and types of the city by id.
+		 */
+		private void index() {
+			cellRegions.clear();
+			systems.clear();
+			layers.clear();
+			nodeTypes.clear();
+			edgeTypes.clear();
+			for(CellRegion cellRegion : city.getCellRegions()) {
+				cellRegions.put(cellRegion.getId(), cellRegion);
+			}
+			for(CitySystem system : city.getSystems()) {
+				systems.put(system.getId(), system);
+				for(Layer layer : system.getLayers()) layers.put(layer.getId(), layer);
+				for(NodeType nodeType : system.getNodeTypes()) nodeTypes.put(nodeType.getId(), nodeType);
+				for(EdgeType edgeType : system.getEdgeTypes()) edgeTypes.put(edgeType.getId(), edgeType);
+			}
+			nodes.keySet().retainAll(systems.keySet());
+		}
+
+		/**
+		 * Applies a record.
+		 *
+		 * @param type the type
+		 * @param in the payload
+		 */
+		private void apply(int type, ByteBuffer in) {
+			switch(type) {
+			case META: applyMeta(in); break;
+			case GRID: applyGrid(in); break;
+			case CELLS_ADDED: addCells(in); break;
+			case CELLS_REMOVED: removeCells(in); break;
+			case NODES_ADDED: addNodes(in); break;
+			case NODES_REMOVED: removeNodes(in); break;
+			case EDGES_ADDED: addEdges(in); break;
+			case EDGES_REMOVED: removeEdges(in); break;
+			case VALUES: setValues(in); break;
+			}
+		}
+
+		/**
+		 * Applies a META record to the city, updating the existing cell
+		 * regions, systems, layers and types in place by id so the cells,
+		 * nodes and edges referring to them remain valid.
+		 *
+		 * @param in the payload
+		 */
+		private void applyMeta(ByteBuffer in) {
+			meta = new byte[in.remaining()];
+			in.duplicate().get(meta);
+			City parsed = new City();
+			List<CitySystem> parsedSystems = new ArrayList<CitySystem>();
+			template.readMeta(in, parsed, new ArrayList<CellGrid>(), parsedSystems);
+			city.setName(parsed.getName());
+			city.setLatitude(parsed.getLatitude());
+			city.setLongitude(parsed.getLongitude());
+			city.setRotation(parsed.getRotation());
+			if(parsed.getImageFilePath() != null
+					&& !parsed.getImageFilePath().equals(city.getImageFilePath())) {
+				city.setImageFilePath(parsed.getImageFilePath());
+			}
+			city.setImageCoordinates(parsed.getImageCoordinates());
+
+			List<CellRegion> cellRegionList = new ArrayList<CellRegion>();
+			for(CellRegion parsedRegion : parsed.getCellRegions()) {
+				CellRegion cellRegion = cellRegions.get(parsedRegion.getId());
+				if(cellRegion == null) {
+					cellRegion = parsedRegion;
+				} else {
+					cellRegion.setNumberRows(parsedRegion.getNumberRows());
+					cellRegion.setNumberColumns(parsedRegion.getNumberColumns());
+					cellRegion.setImplicit(parsedRegion.isImplicit());
+					cellRegion.setDescription(parsedRegion.getDescription());
+					cellRegion.setCoordinateList(parsedRegion.getCoordinateList());
+				}
+				cellRegionList.add(cellRegion);
+			}
+			city.removeAllCellRegions(city.getCellRegions());
+			city.addAllCellRegions(cellRegionList);
+
+			List<CitySystem> systemList = new ArrayList<CitySystem>();
+			for(CitySystem parsedSystem : parsedSystems) {
+				CitySystem system = systems.get(parsedSystem.getId());
+				if(system == null) {
+					system = parsedSystem;
+				} else {
+					mergeSystem(system, parsedSystem);
+				}
+				systemList.add(system);
+			}
+			city.removeAllSystems(city.getSystems());
+			city.addAllSystems(systemList);
+			index();
+		}
+
+		/**
+		 * Updates a system in place from a system read from a META record.
+		 *
+		 * @param system the system
+		 * @param parsed the read system
+		 */
+		private void mergeSystem(CitySystem system, CitySystem parsed) {
+			system.setName(parsed.getName());
+			system.setType(parsed.getType());
+			system.setDescription(parsed.getDescription());
+			system.setColumnar(parsed.isColumnar());
+
+			Map<Integer,Layer> layerMap = new HashMap<Integer,Layer>();
+			for(Layer parsedLayer : parsed.getLayers()) {
+				Layer layer = layers.get(parsedLayer.getId());
+				if(layer == null) {
+					layer = parsedLayer;
+				} else {
+					layer.setName(parsedLayer.getName());
+					layer.setDescription(parsedLayer.getDescription());
+					layer.setDisplayHeight(parsedLayer.getDisplayHeight());
+				}
+				layerMap.put(layer.getId(), layer);
+			}
+			system.removeAllLayers(system.getLayers());
+			for(Layer parsedLayer : parsed.getLayers()) {
+				system.addLayer(layerMap.get(parsedLayer.getId()));
+			}
+
+			Map<Integer,NodeType> nodeTypeMap = new HashMap<Integer,NodeType>();
+			for(NodeType parsedType : parsed.getNodeTypes()) {
+				NodeType nodeType = nodeTypes.get(parsedType.getId());
+				if(nodeType == null) {
+					nodeType = parsedType;
+				} else {
+					nodeType.setName(parsedType.getName());
+					nodeType.setDescription(parsedType.getDescription());
+					nodeType.setColor(parsedType.getColor());
+					nodeType.setAttributes(parsedType.getAttributes());
+				}
+				nodeTypeMap.put(nodeType.getId(), nodeType);
+			}
+			system.removeAllNodeTypes(system.getNodeTypes());
+			for(NodeType parsedType : parsed.getNodeTypes()) {
+				system.addNodeType(nodeTypeMap.get(parsedType.getId()));
+			}
+
+			Map<Integer,EdgeType> edgeTypeMap = new HashMap<Integer,EdgeType>();
+			for(EdgeType parsedType : parsed.getEdgeTypes()) {
+				EdgeType edgeType = edgeTypes.get(parsedType.getId());
+				if(edgeType == null) {
+					edgeType = parsedType;
+				} else {
+					edgeType.setName(parsedType.getName());
+					edgeType.setDescription(parsedType.getDescription());
+					edgeType.setColor(parsedType.getColor());
+					edgeType.setAttributes(parsedType.getAttributes());
+				}
+				edgeTypeMap.put(edgeType.getId(), edgeType);
+			}
+			system.removeAllEdgeTypes(system.getEdgeTypes());
+			for(EdgeType parsedType : parsed.getEdgeTypes()) {
+				system.addEdgeType(edgeTypeMap.get(parsedType.getId()));
+			}
+
+			List<Region> regions = new ArrayList<Region>(parsed.getRegionsView());
+			for(Region region : regions) {
+				if(region instanceof InterLayerRegion) {
+					InterLayerRegion interRegion = (InterLayerRegion)region;
+					interRegion.setOriginLayer(get(layerMap, interRegion.getOriginLayer()));
+					interRegion.setDestinationLayer(get(layerMap, interRegion.getDestinationLayer()));
+				} else if(region instanceof IntraLayerRegion) {
+					IntraLayerRegion intraRegion = (IntraLayerRegion)region;
+					intraRegion.setLayer(get(layerMap, intraRegion.getLayer()));
+					NodeType nodeType = intraRegion.getNodeType();
+					intraRegion.setNodeType(nodeType == null ? null : nodeTypeMap.get(nodeType.getId()));
+				}
+				EdgeType edgeType = region.getEdgeType();
+				region.setEdgeType(edgeType == null ? null : edgeTypeMap.get(edgeType.getId()));
+			}
+			system.removeAllRegions(system.getRegions());
+			system.addAllRegions(regions);
+		}
+
+		/**
+		 * Gets the layer of a system with the id of a read layer.
+		 *
+		 * @param layerMap the layers of the system by id
+		 * @param layer the read layer
+		 * @return the layer, or null if none
+		 */
+		private static Layer get(Map<Integer,Layer> layerMap, Layer layer) {
+			return layer == null ? null : layerMap.get(layer.getId());
+		}
+
+		/**
+		 * Applies a GRID record.
+		 *
+		 * @param in the payload
+		 */
+		private void applyGrid(ByteBuffer in) {
+			grids.add(BinaryTemplate.readGrid(in, cellRegions));
+		}
+
+		/**
+		 * Gets the cells of the city by id, indexing them on first use.
+		 *
+		 * @return the cells by id
+		 */
+		private Map<Integer,Cell> getCells() {
+			if(cells == null) {
+				cells = new HashMap<Integer,Cell>();
+				for(Cell cell : city.getCellsView()) cells.put(cell.getId(), cell);
+			}
+			return cells;
+		}
+
+		/**
+		 * Applies a CELLS_ADDED record.
+		 *
+		 * @param in the payload
+		 */
+		private void addCells(ByteBuffer in) {
+			int[] cellRegionIds = new int[in.getInt()];
+			for(int i=0; i<cellRegionIds.length; i++) cellRegionIds[i] = in.getInt();
+			CellColumns columns = new CellColumns(in.slice().order(ByteOrder.LITTLE_ENDIAN));
+			List<Cell> added = new ArrayList<Cell>(columns.size());
+			for(int i=0; i<columns.size(); i++) {
+				Cell cell = columns.createCell(i, grids);
+				cell.setCellRegion(cellRegions.get(cellRegionIds[i]));
+				added.add(cell);
+			}
+			city.addAllCells(added);
+			if(cells != null) {
+				for(Cell cell : added) cells.put(cell.getId(), cell);
+			}
+		}
+
+		/**
+		 * Applies a CELLS_REMOVED record.
+		 *
+		 * @param in the payload
+		 */
+		private void removeCells(ByteBuffer in) {
+			int n = in.getInt();
+			List<Cell> removed = new ArrayList<Cell>(n);
+			for(int i=0; i<n; i++) {
+				Cell cell = new Cell();
+				cell.setId(in.getInt());
+				removed.add(cell);
+			}
+			city.removeAllCells(removed);
+			if(cells != null) {
+				for(Cell cell : removed) cells.remove(cell.getId());
+			}
+		}
+
+		/**
+		 * Gets the nodes of a system by id, indexing them on first use.
+		 *
+		 * @param system the system
+		 * @return the nodes by id
+		 */
+		private Map<Integer,Node> getNodes(CitySystem system) {
+			Map<Integer,Node> nodeMap = nodes.get(system.getId());
+			if(nodeMap == null) {
+				nodeMap = new HashMap<Integer,Node>();
+				for(Node node : system.getNodesView()) nodeMap.put(node.getId(), node);
+				nodes.put(system.getId(), nodeMap);
+			}
+			return nodeMap;
+		}
+
+		/**
+		 * Applies a NODES_ADDED record.
+		 *
+		 * @param in the payload
+		 */
+		private void addNodes(ByteBuffer in) {
+			CitySystem system = systems.get(in.getInt());
+			NodeColumns columns = new NodeColumns(in.slice().order(ByteOrder.LITTLE_ENDIAN));
+			List<Node> added = new ArrayList<Node>(columns.size());
+			for(int i=0; i<columns.size(); i++) {
+				Node node = new Node();
+				node.setId(columns.getId(i));
+				node.setCell(getCells().get(columns.getCellId(i)));
+				node.setLayer(layers.get(columns.getLayerId(i)));
+				node.setNodeType(nodeTypes.get(columns.getNodeTypeId(i)));
+				added.add(node);
+			}
+			if(system == null) return;
+			system.addAllNodes(added);
+			Map<Integer,Node> nodeMap = nodes.get(system.getId());
+			if(nodeMap != null) {
+				for(Node node : added) nodeMap.put(node.getId(), node);
+			}
+		}
+
+		/**
+		 * Applies a NODES_REMOVED record.
+		 *
+		 * @param in the payload
+		 */
+		private void removeNodes(ByteBuffer in) {
+			CitySystem system = systems.get(in.getInt());
+			int n = in.getInt();
+			List<Node> removed = new ArrayList<Node>(n);
+			for(int i=0; i<n; i++) {
+				Node node = new Node();
+				node.setId(in.getInt());
+				removed.add(node);
+			}
+			if(system == null) return;
+			system.removeAllNodes(removed);
+			Map<Integer,Node> nodeMap = nodes.get(system.getId());
+			if(nodeMap != null) {
+				for(Node node : removed) nodeMap.remove(node.getId());
+			}
+		}
+
+		/**
+		 * Applies an EDGES_ADDED record.
+		 *
+		 * @param in the payload
+		 */
+		private void addEdges(ByteBuffer in) {
+			CitySystem system = systems.get(in.getInt());
+			if(system == null) return;
+			Map<Integer,Node> nodeMap = getNodes(system);
+			EdgeColumns columns = new EdgeColumns(in.slice().order(ByteOrder.LITTLE_ENDIAN));
+			List<Edge> added = new ArrayList<Edge>(columns.size());
+			for(int i=0; i<columns.size(); i++) {
+				Edge edge = new Edge();
+				edge.setId(columns.getId(i));
+				edge.setOrigin(nodeMap.get(columns.getOriginId(i)));
+				edge.setDestination(nodeMap.get(columns.getDestinationId(i)));
+				edge.setEdgeType(edgeTypes.get(columns.getEdgeTypeId(i)));
+				edge.setEdgeDirection(columns.getEdgeDirection(i));
+				added.add(edge);
+			}
+			system.addAllEdges(added);
+		}
+
+		/**
+		 * Applies an EDGES_REMOVED record.
+		 *
+		 * @param in the payload
+		 */
+		private void removeEdges(ByteBuffer in) {
+			CitySystem system = systems.get(in.getInt());
+			if(system == null) return;
+			int n = in.getInt();
+			List<Edge> removed = new ArrayList<Edge>(n);
+			for(int i=0; i<n; i++) {
+				Edge edge = new Edge();
+				edge.setId(in.getInt());
+				removed.add(edge);
+			}
+			system.removeAllEdges(removed);
+		}
+
+		/**
+		 * Applies a VALUES record.
+		 *
+		 * @param in the payload
+		 */
+		private void setValues(ByteBuffer in) {
+			CitySystem system = systems.get(in.getInt());
+			if(system == null) return;
+			InstanceAttributes attributes = in.get() == EDGE_VALUES ?
+					system.getEdgeAttributes() : system.getNodeAttributes();
+			if(in.get() == 1) attributes.clear();
+			BinaryTemplate.readValueBlock(in, attributes);
+		}
+	}
+}
\ No newline at end of file
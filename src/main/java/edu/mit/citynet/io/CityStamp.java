@@ -0,0 +1,329 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import edu.mit.citynet.core.Cell;
+import edu.mit.citynet.core.City;
+import edu.mit.citynet.core.CitySystem;
+import edu.mit.citynet.core.Edge;
+import edu.mit.citynet.core.EdgeDirection;
+import edu.mit.citynet.core.EdgeTable;
+import edu.mit.citynet.core.EdgeType;
+import edu.mit.citynet.core.Layer;
+import edu.mit.citynet.core.Node;
+import edu.mit.citynet.core.NodeTable;
+import edu.mit.citynet.core.NodeType;
+
+/**
+ * The CityStamp class records the modification counts of the cells, nodes, 
+ * edges and instance attribute values of a city when it is read from or 
+ * written to a template, so a later save to the same file can tell which of 
+ * these (large) sections have changed and rewrite only those. Any change to 
+ * the systems of the city (added, removed, reordered or with a new id) marks
+ * the nodes, edges and values as changed.
+ *
+ * Modification counts only change when cells, nodes or edges are added or
+ * removed, so the stamp also records a checksum of the values written for 
+ * each cell, node and edge (ids, referenced ids and cell envelopes), which 
+ * detects changes made in place such as a new polygon, cell or node type. 
+ * Checksums are computed from the columns of columnar systems, without 
+ * creating node or edge objects. They are sums of the hashes of the rows, 
+ * so they do not depend on the order of the rows, and hash the ids of the
+ * objects referred to rather than the objects, as written. A variant which
+ * any template reads back alike is journaled (see CityJournal).
+ */
+final class CityStamp {
+	private static final long PRIME = 0x100000001b3L;
+
+	private City city;
+	private CitySystem[] systems;
+	private int[] systemIds;
+	private int cellModCount;
+	private int[] nodeModCounts, edgeModCounts, valueModCounts;
+	private long cellChecksum, nodeChecksum, edgeChecksum;
+
+	/**
+	 * Instantiates a new city stamp of the current state of a city.
+	 *
+	 * @param city the city
+	 */
+	CityStamp(City city) {
+		this.city = city;
+		List<CitySystem> systems = city.getSystems();
+		this.systems = systems.toArray(new CitySystem[systems.size()]);
+		systemIds = new int[this.systems.length];
+		nodeModCounts = new int[this.systems.length];
+		edgeModCounts = new int[this.systems.length];
+		valueModCounts = new int[this.systems.length];
+		for(int i=0; i<this.systems.length; i++) {
+			systemIds[i] = this.systems[i].getId();
+			nodeModCounts[i] = this.systems[i].getNodeModCount();
+			edgeModCounts[i] = this.systems[i].getEdgeModCount();
+			valueModCounts[i] = getValueModCount(this.systems[i]);
+		}
+		cellModCount = city.getCellModCount();
+		cellChecksum = getCellChecksum(city);
+		nodeChecksum = getNodeChecksum(this.systems);
+		edgeChecksum = getEdgeChecksum(this.systems);
+	}
+
+	/**
+	 * Checks if a city is the city of this stamp.
+	 *
+	 * @param city the city
+	 * @return true, if the same city
+	 */
+	boolean isCity(City city) {
+		return this.city == city;
+	}
+
+	/**
+	 * Checks if the cells of the city have changed since the stamp.
+	 *
+	 * @return true, if changed
+	 */
+	boolean areCellsChanged() {
+		return city.getCellModCount() != cellModCount 
+				|| getCellChecksum(city) != cellChecksum;
+	}
+
+	/**
+	 * Checks if the nodes of any system have changed since the stamp.
+	 *
+	 * @return true, if changed
+	 */
+	boolean areNodesChanged() {
+		if(areSystemsChanged()) return true;
+		for(int i=0; i<systems.length; i++) {
+			if(systems[i].getNodeModCount() != nodeModCounts[i]) return true;
+		}
+		return getNodeChecksum(systems) != nodeChecksum;
+	}
+
+	/**
+	 * Checks if the edges of any system have changed since the stamp.
+	 *
+	 * @return true, if changed
+	 */
+	boolean areEdgesChanged() {
+		if(areSystemsChanged()) return true;
+		for(int i=0; i<systems.length; i++) {
+			if(systems[i].getEdgeModCount() != edgeModCounts[i]) return true;
+		}
+		return getEdgeChecksum(systems) != edgeChecksum;
+	}
+
+	/**
+	 * Checks if the node or edge attribute values of any system have changed 
+	 * since the stamp.
+	 *
+	 * @return true, if changed
+	 */
+	boolean areValuesChanged() {
+		if(areSystemsChanged()) return true;
+		for(int i=0; i<systems.length; i++) {
+			if(getValueModCount(systems[i]) != valueModCounts[i]) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the systems of the city (or their ids) have changed since the
+	 * stamp.
+	 *
+	 * @return true, if changed
+	 */
+	private boolean areSystemsChanged() {
+		List<CitySystem> systems = city.getSystems();
+		if(systems.size() != this.systems.length) return true;
+		for(int i=0; i<this.systems.length; i++) {
+			if(systems.get(i) != this.systems[i] 
+					|| this.systems[i].getId() != systemIds[i]) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the combined modification count of the node and edge attribute 
+	 * values of a system. As both counts only increase, so does the sum.
+	 *
+	 * @param system the system
+	 * @return the modification count
+	 */
+	private static int getValueModCount(CitySystem system) {
+		return system.getNodeAttributes().getModCount() 
+				+ system.getEdgeAttributes().getModCount();
+	}
+
+	/**
+	 * Gets the checksums of the cells, nodes and edges of a city which any 
+	 * template reads back alike. The cell checksum only covers the ids and 
+	 * envelopes of the cells, rounded to float precision, as the spreadsheet
+	 * template keeps neither cell grids nor exact envelopes.
+	 *
+	 * @param city the city
+	 * @return the cell, node and edge checksums
+	 */
+	static long[] getChecksums(City city) {
+		long cellChecksum = 0;
+		for(Cell cell : city.getCellsView()) {
+			long hash = mix(0, cell.getId());
+			Envelope envelope = cell.getEnvelope();
+			if(envelope != null) {
+				hash = mix(hash, Float.floatToIntBits((float)envelope.getMinX()));
+				hash = mix(hash, Float.floatToIntBits((float)envelope.getMinY()));
+				hash = mix(hash, Float.floatToIntBits((float)envelope.getMaxX()));
+				hash = mix(hash, Float.floatToIntBits((float)envelope.getMaxY()));
+			}
+			cellChecksum += hash;
+		}
+		List<CitySystem> systems = city.getSystems();
+		CitySystem[] systemArray = systems.toArray(new CitySystem[systems.size()]);
+		return new long[]{cellChecksum, getNodeChecksum(systemArray), 
+				getEdgeChecksum(systemArray)};
+	}
+
+	/**
+	 * Gets the checksum of the ids, cell regions of cell grids, rows, columns
+	 * and envelopes of the cells of a city. Implicit cells take their 
+	 * envelopes from their cell grids.
+	 *
+	 * @param city the city
+	 * @return the checksum
+	 */
+	private static long getCellChecksum(City city) {
+		long checksum = 0;
+		for(Cell cell : city.getCellsView()) {
+			long hash = mix(0, cell.getId());
+			hash = mix(hash, cell.getCellGrid() == null || cell.getCellGrid().getCellRegion() == null ? 
+					Integer.MIN_VALUE : cell.getCellGrid().getCellRegion().getId());
+			hash = mix(hash, ((long)cell.getRow() << 32) | (cell.getColumn() & 0xffffffffL));
+			Envelope envelope = cell.isImplicit() ? null : cell.getEnvelope();
+			if(envelope != null) {
+				hash = mix(hash, Double.doubleToLongBits(envelope.getMinX()));
+				hash = mix(hash, Double.doubleToLongBits(envelope.getMinY()));
+				hash = mix(hash, Double.doubleToLongBits(envelope.getMaxX()));
+				hash = mix(hash, Double.doubleToLongBits(envelope.getMaxY()));
+			}
+			checksum += hash;
+		}
+		return checksum;
+	}
+
+	/**
+	 * Gets the checksum of the ids, cells, layers and node types of the 
+	 * nodes of systems.
+	 *
+	 * @param systems the systems
+	 * @return the checksum
+	 */
+	private static long getNodeChecksum(CitySystem[] systems) {
+		long checksum = 0;
+		for(CitySystem system : systems) {
+			NodeTable table = system.getNodeTable();
+			if(table != null) {
+				for(int i=0; i<table.size(); i++) {
+					long hash = mix(system.getId(), table.getId(i));
+					hash = mix(hash, table.getCellId(i));
+					hash = mix(hash, getId(table.getLayer(i)));
+					hash = mix(hash, getId(table.getNodeType(i)));
+					checksum += hash;
+				}
+				continue;
+			}
+			for(Node node : system.getNodesView()) {
+				long hash = mix(system.getId(), node.getId());
+				hash = mix(hash, node.getCell() == null ? 
+						Integer.MIN_VALUE : node.getCell().getId());
+				hash = mix(hash, getId(node.getLayer()));
+				hash = mix(hash, getId(node.getNodeType()));
+				checksum += hash;
+			}
+		}
+		return checksum;
+	}
+
+	/**
+	 * Gets the checksum of the ids, edge types, origins, destinations and 
+	 * directions of the edges of systems.
+	 *
+	 * @param systems the systems
+	 * @return the checksum
+	 */
+	private static long getEdgeChecksum(CitySystem[] systems) {
+		long checksum = 0;
+		for(CitySystem system : systems) {
+			EdgeTable table = system.getEdgeTable();
+			if(table != null) {
+				for(int i=0; i<table.size(); i++) {
+					long hash = mix(system.getId(), table.getId(i));
+					hash = mix(hash, getId(table.getEdgeType(i)));
+					hash = mix(hash, table.getOriginId(i));
+					hash = mix(hash, table.getDestinationId(i));
+					hash = mix(hash, table.getEdgeDirection(i) == EdgeDirection.DIRECTED ? 1 : 0);
+					checksum += hash;
+				}
+				continue;
+			}
+			for(Edge edge : system.getEdgesView()) {
+				long hash = mix(system.getId(), edge.getId());
+				hash = mix(hash, getId(edge.getEdgeType()));
+				hash = mix(hash, edge.getOrigin() == null ? 
+						Integer.MIN_VALUE : edge.getOrigin().getId());
+				hash = mix(hash, edge.getDestination() == null ? 
+						Integer.MIN_VALUE : edge.getDestination().getId());
+				hash = mix(hash, edge.getEdgeDirection() == EdgeDirection.DIRECTED ? 1 : 0);
+				checksum += hash;
+			}
+		}
+		return checksum;
+	}
+
+	/**
+	 * Gets the id of a layer, or MIN_VALUE if null.
+	 *
+	 * @param layer the layer
+	 * @return the id
+	 */
+	private static int getId(Layer layer) {
+		return layer == null ? Integer.MIN_VALUE : layer.getId();
+	}
+
+	/**
+	 * Gets the id of a node type, or MIN_VALUE if null.
+	 *
+	 * @param nodeType the node type
+	 * @return the id
+	 */
+	private static int getId(NodeType nodeType) {
+		return nodeType == null ? Integer.MIN_VALUE : nodeType.getId();
+	}
+
+	/**
+	 * Gets the id of an edge type, or MIN_VALUE if null.
+	 *
+	 * @param edgeType the edge type
+	 * @return the id
+	 */
+	private static int getId(EdgeType edgeType) {
+		return edgeType == null ? Integer.MIN_VALUE : edgeType.getId();
+	}
+
+	/**
+	 * Mixes a value into a checksum.
+	 *
+	 * @param checksum the checksum
+	 * @param value the value
+	 * @return the new checksum
+	 */
+	private static long mix(long checksum, long value) {
+		return (checksum ^ value) * PRIME + 1;
+	}
+}
\ No newline at end of file
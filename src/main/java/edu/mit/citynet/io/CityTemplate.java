@@ -0,0 +1,47 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+import java.io.IOException;
+
+import edu.mit.citynet.core.City;
+
+/**
+ * The CityTemplate interface provides file input/output methods for the
+ * synthesis template in any file format (see TemplateFormat).
+ */
+public interface CityTemplate {
+
+	/**
+	 * Gets the file path.
+	 *
+	 * @return the file path
+	 */
+	public String getFilePath();
+
+	/**
+	 * Sets the file path.
+	 *
+	 * @param filePath the new file path
+	 */
+	public void setFilePath(String filePath);
+
+	/**
+	 * Reads a template and returns the City object.
+	 *
+	 * @return the city
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public City readTemplate() throws IOException;
+
+	/**
+	 * Writes a city to the template.
+	 *
+	 * @param city the city
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void writeTemplate(City city) throws IOException;
+}
\ No newline at end of file
@@ -0,0 +1,281 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.ByteOrderValues;
+import com.vividsolutions.jts.io.WKBWriter;
+
+import edu.mit.citynet.CityNet;
+import edu.mit.citynet.core.Cell;
+import edu.mit.citynet.core.City;
+import edu.mit.citynet.core.CitySystem;
+import edu.mit.citynet.core.Edge;
+import edu.mit.citynet.core.EdgeDirection;
+import edu.mit.citynet.core.Node;
+import edu.mit.citynet.util.DistanceUnit;
+
+/**
+ * The GeoExporter class writes the cells, nodes and edges of a city as
+ * geographic features for GIS tools: cells as polygons, nodes as points at
+ * the centroids of their cells and edges as lines between the centroids of
+ * the cells of their origins and destinations. Coordinates are converted
+ * from the city local frame to WGS 84 longitude and latitude (see GeoFrame).
+ * Features are written one at a time through a direct buffer, so memory use
+ * does not grow with the size of the city.
+ *
+ * A GeoJSON file holds a feature collection. The properties of each feature
+ * are its kind ("cell", "node" or "edge") and the ids of the feature and of
+ * the objects it refers to (see PROPERTIES). A WKB file starts with a magic
+ * number and version followed by one record for each feature: the kind
+ * (byte), the number of properties and their values (ints), and the length
+ * and bytes of the little-endian WKB geometry. All values are little-endian.
+ */
+public class GeoExporter {
+	public static final int MAGIC = 0x57424e43; // "CNBW"
+	public static final int VERSION = 1;
+	static final byte CELL = 0, NODE = 1, EDGE = 2;
+	static final String[] KINDS = {"cell", "node", "edge"};
+	static final String[][] PROPERTIES = {
+		{"id", "cellRegion"},
+		{"id", "system", "layer", "nodeType", "cell"},
+		{"id", "system", "edgeType", "origin", "destination", "directed"}};
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private GeoFormat format;
+	private DistanceUnit distanceUnit;
+	private transient FileChannel channel;
+	private transient ByteBuffer buffer;
+	private transient StringBuilder text;
+	private transient WKBWriter wkbWriter;
+	private transient boolean firstFeature;
+
+	/**
+	 * Instantiates a new geo exporter with the distance unit of City.Net.
+	 *
+	 * @param format the file format
+	 */
+	public GeoExporter(GeoFormat format) {
+		this(format, CityNet.getInstance().getDistanceUnit());
+	}
+
+	/**
+	 * Instantiates a new geo exporter.
+	 *
+	 * @param format the file format
+	 * @param distanceUnit the distance unit of the city local frame
+	 */
+	public GeoExporter(GeoFormat format, DistanceUnit distanceUnit) {
+		this.format = format;
+		this.distanceUnit = distanceUnit;
+	}
+
+	/**
+	 * Writes the cells, nodes and edges of a city to a file. Nodes without a
+	 * cell and edges without an origin or destination cell are not written.
+	 *
+	 * @param city the city
+	 * @param filePath the file path
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void writeFeatures(City city, String filePath) throws IOException {
+		GeoFrame frame = new GeoFrame(city, distanceUnit);
+		GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		text = new StringBuilder();
+		wkbWriter = new WKBWriter(2, ByteOrderValues.LITTLE_ENDIAN);
+		firstFeature = true;
+		RandomAccessFile file = new RandomAccessFile(filePath, "rw");
+		try {
+			channel = file.getChannel();
+			channel.truncate(0);
+			if(format == GeoFormat.WKB) {
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSION);
+			} else {
+				putText("{\"type\":\"FeatureCollection\",\"features\":[");
+			}
+			int[] cellProperties = new int[PROPERTIES[CELL].length];
+			for(Cell cell : city.getCellsView()) {
+				Polygon polygon = cell.getPolygon();
+				if(polygon == null) continue;
+				cellProperties[0] = cell.getId();
+				cellProperties[1] = cell.getCellRegion() == null ? 0 : cell.getCellRegion().getId();
+				writeFeature(CELL, cellProperties, frame.toGeographic(polygon));
+			}
+			int[] nodeProperties = new int[PROPERTIES[NODE].length];
+			int[] edgeProperties = new int[PROPERTIES[EDGE].length];
+			for(CitySystem system : city.getSystems()) {
+				for(Node node : system.getNodesView()) {
+					Coordinate c = getCentroid(node);
+					if(c == null) continue;
+					frame.toGeographic(c);
+					nodeProperties[0] = node.getId();
+					nodeProperties[1] = system.getId();
+					nodeProperties[2] = node.getLayer() == null ? 0 : node.getLayer().getId();
+					nodeProperties[3] = node.getNodeType() == null ? 0 : node.getNodeType().getId();
+					nodeProperties[4] = node.getCell().getId();
+					writeFeature(NODE, nodeProperties, gf.createPoint(c));
+				}
+				for(Edge edge : system.getEdgesView()) {
+					Coordinate c1 = getCentroid(edge.getOrigin());
+					Coordinate c2 = getCentroid(edge.getDestination());
+					if(c1 == null || c2 == null) continue;
+					frame.toGeographic(c1);
+					frame.toGeographic(c2);
+					edgeProperties[0] = edge.getId();
+					edgeProperties[1] = system.getId();
+					edgeProperties[2] = edge.getEdgeType() == null ? 0 : edge.getEdgeType().getId();
+					edgeProperties[3] = edge.getOrigin().getId();
+					edgeProperties[4] = edge.getDestination().getId();
+					edgeProperties[5] = edge.getEdgeDirection() == EdgeDirection.DIRECTED ? 1 : 0;
+					writeFeature(EDGE, edgeProperties, gf.createLineString(new Coordinate[]{c1, c2}));
+				}
+			}
+			if(format == GeoFormat.GEOJSON) putText("\n]}\n");
+			flush();
+		} finally {
+			channel = null;
+			file.close();
+		}
+	}
+
+	/**
+	 * Gets a copy of the centroid of the cell of a node.
+	 *
+	 * @param node the node
+	 * @return the centroid, or null if the node or its cell is null
+	 */
+	private static Coordinate getCentroid(Node node) {
+		if(node == null || node.getCell() == null) return null;
+		Polygon polygon = node.getCell().getPolygon();
+		if(polygon == null) return null;
+		return new Coordinate(polygon.getCentroid().getCoordinate());
+	}
+
+	/**
+	 * Writes a feature.
+	 *
+	 * @param kind the kind (CELL, NODE or EDGE)
+	 * @param properties the property values, in the order of PROPERTIES
+	 * @param geometry the geometry, in longitude and latitude
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeFeature(byte kind, int[] properties, Geometry geometry)
+			throws IOException {
+		if(format == GeoFormat.WKB) {
+			byte[] wkb = wkbWriter.write(geometry);
+			ensureRemaining(5 + 4*properties.length + 4);
+			buffer.put(kind);
+			buffer.putInt(properties.length);
+			for(int value : properties) buffer.putInt(value);
+			buffer.putInt(wkb.length);
+			for(int i=0; i<wkb.length; i+=BUFFER_SIZE) {
+				int length = Math.min(BUFFER_SIZE, wkb.length-i);
+				ensureRemaining(length);
+				buffer.put(wkb, i, length);
+			}
+			return;
+		}
+		text.setLength(0);
+		text.append(firstFeature ? "\n" : ",\n");
+		firstFeature = false;
+		text.append("{\"type\":\"Feature\",\"geometry\":");
+		appendGeometry(geometry);
+		text.append(",\"properties\":{\"kind\":\"").append(KINDS[kind]).append('"');
+		for(int i=0; i<properties.length; i++) {
+			text.append(",\"").append(PROPERTIES[kind][i]).append("\":").append(properties[i]);
+		}
+		text.append("}}");
+		putText(text);
+	}
+
+	/**
+	 * Appends a point, line string or polygon as a GeoJSON geometry.
+	 *
+	 * @param geometry the geometry
+	 */
+	private void appendGeometry(Geometry geometry) {
+		if(geometry instanceof Point) {
+			text.append("{\"type\":\"Point\",\"coordinates\":");
+			appendCoordinates(geometry.getCoordinates(), false);
+		} else if(geometry instanceof LineString) {
+			text.append("{\"type\":\"LineString\",\"coordinates\":");
+			appendCoordinates(geometry.getCoordinates(), true);
+		} else {
+			Polygon polygon = (Polygon)geometry;
+			text.append("{\"type\":\"Polygon\",\"coordinates\":[");
+			appendCoordinates(polygon.getExteriorRing().getCoordinates(), true);
+			for(int i=0; i<polygon.getNumInteriorRing(); i++) {
+				text.append(',');
+				appendCoordinates(polygon.getInteriorRingN(i).getCoordinates(), true);
+			}
+			text.append(']');
+		}
+		text.append('}');
+	}
+
+	/**
+	 * Appends coordinates as GeoJSON positions.
+	 *
+	 * @param coordinates the coordinates
+	 * @param array true to append an array of positions, false for one
+	 */
+	private void appendCoordinates(Coordinate[] coordinates, boolean array) {
+		if(array) text.append('[');
+		for(int i=0; i<coordinates.length; i++) {
+			if(i > 0) text.append(',');
+			text.append('[').append(coordinates[i].x).append(',')
+				.append(coordinates[i].y).append(']');
+		}
+		if(array) text.append(']');
+	}
+
+	/**
+	 * Writes ASCII text to the buffer.
+	 *
+	 * @param value the text
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void putText(CharSequence value) throws IOException {
+		for(int i=0; i<value.length(); i++) {
+			ensureRemaining(1);
+			buffer.put((byte)value.charAt(i));
+		}
+	}
+
+	/**
+	 * Ensures the buffer has room for a number of bytes.
+	 *
+	 * @param bytes the number of bytes
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void ensureRemaining(int bytes) throws IOException {
+		if(buffer.remaining() < bytes) flush();
+	}
+
+	/**
+	 * Writes the buffered bytes to the file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+/**
+ * The GeoFormat enumeration lists the file formats of the geographic
+ * features exchanged with GIS tools (see GeoExporter and GeoImporter),
+ * identified by file extension.
+ */
+public enum GeoFormat {
+	GEOJSON("GeoJSON", "geojson"),
+	WKB("Well-Known Binary", "wkb");
+
+	private String name, extension;
+
+	/**
+	 * Instantiates a new geo format.
+	 *
+	 * @param name the name
+	 * @param extension the file extension
+	 */
+	private GeoFormat(String name, String extension) {
+		this.name = name;
+		this.extension = extension;
+	}
+
+	/**
+	 * Gets the name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the file extension, without the leading period.
+	 *
+	 * @return the extension
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Enum#toString()
+	 */
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Gets the geo format of a file from its extension.
+	 *
+	 * @param filePath the file path
+	 * @return the geo format, or null if the extension is not known
+	 */
+	public static GeoFormat getGeoFormat(String filePath) {
+		int i = filePath.lastIndexOf('.');
+		if(i < 0 || i == filePath.length() - 1) return null;
+		String extension = filePath.substring(i+1).toLowerCase();
+		for(GeoFormat format : values()) {
+			if(format.getExtension().equals(extension)) return format;
+		}
+		return null;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.Geometry;
+
+import edu.mit.citynet.core.City;
+import edu.mit.citynet.util.DistanceUnit;
+
+/**
+ * The GeoFrame class converts coordinates between the city local frame and
+ * geographic coordinates (WGS 84 longitude and latitude, degrees). The local
+ * frame has its origin at the city latitude and longitude, is rotated
+ * counterclockwise from east by the city rotation and is measured in a
+ * distance unit. The conversion projects the local frame on the plane
+ * tangent to a spherical earth at the origin, which is accurate to within a
+ * fraction of a percent over the extent of a city.
+ */
+final class GeoFrame {
+	private static final double EARTH_RADIUS = 6371.0088; // km (mean radius)
+	private double latitude, longitude;
+	private double cos, sin;
+	private double kilometersPerUnit, degreesPerKilometerNorth, degreesPerKilometerEast;
+
+	/**
+	 * Instantiates a new geo frame.
+	 *
+	 * @param city the city
+	 * @param distanceUnit the distance unit of the local frame
+	 */
+	GeoFrame(City city, DistanceUnit distanceUnit) {
+		latitude = city.getLatitude();
+		longitude = city.getLongitude();
+		cos = Math.cos(Math.toRadians(city.getRotation()));
+		sin = Math.sin(Math.toRadians(city.getRotation()));
+		kilometersPerUnit = 1/distanceUnit.getNumberPerKilometer();
+		degreesPerKilometerNorth = Math.toDegrees(1/EARTH_RADIUS);
+		degreesPerKilometerEast = degreesPerKilometerNorth
+				/ Math.max(1e-9, Math.cos(Math.toRadians(latitude)));
+	}
+
+	/**
+	 * Converts a coordinate in place from the local frame to longitude (x)
+	 * and latitude (y).
+	 *
+	 * @param c the coordinate
+	 */
+	void toGeographic(Coordinate c) {
+		double east = (c.x*cos - c.y*sin)*kilometersPerUnit;
+		double north = (c.x*sin + c.y*cos)*kilometersPerUnit;
+		c.x = longitude + east*degreesPerKilometerEast;
+		c.y = latitude + north*degreesPerKilometerNorth;
+	}
+
+	/**
+	 * Converts a coordinate in place from longitude (x) and latitude (y) to
+	 * the local frame.
+	 *
+	 * @param c the coordinate
+	 */
+	void toLocal(Coordinate c) {
+		double east = (c.x - longitude)/degreesPerKilometerEast/kilometersPerUnit;
+		double north = (c.y - latitude)/degreesPerKilometerNorth/kilometersPerUnit;
+		c.x = east*cos + north*sin;
+		c.y = -east*sin + north*cos;
+	}
+
+	/**
+	 * Gets a copy of a geometry converted from the local frame to longitude
+	 * and latitude.
+	 *
+	 * @param geometry the geometry
+	 * @return the converted geometry
+	 */
+	Geometry toGeographic(Geometry geometry) {
+		Geometry converted = (Geometry)geometry.clone();
+		converted.apply(new CoordinateFilter() {
+			public void filter(Coordinate c) {
+				toGeographic(c);
+			}
+		});
+		converted.geometryChanged();
+		return converted;
+	}
+
+	/**
+	 * Converts a geometry in place from longitude and latitude to the local
+	 * frame.
+	 *
+	 * @param geometry the geometry
+	 */
+	void toLocal(Geometry geometry) {
+		geometry.apply(new CoordinateFilter() {
+			public void filter(Coordinate c) {
+				toLocal(c);
+			}
+		});
+		geometry.geometryChanged();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,785 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+
+import edu.mit.citynet.CityNet;
+import edu.mit.citynet.core.Cell;
+import edu.mit.citynet.core.CellRegion;
+import edu.mit.citynet.core.City;
+import edu.mit.citynet.core.CitySystem;
+import edu.mit.citynet.core.Edge;
+import edu.mit.citynet.core.EdgeDirection;
+import edu.mit.citynet.core.EdgeType;
+import edu.mit.citynet.core.Layer;
+import edu.mit.citynet.core.Node;
+import edu.mit.citynet.core.NodeType;
+import edu.mit.citynet.util.DistanceUnit;
+
+/**
+ * The GeoImporter class reads the geographic features written by the
+ * GeoExporter (or edited in a GIS tool) into a city. Polygons become cells,
+ * points become nodes in the cells containing them and lines become edges
+ * between the nodes at their end points. Coordinates are converted from
+ * longitude and latitude to the city local frame (see GeoFrame).
+ *
+ * Cells are only stored as rectangles (envelopes) by the templates and the
+ * journal, so a polygon which is not a rectangle, within the tolerance, is 
+ * replaced by the rectangle of its envelope and counted (see 
+ * getNumberConvertedCells) so that the user can be warned; a polygon with 
+ * an empty envelope is skipped.
+ *
+ * Cells are matched through spatial indices: a polygon equal to an existing
+ * cell of the city (through the city cell index) or to a cell read earlier
+ * (through a quadtree) is not added again. Nodes and edges are matched by
+ * system, layer and type ids; a node is not added if its system already has
+ * a node at the same cell and layer, and an edge is not added if its system
+ * already had an edge between the same nodes before the read. Features without a kind
+ * property take their kind from their geometry type.
+ */
+public class GeoImporter {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final double TOLERANCE = 1e-6; // km
+
+	private GeoFormat format;
+	private DistanceUnit distanceUnit;
+	private int numberCells, numberConvertedCells, numberNodes, numberEdges;
+	private transient City city;
+	private transient GeoFrame frame;
+	private transient double tolerance;
+	private transient Quadtree cellTree;
+	private transient List<Cell> cells;
+	private transient Map<Integer, Cell> cellMap;
+	private transient List<Feature> pointFeatures, lineFeatures;
+
+	/**
+	 * Instantiates a new geo importer with the distance unit of City.Net.
+	 *
+	 * @param format the file format
+	 */
+	public GeoImporter(GeoFormat format) {
+		this(format, CityNet.getInstance().getDistanceUnit());
+	}
+
+	/**
+	 * Instantiates a new geo importer.
+	 *
+	 * @param format the file format
+	 * @param distanceUnit the distance unit of the city local frame
+	 */
+	public GeoImporter(GeoFormat format, DistanceUnit distanceUnit) {
+		this.format = format;
+		this.distanceUnit = distanceUnit;
+	}
+
+	/**
+	 * Reads the features of a file into a city. Cells are read as the file
+	 * is read; nodes and edges are added after all cells are read.
+	 *
+	 * @param city the city
+	 * @param filePath the file path
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void readFeatures(City city, String filePath) throws IOException {
+		prepareFeatures(city, filePath);
+		addFeatures();
+	}
+
+	/**
+	 * Reads the features of a file without changing the city, which is only
+	 * queried to match cells, so that this may run in the background while
+	 * the city does not change. The features are then added by addFeatures.
+	 *
+	 * @param city the city
+	 * @param filePath the file path
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void prepareFeatures(City city, String filePath) throws IOException {
+		this.city = city;
+		frame = new GeoFrame(city, distanceUnit);
+		tolerance = TOLERANCE*distanceUnit.getNumberPerKilometer();
+		cellTree = new Quadtree();
+		cells = new ArrayList<Cell>();
+		cellMap = new HashMap<Integer, Cell>();
+		pointFeatures = new ArrayList<Feature>();
+		lineFeatures = new ArrayList<Feature>();
+		numberCells = numberConvertedCells = numberNodes = numberEdges = 0;
+		RandomAccessFile file = new RandomAccessFile(filePath, "r");
+		try {
+			if(format == GeoFormat.WKB) {
+				readWkb(file.getChannel());
+			} else {
+				readGeoJson(file.getChannel());
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Adds the cells read by prepareFeatures to the city, and then the nodes
+	 * and edges, on the thread changing the city.
+	 */
+	public void addFeatures() {
+		if(city == null) throw new IllegalStateException("Features were not prepared.");
+		city.addAllCells(cells);
+		numberCells = cells.size();
+		Map<Integer, Node> nodeMap = addNodes();
+		addEdges(nodeMap);
+		this.city = null;
+		cellTree = null;
+		cells = null;
+		cellMap = null;
+		pointFeatures = lineFeatures = null;
+	}
+
+	/**
+	 * Gets the number of cells added by the last read.
+	 *
+	 * @return the number of cells
+	 */
+	public int getNumberCells() {
+		return numberCells;
+	}
+
+	/**
+	 * Gets the number of cells of the last read whose polygons were not 
+	 * rectangles and were replaced by their envelopes.
+	 *
+	 * @return the number of converted cells
+	 */
+	public int getNumberConvertedCells() {
+		return numberConvertedCells;
+	}
+
+	/**
+	 * Gets the number of nodes added by the last read.
+	 *
+	 * @return the number of nodes
+	 */
+	public int getNumberNodes() {
+		return numberNodes;
+	}
+
+	/**
+	 * Gets the number of edges added by the last read.
+	 *
+	 * @return the number of edges
+	 */
+	public int getNumberEdges() {
+		return numberEdges;
+	}
+
+	/**
+	 * Reads the features of a WKB file (see GeoExporter).
+	 *
+	 * @param channel the file channel
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void readWkb(FileChannel channel) throws IOException {
+		ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		in.flip();
+		if(!fill(channel, in, 8) || in.getInt() != GeoExporter.MAGIC) {
+			throw new IOException("File is not a City.Net WKB file.");
+		}
+		if(in.getInt() != GeoExporter.VERSION) {
+			throw new IOException("File is not a supported WKB file version.");
+		}
+		WKBReader reader = new WKBReader(CityNet.getInstance().getGeometryFactory());
+		while(fill(channel, in, 5)) {
+			byte kind = in.get();
+			int numberProperties = in.getInt();
+			if(kind < 0 || kind >= GeoExporter.KINDS.length || numberProperties < 0
+					|| !fill(channel, in, 4*numberProperties + 4)) {
+				throw new IOException("File is not a complete WKB file.");
+			}
+			Map<String, Integer> properties = new HashMap<String, Integer>();
+			for(int i=0; i<numberProperties; i++) {
+				int value = in.getInt();
+				if(i < GeoExporter.PROPERTIES[kind].length) {
+					properties.put(GeoExporter.PROPERTIES[kind][i], value);
+				}
+			}
+			byte[] wkb = new byte[in.getInt()];
+			for(int i=0; i<wkb.length; i+=BUFFER_SIZE) {
+				int length = Math.min(BUFFER_SIZE, wkb.length-i);
+				if(!fill(channel, in, length)) {
+					throw new IOException("File is not a complete WKB file.");
+				}
+				in.get(wkb, i, length);
+			}
+			try {
+				readFeature(GeoExporter.KINDS[kind], properties, reader.read(wkb));
+			} catch(ParseException e) {
+				throw new IOException("File is not a valid WKB file: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Ensures a buffer holds a number of bytes, reading more from a channel
+	 * if needed.
+	 *
+	 * @param channel the channel
+	 * @param in the buffer, ready to be read
+	 * @param bytes the number of bytes
+	 * @return true, if the buffer holds the bytes; false at the end of file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static boolean fill(FileChannel channel, ByteBuffer in, int bytes)
+			throws IOException {
+		if(in.remaining() >= bytes) return true;
+		if(bytes > in.capacity()) return false;
+		in.compact();
+		while(in.position() < bytes && channel.read(in) >= 0);
+		in.flip();
+		return in.remaining() >= bytes;
+	}
+
+	/**
+	 * Reads the features of a GeoJSON file. Each feature is parsed and read
+	 * before the next one, so only one feature is held in memory at a time.
+	 *
+	 * @param channel the file channel
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void readGeoJson(FileChannel channel) throws IOException {
+		JsonReader json = new JsonReader(new BufferedReader(
+				Channels.newReader(channel, "UTF-8"), BUFFER_SIZE));
+		GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
+		json.begin('{');
+		while(json.hasNext('}')) {
+			String name = json.readName();
+			if(!name.equals("features")) {
+				json.readValue();
+				continue;
+			}
+			json.begin('[');
+			while(json.hasNext(']')) {
+				Object feature = json.readValue();
+				if(!(feature instanceof Map)) continue;
+				Map<?,?> featureMap = (Map<?,?>)feature;
+				Map<String, Integer> properties = new HashMap<String, Integer>();
+				String kind = null;
+				if(featureMap.get("properties") instanceof Map) {
+					for(Map.Entry<?,?> e : ((Map<?,?>)featureMap.get("properties")).entrySet()) {
+						if(e.getValue() instanceof Number) {
+							properties.put((String)e.getKey(), ((Number)e.getValue()).intValue());
+						} else if(e.getValue() instanceof Boolean) {
+							properties.put((String)e.getKey(), ((Boolean)e.getValue()) ? 1 : 0);
+						} else if(e.getKey().equals("kind") && e.getValue() instanceof String) {
+							kind = (String)e.getValue();
+						}
+					}
+				}
+				Geometry geometry = null;
+				if(featureMap.get("geometry") instanceof Map) {
+					geometry = createGeometry(gf, (Map<?,?>)featureMap.get("geometry"));
+				}
+				if(geometry != null) readFeature(kind, properties, geometry);
+			}
+		}
+	}
+
+	/**
+	 * Creates a geometry from a parsed GeoJSON point, line string, polygon
+	 * or multi-polygon.
+	 *
+	 * @param gf the geometry factory
+	 * @param geometry the parsed geometry
+	 * @return the geometry, or null if its type is not supported
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static Geometry createGeometry(GeometryFactory gf, Map<?,?> geometry)
+			throws IOException {
+		Object type = geometry.get("type");
+		Object coordinates = geometry.get("coordinates");
+		if(!(coordinates instanceof List)) return null;
+		List<?> list = (List<?>)coordinates;
+		if("Point".equals(type)) {
+			return gf.createPoint(createCoordinate(list));
+		} else if("LineString".equals(type)) {
+			return gf.createLineString(createCoordinates(list));
+		} else if("Polygon".equals(type)) {
+			return createPolygon(gf, list);
+		} else if("MultiPolygon".equals(type)) {
+			Polygon[] polygons = new Polygon[list.size()];
+			for(int i=0; i<polygons.length; i++) {
+				polygons[i] = createPolygon(gf, (List<?>)list.get(i));
+			}
+			return gf.createMultiPolygon(polygons);
+		}
+		return null;
+	}
+
+	/**
+	 * Creates a polygon from parsed GeoJSON rings.
+	 *
+	 * @param gf the geometry factory
+	 * @param rings the parsed rings, exterior first
+	 * @return the polygon
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static Polygon createPolygon(GeometryFactory gf, List<?> rings)
+			throws IOException {
+		if(rings.isEmpty()) throw new IOException("File is not a valid GeoJSON file.");
+		LinearRing[] holes = new LinearRing[rings.size()-1];
+		for(int i=0; i<holes.length; i++) {
+			holes[i] = gf.createLinearRing(createCoordinates((List<?>)rings.get(i+1)));
+		}
+		return gf.createPolygon(gf.createLinearRing(
+				createCoordinates((List<?>)rings.get(0))), holes);
+	}
+
+	/**
+	 * Creates coordinates from parsed GeoJSON positions.
+	 *
+	 * @param positions the parsed positions
+	 * @return the coordinates
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static Coordinate[] createCoordinates(List<?> positions) throws IOException {
+		Coordinate[] coordinates = new Coordinate[positions.size()];
+		for(int i=0; i<coordinates.length; i++) {
+			coordinates[i] = createCoordinate((List<?>)positions.get(i));
+		}
+		return coordinates;
+	}
+
+	/**
+	 * Creates a coordinate from a parsed GeoJSON position.
+	 *
+	 * @param position the parsed position
+	 * @return the coordinate
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static Coordinate createCoordinate(List<?> position) throws IOException {
+		if(position.size() < 2 || !(position.get(0) instanceof Number)
+				|| !(position.get(1) instanceof Number)) {
+			throw new IOException("File is not a valid GeoJSON file.");
+		}
+		return new Coordinate(((Number)position.get(0)).doubleValue(),
+				((Number)position.get(1)).doubleValue());
+	}
+
+	/**
+	 * Reads a feature. Cells are created at once; nodes and edges are kept
+	 * until all cells are read.
+	 *
+	 * @param kind the kind, or null to take it from the geometry type
+	 * @param properties the integer properties
+	 * @param geometry the geometry, in longitude and latitude
+	 */
+	private void readFeature(String kind, Map<String, Integer> properties, Geometry geometry) {
+		if(kind == null) {
+			if(geometry instanceof Point) kind = GeoExporter.KINDS[GeoExporter.NODE];
+			else if(geometry instanceof LineString) kind = GeoExporter.KINDS[GeoExporter.EDGE];
+			else kind = GeoExporter.KINDS[GeoExporter.CELL];
+		}
+		frame.toLocal(geometry);
+		if(kind.equals(GeoExporter.KINDS[GeoExporter.CELL])) {
+			for(int i=0; i<geometry.getNumGeometries(); i++) {
+				if(geometry.getGeometryN(i) instanceof Polygon) {
+					readCell(properties, (Polygon)geometry.getGeometryN(i));
+				}
+			}
+		} else if(kind.equals(GeoExporter.KINDS[GeoExporter.NODE])
+				&& geometry instanceof Point) {
+			pointFeatures.add(new Feature(properties, geometry.getCoordinates()));
+		} else if(kind.equals(GeoExporter.KINDS[GeoExporter.EDGE])
+				&& geometry instanceof LineString && geometry.getNumPoints() >= 2) {
+			lineFeatures.add(new Feature(properties, geometry.getCoordinates()));
+		}
+	}
+
+	/**
+	 * Reads a cell, matching it to an existing or earlier cell with the same
+	 * polygon. A polygon which is not a rectangle is replaced by its envelope.
+	 *
+	 * @param properties the integer properties
+	 * @param polygon the polygon, in the local frame
+	 */
+	private void readCell(Map<String, Integer> properties, Polygon polygon) {
+		Envelope envelope = polygon.getEnvelopeInternal();
+		if(envelope.getWidth() <= 0 || envelope.getHeight() <= 0) return;
+		// the polygon lies within its envelope, so the area between them is
+		// a sliver no wider than the tolerance if the polygon is a rectangle
+		if(envelope.getWidth()*envelope.getHeight() - polygon.getArea() 
+				> tolerance*2*(envelope.getWidth() + envelope.getHeight())) {
+			GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
+			polygon = gf.createPolygon(gf.createLinearRing(new Coordinate[]{
+					new Coordinate(envelope.getMinX(), envelope.getMinY()),
+					new Coordinate(envelope.getMaxX(), envelope.getMinY()),
+					new Coordinate(envelope.getMaxX(), envelope.getMaxY()),
+					new Coordinate(envelope.getMinX(), envelope.getMaxY()),
+					new Coordinate(envelope.getMinX(), envelope.getMinY())}), null);
+			numberConvertedCells++;
+		}
+		Cell cell = null;
+		for(Cell c : city.getCells(polygon.getEnvelopeInternal())) {
+			if(c.getPolygon().equalsExact(polygon, tolerance)) {
+				cell = c;
+				break;
+			}
+		}
+		if(cell == null) {
+			for(Object o : cellTree.query(polygon.getEnvelopeInternal())) {
+				Cell c = (Cell)o;
+				if(c.getPolygon().equalsExact(polygon, tolerance)) {
+					cell = c;
+					break;
+				}
+			}
+		}
+		if(cell == null) {
+			cell = new Cell();
+			cell.setId(CityNet.getInstance().getNextCellId());
+			cell.setPolygon(polygon);
+			Integer regionId = properties.get("cellRegion");
+			if(regionId != null) {
+				for(CellRegion region : city.getCellRegions()) {
+					if(region.getId() == regionId) cell.setCellRegion(region);
+				}
+			}
+			cellTree.insert(polygon.getEnvelopeInternal(), cell);
+			cells.add(cell);
+		}
+		if(properties.containsKey("id")) cellMap.put(properties.get("id"), cell);
+	}
+
+	/**
+	 * Gets the cell of a node feature: the cell with the feature cell id if
+	 * one was read, otherwise a cell containing its point.
+	 *
+	 * @param feature the node feature
+	 * @return the cell, or null if no cell contains the point
+	 */
+	private Cell getCell(Feature feature) {
+		Integer cellId = feature.properties.get("cell");
+		if(cellId != null && cellMap.containsKey(cellId)) return cellMap.get(cellId);
+		Point point = CityNet.getInstance().getGeometryFactory().createPoint(feature.coordinates[0]);
+		List<Cell> containing = city.getCellsContaining(point);
+		return containing.isEmpty() ? null : containing.get(0);
+	}
+
+	/**
+	 * Adds the nodes of the point features to their systems.
+	 *
+	 * @return the nodes, keyed by feature id
+	 */
+	private Map<Integer, Node> addNodes() {
+		Map<Integer, Node> nodeMap = new HashMap<Integer, Node>();
+		Map<CitySystem, List<Node>> systemNodes = new LinkedHashMap<CitySystem, List<Node>>();
+		Map<CitySystem, Map<Long, Node>> newNodes = new HashMap<CitySystem, Map<Long, Node>>();
+		for(Feature feature : pointFeatures) {
+			CitySystem system = getSystem(feature);
+			Cell cell = getCell(feature);
+			if(system == null || cell == null) continue;
+			Layer layer = null;
+			for(Layer l : system.getLayers()) {
+				if(l.getId() == feature.getProperty("layer")) layer = l;
+			}
+			if(layer == null) continue;
+			if(!systemNodes.containsKey(system)) {
+				systemNodes.put(system, new ArrayList<Node>());
+				newNodes.put(system, new HashMap<Long, Node>());
+			}
+			long key = ((long)cell.getId() << 32) | (layer.getId() & 0xffffffffL);
+			Node node = system.getNode(cell, layer);
+			if(node == null) node = newNodes.get(system).get(key);
+			if(node == null) {
+				node = new Node();
+				node.setId(CityNet.getInstance().getNextNodeId());
+				node.setCell(cell);
+				node.setLayer(layer);
+				for(NodeType type : system.getNodeTypes()) {
+					if(type.getId() == feature.getProperty("nodeType")) node.setNodeType(type);
+				}
+				newNodes.get(system).put(key, node);
+				systemNodes.get(system).add(node);
+			}
+			if(feature.properties.containsKey("id")) nodeMap.put(feature.getProperty("id"), node);
+		}
+		for(CitySystem system : systemNodes.keySet()) {
+			system.addAllNodes(systemNodes.get(system));
+			numberNodes += systemNodes.get(system).size();
+		}
+		return nodeMap;
+	}
+
+	/**
+	 * Adds the edges of the line features to their systems. The end nodes of
+	 * an edge are the nodes with the feature origin and destination ids.
+	 * Parallel edges within the file are all added.
+	 *
+	 * @param nodeMap the nodes, keyed by feature id
+	 */
+	private void addEdges(Map<Integer, Node> nodeMap) {
+		Map<CitySystem, List<Edge>> systemEdges = new LinkedHashMap<CitySystem, List<Edge>>();
+		Map<CitySystem, Set<Long>> edgeKeys = new HashMap<CitySystem, Set<Long>>();
+		for(Feature feature : lineFeatures) {
+			CitySystem system = getSystem(feature);
+			Node origin = nodeMap.get(feature.properties.get("origin"));
+			Node destination = nodeMap.get(feature.properties.get("destination"));
+			if(system == null || origin == null || destination == null) continue;
+			if(!systemEdges.containsKey(system)) {
+				// index existing edges by end nodes
+				Set<Long> keys = new HashSet<Long>();
+				for(Edge edge : system.getEdgesView()) {
+					if(edge.getOrigin() == null || edge.getDestination() == null) continue;
+					keys.add(((long)edge.getOrigin().getId() << 32)
+							| (edge.getDestination().getId() & 0xffffffffL));
+				}
+				systemEdges.put(system, new ArrayList<Edge>());
+				edgeKeys.put(system, keys);
+			}
+			long key = ((long)origin.getId() << 32) | (destination.getId() & 0xffffffffL);
+			if(edgeKeys.get(system).contains(key)) continue;
+			Edge edge = new Edge();
+			edge.setId(CityNet.getInstance().getNextEdgeId());
+			edge.setOrigin(origin);
+			edge.setDestination(destination);
+			for(EdgeType type : system.getEdgeTypes()) {
+				if(type.getId() == feature.getProperty("edgeType")) edge.setEdgeType(type);
+			}
+			edge.setEdgeDirection(feature.getProperty("directed")==1?
+					EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
+			systemEdges.get(system).add(edge);
+		}
+		for(CitySystem system : systemEdges.keySet()) {
+			system.addAllEdges(systemEdges.get(system));
+			numberEdges += systemEdges.get(system).size();
+		}
+	}
+
+	/**
+	 * Gets the system of a node or edge feature.
+	 *
+	 * @param feature the feature
+	 * @return the system, or null if the city has no system with its id
+	 */
+	private CitySystem getSystem(Feature feature) {
+		for(CitySystem system : city.getSystems()) {
+			if(system.getId() == feature.getProperty("system")) return system;
+		}
+		return null;
+	}
+
+	/**
+	 * The Feature class holds a node or edge feature until all cells are read.
+	 */
+	private static final class Feature {
+		private final Map<String, Integer> properties;
+		private final Coordinate[] coordinates;
+
+		/**
+		 * Instantiates a new feature.
+		 *
+		 * @param properties the integer properties
+		 * @param coordinates the coordinates, in the local frame
+		 */
+		private Feature(Map<String, Integer> properties, Coordinate[] coordinates) {
+			this.properties = properties;
+			this.coordinates = coordinates;
+		}
+
+		/**
+		 * Gets an integer property.
+		 *
+		 * @param name the property name
+		 * @return the property value, or 0 if the feature does not have it
+		 */
+		private int getProperty(String name) {
+			Integer value = properties.get(name);
+			return value == null ? 0 : value;
+		}
+	}
+
+	/**
+	 * The JsonReader class is a minimal streaming JSON parser: the caller
+	 * steps through the enclosing objects and arrays and parses the values
+	 * within them (objects to maps, arrays to lists, numbers to doubles).
+	 */
+	private static final class JsonReader {
+		private final Reader in;
+		private int next;
+
+		/**
+		 * Instantiates a new JSON reader.
+		 *
+		 * @param in the reader
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private JsonReader(Reader in) throws IOException {
+			this.in = in;
+			next = in.read();
+			if(next == 0xfeff) next = in.read(); // byte order mark
+		}
+
+		/**
+		 * Gets the next character that is not white space, without reading it.
+		 *
+		 * @return the character
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private int peek() throws IOException {
+			while(next == ' ' || next == '\t' || next == '\n' || next == '\r') {
+				next = in.read();
+			}
+			if(next < 0) throw new IOException("File is not a complete GeoJSON file.");
+			return next;
+		}
+
+		/**
+		 * Reads the next character that is not white space.
+		 *
+		 * @param expected the expected character
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void begin(char expected) throws IOException {
+			if(peek() != expected) throw new IOException("File is not a valid GeoJSON file.");
+			next = in.read();
+		}
+
+		/**
+		 * Checks whether the enclosing object or array has another member,
+		 * reading the separating comma or the closing character.
+		 *
+		 * @param end the closing character
+		 * @return true, if another member follows
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private boolean hasNext(char end) throws IOException {
+			if(peek() == ',') next = in.read();
+			if(peek() == end) {
+				next = in.read();
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Reads the name of an object member and the following colon.
+		 *
+		 * @return the name
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private String readName() throws IOException {
+			String name = readString();
+			begin(':');
+			return name;
+		}
+
+		/**
+		 * Reads a value.
+		 *
+		 * @return the value
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private Object readValue() throws IOException {
+			int c = peek();
+			if(c == '{') {
+				next = in.read();
+				Map<String, Object> map = new HashMap<String, Object>();
+				while(hasNext('}')) {
+					String name = readName();
+					map.put(name, readValue());
+				}
+				return map;
+			} else if(c == '[') {
+				next = in.read();
+				List<Object> list = new ArrayList<Object>();
+				while(hasNext(']')) {
+					list.add(readValue());
+				}
+				return list;
+			} else if(c == '"') {
+				return readString();
+			}
+			StringBuilder literal = new StringBuilder();
+			while(next >= 0 && next != ',' && next != '}' && next != ']'
+					&& !Character.isWhitespace(next)) {
+				literal.append((char)next);
+				next = in.read();
+			}
+			String value = literal.toString();
+			if(value.equals("true")) return Boolean.TRUE;
+			if(value.equals("false")) return Boolean.FALSE;
+			if(value.equals("null")) return null;
+			try {
+				return Double.parseDouble(value);
+			} catch(NumberFormatException e) {
+				throw new IOException("File is not a valid GeoJSON file.");
+			}
+		}
+
+		/**
+		 * Reads a string.
+		 *
+		 * @return the string
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private String readString() throws IOException {
+			begin('"');
+			StringBuilder value = new StringBuilder();
+			while(next != '"') {
+				if(next < 0) throw new IOException("File is not a complete GeoJSON file.");
+				if(next == '\\') {
+					next = in.read();
+					switch(next) {
+					case 'n': value.append('\n'); break;
+					case 't': value.append('\t'); break;
+					case 'r': value.append('\r'); break;
+					case 'b': value.append('\b'); break;
+					case 'f': value.append('\f'); break;
+					case 'u':
+						char[] hex = new char[4];
+						for(int i=0; i<4; i++) hex[i] = (char)in.read();
+						try {
+							value.append((char)Integer.parseInt(new String(hex), 16));
+						} catch(NumberFormatException e) {
+							throw new IOException("File is not a valid GeoJSON file.");
+						}
+						break;
+					default: value.append((char)next);
+					}
+				} else {
+					value.append((char)next);
+				}
+				next = in.read();
+			}
+			next = in.read();
+			return value.toString();
+		}
+	}
+}
\ No newline at end of file
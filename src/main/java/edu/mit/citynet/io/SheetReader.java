@@ -0,0 +1,39 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+import java.io.IOException;
+
+/**
+ * The SheetReader interface reads the rows of the sheets of a template in 
+ * one pass per sheet, whether from a workbook held in memory or streamed.
+ * Different sheets may be read concurrently.
+ */
+interface SheetReader {
+
+	/**
+	 * The RowHandler interface receives the rows of a sheet in order.
+	 */
+	interface RowHandler {
+
+		/**
+		 * Handles a row.
+		 *
+		 * @param row the row
+		 */
+		void handleRow(SheetRow row);
+	}
+
+	/**
+	 * Reads the rows of a sheet.
+	 *
+	 * @param sheetName the sheet name
+	 * @param handler the row handler
+	 * @return true, if the sheet exists
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	boolean read(String sheetName, RowHandler handler) throws IOException;
+}
@@ -0,0 +1,47 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+/**
+ * The SheetRow class reads the values of a row of a template sheet, with the
+ * same conventions as blank spreadsheet cells: missing strings are empty and
+ * missing numbers are zero.
+ */
+abstract class SheetRow {
+
+	/**
+	 * Gets the row number.
+	 *
+	 * @return the row number (0-based)
+	 */
+	abstract int getRowNum();
+
+	/**
+	 * Gets the string value of a cell.
+	 *
+	 * @param column the column
+	 * @return the value, or an empty string if blank
+	 */
+	abstract String getString(int column);
+
+	/**
+	 * Gets the numeric value of a cell.
+	 *
+	 * @param column the column
+	 * @return the value, or zero if blank
+	 */
+	abstract double getNumber(int column);
+
+	/**
+	 * Gets the numeric value of a cell as an integer, e.g. an id.
+	 *
+	 * @param column the column
+	 * @return the value, or zero if blank
+	 */
+	int getInteger(int column) {
+		return (int)getNumber(column);
+	}
+}
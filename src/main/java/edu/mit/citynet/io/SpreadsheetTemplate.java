@@ -9,6 +9,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -16,11 +17,19 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateList;
@@ -47,14 +56,23 @@ import edu.mit.citynet.core.NodeRegion;
 import edu.mit.citynet.core.NodeType;
 import edu.mit.citynet.core.NodeTypeAttribute;
 import edu.mit.citynet.core.Region;
+import edu.mit.citynet.io.SheetReader.RowHandler;
 
 /**
  * The SpreadsheetTemplate provides file input/operation methods for
  * the synthesis template in spreadsheet format.
  * 
+ * Templates are read in one pass over each sheet, with sheets parsed 
+ * concurrently and linked once all are parsed. XLS (HSSF) templates are 
+ * read and written as whole workbooks. XLSX templates are read with the 
+ * streaming (SAX) API and written with a streaming (SXSSF) workbook which 
+ * keeps a window of rows in memory, so memory use does not grow with the 
+ * number of cells, nodes and edges and the row limit of XLS templates does 
+ * not apply.
+ * 
  * @author Paul Grogan, ptgrogan@mit.edu
  */
-public class SpreadsheetTemplate {
+public class SpreadsheetTemplate implements CityTemplate {
 	public static final String CITY = "city";
 	public static final int CITY_NAME = 0, CITY_LATITUDE = 1, 
 		CITY_LONGITUDE = 2, CITY_ROTATION = 3, CITY_IMAGE_PATH = 4, 
@@ -114,24 +132,56 @@ public class SpreadsheetTemplate {
 		REGION_VERTICES_X = 9, REGION_VERTICES_Y = 10, 
 		REGION_ORIGIN_LAYER_ID = 11, REGION_DESTINATION_LAYER_ID = 12, 
 		REGION_DESCRIPTION = 13;
+	private static final int ROW_ACCESS_WINDOW = 100;
 	
 	private String filePath;
+	private ForkJoinPool pool;
+	private transient CityStamp stamp;
+	private transient String stampFilePath;
+	private transient long stampFileLength;
 	private transient Map<Integer,Layer> layerMap;
 	private transient Map<Integer,NodeType> nodeTypeMap;
 	private transient Map<Integer,EdgeType> edgeTypeMap;
 	private transient Map<Integer,Cell> cellMap;
 	private transient Map<Integer,Node> nodeMap;
+	private transient Map<Integer,List<Layer>> layerGroups;
+	private transient Map<Integer,List<NodeType>> nodeTypeGroups;
+	private transient Map<Integer,List<EdgeType>> edgeTypeGroups;
+	private transient Map<Integer,List<NodeRegion>> nodeRegionGroups;
+	private transient Map<Integer,List<EdgeRegion>> edgeRegionGroups;
+	private transient Map<Integer,List<Region>> regionGroups;
+	private transient Map<Integer,List<Node>> nodeGroups;
+	private transient Map<Integer,List<Edge>> edgeGroups;
 	
 	/**
-	 * Instantiates a new spreadsheet template.
+	 * Instantiates a new spreadsheet template using the common fork-join pool.
 	 */
 	public SpreadsheetTemplate() {
+		this(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Instantiates a new spreadsheet template.
+	 *
+	 * @param pool the fork-join pool on which sheets are parsed
+	 */
+	public SpreadsheetTemplate(ForkJoinPool pool) {
+		this.pool = pool;
 		// maps store quick look-up values by id
 		layerMap = new HashMap<Integer,Layer>();
 		nodeTypeMap = new HashMap<Integer,NodeType>();
 		edgeTypeMap = new HashMap<Integer,EdgeType>();
 		cellMap = new HashMap<Integer,Cell>();
 		nodeMap = new HashMap<Integer,Node>();
+		// groups store objects by system id while linking
+		layerGroups = new HashMap<Integer,List<Layer>>();
+		nodeTypeGroups = new HashMap<Integer,List<NodeType>>();
+		edgeTypeGroups = new HashMap<Integer,List<EdgeType>>();
+		nodeRegionGroups = new HashMap<Integer,List<NodeRegion>>();
+		edgeRegionGroups = new HashMap<Integer,List<EdgeRegion>>();
+		regionGroups = new HashMap<Integer,List<Region>>();
+		nodeGroups = new HashMap<Integer,List<Node>>();
+		edgeGroups = new HashMap<Integer,List<Edge>>();
 	}
 	
 	/**
@@ -159,481 +209,596 @@ public class SpreadsheetTemplate {
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	public City readTemplate() throws IOException {
+		stamp = null;
+		if(isStreaming()) return readStreamingTemplate();
 		FileInputStream fis = new FileInputStream(filePath);
 		Workbook wb = new HSSFWorkbook(fis);
-		wb.setMissingCellPolicy(Row.CREATE_NULL_AS_BLANK);
 		fis.close();
-		return readCity(wb);
-	}
-	
-	/**
-	 * Reads the city from the spreadsheet template.
-	 *
-	 * @param wb the workbook
-	 * @return the city
-	 */
-	private City readCity(Workbook wb) {
-		City city = new City();
-		String verticesX = "[]",verticesY = "[]";
-		for(Row row : wb.getSheet(CITY)) {
-			if(row.getRowNum()==CITY_NAME)
-				city.setName(row.getCell(1).getStringCellValue());
-			if(row.getRowNum()==CITY_LATITUDE)
-				city.setLatitude(row.getCell(1).getNumericCellValue());
-			if(row.getRowNum()==CITY_LONGITUDE)
-				city.setLongitude(row.getCell(1).getNumericCellValue());
-			if(row.getRowNum()==CITY_ROTATION)
-				city.setRotation(row.getCell(1).getNumericCellValue());
-			if(row.getRowNum()==CITY_IMAGE_PATH 
-					&& !row.getCell(1).getStringCellValue().equals(""))
-				city.setImageFilePath(row.getCell(1).getStringCellValue());
-			if(row.getRowNum()==CITY_IMAGE_VERTICES_X)
-				verticesX = row.getCell(1).getStringCellValue();
-			if(row.getRowNum()==CITY_IMAGE_VERTICES_Y)
-				verticesY = row.getCell(1).getStringCellValue();
-		}
-		CoordinateList coords = CoordinateFormat.createFromMatlabSyntax(verticesX,verticesY);
-		city.setImageCoordinates(coords);
-		city.addAllCellRegions(readCellRegions(wb));
-		city.addAllCells(readCells(wb));
-		city.addAllSystems(readSystems(wb));
+		City city = readTemplate(new WorkbookSheetReader(wb));
+		setSaved(city);
 		return city;
 	}
 	
 	/**
-	 * Read the systems from the spreadsheet template.
+	 * Remembers the state of a city as read from or written to an XLS file, 
+	 * for later saves to skip the cells, nodes and edges if not changed.
 	 *
-	 * @param wb the workbook
-	 * @return the sets of systems
+	 * @param city the city
 	 */
-	private List<CitySystem> readSystems(Workbook wb) {
-		List<CitySystem> systems = new ArrayList<CitySystem>();
-		for(Row row : wb.getSheet(SYSTEMS)) {
-			if(row.getRowNum()==0) continue; // skip header row
-			CitySystem system = new CitySystem();
-			system.setId((int)row.getCell(SYSTEM_ID).getNumericCellValue());
-			system.setName(row.getCell(SYSTEM_NAME).getStringCellValue());
-			system.setType(CitySystemType.getInstance(system.getName()));
-			system.setDescription(row.getCell(SYSTEM_DESCRIPTION).getStringCellValue());
-			system.addAllLayers(readLayers(wb,system.getId()));
-			system.addAllNodeTypes(readNodeTypes(wb,system.getId()));
-			system.addAllEdgeTypes(readEdgeTypes(wb,system.getId()));
-			system.addAllNodeRegions(readNodeRegions(wb,system.getId()));
-			system.addAllEdgeRegions(readEdgeRegions(wb,system.getId()));
-			system.addAllRegions(readRegions(wb,system.getId()));
-			system.addAllNodes(readNodes(wb,system.getId()));
-			system.addAllEdges(readEdges(wb,system.getId()));
-			systems.add(system);
-		}
-		return systems;
+	private void setSaved(City city) {
+		stamp = new CityStamp(city);
+		stampFilePath = filePath;
+		stampFileLength = new File(filePath).length();
 	}
 	
 	/**
-	 * Reads the cells from a spreadsheet template.
+	 * Reads an XLSX template with the streaming (SAX) reader, so no workbook
+	 * model is held in memory.
 	 *
-	 * @param wb the workbook
-	 * @return the list of cells
+	 * @return the city
+	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	private List<Cell> readCells(Workbook wb) {
-		List<Cell> cells = new ArrayList<Cell>();
-		GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
-		for(Row row : wb.getSheet(CELLS)) {
-			if(row.getRowNum()==0) continue; // skip header row
-			Cell cell = new Cell();
-			cell.setId((int)row.getCell(CELL_ID).getNumericCellValue());
-			double locX = row.getCell(CELL_LOCATION_X).getNumericCellValue();
-			double locY = row.getCell(CELL_LOCATION_Y).getNumericCellValue();
-			double dimX = row.getCell(CELL_DIMENSION_X).getNumericCellValue();
-			double dimY = row.getCell(CELL_DIMENSION_Y).getNumericCellValue();
-			Coordinate c1 = new Coordinate(locX,locY);
-			Coordinate c2 = new Coordinate(locX+dimX,locY);
-			Coordinate c3 = new Coordinate(locX+dimX,locY+dimY);
-			Coordinate c4 = new Coordinate(locX,locY+dimY);
-			cell.setPolygon(gf.createPolygon(gf.createLinearRing(
-					new Coordinate[]{c1,c2,c3,c4,c1}), null));
-			cellMap.put(cell.getId(), cell);
-			cells.add(cell);
+	private City readStreamingTemplate() throws IOException {
+		OPCPackage pkg;
+		try {
+			pkg = OPCPackage.open(filePath, PackageAccess.READ);
+		} catch(InvalidFormatException e) {
+			throw new IOException("Could not open the workbook.", e);
 		}
-		return cells;
-	}
-	
-	/**
-	 * Reads the cell regions from the spreadsheet template.
-	 *
-	 * @param wb the workbook
-	 * @return the list of cell regions
-	 */
-	private List<CellRegion> readCellRegions(Workbook wb) {
-		List<CellRegion> cellRegions = new ArrayList<CellRegion>();
-		for(Row row : wb.getSheet(CELL_REGIONS)) {
-			if(row.getRowNum()==0) continue; // skip header row
-			CellRegion cellRegion = new CellRegion();
-			cellRegion.setId((int)row.getCell(CELL_REGION_ID).getNumericCellValue());
-			cellRegion.setNumberRows((int)row.getCell(CELL_REGION_NUM_ROWS).getNumericCellValue());
-			cellRegion.setNumberColumns((int)row.getCell(CELL_REGION_NUM_COLS).getNumericCellValue());
-			cellRegion.setDescription(row.getCell(CELL_REGION_DESCRIPTION).getStringCellValue());
-			String verticesX = row.getCell(CELL_REGION_VERTICES_X).getStringCellValue();
-			String verticesY = row.getCell(CELL_REGION_VERTICES_Y).getStringCellValue();
-			cellRegion.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(verticesX,verticesY));
-			cellRegions.add(cellRegion);
+		try {
+			return readTemplate(new StreamingSheetReader(pkg));
+		} finally {
+			pkg.revert(); // closes the package without saving
 		}
-		return cellRegions;
 	}
 	
 	/**
-	 * Reads the layers for a system from a spreadsheet template.
+	 * Reads a template in two phases. The sheets are first parsed 
+	 * concurrently on the fork-join pool, one task per sheet, into row 
+	 * records which hold the objects created from the rows and the ids of 
+	 * the objects they reference. The records are then linked in sheet 
+	 * order, resolving references by id through hash maps and grouping 
+	 * objects by the id of their system (or type), and the systems are 
+	 * assembled. The time to read is bounded by the slowest sheet rather 
+	 * than the sum of all sheets and grows linearly with the number of rows.
 	 *
-	 * @param wb the workbook
-	 * @param systemId the system id from which to load layers
-	 * @return the list of layers
-	 */
-	private List<Layer> readLayers(Workbook wb, int systemId) {
-		List<Layer> layers = new ArrayList<Layer>();
-		for(Row row : wb.getSheet(LAYERS)) {
-			if(row.getRowNum()==0 || 
-					(int)row.getCell(LAYER_SYSTEM_ID).getNumericCellValue()!=systemId) 
-				continue; // skip header row and layers in other systems
-			Layer layer = new Layer();
-			layer.setId((int)row.getCell(LAYER_ID).getNumericCellValue());
-			layer.setName(row.getCell(LAYER_NAME).getStringCellValue());
-			layer.setDescription(row.getCell(LAYER_DESCRIPTION).getStringCellValue());
-			layer.setDisplayHeight(row.getCell(LAYER_DISPLAY_HEIGHT).getNumericCellValue());
-			layerMap.put(layer.getId(), layer);
-			layers.add(layer);
-		}
-		return layers;
-	}
-	
-	/**
-	 * Read the node types for a system from the spreadsheet template.
-	 *
-	 * @param wb the workbook
-	 * @param systemId the system id from which to load node types
-	 * @return the list of node types
+	 * @param sheets the sheet reader
+	 * @return the city
+	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	private List<NodeType> readNodeTypes(Workbook wb, int systemId) {
-		List<NodeType> nodeTypes = new ArrayList<NodeType>();
-		for(Row row : wb.getSheet(NODE_TYPES)) {
-			if(row.getRowNum()==0 || 
-					(int)row.getCell(NODE_TYPE_SYSTEM_ID).getNumericCellValue()!=systemId) 
-				continue; // skip header row and layers in other systems
-			NodeType nodeType = new NodeType();
-			nodeType.setId((int)row.getCell(NODE_TYPE_ID).getNumericCellValue());
-			nodeType.setName(row.getCell(NODE_TYPE_NAME).getStringCellValue());
-			nodeType.setDescription(row.getCell(NODE_TYPE_DESCRIPTION).getStringCellValue());
-			nodeType.setColor(HexColorFormat.getColorFromHexString(
-					row.getCell(NODE_TYPE_COLOR).getStringCellValue()));
-			nodeType.addAllAttributes(readNodeTypeAttributes(wb,nodeType.getId()));
-			nodeTypeMap.put(nodeType.getId(), nodeType);
-			nodeTypes.add(nodeType);
+	private City readTemplate(SheetReader sheets) throws IOException {
+		final GeometryFactory gf = CityNet.getInstance().getGeometryFactory();
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		try {
+			ForkJoinTask<City> cityTask = parseCity(sheets);
+			tasks.add(cityTask);
+			ForkJoinTask<List<RowRecord<CellRegion>>> cellRegionTask = 
+					parseSheet(sheets, CELL_REGIONS, new RowParser<CellRegion>() {
+				public void parseRow(SheetRow row, List<RowRecord<CellRegion>> records) {
+					CellRegion cellRegion = new CellRegion();
+					cellRegion.setId(row.getInteger(CELL_REGION_ID));
+					cellRegion.setNumberRows(row.getInteger(CELL_REGION_NUM_ROWS));
+					cellRegion.setNumberColumns(row.getInteger(CELL_REGION_NUM_COLS));
+					cellRegion.setDescription(row.getString(CELL_REGION_DESCRIPTION));
+					cellRegion.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(
+							row.getString(CELL_REGION_VERTICES_X), row.getString(CELL_REGION_VERTICES_Y)));
+					records.add(new RowRecord<CellRegion>(cellRegion, 0));
+				}
+			});
+			tasks.add(cellRegionTask);
+			ForkJoinTask<List<RowRecord<Cell>>> cellTask = 
+					parseSheet(sheets, CELLS, new RowParser<Cell>() {
+				public void parseRow(SheetRow row, List<RowRecord<Cell>> records) {
+					Cell cell = new Cell();
+					cell.setId(row.getInteger(CELL_ID));
+					double locX = row.getNumber(CELL_LOCATION_X);
+					double locY = row.getNumber(CELL_LOCATION_Y);
+					double dimX = row.getNumber(CELL_DIMENSION_X);
+					double dimY = row.getNumber(CELL_DIMENSION_Y);
+					Coordinate c1 = new Coordinate(locX,locY);
+					Coordinate c2 = new Coordinate(locX+dimX,locY);
+					Coordinate c3 = new Coordinate(locX+dimX,locY+dimY);
+					Coordinate c4 = new Coordinate(locX,locY+dimY);
+					cell.setPolygon(gf.createPolygon(gf.createLinearRing(
+							new Coordinate[]{c1,c2,c3,c4,c1}), null));
+					records.add(new RowRecord<Cell>(cell, 0));
+				}
+			});
+			tasks.add(cellTask);
+			ForkJoinTask<List<RowRecord<CitySystem>>> systemTask = 
+					parseSheet(sheets, SYSTEMS, new RowParser<CitySystem>() {
+				public void parseRow(SheetRow row, List<RowRecord<CitySystem>> records) {
+					CitySystem system = new CitySystem();
+					system.setId(row.getInteger(SYSTEM_ID));
+					system.setName(row.getString(SYSTEM_NAME));
+					system.setType(CitySystemType.getInstance(system.getName()));
+					system.setDescription(row.getString(SYSTEM_DESCRIPTION));
+					records.add(new RowRecord<CitySystem>(system, 0));
+				}
+			});
+			tasks.add(systemTask);
+			ForkJoinTask<List<RowRecord<Layer>>> layerTask = 
+					parseSheet(sheets, LAYERS, new RowParser<Layer>() {
+				public void parseRow(SheetRow row, List<RowRecord<Layer>> records) {
+					Layer layer = new Layer();
+					layer.setId(row.getInteger(LAYER_ID));
+					layer.setName(row.getString(LAYER_NAME));
+					layer.setDescription(row.getString(LAYER_DESCRIPTION));
+					layer.setDisplayHeight(row.getNumber(LAYER_DISPLAY_HEIGHT));
+					records.add(new RowRecord<Layer>(layer, row.getInteger(LAYER_SYSTEM_ID)));
+				}
+			});
+			tasks.add(layerTask);
+			ForkJoinTask<List<RowRecord<NodeType>>> nodeTypeTask = 
+					parseSheet(sheets, NODE_TYPES, new RowParser<NodeType>() {
+				public void parseRow(SheetRow row, List<RowRecord<NodeType>> records) {
+					NodeType nodeType = new NodeType();
+					nodeType.setId(row.getInteger(NODE_TYPE_ID));
+					nodeType.setName(row.getString(NODE_TYPE_NAME));
+					nodeType.setDescription(row.getString(NODE_TYPE_DESCRIPTION));
+					nodeType.setColor(HexColorFormat.getColorFromHexString(
+							row.getString(NODE_TYPE_COLOR)));
+					records.add(new RowRecord<NodeType>(nodeType, row.getInteger(NODE_TYPE_SYSTEM_ID)));
+				}
+			});
+			tasks.add(nodeTypeTask);
+			ForkJoinTask<List<RowRecord<NodeTypeAttribute>>> nodeTypeAttributeTask = 
+					parseSheet(sheets, NODE_TYPE_ATTRIBUTES, new RowParser<NodeTypeAttribute>() {
+				public void parseRow(SheetRow row, List<RowRecord<NodeTypeAttribute>> records) {
+					NodeTypeAttribute attribute = new NodeTypeAttribute();
+					attribute.setId(row.getInteger(NODE_TYPE_ATTRIBUTE_ID));
+					attribute.setName(row.getString(NODE_TYPE_ATTRIBUTE_NAME));
+					attribute.setDescription(row.getString(NODE_TYPE_ATTRIBUTE_DESCRIPTION));
+					attribute.setUnits(row.getString(NODE_TYPE_ATTRIBUTE_UNITS));
+					attribute.setBounds(row.getString(NODE_TYPE_ATTRIBUTE_BOUNDS));
+					attribute.setValue(row.getNumber(NODE_TYPE_ATTRIBUTE_VALUE));
+					records.add(new RowRecord<NodeTypeAttribute>(attribute, 
+							row.getInteger(NODE_TYPE_ATTRIBUTE_TYPE_ID)));
+				}
+			});
+			tasks.add(nodeTypeAttributeTask);
+			ForkJoinTask<List<RowRecord<EdgeType>>> edgeTypeTask = 
+					parseSheet(sheets, EDGE_TYPES, new RowParser<EdgeType>() {
+				public void parseRow(SheetRow row, List<RowRecord<EdgeType>> records) {
+					EdgeType edgeType = new EdgeType();
+					edgeType.setId(row.getInteger(EDGE_TYPE_ID));
+					edgeType.setName(row.getString(EDGE_TYPE_NAME));
+					edgeType.setDescription(row.getString(EDGE_TYPE_DESCRIPTION));
+					edgeType.setColor(HexColorFormat.getColorFromHexString(
+							row.getString(EDGE_TYPE_COLOR)));
+					records.add(new RowRecord<EdgeType>(edgeType, row.getInteger(EDGE_TYPE_SYSTEM_ID)));
+				}
+			});
+			tasks.add(edgeTypeTask);
+			ForkJoinTask<List<RowRecord<EdgeTypeAttribute>>> edgeTypeAttributeTask = 
+					parseSheet(sheets, EDGE_TYPE_ATTRIBUTES, new RowParser<EdgeTypeAttribute>() {
+				public void parseRow(SheetRow row, List<RowRecord<EdgeTypeAttribute>> records) {
+					EdgeTypeAttribute attribute = new EdgeTypeAttribute();
+					attribute.setId(row.getInteger(EDGE_TYPE_ATTRIBUTE_ID));
+					attribute.setName(row.getString(EDGE_TYPE_ATTRIBUTE_NAME));
+					attribute.setDescription(row.getString(EDGE_TYPE_ATTRIBUTE_DESCRIPTION));
+					attribute.setUnits(row.getString(EDGE_TYPE_ATTRIBUTE_UNITS));
+					attribute.setBounds(row.getString(EDGE_TYPE_ATTRIBUTE_BOUNDS));
+					attribute.setValue(row.getNumber(EDGE_TYPE_ATTRIBUTE_VALUE));
+					records.add(new RowRecord<EdgeTypeAttribute>(attribute, 
+							row.getInteger(EDGE_TYPE_ATTRIBUTE_TYPE_ID)));
+				}
+			});
+			tasks.add(edgeTypeAttributeTask);
+			ForkJoinTask<List<RowRecord<NodeRegion>>> nodeRegionTask = 
+					parseSheet(sheets, NODE_REGIONS, new RowParser<NodeRegion>() {
+				public void parseRow(SheetRow row, List<RowRecord<NodeRegion>> records) {
+					NodeRegion nodeRegion = new NodeRegion();
+					nodeRegion.setId(row.getInteger(NODE_REGION_ID));
+					nodeRegion.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(
+							row.getString(NODE_REGION_VERTICES_X), row.getString(NODE_REGION_VERTICES_Y)));
+					nodeRegion.setNodeRegionType(NodeRegion.NodeRegionType.getNodeRegionType(
+							row.getString(NODE_REGION_TYPE)));
+					nodeRegion.setDescription(row.getString(NODE_REGION_DESCRIPTION));
+					records.add(new RowRecord<NodeRegion>(nodeRegion, 
+							row.getInteger(NODE_REGION_SYSTEM_ID), 
+							row.getInteger(NODE_REGION_LAYER_ID), 
+							row.getInteger(NODE_REGION_NODE_TYPE_ID)));
+				}
+			});
+			tasks.add(nodeRegionTask);
+			ForkJoinTask<List<RowRecord<EdgeRegion>>> edgeRegionTask = 
+					parseSheet(sheets, EDGE_REGIONS, new RowParser<EdgeRegion>() {
+				public void parseRow(SheetRow row, List<RowRecord<EdgeRegion>> records) {
+					EdgeRegion edgeRegion = new EdgeRegion();
+					edgeRegion.setId(row.getInteger(EDGE_REGION_ID));
+					edgeRegion.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(
+							row.getString(EDGE_REGION_VERTICES_X), row.getString(EDGE_REGION_VERTICES_Y)));
+					edgeRegion.setEdgeRegionType(EdgeRegion.EdgeRegionType.getEdgeRegionType(
+							row.getString(EDGE_REGION_TYPE)));
+					edgeRegion.setEdgeDirection(row.getNumber(EDGE_REGION_DIRECTED)==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
+					edgeRegion.setDescription(row.getString(EDGE_REGION_DESCRIPTION));
+					// references are the edge type id followed by the layer ids
+					String layersText = row.getString(EDGE_REGION_LAYER_ID);
+					String[] layerIds = layersText.substring(1,layersText.length()-1).split(" ");
+					int[] referenceIds = new int[1+layerIds.length];
+					referenceIds[0] = row.getInteger(EDGE_REGION_EDGE_TYPE_ID);
+					for(int i = 0; i < layerIds.length; i++) {
+						referenceIds[1+i] = Integer.parseInt(layerIds[i]);
+					}
+					records.add(new RowRecord<EdgeRegion>(edgeRegion, 
+							row.getInteger(EDGE_REGION_SYSTEM_ID), referenceIds));
+				}
+			});
+			tasks.add(edgeRegionTask);
+			ForkJoinTask<List<RowRecord<Region>>> regionTask = 
+					parseSheet(sheets, REGIONS, new RowParser<Region>() {
+				public void parseRow(SheetRow row, List<RowRecord<Region>> records) {
+					RowRecord<Region> record = parseRegion(row);
+					if(record != null) records.add(record);
+				}
+			});
+			tasks.add(regionTask);
+			ForkJoinTask<List<RowRecord<Node>>> nodeTask = 
+					parseSheet(sheets, NODES, new RowParser<Node>() {
+				public void parseRow(SheetRow row, List<RowRecord<Node>> records) {
+					Node node = new Node();
+					node.setId(row.getInteger(NODE_ID));
+					records.add(new RowRecord<Node>(node, row.getInteger(NODE_SYSTEM_ID), 
+							row.getInteger(NODE_CELL_ID), row.getInteger(NODE_LAYER_ID), 
+							row.getInteger(NODE_NODE_TYPE_ID)));
+				}
+			});
+			tasks.add(nodeTask);
+			ForkJoinTask<List<RowRecord<Edge>>> edgeTask = 
+					parseSheet(sheets, EDGES, new RowParser<Edge>() {
+				public void parseRow(SheetRow row, List<RowRecord<Edge>> records) {
+					Edge edge = new Edge();
+					edge.setId(row.getInteger(EDGE_ID));
+					edge.setEdgeDirection(row.getNumber(EDGE_DIRECTED)==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
+					records.add(new RowRecord<Edge>(edge, row.getInteger(EDGE_SYSTEM_ID), 
+							row.getInteger(EDGE_ORIGIN_ID), row.getInteger(EDGE_DESTINATION_ID), 
+							row.getInteger(EDGE_EDGE_TYPE_ID)));
+				}
+			});
+			tasks.add(edgeTask);
+			
+			// link phase: resolve references in the order of the sheets
+			City city = join(cityTask);
+			List<CellRegion> cellRegions = new ArrayList<CellRegion>();
+			for(RowRecord<CellRegion> record : join(cellRegionTask)) {
+				cellRegions.add(record.object);
+			}
+			city.addAllCellRegions(cellRegions);
+			List<Cell> cells = new ArrayList<Cell>();
+			for(RowRecord<Cell> record : join(cellTask)) {
+				cellMap.put(record.object.getId(), record.object);
+				cells.add(record.object);
+			}
+			city.addAllCells(cells);
+			for(RowRecord<Layer> record : join(layerTask)) {
+				layerMap.put(record.object.getId(), record.object);
+				addToGroup(layerGroups, record.ownerId, record.object);
+			}
+			for(RowRecord<NodeType> record : join(nodeTypeTask)) {
+				nodeTypeMap.put(record.object.getId(), record.object);
+				addToGroup(nodeTypeGroups, record.ownerId, record.object);
+			}
+			for(RowRecord<NodeTypeAttribute> record : join(nodeTypeAttributeTask)) {
+				NodeType nodeType = nodeTypeMap.get(record.ownerId);
+				if(nodeType != null) nodeType.addAttribute(record.object);
+			}
+			for(RowRecord<EdgeType> record : join(edgeTypeTask)) {
+				edgeTypeMap.put(record.object.getId(), record.object);
+				addToGroup(edgeTypeGroups, record.ownerId, record.object);
+			}
+			for(RowRecord<EdgeTypeAttribute> record : join(edgeTypeAttributeTask)) {
+				EdgeType edgeType = edgeTypeMap.get(record.ownerId);
+				if(edgeType != null) edgeType.addAttribute(record.object);
+			}
+			for(RowRecord<NodeRegion> record : join(nodeRegionTask)) {
+				NodeRegion nodeRegion = record.object;
+				nodeRegion.setLayer(layerMap.get(record.referenceIds[0]));
+				nodeRegion.setNodeType(nodeTypeMap.get(record.referenceIds[1]));
+				addToGroup(nodeRegionGroups, record.ownerId, nodeRegion);
+				addToGroup(regionGroups, record.ownerId, convertNodeRegion(nodeRegion));
+			}
+			for(RowRecord<EdgeRegion> record : join(edgeRegionTask)) {
+				EdgeRegion edgeRegion = record.object;
+				edgeRegion.setEdgeType(edgeTypeMap.get(record.referenceIds[0]));
+				Vector<Layer> layers = new Vector<Layer>();
+				for(int i = 1; i < record.referenceIds.length; i++) {
+					layers.add(layerMap.get(record.referenceIds[i]));
+				}
+				edgeRegion.setLayers(layers);
+				addToGroup(edgeRegionGroups, record.ownerId, edgeRegion);
+				for(Region region : convertEdgeRegion(edgeRegion)) {
+					addToGroup(regionGroups, record.ownerId, region);
+				}
+			}
+			for(RowRecord<Region> record : join(regionTask)) {
+				Region region = record.object;
+				if(region instanceof InterLayerRegion) {
+					((InterLayerRegion)region).setOriginLayer(layerMap.get(record.referenceIds[0]));
+					((InterLayerRegion)region).setDestinationLayer(layerMap.get(record.referenceIds[1]));
+				} else if(region instanceof IntraLayerRegion) {
+					((IntraLayerRegion)region).setLayer(layerMap.get(record.referenceIds[0]));
+					((IntraLayerRegion)region).setNodeType(nodeTypeMap.get(record.referenceIds[1]));
+				}
+				region.setEdgeType(edgeTypeMap.get(record.referenceIds[2]));
+				addToGroup(regionGroups, record.ownerId, region);
+			}
+			for(RowRecord<Node> record : join(nodeTask)) {
+				Node node = record.object;
+				node.setCell(cellMap.get(record.referenceIds[0]));
+				node.setLayer(layerMap.get(record.referenceIds[1]));
+				node.setNodeType(nodeTypeMap.get(record.referenceIds[2]));
+				nodeMap.put(node.getId(), node);
+				addToGroup(nodeGroups, record.ownerId, node);
+			}
+			for(RowRecord<Edge> record : join(edgeTask)) {
+				Edge edge = record.object;
+				edge.setOrigin(nodeMap.get(record.referenceIds[0]));
+				edge.setDestination(nodeMap.get(record.referenceIds[1]));
+				edge.setEdgeType(edgeTypeMap.get(record.referenceIds[2]));
+				addToGroup(edgeGroups, record.ownerId, edge);
+			}
+			List<CitySystem> systems = new ArrayList<CitySystem>();
+			for(RowRecord<CitySystem> record : join(systemTask)) {
+				CitySystem system = record.object;
+				system.addAllLayers(getGroup(layerGroups, system.getId()));
+				system.addAllNodeTypes(getGroup(nodeTypeGroups, system.getId()));
+				system.addAllEdgeTypes(getGroup(edgeTypeGroups, system.getId()));
+				system.addAllNodeRegions(getGroup(nodeRegionGroups, system.getId()));
+				system.addAllEdgeRegions(getGroup(edgeRegionGroups, system.getId()));
+				system.addAllRegions(getGroup(regionGroups, system.getId()));
+				system.addAllNodes(getGroup(nodeGroups, system.getId()));
+				system.addAllEdges(getGroup(edgeGroups, system.getId()));
+				systems.add(system);
+			}
+			city.addAllSystems(systems);
+			return city;
+		} finally {
+			// wait for all sheets so none is read after the reader is closed
+			for(ForkJoinTask<?> task : tasks) {
+				task.cancel(false);
+				task.quietlyJoin();
+			}
+			layerGroups.clear();
+			nodeTypeGroups.clear();
+			edgeTypeGroups.clear();
+			nodeRegionGroups.clear();
+			edgeRegionGroups.clear();
+			regionGroups.clear();
+			nodeGroups.clear();
+			edgeGroups.clear();
 		}
-		return nodeTypes;
 	}
 	
 	/**
-	 * Read the node type attributes for a node type from the spreadsheet 
-	 * template.
+	 * Submits a task to parse the city sheet. Unlike the other sheets, the 
+	 * city sheet has no header row; each row holds one property of the city.
 	 *
-	 * @param wb the workbook
-	 * @param nodeTypeId the node type id from which to load the attributes
-	 * @return the list of node type attributes
+	 * @param sheets the sheet reader
+	 * @return the city task
 	 */
-	private List<NodeTypeAttribute> readNodeTypeAttributes(Workbook wb, int nodeTypeId) {
-		List<NodeTypeAttribute> nodeTypeAttributes = new ArrayList<NodeTypeAttribute>();
-		for(Row row : wb.getSheet(NODE_TYPE_ATTRIBUTES)) {
-			if(row.getRowNum()==0 || 
-					(int)row.getCell(NODE_TYPE_ATTRIBUTE_TYPE_ID).getNumericCellValue()!=nodeTypeId) 
-				continue; // skip header row and layers in other systems
-			NodeTypeAttribute nodeTypeAttribute = new NodeTypeAttribute();
-			nodeTypeAttribute.setId((int)row.getCell(NODE_TYPE_ATTRIBUTE_ID).getNumericCellValue());
-			nodeTypeAttribute.setName(row.getCell(NODE_TYPE_ATTRIBUTE_NAME).getStringCellValue());
-			nodeTypeAttribute.setDescription(row.getCell(NODE_TYPE_ATTRIBUTE_DESCRIPTION).getStringCellValue());
-			nodeTypeAttribute.setUnits(row.getCell(NODE_TYPE_ATTRIBUTE_UNITS).getStringCellValue());
-			nodeTypeAttribute.setBounds(row.getCell(NODE_TYPE_ATTRIBUTE_BOUNDS).getStringCellValue());
-			nodeTypeAttribute.setValue(row.getCell(NODE_TYPE_ATTRIBUTE_VALUE).getNumericCellValue());
-			nodeTypeAttributes.add(nodeTypeAttribute);
-		}
-		return nodeTypeAttributes;
+	private ForkJoinTask<City> parseCity(final SheetReader sheets) {
+		return pool.submit(new Callable<City>() {
+			public City call() throws IOException {
+				final City city = new City();
+				final String[] vertices = new String[]{"[]","[]"};
+				sheets.read(CITY, new RowHandler() {
+					public void handleRow(SheetRow row) {
+						switch(row.getRowNum()) {
+						case CITY_NAME: city.setName(row.getString(1)); break;
+						case CITY_LATITUDE: city.setLatitude(row.getNumber(1)); break;
+						case CITY_LONGITUDE: city.setLongitude(row.getNumber(1)); break;
+						case CITY_ROTATION: city.setRotation(row.getNumber(1)); break;
+						case CITY_IMAGE_PATH: 
+							if(!row.getString(1).equals("")) city.setImageFilePath(row.getString(1));
+							break;
+						case CITY_IMAGE_VERTICES_X: vertices[0] = row.getString(1); break;
+						case CITY_IMAGE_VERTICES_Y: vertices[1] = row.getString(1); break;
+						}
+					}
+				});
+				city.setImageCoordinates(CoordinateFormat.createFromMatlabSyntax(vertices[0],vertices[1]));
+				return city;
+			}
+		});
 	}
 	
 	/**
-	 * Reads the edge types for a system from the spreadsheet template.
+	 * Submits a task to parse the rows of a sheet (after the header row) 
+	 * into row records. A missing sheet has no records.
 	 *
-	 * @param wb the workbook
-	 * @param systemId the system id from which to read the edge types
-	 * @return the list of edge types
+	 * @param sheets the sheet reader
+	 * @param sheetName the sheet name
+	 * @param parser the row parser
+	 * @return the task returning the row records in the order of the rows
 	 */
-	private List<EdgeType> readEdgeTypes(Workbook wb, int systemId) {
-		List<EdgeType> edgeTypes = new ArrayList<EdgeType>();
-		for(Row row : wb.getSheet(EDGE_TYPES)) {
-			if(row.getRowNum()==0 || 
-					(int)row.getCell(EDGE_TYPE_SYSTEM_ID).getNumericCellValue()!=systemId) 
-				continue; // skip header row and layers in other systems
-			EdgeType edgeType = new EdgeType();
-			edgeType.setId((int)row.getCell(EDGE_TYPE_ID).getNumericCellValue());
-			edgeType.setName(row.getCell(EDGE_TYPE_NAME).getStringCellValue());
-			edgeType.setDescription(row.getCell(EDGE_TYPE_DESCRIPTION).getStringCellValue());
-			edgeType.setColor(HexColorFormat.getColorFromHexString(
-					row.getCell(EDGE_TYPE_COLOR).getStringCellValue()));
-			edgeType.addAllAttributes(readEdgeTypeAttributes(wb,edgeType.getId()));
-			edgeTypeMap.put(edgeType.getId(), edgeType);
-			edgeTypes.add(edgeType);
-		}
-		return edgeTypes;
+	private <T> ForkJoinTask<List<RowRecord<T>>> parseSheet(final SheetReader sheets, 
+			final String sheetName, final RowParser<T> parser) {
+		return pool.submit(new Callable<List<RowRecord<T>>>() {
+			public List<RowRecord<T>> call() throws IOException {
+				final List<RowRecord<T>> records = new ArrayList<RowRecord<T>>();
+				sheets.read(sheetName, new RowHandler() {
+					public void handleRow(SheetRow row) {
+						if(row.getRowNum()==0) return; // skip header row
+						parser.parseRow(row, records);
+					}
+				});
+				return records;
+			}
+		});
 	}
 	
 	/**
-	 * Read the edge type attributes for a edge type from the spreadsheet 
-	 * template.
+	 * Waits for a parse task and gets its result, rethrowing its exception.
 	 *
-	 * @param wb the workbook
-	 * @param edgeTypeId the edge type id from which to load the attributes
-	 * @return the list of edge type attributes
+	 * @param task the task
+	 * @return the result
+	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	private List<EdgeTypeAttribute> readEdgeTypeAttributes(Workbook wb, int edgeTypeId) {
-		List<EdgeTypeAttribute> edgeTypeAttributes = new ArrayList<EdgeTypeAttribute>();
-		for(Row row : wb.getSheet(EDGE_TYPE_ATTRIBUTES)) {
-			if(row.getRowNum()==0 || 
-					(int)row.getCell(EDGE_TYPE_ATTRIBUTE_TYPE_ID).getNumericCellValue()!=edgeTypeId) 
-				continue; // skip header row and layers in other systems
-			EdgeTypeAttribute edgeTypeAttribute = new EdgeTypeAttribute();
-			edgeTypeAttribute.setId((int)row.getCell(EDGE_TYPE_ATTRIBUTE_ID).getNumericCellValue());
-			edgeTypeAttribute.setName(row.getCell(EDGE_TYPE_ATTRIBUTE_NAME).getStringCellValue());
-			edgeTypeAttribute.setDescription(row.getCell(EDGE_TYPE_ATTRIBUTE_DESCRIPTION).getStringCellValue());
-			edgeTypeAttribute.setUnits(row.getCell(EDGE_TYPE_ATTRIBUTE_UNITS).getStringCellValue());
-			edgeTypeAttribute.setBounds(row.getCell(EDGE_TYPE_ATTRIBUTE_BOUNDS).getStringCellValue());
-			edgeTypeAttribute.setValue(row.getCell(EDGE_TYPE_ATTRIBUTE_VALUE).getNumericCellValue());
-			edgeTypeAttributes.add(edgeTypeAttribute);
+	private static <T> T join(ForkJoinTask<T> task) throws IOException {
+		try {
+			return task.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Reading the template was interrupted.");
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new IOException("Could not read the template.", e.getCause());
 		}
-		return edgeTypeAttributes;
 	}
 	
 	/**
-	 * Read the nodes for a system from the spreadsheet template.
+	 * Parses a region from a row of the regions sheet. The references are the
+	 * layer (or origin layer), node type (or destination layer) and edge type 
+	 * ids.
 	 *
-	 * @param wb the workbook
-	 * @param systemId the system id from which to load nodes
-	 * @return the list of nodes
+	 * @param row the row
+	 * @return the row record, or null if the region type is not known
 	 */
-	private List<Node> readNodes(Workbook wb, int systemId) {
-		List<Node> nodes = new ArrayList<Node>();
-		for(Row row : wb.getSheet(NODES)) {
-			if(row.getRowNum()==0 || 
-					(int)row.getCell(NODE_SYSTEM_ID).getNumericCellValue()!=systemId) 
-				continue; // skip header row and layers in other systems
-			Node node = new Node();
-			node.setId((int)row.getCell(NODE_ID).getNumericCellValue());
-			node.setCell(cellMap.get((int)row.getCell(NODE_CELL_ID).getNumericCellValue()));
-			node.setLayer(layerMap.get((int)row.getCell(NODE_LAYER_ID).getNumericCellValue()));
-			node.setNodeType(nodeTypeMap.get((int)row.getCell(NODE_NODE_TYPE_ID).getNumericCellValue()));
-			nodes.add(node);
-			nodeMap.put(node.getId(), node);
+	private static RowRecord<Region> parseRegion(SheetRow row) {
+		String regionType = row.getString(REGION_TYPE).toLowerCase();
+		String verticesX = row.getString(REGION_VERTICES_X);
+		String verticesY = row.getString(REGION_VERTICES_Y);
+		Region region;
+		int[] referenceIds;
+		if(regionType.contains("inter")) {
+			region = new InterLayerRegion();
+			referenceIds = new int[]{row.getInteger(REGION_ORIGIN_LAYER_ID), 
+					row.getInteger(REGION_DESTINATION_LAYER_ID), 
+					row.getInteger(REGION_EDGE_TYPE_ID)};
+		} else if(regionType.contains("intra")) {
+			IntraLayerRegion intraRegion = new IntraLayerRegion();
+			intraRegion.setNodeGenerationType(NodeGenerationType.getNodeGenerationType(
+					row.getString(REGION_NODE_GENERATION_TYPE)));
+			intraRegion.setEdgeGenerationType(EdgeGenerationType.getEdgeGenerationType(
+					row.getString(REGION_EDGE_GENERATION_TYPE)));
+			region = intraRegion;
+			referenceIds = new int[]{row.getInteger(REGION_LAYER_ID), 
+					row.getInteger(REGION_NODE_TYPE_ID), 
+					row.getInteger(REGION_EDGE_TYPE_ID)};
+		} else {
+			return null;
 		}
-		return nodes;
+		region.setId(row.getInteger(REGION_ID));
+		region.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(verticesX, verticesY));
+		region.setEdgeDirection(row.getNumber(REGION_EDGE_DIRECTION)==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
+		region.setDescription(row.getString(REGION_DESCRIPTION));
+		return new RowRecord<Region>(region, row.getInteger(REGION_SYSTEM_ID), referenceIds);
 	}
 	
 	/**
-	 * Read the edges for a system from the spreadsheet template.
+	 * Converts a node region of the (older) node regions sheet to the 
+	 * equivalent intra-layer region with a new id.
 	 *
-	 * @param wb the workbook
-	 * @param systemId the system id from which to load edges
-	 * @return the list of edges
+	 * @param nodeRegion the node region
+	 * @return the intra-layer region
 	 */
-	private List<Edge> readEdges(Workbook wb, int systemId) {
-		List<Edge> edges = new ArrayList<Edge>();
-		for(Row row : wb.getSheet(EDGES)) {
-			if(row.getRowNum()==0 || 
-					(int)row.getCell(EDGE_SYSTEM_ID).getNumericCellValue()!=systemId) 
-				continue; // skip header row and layers in other systems
-			Edge edge = new Edge();
-			edge.setId((int)row.getCell(EDGE_ID).getNumericCellValue());
-			edge.setOrigin(nodeMap.get((int)row.getCell(EDGE_ORIGIN_ID).getNumericCellValue()));
-			edge.setDestination(nodeMap.get((int)row.getCell(EDGE_DESTINATION_ID).getNumericCellValue()));
-			edge.setEdgeType(edgeTypeMap.get((int)row.getCell(EDGE_EDGE_TYPE_ID).getNumericCellValue()));
-			edge.setEdgeDirection(row.getCell(EDGE_DIRECTED).getNumericCellValue()==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
-			edges.add(edge);
-		}
-		return edges;
+	private static IntraLayerRegion convertNodeRegion(NodeRegion nodeRegion) {
+		IntraLayerRegion region = new IntraLayerRegion();
+		region.setId(CityNet.getInstance().getNextRegionId());
+		region.setLayer(nodeRegion.getLayer());
+		region.setNodeType(nodeRegion.getNodeType());
+		region.setCoordinateList(nodeRegion.getCoordinateList());
+		region.setNodeGenerationType(NodeGenerationType.getNodeGenerationType(
+				nodeRegion.getNodeRegionType().getName()));
+		region.setEdgeGenerationType(EdgeGenerationType.NONE);
+		region.setDescription(nodeRegion.getDescription());
+		return region;
 	}
 	
 	/**
-	 * Read the node regions for a system from the spreadsheet template.
+	 * Converts an edge region of the (older) edge regions sheet to the 
+	 * equivalent intra-layer region (if all layers are the same) or 
+	 * inter-layer regions (one for each pair of layers) with new ids.
 	 *
-	 * @param wb the workbook
-	 * @param systemId the system id from which to load node regions
-	 * @return the list of node regions
+	 * @param edgeRegion the edge region
+	 * @return the regions
 	 */
-	private List<NodeRegion> readNodeRegions(Workbook wb, int systemId) {
-		List<NodeRegion> nodeRegions = new ArrayList<NodeRegion>();
-		for(Row row : wb.getSheet(NODE_REGIONS)) {
-			if(row.getRowNum()==0 || 
-					(int)row.getCell(NODE_REGION_SYSTEM_ID).getNumericCellValue()!=systemId) 
-				continue; // skip header row and layers in other systems
-			NodeRegion nodeRegion = new NodeRegion();
-			nodeRegion.setId((int)row.getCell(NODE_REGION_ID).getNumericCellValue());
-			nodeRegion.setLayer(layerMap.get((int)row.getCell(NODE_REGION_LAYER_ID).getNumericCellValue()));
-			nodeRegion.setNodeType(nodeTypeMap.get((int)row.getCell(NODE_REGION_NODE_TYPE_ID).getNumericCellValue()));
-			String verticesX = row.getCell(NODE_REGION_VERTICES_X).getStringCellValue();
-			String verticesY = row.getCell(NODE_REGION_VERTICES_Y).getStringCellValue();
-			nodeRegion.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(verticesX, verticesY));
-			nodeRegion.setNodeRegionType(NodeRegion.NodeRegionType.getNodeRegionType(row.getCell(NODE_REGION_TYPE).getStringCellValue()));
-			nodeRegion.setDescription(row.getCell(NODE_REGION_DESCRIPTION).getStringCellValue());
-			nodeRegions.add(nodeRegion);
+	private static List<Region> convertEdgeRegion(EdgeRegion edgeRegion) {
+		List<Region> regions = new ArrayList<Region>();
+		List<Layer> layers = edgeRegion.getLayers();
+		boolean intraLayer = true;
+		for(Layer l : layers) if(!layers.get(0).equals(l)) intraLayer = false;
+		if(intraLayer) {
+			IntraLayerRegion region = new IntraLayerRegion();
+			region.setId(CityNet.getInstance().getNextRegionId());
+			region.setLayer(layers.get(0));
+			region.setEdgeType(edgeRegion.getEdgeType());
+			region.setCoordinateList(edgeRegion.getCoordinateList());
+			region.setNodeGenerationType(NodeGenerationType.NONE);
+			region.setEdgeGenerationType(EdgeGenerationType.getEdgeGenerationType(
+					edgeRegion.getEdgeRegionType().getName()));
+			region.setEdgeDirection(edgeRegion.getEdgeDirection());
+			region.setDescription(edgeRegion.getDescription());
+			regions.add(region);
+		} else {
+			CoordinateList coords = edgeRegion.getCoordinateList();
+			for(int i = 0; i < layers.size()-1; i+=2) {
+				InterLayerRegion region = new InterLayerRegion();
+				region.setId(CityNet.getInstance().getNextRegionId());
+				region.setOriginLayer(layers.get(i));
+				region.setDestinationLayer(layers.get(i+1));
+				region.setEdgeType(edgeRegion.getEdgeType());
+				region.setCoordinateList(new CoordinateList(new Coordinate[]{coords.getCoordinate(i)}));
+				region.setEdgeDirection(edgeRegion.getEdgeDirection());
+				region.setDescription(edgeRegion.getDescription());
+				regions.add(region);
+			}
 		}
-		return nodeRegions;
+		return regions;
 	}
 	
 	/**
-	 * Read the edge regions for a system from the spreadsheet template.
+	 * Adds an object to the group of a key.
 	 *
-	 * @param wb the workbook
-	 * @param systemId the system id from which to load edge regions
-	 * @return the list of edge regions
+	 * @param groups the groups by key
+	 * @param key the key, e.g. a system id
+	 * @param object the object
 	 */
-	private List<EdgeRegion> readEdgeRegions(Workbook wb, int systemId) {
-		List<EdgeRegion> edgeRegions = new ArrayList<EdgeRegion>();
-		for(Row row : wb.getSheet(EDGE_REGIONS)) {
-			if(row.getRowNum()==0 || 
-					(int)row.getCell(EDGE_REGION_SYSTEM_ID).getNumericCellValue()!=systemId) 
-				continue; // skip header row and layers in other systems
-			EdgeRegion edgeRegion = new EdgeRegion();
-			edgeRegion.setId((int)row.getCell(EDGE_REGION_ID).getNumericCellValue());
-			String layersText = row.getCell(EDGE_REGION_LAYER_ID).getStringCellValue();
-			Vector<Layer> layers = new Vector<Layer>();
-			for(String s : layersText.substring(1,layersText.length()-1).split(" ")) {
-				layers.add(layerMap.get(Integer.parseInt(s)));
-			}
-			edgeRegion.setLayers(layers);
-			edgeRegion.setEdgeType(edgeTypeMap.get((int)row.getCell(EDGE_REGION_EDGE_TYPE_ID).getNumericCellValue()));
-			String verticesX = row.getCell(EDGE_REGION_VERTICES_X).getStringCellValue();
-			String verticesY = row.getCell(EDGE_REGION_VERTICES_Y).getStringCellValue();
-			edgeRegion.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(verticesX, verticesY));
-			edgeRegion.setEdgeRegionType(EdgeRegion.EdgeRegionType.getEdgeRegionType(row.getCell(EDGE_REGION_TYPE).getStringCellValue()));
-			edgeRegion.setEdgeDirection(row.getCell(EDGE_REGION_DIRECTED).getNumericCellValue()==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
-			edgeRegion.setDescription(row.getCell(EDGE_REGION_DESCRIPTION).getStringCellValue());
-			edgeRegions.add(edgeRegion);
+	private static <T> void addToGroup(Map<Integer,List<T>> groups, int key, T object) {
+		List<T> group = groups.get(key);
+		if(group == null) {
+			group = new ArrayList<T>();
+			groups.put(key, group);
 		}
-		return edgeRegions;
+		group.add(object);
 	}
 	
 	/**
-	 * Read the regions for a system from the spreadsheet template.
+	 * Gets the group of a key.
 	 *
-	 * @param wb the wb
-	 * @param systemId the system id
-	 * @return the list of regions
+	 * @param groups the groups by key
+	 * @param key the key, e.g. a system id
+	 * @return the group, or an empty list if the key has no objects
 	 */
-	private List<Region> readRegions(Workbook wb, int systemId) {
-		List<Region> regions = new ArrayList<Region>();
-		if(wb.getSheet(NODE_REGIONS)!=null) {
-			for(Row row : wb.getSheet(NODE_REGIONS)) {
-				if(row.getRowNum()==0 || 
-						(int)row.getCell(NODE_REGION_SYSTEM_ID).getNumericCellValue()!=systemId) 
-					continue; // skip header row and layers in other systems
-				IntraLayerRegion region = new IntraLayerRegion();
-				region.setId(CityNet.getInstance().getNextRegionId());
-				region.setLayer(layerMap.get((int)row.getCell(NODE_REGION_LAYER_ID).getNumericCellValue()));
-				region.setNodeType(nodeTypeMap.get((int)row.getCell(NODE_REGION_NODE_TYPE_ID).getNumericCellValue()));
-				String verticesX = row.getCell(NODE_REGION_VERTICES_X).getStringCellValue();
-				String verticesY = row.getCell(NODE_REGION_VERTICES_Y).getStringCellValue();
-				region.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(verticesX, verticesY));
-				region.setNodeGenerationType(NodeGenerationType.getNodeGenerationType(row.getCell(NODE_REGION_TYPE).getStringCellValue()));
-				region.setEdgeGenerationType(EdgeGenerationType.NONE);
-				region.setDescription(row.getCell(NODE_REGION_DESCRIPTION).getStringCellValue());
-				regions.add(region);
-			}
-		}
-		if(wb.getSheet(EDGE_REGIONS)!=null) {
-			for(Row row : wb.getSheet(EDGE_REGIONS)) {
-				if(row.getRowNum()==0 || 
-						(int)row.getCell(EDGE_REGION_SYSTEM_ID).getNumericCellValue()!=systemId) 
-					continue; // skip header row and layers in other systems
-				String layersText = row.getCell(EDGE_REGION_LAYER_ID).getStringCellValue();
-				Vector<Layer> layers = new Vector<Layer>();
-				for(String s : layersText.substring(1,layersText.length()-1).split(" ")) {
-					layers.add(layerMap.get(Integer.parseInt(s)));
-				}
-				boolean intraLayer = true;
-				for(Layer l : layers) if(!layers.get(0).equals(l)) intraLayer = false;
-				if(intraLayer) {
-					IntraLayerRegion region = new IntraLayerRegion();
-					region.setId(CityNet.getInstance().getNextRegionId());
-					region.setLayer(layers.get(0));
-					region.setEdgeType(edgeTypeMap.get((int)row.getCell(EDGE_REGION_EDGE_TYPE_ID).getNumericCellValue()));
-					String verticesX = row.getCell(EDGE_REGION_VERTICES_X).getStringCellValue();
-					String verticesY = row.getCell(EDGE_REGION_VERTICES_Y).getStringCellValue();
-					region.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(verticesX, verticesY));
-					region.setNodeGenerationType(NodeGenerationType.NONE);
-					region.setEdgeGenerationType(EdgeGenerationType.getEdgeGenerationType(row.getCell(EDGE_REGION_TYPE).getStringCellValue()));
-					region.setEdgeDirection(row.getCell(EDGE_REGION_DIRECTED).getNumericCellValue()==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
-					region.setDescription(row.getCell(EDGE_REGION_DESCRIPTION).getStringCellValue());
-					regions.add(region);
-				} else {
-					String verticesX = row.getCell(EDGE_REGION_VERTICES_X).getStringCellValue();
-					String verticesY = row.getCell(EDGE_REGION_VERTICES_Y).getStringCellValue();
-					CoordinateList coords = CoordinateFormat.createFromMatlabSyntax(verticesX, verticesY);
-					for(int i = 0; i < layers.size()-1; i+=2) {
-						InterLayerRegion region = new InterLayerRegion();
-						region.setId(CityNet.getInstance().getNextRegionId());
-						region.setOriginLayer(layers.get(i));
-						region.setDestinationLayer(layers.get(i+1));
-						region.setEdgeType(edgeTypeMap.get((int)row.getCell(EDGE_REGION_EDGE_TYPE_ID).getNumericCellValue()));
-						region.setCoordinateList(new CoordinateList(new Coordinate[]{coords.getCoordinate(i)}));
-						region.setEdgeDirection(row.getCell(EDGE_REGION_DIRECTED).getNumericCellValue()==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
-						region.setDescription(row.getCell(EDGE_REGION_DESCRIPTION).getStringCellValue());
-						regions.add(region);
-					}
-				}
-			}
-		}
-		if(wb.getSheet(REGIONS)!=null) {
-			for(Row row : wb.getSheet(REGIONS)) {
-				if(row.getRowNum()==0 || 
-						(int)row.getCell(REGION_SYSTEM_ID).getNumericCellValue()!=systemId) 
-					continue; // skip header row and layers in other systems
-				String regionType = row.getCell(REGION_TYPE).getStringCellValue();
-				if(regionType.toLowerCase().contains("inter")) {
-					InterLayerRegion region = new InterLayerRegion();
-					region.setId((int)row.getCell(REGION_ID).getNumericCellValue());
-					String verticesX = row.getCell(REGION_VERTICES_X).getStringCellValue();
-					String verticesY = row.getCell(REGION_VERTICES_Y).getStringCellValue();
-					region.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(verticesX, verticesY));
-					region.setEdgeType(edgeTypeMap.get((int)row.getCell(REGION_EDGE_TYPE_ID).getNumericCellValue()));
-					region.setEdgeDirection(row.getCell(REGION_EDGE_DIRECTION).getNumericCellValue()==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
-					region.setOriginLayer(layerMap.get((int)row.getCell(REGION_ORIGIN_LAYER_ID).getNumericCellValue()));
-					region.setDestinationLayer(layerMap.get((int)row.getCell(REGION_DESTINATION_LAYER_ID).getNumericCellValue()));
-					region.setDescription(row.getCell(REGION_DESCRIPTION).getStringCellValue());
-					regions.add(region);
-				} else if(regionType.toLowerCase().contains("intra")) {
-					IntraLayerRegion region = new IntraLayerRegion();
-					region.setId((int)row.getCell(REGION_ID).getNumericCellValue());
-					region.setLayer(layerMap.get((int)row.getCell(REGION_LAYER_ID).getNumericCellValue()));
-					region.setNodeType(nodeTypeMap.get((int)row.getCell(REGION_NODE_TYPE_ID).getNumericCellValue()));
-					region.setEdgeType(edgeTypeMap.get((int)row.getCell(REGION_EDGE_TYPE_ID).getNumericCellValue()));
-					String verticesX = row.getCell(REGION_VERTICES_X).getStringCellValue();
-					String verticesY = row.getCell(REGION_VERTICES_Y).getStringCellValue();
-					region.setCoordinateList(CoordinateFormat.createFromMatlabSyntax(verticesX, verticesY));
-					region.setNodeGenerationType(NodeGenerationType.getNodeGenerationType(row.getCell(REGION_NODE_GENERATION_TYPE).getStringCellValue()));
-					region.setEdgeGenerationType(EdgeGenerationType.getEdgeGenerationType(row.getCell(REGION_EDGE_GENERATION_TYPE).getStringCellValue()));
-					region.setEdgeDirection(row.getCell(REGION_EDGE_DIRECTION).getNumericCellValue()==1?EdgeDirection.DIRECTED:EdgeDirection.UNDIRECTED);
-					region.setDescription(row.getCell(REGION_DESCRIPTION).getStringCellValue());
-					regions.add(region);
-				}
-			}
-		}
-		return regions;
+	private static <T> List<T> getGroup(Map<Integer,List<T>> groups, int key) {
+		List<T> group = groups.get(key);
+		return group == null ? Collections.<T>emptyList() : group;
 	}
 	
 	/**
-	 * Writes a spreadsheet template template.
+	 * Writes a spreadsheet template template. If the city was read from or 
+	 * last written to the same XLS file, the cells, nodes and edges sheets are
+	 * only cleared and rewritten if the cells, nodes or edges have changed 
+	 * since (see CityStamp).
 	 *
 	 * @param city the city
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	public void writeTemplate(City city) throws IOException {
 		File file = new File(filePath);
+		boolean saved = !isStreaming() && stamp != null && stamp.isCity(city) 
+				&& filePath.equals(stampFilePath) && file.length() == stampFileLength;
+		boolean cells = !saved || stamp.areCellsChanged();
+		boolean nodes = !saved || stamp.areNodesChanged();
+		boolean edges = !saved || stamp.areEdgesChanged();
+		stamp = null;
 		Workbook wb;
-		if(file.exists()) {
+		if(isStreaming()) {
+			// streamed workbooks are always written anew
+			wb = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+		} else if(file.exists()) {
 			FileInputStream fis = new FileInputStream(file);
 			wb = new HSSFWorkbook(fis);
 			fis.close();
@@ -642,11 +807,26 @@ public class SpreadsheetTemplate {
 		}
 		wb.setMissingCellPolicy(Row.CREATE_NULL_AS_BLANK);
 		formatTemplate(wb);
-		clearTemplate(wb);
-		writeCity(city, wb);
+		clearTemplate(wb, cells, nodes, edges);
+		writeCity(city, wb, cells, nodes, edges);
 		FileOutputStream fos = new FileOutputStream(file);
 		wb.write(fos);
 		fos.close();
+		if(wb instanceof SXSSFWorkbook) {
+			((SXSSFWorkbook)wb).dispose(); // deletes temporary files
+		} else {
+			setSaved(city);
+		}
+	}
+	
+	/**
+	 * Checks if the template is an XLSX template, which is read and written
+	 * by streaming.
+	 *
+	 * @return true, if streaming
+	 */
+	private boolean isStreaming() {
+		return TemplateFormat.getTemplateFormat(filePath) == TemplateFormat.XML_SPREADSHEET;
 	}
 	
 	/**
@@ -808,10 +988,13 @@ public class SpreadsheetTemplate {
 	 * Clears a template.
 	 *
 	 * @param wb the workbook
+	 * @param cells whether to clear the cells
+	 * @param nodes whether to clear the nodes
+	 * @param edges whether to clear the edges
 	 */
-	private void clearTemplate(Workbook wb) {
+	private void clearTemplate(Workbook wb, boolean cells, boolean nodes, boolean edges) {
 		clearSheet(wb,CELL_REGIONS);
-		clearSheet(wb,CELLS);
+		if(cells) clearSheet(wb,CELLS);
 		clearSheet(wb,SYSTEMS);
 		clearSheet(wb,LAYERS);
 		clearSheet(wb,NODE_TYPES);
@@ -820,8 +1003,8 @@ public class SpreadsheetTemplate {
 		clearSheet(wb,EDGE_TYPE_ATTRIBUTES);
 		clearSheet(wb,NODE_REGIONS);
 		clearSheet(wb,EDGE_REGIONS);
-		clearSheet(wb,NODES);
-		clearSheet(wb,EDGES);
+		if(nodes) clearSheet(wb,NODES);
+		if(edges) clearSheet(wb,EDGES);
 		clearSheet(wb,REGIONS);
 	}
 	
@@ -842,8 +1025,11 @@ public class SpreadsheetTemplate {
 	 *
 	 * @param city the city
 	 * @param wb the workbook
+	 * @param cells whether to write the cells
+	 * @param nodes whether to write the nodes
+	 * @param edges whether to write the edges
 	 */
-	private void writeCity(City city, Workbook wb) {
+	private void writeCity(City city, Workbook wb, boolean cells, boolean nodes, boolean edges) {
 		Sheet s = wb.getSheet(CITY);
 		s.getRow(CITY_NAME).getCell(1).setCellValue(city.getName());
 		s.getRow(CITY_LATITUDE).getCell(1).setCellValue(city.getLatitude());
@@ -863,14 +1049,16 @@ public class SpreadsheetTemplate {
 		for(CellRegion cellRegion : cellRegions) {
 			writeCellRegion(cellRegion, wb);
 		}
-		List<Cell> cells = new ArrayList<Cell>(city.getCells());
-		Collections.sort(cells, new Comparator<Cell>() {
-			public int compare(Cell cell1, Cell cell2) {
-				return cell1.getId()-cell2.getId();
+		if(cells) {
+			List<Cell> sortedCells = new ArrayList<Cell>(city.getCellsView());
+			Collections.sort(sortedCells, new Comparator<Cell>() {
+				public int compare(Cell cell1, Cell cell2) {
+					return cell1.getId()-cell2.getId();
+				}
+			});
+			for(Cell cell : sortedCells) {
+				writeCell(cell, wb);
 			}
-		});
-		for(Cell cell : cells) {
-			writeCell(cell, wb);
 		}
 		List<CitySystem> systems = new ArrayList<CitySystem>(city.getSystems());
 		Collections.sort(systems, new Comparator<CitySystem>() {
@@ -879,7 +1067,7 @@ public class SpreadsheetTemplate {
 			}
 		});
 		for(CitySystem system : city.getSystems()) {
-			writeSystem(system, wb);
+			writeSystem(system, wb, nodes, edges);
 		}
 	}
 	
@@ -894,9 +1082,12 @@ public class SpreadsheetTemplate {
 	 */
 	private static Row getRowForObject(Workbook wb, String sheetName, int idColumn, int objectId) {
 		Sheet sheet = wb.getSheet(sheetName);
-		for(Row r : sheet) {
-			if(r.getRowNum() > 0 && r.getCell(idColumn).getNumericCellValue()==objectId) {
-				return r;
+		if(!(wb instanceof SXSSFWorkbook)) {
+			// streamed workbooks are new and flushed rows cannot be read
+			for(Row r : sheet) {
+				if(r.getRowNum() > 0 && r.getCell(idColumn).getNumericCellValue()==objectId) {
+					return r;
+				}
 			}
 		}
 		return sheet.createRow(sheet.getLastRowNum()+1);
@@ -948,8 +1139,10 @@ public class SpreadsheetTemplate {
 	 *
 	 * @param system the system
 	 * @param wb the workbook
+	 * @param nodes whether to write the nodes
+	 * @param edges whether to write the edges
 	 */
-	private void writeSystem(CitySystem system, Workbook wb) {
+	private void writeSystem(CitySystem system, Workbook wb, boolean nodes, boolean edges) {
 		Row row = getRowForObject(wb, SYSTEMS, SYSTEM_ID, system.getId());
 		row.getCell(SYSTEM_ID).setCellValue(system.getId());
 		row.getCell(SYSTEM_NAME).setCellValue(system.getName());
@@ -970,14 +1163,18 @@ public class SpreadsheetTemplate {
 		for(EdgeRegion edgeRegion: system.getEdgeRegions()) {
 			// TODO remove writeEdgeRegion(edgeRegion, system.getId(), wb);
 		}
-		for(Region region : system.getRegions()) {
+		for(Region region : system.getRegionsView()) {
 			writeRegion(region, system.getId(), wb);
 		}
-		for(Node node : system.getNodes()) {
-			writeNode(node, system.getId(), wb);
+		if(nodes) {
+			for(Node node : system.getNodesView()) {
+				writeNode(node, system.getId(), wb);
+			}
 		}
-		for(Edge edge: system.getEdges()) {
-			writeEdge(edge, system.getId(), wb);
+		if(edges) {
+			for(Edge edge: system.getEdgesView()) {
+				writeEdge(edge, system.getId(), wb);
+			}
 		}
 	}
 	
@@ -1186,4 +1383,42 @@ public class SpreadsheetTemplate {
 		row.getCell(REGION_DESTINATION_LAYER_ID).setCellValue(destinationLayer==null?0:destinationLayer.getId());
 		row.getCell(REGION_DESCRIPTION).setCellValue(region.getDescription());
 	}
-}
+	
+	/**
+	 * The RowParser interface parses a row of a sheet into row records.
+	 */
+	private interface RowParser<T> {
+		
+		/**
+		 * Parses a row, adding its records (if any) to the records.
+		 *
+		 * @param row the row
+		 * @param records the records of the sheet
+		 */
+		void parseRow(SheetRow row, List<RowRecord<T>> records);
+	}
+	
+	/**
+	 * The RowRecord class holds an object parsed from a row of a sheet with 
+	 * the ids of its owner (e.g. its system) and of the objects it references,
+	 * which are resolved once all sheets are parsed.
+	 */
+	private static final class RowRecord<T> {
+		private final T object;
+		private final int ownerId;
+		private final int[] referenceIds;
+		
+		/**
+		 * Instantiates a new row record.
+		 *
+		 * @param object the object
+		 * @param ownerId the owner id
+		 * @param referenceIds the reference ids
+		 */
+		private RowRecord(T object, int ownerId, int... referenceIds) {
+			this.object = object;
+			this.ownerId = ownerId;
+			this.referenceIds = referenceIds;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,225 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The StreamingSheetReader class reads the sheets of an XLSX workbook with
+ * the SAX event API, passing one row at a time to a row handler so memory use
+ * does not grow with the number of rows. Cell values are read as stored
+ * (numbers are not formatted) and shared strings are resolved. Different 
+ * sheets may be read concurrently.
+ */
+final class StreamingSheetReader implements SheetReader {
+	private XSSFReader reader;
+	private ReadOnlySharedStringsTable strings;
+	private SAXParserFactory factory;
+
+	/**
+	 * Instantiates a new streaming sheet reader.
+	 *
+	 * @param pkg the workbook package
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	StreamingSheetReader(OPCPackage pkg) throws IOException {
+		try {
+			reader = new XSSFReader(pkg);
+			strings = new ReadOnlySharedStringsTable(pkg);
+		} catch(OpenXML4JException | SAXException e) {
+			throw new IOException("Could not open the workbook.", e);
+		}
+		factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.io.SheetReader#read(java.lang.String, edu.mit.citynet.io.SheetReader.RowHandler)
+	 */
+	public boolean read(String sheetName, RowHandler handler) throws IOException {
+		InputStream sheet = getSheet(sheetName);
+		if(sheet == null) return false;
+		try {
+			XMLReader parser;
+			synchronized(factory) {
+				parser = factory.newSAXParser().getXMLReader();
+			}
+			parser.setContentHandler(new SheetHandler(handler));
+			parser.parse(new InputSource(sheet));
+		} catch(ParserConfigurationException | SAXException e) {
+			throw new IOException("Could not read sheet " + sheetName + ".", e);
+		} finally {
+			sheet.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Opens the data of a sheet.
+	 *
+	 * @param sheetName the sheet name
+	 * @return the sheet data, or null if the sheet does not exist
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private synchronized InputStream getSheet(String sheetName) throws IOException {
+		try {
+			XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator)reader.getSheetsData();
+			while(sheets.hasNext()) {
+				InputStream sheet = sheets.next();
+				if(sheets.getSheetName().equals(sheetName)) return sheet;
+				sheet.close();
+			}
+			return null;
+		} catch(OpenXML4JException e) {
+			throw new IOException("Could not open sheet " + sheetName + ".", e);
+		}
+	}
+
+	/**
+	 * The SheetHandler class collects the cell values of each row element of
+	 * the sheet XML and passes the row on at the end of the element.
+	 */
+	private class SheetHandler extends DefaultHandler {
+		private RowHandler handler;
+		private int rowNum = -1, column;
+		private String[] values = new String[16];
+		private String type;
+		private StringBuilder text = new StringBuilder();
+		private boolean inText, hasValues;
+
+		/**
+		 * Instantiates a new sheet handler.
+		 *
+		 * @param handler the row handler
+		 */
+		private SheetHandler(RowHandler handler) {
+			this.handler = handler;
+		}
+
+		/* (non-Javadoc)
+		 * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String, java.lang.String, java.lang.String, org.xml.sax.Attributes)
+		 */
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) {
+			if(localName.equals("row")) {
+				String r = attributes.getValue("r");
+				rowNum = r == null ? rowNum+1 : Integer.parseInt(r)-1;
+				column = -1;
+				Arrays.fill(values, null);
+				hasValues = false;
+			} else if(localName.equals("c")) {
+				String r = attributes.getValue("r");
+				column = r == null ? column+1 : getColumn(r);
+				type = attributes.getValue("t");
+				text.setLength(0);
+			} else if(localName.equals("v") || localName.equals("t")) {
+				inText = true;
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+		 */
+		public void characters(char[] ch, int start, int length) {
+			if(inText) text.append(ch, start, length);
+		}
+
+		/* (non-Javadoc)
+		 * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String, java.lang.String, java.lang.String)
+		 */
+		public void endElement(String uri, String localName, String qName) {
+			if(localName.equals("v") || localName.equals("t")) {
+				inText = false;
+			} else if(localName.equals("c")) {
+				String value = text.toString();
+				if("s".equals(type) && !value.isEmpty()) {
+					value = strings.getEntryAt(Integer.parseInt(value));
+				}
+				if(column >= values.length) {
+					values = Arrays.copyOf(values, Math.max(column+1, 2*values.length));
+				}
+				values[column] = value;
+				hasValues = true;
+			} else if(localName.equals("row") && hasValues) {
+				handler.handleRow(new ValueRow(rowNum, values.clone()));
+			}
+		}
+
+		/**
+		 * Gets the column index of a cell reference, e.g. 2 for "C12".
+		 *
+		 * @param reference the cell reference
+		 * @return the column index
+		 */
+		private int getColumn(String reference) {
+			int column = 0;
+			for(int i=0; i<reference.length(); i++) {
+				char c = reference.charAt(i);
+				if(c < 'A' || c > 'Z') break;
+				column = 26*column + (c-'A'+1);
+			}
+			return column-1;
+		}
+	}
+
+	/**
+	 * The ValueRow class holds the cell values of a streamed row. Blank rows
+	 * are not passed to the row handler.
+	 */
+	private static class ValueRow extends SheetRow {
+		private int rowNum;
+		private String[] values;
+
+		/**
+		 * Instantiates a new value row.
+		 *
+		 * @param rowNum the row number (0-based)
+		 * @param values the cell values, null where blank
+		 */
+		private ValueRow(int rowNum, String[] values) {
+			this.rowNum = rowNum;
+			this.values = values;
+		}
+
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.io.SheetRow#getRowNum()
+		 */
+		int getRowNum() {
+			return rowNum;
+		}
+
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.io.SheetRow#getString(int)
+		 */
+		String getString(int column) {
+			if(column >= values.length || values[column] == null) return "";
+			return values[column];
+		}
+
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.io.SheetRow#getNumber(int)
+		 */
+		double getNumber(int column) {
+			String value = getString(column).trim();
+			return value.isEmpty() ? 0 : Double.parseDouble(value);
+		}
+	}
+}
\ No newline at end of file
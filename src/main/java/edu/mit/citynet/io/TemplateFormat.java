@@ -0,0 +1,82 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+/**
+ * The TemplateFormat enumeration lists the file formats of the synthesis
+ * template, identified by file extension.
+ */
+public enum TemplateFormat {
+	SPREADSHEET("Spreadsheet", "xls"),
+	XML_SPREADSHEET("XML Spreadsheet", "xlsx"),
+	BINARY("Binary", "cnb");
+
+	private String name, extension;
+
+	/**
+	 * Instantiates a new template format.
+	 *
+	 * @param name the name
+	 * @param extension the file extension
+	 */
+	private TemplateFormat(String name, String extension) {
+		this.name = name;
+		this.extension = extension;
+	}
+
+	/**
+	 * Gets the name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the file extension, without the leading period.
+	 *
+	 * @return the extension
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Enum#toString()
+	 */
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Creates a template of this format.
+	 *
+	 * @return the template
+	 */
+	public CityTemplate createTemplate() {
+		switch(this) {
+		case BINARY: return new BinaryTemplate();
+		default: return new SpreadsheetTemplate();
+		}
+	}
+
+	/**
+	 * Gets the template format of a file from its extension.
+	 *
+	 * @param filePath the file path
+	 * @return the template format, or null if the extension is not known
+	 */
+	public static TemplateFormat getTemplateFormat(String filePath) {
+		int i = filePath.lastIndexOf('.');
+		if(i < 0 || i == filePath.length() - 1) return null;
+		String extension = filePath.substring(i+1).toLowerCase();
+		for(TemplateFormat format : values()) {
+			if(format.getExtension().equals(extension)) return format;
+		}
+		return null;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+/*
+ * CityNet: Integrated Urban Development Decision Support Tool
+ * 
+ * Copyright (c) 2011 MIT Strategic Engineering Research Group
+ */
+package edu.mit.citynet.io;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * The WorkbookSheetReader class reads the sheets of a workbook held in 
+ * memory, such as an XLS (HSSF) template. As the workbook is only read, 
+ * different sheets may be read concurrently.
+ */
+final class WorkbookSheetReader implements SheetReader {
+	private Workbook wb;
+
+	/**
+	 * Instantiates a new workbook sheet reader.
+	 *
+	 * @param wb the workbook
+	 */
+	WorkbookSheetReader(Workbook wb) {
+		this.wb = wb;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.mit.citynet.io.SheetReader#read(java.lang.String, edu.mit.citynet.io.SheetReader.RowHandler)
+	 */
+	public boolean read(String sheetName, RowHandler handler) {
+		Sheet sheet = wb.getSheet(sheetName);
+		if(sheet == null) return false;
+		CellRow cellRow = new CellRow();
+		for(Row row : sheet) {
+			cellRow.row = row;
+			handler.handleRow(cellRow);
+		}
+		return true;
+	}
+
+	/**
+	 * The CellRow class reads the values of a workbook row. One instance is 
+	 * reused for all rows of a sheet, so handlers must not keep it.
+	 */
+	private static class CellRow extends SheetRow {
+		private Row row;
+
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.io.SheetRow#getRowNum()
+		 */
+		int getRowNum() {
+			return row.getRowNum();
+		}
+
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.io.SheetRow#getString(int)
+		 */
+		String getString(int column) {
+			org.apache.poi.ss.usermodel.Cell cell = row.getCell(column, Row.CREATE_NULL_AS_BLANK);
+			if(cell.getCellType() == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_NUMERIC) {
+				return String.valueOf(cell.getNumericCellValue());
+			}
+			return cell.getStringCellValue();
+		}
+
+		/* (non-Javadoc)
+		 * @see edu.mit.citynet.io.SheetRow#getNumber(int)
+		 */
+		double getNumber(int column) {
+			org.apache.poi.ss.usermodel.Cell cell = row.getCell(column, Row.CREATE_NULL_AS_BLANK);
+			if(cell.getCellType() == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_STRING) {
+				String value = cell.getStringCellValue().trim();
+				return value.isEmpty() ? 0 : Double.parseDouble(value);
+			}
+			return cell.getNumericCellValue();
+		}
+	}
+}
@@ -14,6 +14,8 @@ import java.awt.Point;
 
 import javax.swing.JPanel;
 
+import com.vividsolutions.jts.geom.Coordinate;
+
 import edu.mit.citynet.core.Cell;
 
 /**
@@ -43,12 +45,13 @@ public class CellLayer extends JPanel {
 	public void paintComponent(Graphics g) {
 		super.paintComponent(g);
 		
-		for(Cell cell : vizPane.getCity().getCells()) {
-			int[] xPoints = new int[cell.getPolygon().getCoordinates().length];
-			int[] yPoints = new int[cell.getPolygon().getCoordinates().length];
-			for(int i=0; i<cell.getPolygon().getCoordinates().length; i++) {
+		for(Cell cell : vizPane.getCity().getCellsView()) {
+			Coordinate[] coordinates = cell.getPolygon().getCoordinates();
+			int[] xPoints = new int[coordinates.length];
+			int[] yPoints = new int[coordinates.length];
+			for(int i=0; i<coordinates.length; i++) {
 				// convert distance units to pixels
-				Point p = vizPane.getPoint(cell.getPolygon().getCoordinates()[i]);
+				Point p = vizPane.getPoint(coordinates[i]);
 				xPoints[i] = p.x;
 				yPoints[i] = p.y;
 			}
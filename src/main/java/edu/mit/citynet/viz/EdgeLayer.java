@@ -47,7 +47,7 @@ public class EdgeLayer extends JPanel {
 		super.paintComponent(g);
 		if(vizPane.getSystem() == null) return;
 		
-		for(Edge edge : vizPane.getSystem().getEdges()) {
+		for(Edge edge : vizPane.getSystem().getEdgesView()) {
 			if(vizPane.getDisplayOptions().isLayersFiltered() 
 					&& vizPane.getDisplayOptions().getDisplayHeight()!=edge.getOrigin().getLayer().getDisplayHeight()
 					&& vizPane.getDisplayOptions().getDisplayHeight()!=edge.getDestination().getLayer().getDisplayHeight()) 
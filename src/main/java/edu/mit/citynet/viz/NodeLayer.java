@@ -13,6 +13,8 @@ import java.awt.Point;
 
 import javax.swing.JPanel;
 
+import com.vividsolutions.jts.geom.Coordinate;
+
 import edu.mit.citynet.core.Node;
 
 /**
@@ -43,15 +45,16 @@ public class NodeLayer extends JPanel {
 		super.paintComponent(g);
 		if(vizPane.getSystem() == null) return;
 		
-		for(Node node : vizPane.getSystem().getNodes()) {
+		for(Node node : vizPane.getSystem().getNodesView()) {
 			if(vizPane.getDisplayOptions().isLayersFiltered() 
 					&& vizPane.getDisplayOptions().getDisplayHeight()!=node.getLayer().getDisplayHeight()) 
 				continue;
-			int[] xPoints = new int[node.getCell().getPolygon().getCoordinates().length];
-			int[] yPoints = new int[node.getCell().getPolygon().getCoordinates().length];
-			for(int i=0; i<node.getCell().getPolygon().getCoordinates().length; i++) {
+			Coordinate[] coordinates = node.getCell().getPolygon().getCoordinates();
+			int[] xPoints = new int[coordinates.length];
+			int[] yPoints = new int[coordinates.length];
+			for(int i=0; i<coordinates.length; i++) {
 				// ocnvert distance units to pixels
-				Point p = vizPane.getPoint(node.getCell().getPolygon().getCoordinates()[i]);
+				Point p = vizPane.getPoint(coordinates[i]);
 				xPoints[i] = p.x;
 				yPoints[i] = p.y;
 			}
@@ -48,7 +48,7 @@ public class RegionLayer extends JPanel {
 		super.paintComponent(g);
 		if(vizPane.getSystem() == null) return;
 		
-		for(Region region : vizPane.getSystem().getRegions()) {
+		for(Region region : vizPane.getSystem().getRegionsView()) {
 			if(vizPane.getDisplayOptions().isLayersFiltered() 
 					&& region instanceof IntraLayerRegion
 					&& vizPane.getDisplayOptions().getDisplayHeight()